@@ -0,0 +1,39 @@
+package io.dataease.plugins.datasource.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * 运行基准测试并输出吞吐量与内存分配报告
+ * 报告为 JSON，写入 target/jmh-result-{版本}.json，不同版本的报告可直接对比（如 jmh.morethan.io）；
+ * 版本通过 -Dbenchmark.release 指定，命令行参数与 JMH 原生参数相同，可覆盖默认配置，例如：
+ * java -Dbenchmark.release=1.18.6 -jar target/benchmarks.jar -p datasource=dm,kingbase
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        String release = System.getProperty("benchmark.release", "SNAPSHOT");
+        File result = new File("target", "jmh-result-" + release + ".json");
+        result.getParentFile().mkdirs();
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            builder.include(SqlGenerationBenchmark.class.getSimpleName());
+            builder.include(InfluxdbRowConverterBenchmark.class.getSimpleName());
+        }
+        // gc 分析器输出每次操作的分配字节数（gc.alloc.rate.norm）
+        Options options = builder
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getPath())
+                .parent(commandLineOptions)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,221 @@
+package io.dataease.plugins.datasource.benchmark;
+
+import io.dataease.plugins.common.base.domain.ChartViewWithBLOBs;
+import io.dataease.plugins.common.base.domain.DatasetTableField;
+import io.dataease.plugins.common.base.domain.Datasource;
+import io.dataease.plugins.common.dto.chart.ChartCustomFilterItemDTO;
+import io.dataease.plugins.common.dto.chart.ChartFieldCustomFilterDTO;
+import io.dataease.plugins.common.dto.chart.ChartViewFieldDTO;
+import io.dataease.plugins.common.request.chart.ChartExtFilterRequest;
+import io.dataease.plugins.common.request.permission.DataSetRowPermissionsTreeDTO;
+import io.dataease.plugins.common.request.permission.DatasetRowPermissionsTreeItem;
+import io.dataease.plugins.common.request.permission.DatasetRowPermissionsTreeObj;
+
+import java.util.*;
+
+/**
+ * 基准测试输入
+ * 模拟一个销售明细数据集上的常见视图：维度含文本、日期与数值字段，指标含普通字段与计算字段，
+ * 并带有视图过滤、仪表板过滤与行权限；计算字段由 StubDatasetTableFieldMapper 提供。
+ */
+public class ChartFixtures {
+
+    public static final String TABLE = "sales_detail";
+
+    private static final String[] REGIONS = {"华北", "华东", "华南", "华中", "西南", "西北", "东北", "港澳台"};
+
+    private ChartFixtures() {
+    }
+
+    /**
+     * 计算字段，id 与 originName 中引用的字段 id 对应
+     *
+     * @return
+     */
+    public static List<DatasetTableField> calcFields() {
+        List<DatasetTableField> fields = new ArrayList<>();
+        fields.add(tableField("fid_amount", "amount", 3, 3, 0));
+        fields.add(tableField("fid_cost", "cost", 3, 3, 0));
+        fields.add(tableField("fid_discount", "discount", 3, 3, 0));
+        return fields;
+    }
+
+    public static Datasource datasource(String type) {
+        Datasource datasource = new Datasource();
+        datasource.setId("benchmark-" + type);
+        datasource.setName("benchmark-" + type);
+        datasource.setType(type);
+        datasource.setConfiguration("{\"host\":\"127.0.0.1\",\"port\":5236,\"dataBase\":\"BENCH\",\"schema\":\"BENCH\","
+                + "\"catalog\":\"hive\",\"username\":\"bench\",\"password\":\"bench\"}");
+        return datasource;
+    }
+
+    public static ChartViewWithBLOBs view() {
+        ChartViewWithBLOBs view = new ChartViewWithBLOBs();
+        view.setId("benchmark-view");
+        view.setType("table-normal");
+        view.setResultMode("custom");
+        view.setResultCount(1000);
+        return view;
+    }
+
+    public static List<ChartViewFieldDTO> xAxis() {
+        List<ChartViewFieldDTO> xAxis = new ArrayList<>();
+        xAxis.add(viewField("fid_region", "region", 0, 0, 0, "d", null, "asc"));
+        ChartViewFieldDTO orderDate = viewField("fid_order_date", "order_date", 1, 0, 0, "d", null, "none");
+        orderDate.setDateStyle("y_M_d");
+        orderDate.setDatePattern("date_sub");
+        orderDate.setDateFormat("yyyy-MM-dd HH:mm:ss");
+        xAxis.add(orderDate);
+        xAxis.add(viewField("fid_store_id", "store_id", 2, 2, 0, "d", null, "none"));
+        xAxis.add(viewField("fid_product", "product_name", 0, 0, 0, "d", null, "none"));
+        return xAxis;
+    }
+
+    public static List<ChartViewFieldDTO> yAxis() {
+        List<ChartViewFieldDTO> yAxis = new ArrayList<>();
+        yAxis.add(viewField("fid_amount", "amount", 3, 3, 0, "q", "sum", "desc"));
+        yAxis.add(viewField("fid_quantity", "quantity", 2, 2, 0, "q", "sum", "none"));
+        yAxis.add(viewField("fid_order_id", "order_id", 0, 0, 0, "q", "count", "none"));
+        yAxis.add(viewField("fid_profit", "[fid_amount]-[fid_cost]*(1-[fid_discount])", 3, 3, 2, "q", "sum", "none"));
+        return yAxis;
+    }
+
+    public static List<ChartViewFieldDTO> extStack() {
+        return Collections.singletonList(viewField("fid_channel", "channel", 0, 0, 0, "d", null, "none"));
+    }
+
+    public static List<ChartViewFieldDTO> extBubble() {
+        return Collections.singletonList(viewField("fid_customer_count", "customer_count", 2, 2, 0, "q", "sum", "none"));
+    }
+
+    public static List<ChartFieldCustomFilterDTO> customFilters() {
+        List<ChartFieldCustomFilterDTO> filters = new ArrayList<>();
+
+        ChartFieldCustomFilterDTO regionFilter = new ChartFieldCustomFilterDTO();
+        regionFilter.setField(tableField("fid_region", "region", 0, 0, 0));
+        regionFilter.setFilterType("enum");
+        regionFilter.setEnumCheckField(Arrays.asList(REGIONS));
+        filters.add(regionFilter);
+
+        ChartFieldCustomFilterDTO amountFilter = new ChartFieldCustomFilterDTO();
+        amountFilter.setField(tableField("fid_amount", "amount", 3, 3, 0));
+        amountFilter.setFilterType("logic");
+        amountFilter.setLogic("and");
+        amountFilter.setFilter(Arrays.asList(filterItem("ge", "100"), filterItem("lt", "100000"), filterItem("not_null", null)));
+        filters.add(amountFilter);
+
+        ChartFieldCustomFilterDTO productFilter = new ChartFieldCustomFilterDTO();
+        productFilter.setField(tableField("fid_product", "product_name", 0, 0, 0));
+        productFilter.setFilterType("logic");
+        productFilter.setLogic("or");
+        productFilter.setFilter(Arrays.asList(filterItem("like", "手机"), filterItem("not like", "配件")));
+        filters.add(productFilter);
+        return filters;
+    }
+
+    public static List<ChartExtFilterRequest> extFilters() {
+        List<ChartExtFilterRequest> filters = new ArrayList<>();
+
+        ChartExtFilterRequest dateFilter = new ChartExtFilterRequest();
+        DatasetTableField orderDate = tableField("fid_order_date", "order_date", 1, 0, 0);
+        orderDate.setDateFormat("yyyy-MM-dd HH:mm:ss");
+        dateFilter.setFieldId(orderDate.getId());
+        dateFilter.setDatasetTableField(orderDate);
+        dateFilter.setIsTree(false);
+        dateFilter.setOperator("between");
+        dateFilter.setValue(Arrays.asList("1672502400000", "1704038399000"));
+        filters.add(dateFilter);
+
+        ChartExtFilterRequest regionFilter = new ChartExtFilterRequest();
+        DatasetTableField region = tableField("fid_region", "region", 0, 0, 0);
+        regionFilter.setFieldId(region.getId());
+        regionFilter.setDatasetTableField(region);
+        regionFilter.setIsTree(false);
+        regionFilter.setOperator("in");
+        regionFilter.setValue(Arrays.asList(REGIONS).subList(0, 5));
+        filters.add(regionFilter);
+
+        ChartExtFilterRequest storeFilter = new ChartExtFilterRequest();
+        DatasetTableField store = tableField("fid_store_id", "store_id", 2, 2, 0);
+        storeFilter.setFieldId(store.getId());
+        storeFilter.setDatasetTableField(store);
+        storeFilter.setIsTree(false);
+        storeFilter.setOperator("ge");
+        storeFilter.setValue(Collections.singletonList("1000"));
+        filters.add(storeFilter);
+        return filters;
+    }
+
+    public static List<DataSetRowPermissionsTreeDTO> rowPermissions() {
+        DatasetRowPermissionsTreeItem regionItem = new DatasetRowPermissionsTreeItem();
+        regionItem.setType("item");
+        regionItem.setField(tableField("fid_region", "region", 0, 0, 0));
+        regionItem.setFilterType("enum");
+        regionItem.setEnumValue(Arrays.asList(REGIONS).subList(0, 3));
+
+        DatasetRowPermissionsTreeItem storeItem = new DatasetRowPermissionsTreeItem();
+        storeItem.setType("item");
+        storeItem.setField(tableField("fid_store_id", "store_id", 2, 2, 0));
+        storeItem.setFilterType("logic");
+        storeItem.setTerm("le");
+        storeItem.setValue("5000");
+
+        DatasetRowPermissionsTreeItem channelItem = new DatasetRowPermissionsTreeItem();
+        channelItem.setType("item");
+        channelItem.setField(tableField("fid_channel", "channel", 0, 0, 0));
+        channelItem.setFilterType("logic");
+        channelItem.setTerm("eq");
+        channelItem.setValue("线上");
+
+        DatasetRowPermissionsTreeObj subTree = new DatasetRowPermissionsTreeObj();
+        subTree.setLogic("and");
+        subTree.setItems(Arrays.asList(storeItem, channelItem));
+        DatasetRowPermissionsTreeItem subTreeItem = new DatasetRowPermissionsTreeItem();
+        subTreeItem.setType("tree");
+        subTreeItem.setSubTree(subTree);
+
+        DatasetRowPermissionsTreeObj tree = new DatasetRowPermissionsTreeObj();
+        tree.setLogic("or");
+        tree.setItems(Arrays.asList(regionItem, subTreeItem));
+        DataSetRowPermissionsTreeDTO permission = new DataSetRowPermissionsTreeDTO();
+        permission.setTree(tree);
+        return Collections.singletonList(permission);
+    }
+
+    private static ChartViewFieldDTO viewField(String id, String originName, int deType, int deExtractType, int extField,
+                                               String groupType, String summary, String sort) {
+        ChartViewFieldDTO field = new ChartViewFieldDTO();
+        field.setId(id);
+        field.setOriginName(originName);
+        field.setName(originName);
+        field.setDataeaseName(originName);
+        field.setDeType(deType);
+        field.setDeExtractType(deExtractType);
+        field.setExtField(extField);
+        field.setGroupType(groupType);
+        field.setSummary(summary);
+        field.setSort(sort);
+        field.setFilter(new ArrayList<>());
+        return field;
+    }
+
+    private static DatasetTableField tableField(String id, String originName, int deType, int deExtractType, int extField) {
+        DatasetTableField field = new DatasetTableField();
+        field.setId(id);
+        field.setOriginName(originName);
+        field.setName(originName);
+        field.setDataeaseName(originName);
+        field.setDeType(deType);
+        field.setDeExtractType(deExtractType);
+        field.setExtField(extField);
+        return field;
+    }
+
+    private static ChartCustomFilterItemDTO filterItem(String term, String value) {
+        ChartCustomFilterItemDTO item = new ChartCustomFilterItemDTO();
+        item.setTerm(term);
+        item.setValue(value);
+        return item;
+    }
+}
@@ -0,0 +1,84 @@
+package io.dataease.plugins.datasource.benchmark;
+
+import io.dataease.plugins.datasource.influxdb.provider.InfluxdbColumnarResult;
+import io.dataease.plugins.datasource.influxdb.provider.InfluxdbRowConverter;
+import org.influxdb.dto.QueryResult;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InfluxDB 查询结果行转换的耗时与内存分配
+ * 输入为内存中生成的 series（默认共 100 万个点），包含时间、文本字段、数值字段、count 列与标签；
+ * convert 测量转换为列式结果（与 InfluxdbDsProvider 一样转换后调用 compact），convertAndRead 额外按行读取全部结果，包含数值格式化的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class InfluxdbRowConverterBenchmark {
+
+    private static final List<String> COLUMNS = Arrays.asList("time", "host", "usage", "count_usage");
+
+    private static final String[] HOSTS = {"server-01", "server-02", "server-03", "server-04", "server-05"};
+
+    @Param({"1000000"})
+    private int points;
+
+    // series 数量，点平均分布到各 series
+    @Param({"1", "100"})
+    private int series;
+
+    // chart：按视图字段组织列；preview：数据预览，返回全部列
+    @Param({"chart", "preview"})
+    private String mode;
+
+    private List<QueryResult.Series> seriesList;
+
+    private InfluxdbRowConverter converter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        seriesList = new ArrayList<>(series);
+        Random random = new Random(42);
+        long start = 1672531200000L;
+        int perSeries = points / series;
+        for (int s = 0; s < series; s++) {
+            List<List<Object>> values = new ArrayList<>(perSeries);
+            for (int i = 0; i < perSeries; i++) {
+                String time = Instant.ofEpochMilli(start + (long) (s * perSeries + i) * 1000).toString();
+                values.add(Arrays.asList(time, HOSTS[i % HOSTS.length], random.nextDouble() * 100, (double) random.nextInt(1000)));
+            }
+            QueryResult.Series item = new QueryResult.Series();
+            item.setName("cpu");
+            item.setColumns(COLUMNS);
+            item.setValues(values);
+            item.setTags(Collections.singletonMap("region", "region-" + s));
+            seriesList.add(item);
+        }
+        boolean preview = "preview".equals(mode);
+        // 视图字段与返回列一致，时间列在第一个位置
+        converter = new InfluxdbRowConverter(false, false, preview, Collections.emptySet(), COLUMNS.size(), preview ? null : 1);
+    }
+
+    @Benchmark
+    public InfluxdbColumnarResult convert() {
+        InfluxdbColumnarResult rows = new InfluxdbColumnarResult();
+        converter.convert(seriesList, rows);
+        rows.compact();
+        return rows;
+    }
+
+    @Benchmark
+    public void convertAndRead(Blackhole blackhole) {
+        InfluxdbColumnarResult rows = convert();
+        for (String[] row : rows) {
+            blackhole.consume(row);
+        }
+    }
+}
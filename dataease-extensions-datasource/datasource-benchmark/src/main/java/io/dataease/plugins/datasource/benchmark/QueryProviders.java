@@ -0,0 +1,127 @@
+package io.dataease.plugins.datasource.benchmark;
+
+import io.dataease.plugins.common.base.domain.Datasource;
+import io.dataease.plugins.common.base.mapper.DatasetTableFieldMapper;
+import io.dataease.plugins.datasource.dm.provider.MaxcomputeDsProvider;
+import io.dataease.plugins.datasource.dm.query.DmQueryProvider;
+import io.dataease.plugins.datasource.dm.query.MaxcomputeQueryProvider;
+import io.dataease.plugins.datasource.dm.query.PrestoQueryProvider;
+import io.dataease.plugins.datasource.influxdb.query.InfluxdbConstants;
+import io.dataease.plugins.datasource.influxdb.query.InfluxdbQueryProvider;
+import io.dataease.plugins.datasource.kingbase.query.KingbaseQueryProvider;
+import io.dataease.plugins.datasource.kylin.query.KylinQueryProvider;
+import io.dataease.plugins.datasource.mongo.query.MongobiQueryProvider;
+import io.dataease.plugins.datasource.query.QueryProvider;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 在 Spring 容器外创建各数据源的 QueryProvider，按字段名注入 Mapper 等依赖
+ */
+public class QueryProviders {
+
+    // 与各数据源 DsProvider.getType() 一致
+    public static final String[] TYPES = {"kylin", "dm", "kingbase", "presto", "maxcompute", "mongobi", "influxdb"};
+
+    private static final String INFLUXDB_TEMPLATE_RESOURCE = "infludbPluginSqltemplate.stg";
+
+    private QueryProviders() {
+    }
+
+    public static QueryProvider create(String type) throws Exception {
+        DatasetTableFieldMapper mapper = StubDatasetTableFieldMapper.create(ChartFixtures.calcFields());
+        QueryProvider provider;
+        switch (type) {
+            case "kylin":
+                provider = new KylinQueryProvider();
+                break;
+            case "dm":
+                provider = new DmQueryProvider();
+                break;
+            case "kingbase":
+                provider = new KingbaseQueryProvider();
+                break;
+            case "presto":
+                provider = new PrestoQueryProvider();
+                break;
+            case "maxcompute":
+                provider = new MaxcomputeQueryProvider();
+                // 分区列固定返回 ds，不连接 MaxCompute
+                inject(provider, "maxcomputeDsProvider", new MaxcomputeDsProvider() {
+                    @Override
+                    public List<String> getPartitionColumns(Datasource datasource, String table) {
+                        return Collections.singletonList("ds");
+                    }
+                });
+                break;
+            case "mongobi":
+                provider = new MongobiQueryProvider();
+                break;
+            case "influxdb":
+                provider = new InfluxdbQueryProvider();
+                inject(provider, "pluginDir", influxdbPluginDir());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown datasource type: " + type);
+        }
+        inject(provider, "datasetTableFieldMapper", mapper);
+        return provider;
+    }
+
+    /**
+     * 清空 SQL 缓存的操作，用于测量每次都重新生成 SQL 的耗时
+     *
+     * @param provider
+     * @return
+     * @throws Exception
+     */
+    public static MethodHandle sqlCacheCleaner(QueryProvider provider) throws Exception {
+        Object sqlCache = field(provider.getClass(), "sqlCache").get(provider);
+        return MethodHandles.publicLookup().findVirtual(sqlCache.getClass(), "clear", MethodType.methodType(void.class)).bindTo(sqlCache);
+    }
+
+    /**
+     * InfluxDB 从插件目录读取模板，把类路径中的模板复制到临时插件目录
+     *
+     * @return
+     * @throws Exception
+     */
+    private static String influxdbPluginDir() throws Exception {
+        File pluginDir = Files.createTempDirectory("de-benchmark").toFile();
+        File template = new File(pluginDir, InfluxdbConstants.INFLUXDB_SQL_TEMPLATE);
+        template.getParentFile().mkdirs();
+        try (InputStream inputStream = QueryProviders.class.getClassLoader().getResourceAsStream(INFLUXDB_TEMPLATE_RESOURCE)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Template not found in classpath: " + INFLUXDB_TEMPLATE_RESOURCE);
+            }
+            Files.copy(inputStream, template.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return pluginDir.getAbsolutePath();
+    }
+
+    private static void inject(Object target, String name, Object value) throws Exception {
+        field(target.getClass(), name).set(target, value);
+    }
+
+    private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            try {
+                Field field = current.getDeclaredField(name);
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException ignore) {
+                // 继续在父类中查找
+            }
+        }
+        throw new NoSuchFieldException(type.getName() + "." + name);
+    }
+}
@@ -0,0 +1,143 @@
+package io.dataease.plugins.datasource.benchmark;
+
+import io.dataease.plugins.common.base.domain.ChartViewWithBLOBs;
+import io.dataease.plugins.common.base.domain.Datasource;
+import io.dataease.plugins.common.dto.chart.ChartFieldCustomFilterDTO;
+import io.dataease.plugins.common.dto.chart.ChartViewFieldDTO;
+import io.dataease.plugins.common.dto.sqlObj.SQLObj;
+import io.dataease.plugins.common.request.chart.ChartExtFilterRequest;
+import io.dataease.plugins.common.request.permission.DataSetRowPermissionsTreeDTO;
+import io.dataease.plugins.datasource.query.QueryProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各数据源 QueryProvider 的 SQL 生成吞吐量
+ * sqlCache 为 cold 时每次调用前清空 SQL 缓存，测量完整的生成过程；为 warm 时测量缓存命中（计算摘要与查找）的开销。
+ * trans* 过滤条件转换不经过 SQL 缓存，两种模式结果相同。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqlGenerationBenchmark {
+
+    @Param({"kylin", "dm", "kingbase", "presto", "maxcompute", "mongobi", "influxdb"})
+    private String datasource;
+
+    @Param({"cold", "warm"})
+    private String sqlCache;
+
+    private QueryProvider provider;
+
+    private MethodHandle sqlCacheCleaner;
+
+    private MethodHandle transCustomFilterList;
+
+    private MethodHandle transExtFilterList;
+
+    private MethodHandle transFilterTrees;
+
+    private boolean cold;
+
+    private Datasource ds;
+
+    private ChartViewWithBLOBs view;
+
+    private SQLObj tableObj;
+
+    private List<ChartViewFieldDTO> xAxis;
+
+    private List<ChartViewFieldDTO> yAxis;
+
+    private List<ChartViewFieldDTO> extStack;
+
+    private List<ChartViewFieldDTO> extBubble;
+
+    private List<ChartFieldCustomFilterDTO> customFilters;
+
+    private List<ChartExtFilterRequest> extFilters;
+
+    private List<DataSetRowPermissionsTreeDTO> rowPermissions;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        provider = QueryProviders.create(datasource);
+        sqlCacheCleaner = QueryProviders.sqlCacheCleaner(provider);
+        // 过滤条件转换方法不在 QueryProvider 中声明，按名称查找
+        MethodType filterType = MethodType.methodType(String.class, SQLObj.class, List.class);
+        transCustomFilterList = MethodHandles.publicLookup().findVirtual(provider.getClass(), "transCustomFilterList", filterType).bindTo(provider);
+        transExtFilterList = MethodHandles.publicLookup().findVirtual(provider.getClass(), "transExtFilterList", filterType).bindTo(provider);
+        transFilterTrees = MethodHandles.publicLookup().findVirtual(provider.getClass(), "transFilterTrees", filterType).bindTo(provider);
+        cold = "cold".equals(sqlCache);
+
+        ds = ChartFixtures.datasource(datasource);
+        view = ChartFixtures.view();
+        tableObj = SQLObj.builder().tableName(ChartFixtures.TABLE).tableAlias("t_a_0").build();
+        xAxis = ChartFixtures.xAxis();
+        yAxis = ChartFixtures.yAxis();
+        extStack = ChartFixtures.extStack();
+        extBubble = ChartFixtures.extBubble();
+        customFilters = ChartFixtures.customFilters();
+        extFilters = ChartFixtures.extFilters();
+        rowPermissions = ChartFixtures.rowPermissions();
+    }
+
+    @Benchmark
+    public String getSQL() throws Throwable {
+        resetSqlCache();
+        return provider.getSQL(ChartFixtures.TABLE, xAxis, yAxis, customFilters, rowPermissions, extFilters, ds, view);
+    }
+
+    @Benchmark
+    public String getSQLStack() throws Throwable {
+        resetSqlCache();
+        return provider.getSQLStack(ChartFixtures.TABLE, xAxis, yAxis, customFilters, rowPermissions, extFilters, extStack, ds, view);
+    }
+
+    @Benchmark
+    public String getSQLScatter() throws Throwable {
+        resetSqlCache();
+        return provider.getSQLScatter(ChartFixtures.TABLE, xAxis, yAxis, customFilters, rowPermissions, extFilters, extBubble, ds, view);
+    }
+
+    @Benchmark
+    public String getSQLSummary() throws Throwable {
+        resetSqlCache();
+        return provider.getSQLSummary(ChartFixtures.TABLE, yAxis, customFilters, rowPermissions, extFilters, view, ds);
+    }
+
+    @Benchmark
+    public String getSQLTableInfo() throws Throwable {
+        resetSqlCache();
+        return provider.getSQLTableInfo(ChartFixtures.TABLE, xAxis, customFilters, rowPermissions, extFilters, ds, view);
+    }
+
+    @Benchmark
+    public String transCustomFilterList() throws Throwable {
+        return (String) transCustomFilterList.invokeExact(tableObj, customFilters);
+    }
+
+    @Benchmark
+    public String transExtFilterList() throws Throwable {
+        return (String) transExtFilterList.invokeExact(tableObj, extFilters);
+    }
+
+    @Benchmark
+    public String transFilterTrees() throws Throwable {
+        return (String) transFilterTrees.invokeExact(tableObj, rowPermissions);
+    }
+
+    private void resetSqlCache() throws Throwable {
+        if (cold) {
+            sqlCacheCleaner.invokeExact();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.dataease.plugins.datasource.benchmark;
+
+import io.dataease.plugins.common.base.domain.DatasetTableField;
+import io.dataease.plugins.common.base.domain.DatasetTableFieldExample;
+import io.dataease.plugins.common.base.mapper.DatasetTableFieldMapper;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+/**
+ * 内存中的字段 Mapper
+ * 只实现计算字段解析用到的 selectByExample（按 id in 条件返回字段），其余方法抛出异常。
+ */
+public class StubDatasetTableFieldMapper {
+
+    private StubDatasetTableFieldMapper() {
+    }
+
+    public static DatasetTableFieldMapper create(List<DatasetTableField> fields) {
+        Map<String, DatasetTableField> fieldMap = new HashMap<>();
+        for (DatasetTableField field : fields) {
+            fieldMap.put(field.getId(), field);
+        }
+        return (DatasetTableFieldMapper) Proxy.newProxyInstance(DatasetTableFieldMapper.class.getClassLoader(),
+                new Class<?>[]{DatasetTableFieldMapper.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "selectByExample":
+                            return select(fieldMap, (DatasetTableFieldExample) args[0]);
+                        case "toString":
+                            return StubDatasetTableFieldMapper.class.getSimpleName();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static List<DatasetTableField> select(Map<String, DatasetTableField> fieldMap, DatasetTableFieldExample example) {
+        List<DatasetTableField> result = new ArrayList<>();
+        for (DatasetTableFieldExample.Criteria criteria : example.getOredCriteria()) {
+            for (DatasetTableFieldExample.Criterion criterion : criteria.getCriteria()) {
+                if (!(criterion.getValue() instanceof Collection)) {
+                    continue;
+                }
+                for (Object id : (Collection<?>) criterion.getValue()) {
+                    DatasetTableField field = fieldMap.get(String.valueOf(id));
+                    if (field != null) {
+                        result.add(field);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
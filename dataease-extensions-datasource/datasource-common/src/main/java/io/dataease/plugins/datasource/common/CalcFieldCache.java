@@ -0,0 +1,229 @@
+package io.dataease.plugins.datasource.common;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 计算字段缓存
+ * 按字段 id 短时间缓存计算字段表达式中 [id] 引用的字段；
+ * 一次 SQL 构建开始时批量加载用到的字段，不再每个表达式单独查库。
+ * 与原有实现一致，引用的计算字段只替换为其 originName、不展开其表达式，因此只加载表达式直接引用的字段，不递归加载。
+ *
+ * @param <F> 数据集字段类型
+ */
+public class CalcFieldCache<F> {
+
+    private static final Pattern FIELD_ID_PATTERN = Pattern.compile("\\[(.*?)]");
+
+    private static final Pattern LINE_BREAK_PATTERN = Pattern.compile("[\\t\\n\\r]]");
+
+    private static final long TTL_MILLIS = 30000;
+
+    private static final int MAX_SIZE = 5000;
+
+    // 计算字段的 extField 取值
+    private static final int CALC_FIELD = 2;
+
+    private static final Gson GSON = new Gson();
+
+    private final Function<List<String>, List<F>> loader;
+
+    private final Function<F, String> idGetter;
+
+    private final long ttlMillis;
+
+    private final Map<String, CachedField<F>> entries;
+
+    /**
+     * @param loader   按 id 批量查询字段
+     * @param idGetter 字段 id
+     */
+    public CalcFieldCache(Function<List<String>, List<F>> loader, Function<F, String> idGetter) {
+        this(loader, idGetter, TTL_MILLIS, MAX_SIZE);
+    }
+
+    CalcFieldCache(Function<List<String>, List<F>> loader, Function<F, String> idGetter, long ttlMillis, int maxSize) {
+        this.loader = loader;
+        this.idGetter = idGetter;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, CachedField<F>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedField<F>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * 批量加载表达式引用的字段
+     *
+     * @param expressions
+     */
+    public void prefetch(Collection<String> expressions) {
+        Set<String> ids = new HashSet<>();
+        for (String expression : expressions) {
+            ids.addAll(fieldIds(expression));
+        }
+        load(ids);
+    }
+
+    /**
+     * 批量加载请求参数中计算字段引用的字段
+     *
+     * @param inputs 视图字段、数据集字段、过滤条件、行权限等
+     */
+    public void prefetchInputs(Object... inputs) {
+        List<String> expressions = calcExpressions(GSON.toJsonTree(Arrays.asList(inputs)));
+        if (!expressions.isEmpty()) {
+            prefetch(expressions);
+        }
+    }
+
+    /**
+     * SQL 缓存键，计算字段引用的字段按当前定义参与计算，字段修改后不再命中修改前生成的 SQL
+     *
+     * @param definition 引用字段参与计算的内容
+     * @param parts      生成 SQL 的全部输入
+     * @return
+     */
+    public String sqlCacheKey(Function<F, String> definition, Object... parts) {
+        JsonElement inputs = GSON.toJsonTree(Arrays.asList(parts));
+        List<String> calcFields = new ArrayList<>();
+        referencedFields(calcExpressions(inputs)).forEach((id, field) -> calcFields.add(id + ":" + definition.apply(field)));
+        return SqlCache.key(inputs, calcFields);
+    }
+
+    /**
+     * 将表达式中的 [id] 替换为 SQL 字段，与逐个查询时一致，引用的计算字段同样按 columnFormatter 转换，不展开其表达式
+     *
+     * @param expression
+     * @param columnFormatter 字段转换为 SQL 字段的方式
+     * @return
+     */
+    public String resolve(String expression, Function<F, String> columnFormatter) {
+        expression = LINE_BREAK_PATTERN.matcher(expression).replaceAll("");
+        Set<String> ids = fieldIds(expression);
+        if (ids.isEmpty()) {
+            return expression;
+        }
+        Map<String, F> fields = load(ids);
+        for (String id : ids) {
+            F field = fields.get(id);
+            if (field != null) {
+                expression = expression.replace("[" + id + "]", columnFormatter.apply(field));
+            }
+        }
+        return expression;
+    }
+
+    /**
+     * 表达式引用的字段，用于 SQL 缓存键，不存在的 id 不在结果中
+     *
+     * @param expressions
+     * @return 按 id 排序
+     */
+    public SortedMap<String, F> referencedFields(Collection<String> expressions) {
+        Set<String> ids = new HashSet<>();
+        for (String expression : expressions) {
+            ids.addAll(fieldIds(expression));
+        }
+        return new TreeMap<>(load(ids));
+    }
+
+    private Map<String, F> load(Set<String> ids) {
+        Map<String, F> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            for (String id : ids) {
+                CachedField<F> entry = entries.get(id);
+                if (entry != null && now - entry.loadTime < ttlMillis) {
+                    if (entry.field != null) {
+                        result.put(id, entry.field);
+                    }
+                } else {
+                    missing.add(id);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, F> loaded = new HashMap<>();
+            for (F field : loader.apply(missing)) {
+                loaded.put(idGetter.apply(field), field);
+            }
+            synchronized (entries) {
+                // 不存在的 id 同样缓存，避免重复查询
+                for (String id : missing) {
+                    entries.put(id, new CachedField<>(loaded.get(id), now));
+                }
+            }
+            for (String id : missing) {
+                F field = loaded.get(id);
+                if (field != null) {
+                    result.put(id, field);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 序列化后的请求参数中计算字段（extField 为 2）的表达式，按 JSON 结构遍历，行权限条件树等嵌套结构中的字段同样会被找到
+     *
+     * @param inputs
+     * @return
+     */
+    private static List<String> calcExpressions(JsonElement inputs) {
+        List<String> expressions = new ArrayList<>();
+        addCalcExpressions(expressions, inputs);
+        return expressions;
+    }
+
+    private static void addCalcExpressions(List<String> expressions, JsonElement element) {
+        if (element.isJsonArray()) {
+            for (JsonElement item : element.getAsJsonArray()) {
+                addCalcExpressions(expressions, item);
+            }
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            JsonElement extField = object.get("extField");
+            JsonElement originName = object.get("originName");
+            if (extField != null && extField.isJsonPrimitive() && extField.getAsJsonPrimitive().isNumber() && extField.getAsInt() == CALC_FIELD
+                    && originName != null && originName.isJsonPrimitive()) {
+                expressions.add(originName.getAsString());
+            }
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                addCalcExpressions(expressions, entry.getValue());
+            }
+        }
+    }
+
+    private static Set<String> fieldIds(String expression) {
+        Set<String> ids = new LinkedHashSet<>();
+        if (StringUtils.isEmpty(expression)) {
+            return ids;
+        }
+        Matcher matcher = FIELD_ID_PATTERN.matcher(expression);
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+        return ids;
+    }
+
+    private static class CachedField<F> {
+        private final F field;
+        private final long loadTime;
+
+        private CachedField(F field, long loadTime) {
+            this.field = field;
+            this.loadTime = loadTime;
+        }
+    }
+}
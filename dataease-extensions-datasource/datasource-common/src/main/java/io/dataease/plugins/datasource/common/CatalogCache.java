@@ -0,0 +1,171 @@
+package io.dataease.plugins.datasource.common;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.UnaryOperator;
+
+/**
+ * 字段目录缓存
+ * 一次查询读取整个模式下所有表的字段并按数据源缓存，之后各表的字段直接从内存返回；
+ * 数据源配置变化或超过有效期后重新加载，同一数据源同时只加载一次；
+ * 开启后台刷新时，目录过半有效期后先返回旧值并异步重新加载。
+ *
+ * @param <T> 字段类型
+ */
+public class CatalogCache<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatalogCache.class);
+
+    private final long ttlMillis;
+
+    private final long refreshAfterMillis;
+
+    private final UnaryOperator<T> copier;
+
+    private final Map<String, Entry<T>> entries = new ConcurrentHashMap<>();
+
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService refreshExecutor;
+
+    /**
+     * @param ttlMillis
+     * @param copier    复制字段，调用方修改返回的字段不影响缓存
+     */
+    public CatalogCache(long ttlMillis, UnaryOperator<T> copier) {
+        this(ttlMillis, copier, false);
+    }
+
+    /**
+     * @param ttlMillis
+     * @param copier            复制字段，调用方修改返回的字段不影响缓存
+     * @param backgroundRefresh 过半有效期后是否先返回旧值并在后台重新加载
+     */
+    public CatalogCache(long ttlMillis, UnaryOperator<T> copier, boolean backgroundRefresh) {
+        this.ttlMillis = ttlMillis;
+        this.refreshAfterMillis = backgroundRefresh ? ttlMillis / 2 : Long.MAX_VALUE;
+        this.copier = copier;
+        this.refreshExecutor = backgroundRefresh ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalog-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * 读取表字段，目录不存在或已过期时通过 loader 加载整个模式的字段
+     *
+     * @param datasourceId
+     * @param configuration 数据源配置，变化时重新加载
+     * @param table
+     * @param loader        返回表名到字段列表的映射
+     * @return 目录中没有该表时返回 null
+     * @throws Exception
+     */
+    public List<T> get(String datasourceId, String configuration, String table, Callable<Map<String, List<T>>> loader) throws Exception {
+        List<T> fields = entry(datasourceId, configuration, loader).tables.get(table);
+        if (fields == null) {
+            return null;
+        }
+        List<T> result = new LinkedList<>();
+        for (T field : fields) {
+            result.add(copier.apply(field));
+        }
+        return result;
+    }
+
+    /**
+     * 读取目录中的所有表名，顺序与 loader 返回的映射一致
+     *
+     * @param datasourceId
+     * @param configuration 数据源配置，变化时重新加载
+     * @param loader        返回表名到字段列表的映射
+     * @return
+     * @throws Exception
+     */
+    public List<String> getTableNames(String datasourceId, String configuration, Callable<Map<String, List<T>>> loader) throws Exception {
+        return new ArrayList<>(entry(datasourceId, configuration, loader).tables.keySet());
+    }
+
+    /**
+     * 数据源编辑或校验时清除缓存
+     *
+     * @param datasourceId
+     */
+    public void invalidate(String datasourceId) {
+        entries.remove(StringUtils.defaultString(datasourceId));
+    }
+
+    public void shutdown() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+        entries.clear();
+    }
+
+    private Entry<T> entry(String datasourceId, String configuration, Callable<Map<String, List<T>>> loader) throws Exception {
+        String key = StringUtils.defaultString(datasourceId);
+        String config = StringUtils.defaultString(configuration);
+        Entry<T> entry = entries.get(key);
+        if (!isValid(entry, config)) {
+            synchronized (lock(key)) {
+                entry = entries.get(key);
+                if (!isValid(entry, config)) {
+                    entry = new Entry<>(config, loader.call(), System.currentTimeMillis());
+                    entries.put(key, entry);
+                }
+            }
+        } else if (System.currentTimeMillis() - entry.loadTime >= refreshAfterMillis) {
+            scheduleRefresh(key, config, loader);
+        }
+        return entry;
+    }
+
+    private void scheduleRefresh(String key, String configuration, Callable<Map<String, List<T>>> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    synchronized (lock(key)) {
+                        entries.put(key, new Entry<>(configuration, loader.call(), System.currentTimeMillis()));
+                    }
+                } catch (Exception e) {
+                    // 刷新失败时保留旧值，过期后由查询线程重新加载
+                    LOGGER.warn("Failed to refresh catalog of datasource " + key + ": " + e.getMessage(), e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    private Object lock(String key) {
+        return locks.computeIfAbsent(key, k -> new Object());
+    }
+
+    private boolean isValid(Entry<T> entry, String configuration) {
+        return entry != null && entry.configuration.equals(configuration) && System.currentTimeMillis() - entry.loadTime < ttlMillis;
+    }
+
+    private static class Entry<T> {
+        private final String configuration;
+        private final Map<String, List<T>> tables;
+        private final long loadTime;
+
+        private Entry(String configuration, Map<String, List<T>> tables, long loadTime) {
+            this.configuration = configuration;
+            this.tables = tables;
+            this.loadTime = loadTime;
+        }
+    }
+}
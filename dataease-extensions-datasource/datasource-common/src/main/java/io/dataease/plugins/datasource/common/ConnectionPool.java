@@ -0,0 +1,231 @@
+package io.dataease.plugins.datasource.common;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据源连接池
+ * 按数据源维护 Druid 连接池，驱动实例与类加载器来自 getConnection 中解析的自定义驱动；
+ * 数据源配置或驱动变化时关闭旧连接池并重建。
+ * 新建数据源校验连接时还没有 id，此时按配置的摘要区分，长时间未使用的这类连接池会被关闭。
+ */
+public class ConnectionPool {
+
+    private static final int DEFAULT_MIN_IDLE = 2;
+
+    private static final int DEFAULT_MAX_ACTIVE = 20;
+
+    private static final long MAX_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final long EVICTION_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final long MIN_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final long MAX_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    // 没有 id 的连接池超过该时长未使用时关闭
+    private static final long UNSAVED_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final String CONFIG_KEY_PREFIX = "config-";
+
+    private final String name;
+
+    private final String validationQuery;
+
+    private final Map<String, PoolHolder> pools = new ConcurrentHashMap<>();
+
+    /**
+     * @param name            连接池名称前缀，一般为数据源类型
+     * @param validationQuery 空闲检测语句，为空时不做检测
+     */
+    public ConnectionPool(String name, String validationQuery) {
+        this.name = name;
+        this.validationQuery = validationQuery;
+    }
+
+    /**
+     * 从数据源对应的连接池获取连接
+     *
+     * @param datasourceId
+     * @param configuration          数据源配置，变化时重建连接池
+     * @param classLoader            驱动类加载器，连接池线程以此作为上下文类加载器
+     * @param driver
+     * @param url
+     * @param props
+     * @param minIdle                最小空闲连接数，为空时取 DEFAULT_MIN_IDLE
+     * @param maxActive              最大连接数，为空时取 DEFAULT_MAX_ACTIVE
+     * @param removeAbandonedMinutes 借出超过该时长未归还的连接强制回收并打印借出位置，为空或不大于 0 时不回收
+     * @return
+     * @throws SQLException
+     */
+    public Connection getConnection(String datasourceId, String configuration, ClassLoader classLoader, Driver driver,
+                                    String url, Properties props, Integer minIdle, Integer maxActive,
+                                    Integer removeAbandonedMinutes) throws SQLException {
+        closeIdleUnsaved();
+        PoolHolder holder = pools.compute(poolKey(datasourceId, configuration), (key, current) -> {
+            if (current != null && current.matches(configuration, driver)) {
+                return current;
+            }
+            if (current != null) {
+                current.dataSource.close();
+            }
+            return new PoolHolder(configuration, driver, classLoader,
+                    createDataSource(key, driver, classLoader, url, props,
+                            minIdle != null ? minIdle : DEFAULT_MIN_IDLE, maxActive != null ? maxActive : DEFAULT_MAX_ACTIVE,
+                            removeAbandonedMinutes));
+        });
+        holder.lastAccess = System.currentTimeMillis();
+        holder.init();
+        return holder.dataSource.getConnection();
+    }
+
+    /**
+     * 数据源编辑或删除时关闭对应的连接池
+     *
+     * @param datasourceId
+     */
+    public void invalidate(String datasourceId) {
+        close(StringUtils.defaultString(datasourceId));
+    }
+
+    public void closeAll() {
+        for (String key : pools.keySet()) {
+            close(key);
+        }
+    }
+
+    int size() {
+        return pools.size();
+    }
+
+    /**
+     * 连接池的键：有 id 时为数据源 id，否则按配置的摘要区分
+     *
+     * @param datasourceId
+     * @param configuration
+     * @return
+     */
+    static String poolKey(String datasourceId, String configuration) {
+        if (StringUtils.isNotEmpty(datasourceId)) {
+            return datasourceId;
+        }
+        return CONFIG_KEY_PREFIX + sha256(StringUtils.defaultString(configuration));
+    }
+
+    private void close(String key) {
+        PoolHolder holder = pools.remove(key);
+        if (holder != null) {
+            holder.dataSource.close();
+        }
+    }
+
+    private void closeIdleUnsaved() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, PoolHolder> entry : pools.entrySet()) {
+            if (entry.getKey().startsWith(CONFIG_KEY_PREFIX) && now - entry.getValue().lastAccess > UNSAVED_IDLE_MILLIS
+                    && pools.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().dataSource.close();
+            }
+        }
+    }
+
+    private DruidDataSource createDataSource(String key, Driver driver, ClassLoader classLoader, String url, Properties props,
+                                             int minIdle, int maxActive, Integer removeAbandonedMinutes) {
+        DruidDataSource dataSource = new DruidDataSource();
+        dataSource.setName(name + "-" + key);
+        dataSource.setUrl(url);
+        dataSource.setDriver(driver);
+        dataSource.setDriverClassLoader(classLoader);
+        dataSource.setConnectProperties(props);
+        // 启动时预先建立 minIdle 个连接
+        dataSource.setInitialSize(minIdle);
+        dataSource.setMinIdle(minIdle);
+        dataSource.setMaxActive(Math.max(maxActive, 1));
+        dataSource.setMaxWait(MAX_WAIT_MILLIS);
+        dataSource.setKeepAlive(minIdle > 0);
+        dataSource.setTimeBetweenEvictionRunsMillis(EVICTION_INTERVAL_MILLIS);
+        dataSource.setMinEvictableIdleTimeMillis(MIN_IDLE_MILLIS);
+        dataSource.setPhyTimeoutMillis(MAX_LIFETIME_MILLIS);
+        if (StringUtils.isNotEmpty(validationQuery)) {
+            dataSource.setValidationQuery(validationQuery);
+            dataSource.setTestWhileIdle(true);
+        } else {
+            dataSource.setTestWhileIdle(false);
+        }
+        dataSource.setTestOnBorrow(false);
+        dataSource.setTestOnReturn(false);
+        // 长时间的导出或抽取同样会长时间占用连接，默认不强制回收
+        if (removeAbandonedMinutes != null && removeAbandonedMinutes > 0) {
+            dataSource.setRemoveAbandoned(true);
+            dataSource.setRemoveAbandonedTimeoutMillis(TimeUnit.MINUTES.toMillis(removeAbandonedMinutes));
+            dataSource.setLogAbandoned(true);
+        } else {
+            dataSource.setRemoveAbandoned(false);
+        }
+        return dataSource;
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (Exception e) {
+            return text;
+        }
+    }
+
+    private static class PoolHolder {
+        private final String configuration;
+        private final Driver driver;
+        private final ClassLoader classLoader;
+        private final DruidDataSource dataSource;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private volatile boolean inited;
+
+        private PoolHolder(String configuration, Driver driver, ClassLoader classLoader, DruidDataSource dataSource) {
+            this.configuration = configuration;
+            this.driver = driver;
+            this.classLoader = classLoader;
+            this.dataSource = dataSource;
+        }
+
+        private boolean matches(String configuration, Driver driver) {
+            return StringUtils.equals(this.configuration, configuration) && Objects.equals(this.driver.getClass(), driver.getClass());
+        }
+
+        private void init() throws SQLException {
+            if (inited) {
+                return;
+            }
+            synchronized (this) {
+                if (inited) {
+                    return;
+                }
+                // 连接池的创建、回收线程在 init 中启动，会继承当前的上下文类加载器
+                ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+                try {
+                    Thread.currentThread().setContextClassLoader(classLoader);
+                    dataSource.init();
+                } finally {
+                    Thread.currentThread().setContextClassLoader(contextClassLoader);
+                }
+                inited = true;
+            }
+        }
+    }
+}
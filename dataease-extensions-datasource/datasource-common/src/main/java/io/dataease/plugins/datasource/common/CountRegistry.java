@@ -0,0 +1,31 @@
+package io.dataease.plugins.datasource.common;
+
+import java.util.*;
+
+/**
+ * 总行数查询登记
+ * 记录按计数策略生成的总行数查询，取数时这些查询按计数缓存有效期缓存结果，
+ * 过滤条件不变时翻页不再重复计数；按 LRU 淘汰。
+ */
+public class CountRegistry {
+
+    private final Map<String, Boolean> queries;
+
+    public CountRegistry(int maxEntries) {
+        this.queries = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    public void register(String sql) {
+        queries.put(sql, Boolean.TRUE);
+    }
+
+    public boolean contains(String sql) {
+        // containsKey 不更新访问顺序，用 get 使常用的计数查询不被淘汰
+        return sql != null && queries.get(sql) != null;
+    }
+}
@@ -0,0 +1,173 @@
+package io.dataease.plugins.datasource.common;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.sql.Driver;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 驱动注册表
+ * 缓存已实例化的 Driver 及其类加载器，自定义驱动按（驱动 id、驱动类、类加载器、驱动 jar）区分；
+ * 每隔一段时间重新读取驱动信息与类加载器，并按文件名、大小与修改时间检查驱动目录下的 jar，
+ * 任一变化时重新实例化。
+ *
+ * @param <D> 驱动信息类型
+ * @param <L> 驱动类加载器类型
+ */
+public class DriverRegistry<D, L extends ClassLoader> {
+
+    private static final String CUSTOM_DRIVER_PATH = "/opt/dataease/drivers/custom/";
+
+    private static final long CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final String customDriverPath;
+
+    private final long checkIntervalMillis;
+
+    private final DriverLoader<D> driverLoader;
+
+    private final Function<D, String> driverClassGetter;
+
+    private final ClassLoaderLoader<D, L> classLoaderLoader;
+
+    private final Map<String, ResolvedDriver<L>> drivers = new ConcurrentHashMap<>();
+
+    /**
+     * @param driverLoader      按 id 读取自定义驱动
+     * @param driverClassGetter 自定义驱动的驱动类
+     * @param classLoaderLoader 自定义驱动的类加载器
+     */
+    public DriverRegistry(DriverLoader<D> driverLoader, Function<D, String> driverClassGetter, ClassLoaderLoader<D, L> classLoaderLoader) {
+        this(driverLoader, driverClassGetter, classLoaderLoader, CUSTOM_DRIVER_PATH, CHECK_INTERVAL_MILLIS);
+    }
+
+    DriverRegistry(DriverLoader<D> driverLoader, Function<D, String> driverClassGetter, ClassLoaderLoader<D, L> classLoaderLoader,
+                   String customDriverPath, long checkIntervalMillis) {
+        this.customDriverPath = customDriverPath;
+        this.checkIntervalMillis = checkIntervalMillis;
+        this.driverLoader = driverLoader;
+        this.driverClassGetter = driverClassGetter;
+        this.classLoaderLoader = classLoaderLoader;
+    }
+
+    /**
+     * 获取驱动，customDriver 为默认驱动时使用 defaultDriverClass 与插件自带的类加载器
+     *
+     * @param customDriver
+     * @param defaultDriverClass
+     * @param defaultClassLoader
+     * @param isDefault          customDriver 是否为默认驱动
+     * @return
+     * @throws Exception
+     */
+    public ResolvedDriver<L> getDriver(String customDriver, String defaultDriverClass, L defaultClassLoader,
+                                       boolean isDefault) throws Exception {
+        if (isDefault) {
+            String key = "default:" + defaultDriverClass;
+            ResolvedDriver<L> resolved = drivers.get(key);
+            if (resolved == null || resolved.classLoader != defaultClassLoader) {
+                resolved = new ResolvedDriver<>(defaultClassLoader, defaultDriverClass, null, newDriver(defaultClassLoader, defaultDriverClass));
+                drivers.put(key, resolved);
+            }
+            return resolved;
+        }
+
+        long now = System.currentTimeMillis();
+        ResolvedDriver<L> resolved = drivers.get(customDriver);
+        if (resolved != null && now - resolved.checkTime < checkIntervalMillis) {
+            return resolved;
+        }
+        synchronized (this) {
+            resolved = drivers.get(customDriver);
+            if (resolved != null && now - resolved.checkTime < checkIntervalMillis) {
+                return resolved;
+            }
+            D deDriver = driverLoader.load(customDriver);
+            if (deDriver == null) {
+                drivers.remove(customDriver);
+                throw new Exception("Can not found custom driver: " + customDriver);
+            }
+            String driverClass = driverClassGetter.apply(deDriver);
+            String jarFingerprint = jarFingerprint(customDriver);
+            L classLoader = classLoaderLoader.load(deDriver);
+            if (resolved != null && resolved.classLoader == classLoader && StringUtils.equals(resolved.driverClass, driverClass)
+                    && StringUtils.equals(resolved.jarFingerprint, jarFingerprint)) {
+                resolved.checkTime = now;
+                return resolved;
+            }
+            resolved = new ResolvedDriver<>(classLoader, driverClass, jarFingerprint, newDriver(classLoader, driverClass));
+            resolved.checkTime = now;
+            drivers.put(customDriver, resolved);
+            return resolved;
+        }
+    }
+
+    /**
+     * 驱动修改或删除后清除缓存
+     *
+     * @param customDriver
+     */
+    public void invalidate(String customDriver) {
+        drivers.remove(customDriver);
+    }
+
+    /**
+     * 驱动目录下各文件的文件名、大小与修改时间
+     *
+     * @param customDriver
+     * @return
+     */
+    private String jarFingerprint(String customDriver) {
+        File[] files = new File(customDriverPath, customDriver).listFiles();
+        if (files == null) {
+            return "";
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        StringBuilder fingerprint = new StringBuilder();
+        for (File file : files) {
+            fingerprint.append(file.getName()).append(':').append(file.length()).append(':').append(file.lastModified()).append(';');
+        }
+        return fingerprint.toString();
+    }
+
+    private static Driver newDriver(ClassLoader classLoader, String driverClassName) throws Exception {
+        return (Driver) classLoader.loadClass(driverClassName).newInstance();
+    }
+
+    public interface DriverLoader<D> {
+        D load(String id) throws Exception;
+    }
+
+    public interface ClassLoaderLoader<D, L extends ClassLoader> {
+        L load(D deDriver) throws Exception;
+    }
+
+    public static class ResolvedDriver<L extends ClassLoader> {
+        private final L classLoader;
+        private final String driverClass;
+        private final String jarFingerprint;
+        private final Driver driver;
+        private volatile long checkTime;
+
+        private ResolvedDriver(L classLoader, String driverClass, String jarFingerprint, Driver driver) {
+            this.classLoader = classLoader;
+            this.driverClass = driverClass;
+            this.jarFingerprint = jarFingerprint;
+            this.driver = driver;
+        }
+
+        public L getClassLoader() {
+            return classLoader;
+        }
+
+        public Driver getDriver() {
+            return driver;
+        }
+    }
+}
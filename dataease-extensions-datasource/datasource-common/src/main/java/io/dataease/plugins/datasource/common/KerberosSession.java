@@ -0,0 +1,179 @@
+package io.dataease.plugins.datasource.common;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kerberos 登录会话
+ * 每个驱动类加载器中的 UserGroupInformation 只在首次使用、凭据变化或 keytab 文件被替换时通过 keytab 登录，
+ * 之后连接复用已有的登录；后台定时检查票据，临近过期时从 keytab 重新登录。
+ * 后台重新登录失败时丢弃会话并记录失败，下次获取连接时重新登录，仍然失败则连同后台的失败一起抛出。
+ */
+public class KerberosSession {
+
+    private static final String KRB5_CONF_PROPERTY = "java.security.krb5.conf";
+
+    private static final String KRB5_CONF = "/opt/dataease/conf/krb5.conf";
+
+    private static final String KEYTAB_PATH = "/opt/dataease/conf/";
+
+    private static final long RENEW_CHECK_INTERVAL_SECONDS = 60;
+
+    private final String name;
+
+    private final String keytabPath;
+
+    private final Map<ClassLoader, Session> sessions = new WeakHashMap<>();
+
+    private final Map<ClassLoader, Exception> renewFailures = new WeakHashMap<>();
+
+    private ScheduledExecutorService renewExecutor;
+
+    /**
+     * @param name 续期线程名称前缀，一般为数据源类型
+     */
+    public KerberosSession(String name) {
+        this(name, KEYTAB_PATH);
+    }
+
+    KerberosSession(String name, String keytabPath) {
+        this.name = name;
+        this.keytabPath = keytabPath;
+    }
+
+    /**
+     * 确保驱动类加载器中已用指定凭据登录
+     *
+     * @param classLoader 驱动类加载器
+     * @param principal
+     * @param keytab      keytab 文件名，位于 /opt/dataease/conf/ 下
+     * @throws Exception
+     */
+    public synchronized void login(ClassLoader classLoader, String principal, String keytab) throws Exception {
+        String keytabVersion = keytabVersion(keytab);
+        Session session = sessions.get(classLoader);
+        if (session != null && session.matches(principal, keytab, keytabVersion)) {
+            return;
+        }
+        try {
+            doLogin(classLoader, principal, keytab, session == null);
+        } catch (Exception e) {
+            Exception renewFailure = renewFailures.remove(classLoader);
+            if (renewFailure != null) {
+                e.addSuppressed(renewFailure);
+            }
+            throw e;
+        }
+        renewFailures.remove(classLoader);
+        sessions.put(classLoader, new Session(principal, keytab, keytabVersion));
+        startRenewal();
+    }
+
+    public synchronized void shutdown() {
+        if (renewExecutor != null) {
+            renewExecutor.shutdownNow();
+            renewExecutor = null;
+        }
+        sessions.clear();
+        renewFailures.clear();
+    }
+
+    private void doLogin(ClassLoader classLoader, String principal, String keytab, boolean configure) throws Exception {
+        if (!KRB5_CONF.equals(System.getProperty(KRB5_CONF_PROPERTY))) {
+            System.setProperty(KRB5_CONF_PROPERTY, KRB5_CONF);
+        }
+        try {
+            Class<?> ugiClass = classLoader.loadClass("org.apache.hadoop.security.UserGroupInformation");
+            if (configure) {
+                Class<?> configurationClass = classLoader.loadClass("org.apache.hadoop.conf.Configuration");
+                Method set = configurationClass.getMethod("set", String.class, String.class);
+                Object configuration = configurationClass.newInstance();
+                set.invoke(configuration, "hadoop.security.authentication", "Kerberos");
+                ugiClass.getMethod("setConfiguration", configurationClass).invoke(null, configuration);
+            }
+            ugiClass.getMethod("loginUserFromKeytab", String.class, String.class).invoke(null, principal, keytabPath + keytab);
+        } catch (InvocationTargetException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * keytab 文件的修改时间与大小，文件被替换后重新登录
+     *
+     * @param keytab
+     * @return
+     */
+    private String keytabVersion(String keytab) {
+        File file = new File(keytabPath + StringUtils.defaultString(keytab));
+        return file.lastModified() + ":" + file.length();
+    }
+
+    private void startRenewal() {
+        if (renewExecutor != null) {
+            return;
+        }
+        renewExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-kerberos-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        renewExecutor.scheduleWithFixedDelay(this::renew, RENEW_CHECK_INTERVAL_SECONDS, RENEW_CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    void renew() {
+        List<ClassLoader> current;
+        synchronized (this) {
+            current = new ArrayList<>(sessions.keySet());
+        }
+        for (ClassLoader classLoader : current) {
+            ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+            try {
+                Thread.currentThread().setContextClassLoader(classLoader);
+                Class<?> ugiClass = classLoader.loadClass("org.apache.hadoop.security.UserGroupInformation");
+                Object loginUser = ugiClass.getMethod("getLoginUser").invoke(null);
+                // 票据未到刷新时间时 checkTGTAndReloginFromKeytab 不会访问 KDC
+                loginUser.getClass().getMethod("checkTGTAndReloginFromKeytab").invoke(loginUser);
+            } catch (Exception e) {
+                // 重新登录失败时丢弃会话，下次获取连接时重新登录
+                synchronized (this) {
+                    sessions.remove(classLoader);
+                    renewFailures.put(classLoader, e instanceof InvocationTargetException ? unwrap((InvocationTargetException) e) : e);
+                }
+            } finally {
+                Thread.currentThread().setContextClassLoader(contextClassLoader);
+            }
+        }
+    }
+
+    private static Exception unwrap(InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof Exception ? (Exception) cause : e;
+    }
+
+    private static class Session {
+        private final String principal;
+        private final String keytab;
+        private final String keytabVersion;
+
+        private Session(String principal, String keytab, String keytabVersion) {
+            this.principal = principal;
+            this.keytab = keytab;
+            this.keytabVersion = keytabVersion;
+        }
+
+        private boolean matches(String principal, String keytab, String keytabVersion) {
+            return StringUtils.equals(this.principal, principal) && StringUtils.equals(this.keytab, keytab)
+                    && StringUtils.equals(this.keytabVersion, keytabVersion);
+        }
+    }
+}
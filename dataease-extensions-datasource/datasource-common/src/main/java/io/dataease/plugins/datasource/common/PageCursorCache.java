@@ -0,0 +1,215 @@
+package io.dataease.plugins.datasource.common;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+
+/**
+ * 分页游标缓存
+ * 键集分页按（排序字段，行标识）排序，行标识为每行唯一的 ROWID 等伪列，作为结果的最后一列返回；
+ * 每页取数后记录最后一行的排序值与行标识，下一页从该位置之后继续读取，记录时去掉行标识列。
+ * 游标按范围（数据源与视图）、分页前的基础查询、排序字段与每页行数区分，按 LRU 淘汰，找不到时退回 OFFSET 分页。
+ * "下一页"模式下每页多取一行，记录时去掉多出的行，并记录已读到的最远行数作为总行数的下界。
+ */
+public class PageCursorCache {
+
+    private final Map<String, Page> pages;
+
+    private final Map<String, Cursor> cursors;
+
+    private final Map<String, Long> reached;
+
+    public PageCursorCache(int maxEntries) {
+        this.pages = lruMap(maxEntries);
+        this.cursors = lruMap(maxEntries);
+        this.reached = lruMap(maxEntries);
+    }
+
+    /**
+     * 登记分页 SQL，取数后由 record 记录该页的游标
+     *
+     * @param datasourceId
+     * @param viewId
+     * @param pageSql
+     * @param sql        分页前的基础查询
+     * @param page
+     * @param pageSize
+     * @param keyIndex   排序字段在结果中的列序号，不使用键集分页时为 -1
+     * @param rowIdIndex 行标识在结果中的列序号，不使用键集分页时为 -1
+     * @param hasNext    是否多取一行用于判断有无下一页
+     */
+    public void register(String datasourceId, String viewId, String pageSql, String sql, int page, int pageSize, int keyIndex,
+                         int rowIdIndex, boolean hasNext) {
+        pages.put(pageKey(datasourceId, pageSql), new Page(scope(datasourceId, viewId), sql, page, pageSize, keyIndex, rowIdIndex, hasNext));
+    }
+
+    /**
+     * 读取某一页结束位置的游标
+     *
+     * @param datasourceId
+     * @param viewId
+     * @param sql
+     * @param keyIndex
+     * @param pageSize
+     * @param page
+     * @return 没有该页游标时返回 null
+     */
+    public Cursor getCursor(String datasourceId, String viewId, String sql, int keyIndex, int pageSize, int page) {
+        return cursors.get(cursorKey(scope(datasourceId, viewId), sql, keyIndex, pageSize, page));
+    }
+
+    /**
+     * 读取"下一页"模式下已读到的最远行数
+     *
+     * @param datasourceId
+     * @param viewId
+     * @param sql          分页前的基础查询
+     * @return 没有记录时返回 0
+     */
+    public long getReached(String datasourceId, String viewId, String sql) {
+        Long value = reached.get(scope(datasourceId, viewId) + "|" + sql);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * 记录分页查询结果的游标，不是已登记的分页 SQL 时忽略
+     *
+     * @param datasourceId
+     * @param pageSql
+     * @param rows
+     * @return 去掉行标识列与"下一页"模式多取的一行后的结果
+     */
+    public List<String[]> record(String datasourceId, String pageSql, List<String[]> rows) {
+        Page page = pages.get(pageKey(datasourceId, pageSql));
+        if (page == null || rows == null) {
+            return rows;
+        }
+        if (page.hasNext) {
+            reached.merge(page.scope + "|" + page.sql, (long) (page.page - 1) * page.pageSize + rows.size(), Math::max);
+            if (rows.size() > page.pageSize) {
+                rows = new ArrayList<>(rows.subList(0, page.pageSize));
+            }
+        }
+        if (page.rowIdIndex < 0) {
+            return rows;
+        }
+        List<String[]> result = new ArrayList<>(rows.size());
+        for (String[] row : rows) {
+            result.add(Arrays.copyOf(row, page.rowIdIndex));
+        }
+        if (!rows.isEmpty()) {
+            String[] last = rows.get(rows.size() - 1);
+            cursors.put(cursorKey(page.scope, page.sql, page.keyIndex, page.pageSize, page.page),
+                    new Cursor(last[page.keyIndex], last[page.rowIdIndex]));
+        }
+        return result;
+    }
+
+    /**
+     * 键集分页的过滤条件：排在游标之后的行，排序字段相同时按行标识升序
+     *
+     * @param keyField
+     * @param rowIdField
+     * @param desc
+     * @param nullsLow   空值是否视为最小值，与数据库默认的空值排序一致
+     * @param cursor
+     * @param keyValue   游标排序值的 SQL 字面量，排序值为空时不使用
+     * @param rowIdValue 游标行标识的 SQL 字面量
+     * @return
+     */
+    public static String seekCondition(String keyField, String rowIdField, boolean desc, boolean nullsLow, Cursor cursor,
+                                       String keyValue, String rowIdValue) {
+        String afterRow = rowIdField + " > " + rowIdValue;
+        if (cursor.getValue() == null) {
+            if (nullsAfter(desc, nullsLow)) {
+                return "(" + keyField + " IS NULL AND " + afterRow + ")";
+            }
+            return "((" + keyField + " IS NULL AND " + afterRow + ") OR " + keyField + " IS NOT NULL)";
+        }
+        String condition = keyField + (desc ? " < " : " > ") + keyValue + " OR (" + keyField + " = " + keyValue + " AND " + afterRow + ")";
+        if (nullsAfter(desc, nullsLow)) {
+            condition += " OR " + keyField + " IS NULL";
+        }
+        return "(" + condition + ")";
+    }
+
+    /**
+     * 键集分页的排序，空值位置与数据库默认一致，排序字段相同时按行标识升序
+     *
+     * @param keyField
+     * @param rowIdField
+     * @param desc
+     * @param nullsLow
+     * @return
+     */
+    public static String seekOrder(String keyField, String rowIdField, boolean desc, boolean nullsLow) {
+        return keyField + (desc ? " DESC" : " ASC") + (nullsAfter(desc, nullsLow) ? " NULLS LAST" : " NULLS FIRST")
+                + ", " + rowIdField + " ASC";
+    }
+
+    private static boolean nullsAfter(boolean desc, boolean nullsLow) {
+        return desc == nullsLow;
+    }
+
+    /**
+     * 游标范围：同一数据源的同一视图，不同数据源上相同的 SQL 不共享游标
+     */
+    private static String scope(String datasourceId, String viewId) {
+        return StringUtils.defaultString(datasourceId) + ":" + StringUtils.defaultString(viewId);
+    }
+
+    private static String pageKey(String datasourceId, String pageSql) {
+        return StringUtils.defaultString(datasourceId) + "|" + pageSql;
+    }
+
+    private static String cursorKey(String scope, String sql, int keyIndex, int pageSize, int page) {
+        return scope + "|" + sql + "|" + keyIndex + "|" + pageSize + "#" + page;
+    }
+
+    private static <V> Map<String, V> lruMap(int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    private static class Page {
+        private final String scope;
+        private final String sql;
+        private final int page;
+        private final int pageSize;
+        private final int keyIndex;
+        private final int rowIdIndex;
+        private final boolean hasNext;
+
+        private Page(String scope, String sql, int page, int pageSize, int keyIndex, int rowIdIndex, boolean hasNext) {
+            this.scope = scope;
+            this.sql = sql;
+            this.page = page;
+            this.pageSize = pageSize;
+            this.keyIndex = keyIndex;
+            this.rowIdIndex = rowIdIndex;
+            this.hasNext = hasNext;
+        }
+    }
+
+    public static class Cursor {
+        private final String value;
+        private final String rowId;
+
+        Cursor(String value, String rowId) {
+            this.value = value;
+            this.rowId = rowId;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public String getRowId() {
+            return rowId;
+        }
+    }
+}
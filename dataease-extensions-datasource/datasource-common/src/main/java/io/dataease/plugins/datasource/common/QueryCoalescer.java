@@ -0,0 +1,169 @@
+package io.dataease.plugins.datasource.common;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * 相同查询合并
+ * 同一数据源、同一 SQL 的查询正在执行时，后续调用不再访问数据库，而是等待并共享该查询的结果；
+ * 等待方各自有超时时间，线程被中断时直接放弃等待，不影响正在执行的查询。
+ * 共享的结果只读，每个调用方取得 copier 生成的副本；合并次数等统计信息定时输出到日志。
+ *
+ * @param <T> 查询结果类型
+ */
+public class QueryCoalescer<T> {
+
+    private final long waitTimeoutMillis;
+
+    private final UnaryOperator<T> copier;
+
+    private final Map<String, InFlight<T>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong executedCount = new AtomicLong();
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private final StatsLogger statsLogger = new StatsLogger("Query coalescer", this::getStats);
+
+    /**
+     * @param waitTimeoutMillis 等待相同查询的超时时间
+     * @param copier            结果副本，见 copyRows 与 copyResultAndField
+     */
+    public QueryCoalescer(long waitTimeoutMillis, UnaryOperator<T> copier) {
+        this.waitTimeoutMillis = waitTimeoutMillis;
+        this.copier = copier;
+    }
+
+    /**
+     * 执行查询，已有相同的查询在执行时等待其结果
+     *
+     * @param key
+     * @param loader
+     * @return
+     * @throws Exception
+     */
+    public T execute(String key, Callable<T> loader) throws Exception {
+        statsLogger.log();
+        while (true) {
+            InFlight<T> created = new InFlight<>();
+            InFlight<T> flight = inFlight.putIfAbsent(key, created);
+            if (flight == null) {
+                return lead(key, created, loader);
+            }
+            synchronized (flight) {
+                // 查询刚结束还未移除，重新发起
+                if (flight.done) {
+                    continue;
+                }
+                flight.waiters++;
+            }
+            return follow(flight);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long executed = executedCount.get();
+        long coalesced = coalescedCount.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("executedCount", executed);
+        stats.put("coalescedCount", coalesced);
+        stats.put("timeoutCount", timeoutCount.get());
+        stats.put("inFlight", inFlight.size());
+        stats.put("coalescingRatio", executed + coalesced == 0 ? 0D : (double) coalesced / (executed + coalesced));
+        return stats;
+    }
+
+    private T lead(String key, InFlight<T> flight, Callable<T> loader) throws Exception {
+        executedCount.incrementAndGet();
+        T result;
+        try {
+            result = loader.call();
+        } catch (Throwable e) {
+            finish(key, flight);
+            flight.future.completeExceptionally(e);
+            throw e;
+        }
+        boolean shared = finish(key, flight);
+        flight.future.complete(result);
+        // 有等待方时原结果只读共享，发起方返回副本
+        return shared ? copyOf(result) : result;
+    }
+
+    private T follow(InFlight<T> flight) throws Exception {
+        coalescedCount.incrementAndGet();
+        try {
+            return copyOf(flight.future.get(waitTimeoutMillis, TimeUnit.MILLISECONDS));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } catch (TimeoutException e) {
+            timeoutCount.incrementAndGet();
+            throw new TimeoutException("Timed out after " + waitTimeoutMillis + " ms waiting for an identical running query");
+        }
+    }
+
+    private boolean finish(String key, InFlight<T> flight) {
+        boolean shared;
+        synchronized (flight) {
+            flight.done = true;
+            shared = flight.waiters > 0;
+        }
+        inFlight.remove(key, flight);
+        return shared;
+    }
+
+    private T copyOf(T result) {
+        return result == null ? null : copier.apply(result);
+    }
+
+    /**
+     * getData 结果的副本，逐行复制
+     *
+     * @param rows
+     * @return
+     */
+    public static List<String[]> copyRows(List<String[]> rows) {
+        List<String[]> copy = new ArrayList<>(rows.size());
+        for (String[] row : rows) {
+            copy.add(row == null ? null : row.clone());
+        }
+        return copy;
+    }
+
+    /**
+     * fetchResultAndField 结果的副本，数据行逐行复制，字段列表只复制列表
+     *
+     * @param result
+     * @return
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public static Map<String, List> copyResultAndField(Map<String, List> result) {
+        Map<String, List> copy = new HashMap<>();
+        for (Map.Entry<String, List> entry : result.entrySet()) {
+            List list = entry.getValue();
+            if (list == null) {
+                copy.put(entry.getKey(), null);
+                continue;
+            }
+            List listCopy = new ArrayList(list.size());
+            for (Object item : list) {
+                listCopy.add(item instanceof String[] ? ((String[]) item).clone() : item);
+            }
+            copy.put(entry.getKey(), listCopy);
+        }
+        return copy;
+    }
+
+    private static class InFlight<T> {
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private int waiters;
+        private boolean done;
+    }
+}
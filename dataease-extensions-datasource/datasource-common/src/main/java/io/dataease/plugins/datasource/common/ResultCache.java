@@ -0,0 +1,362 @@
+package io.dataease.plugins.datasource.common;
+
+import com.google.gson.Gson;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 查询结果缓存
+ * 按（数据源、最终 SQL、权限字段指纹）缓存 getData 的结果，有效期由数据源配置决定；
+ * 结果默认按列存储，每列只保存一份去重后的取值和取值下标，也可由数据源提供自己的存储格式（Codec）；
+ * 总占用超过预算后淘汰最久未使用的结果，命中与淘汰等统计信息定时输出到日志。
+ */
+public class ResultCache {
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * 默认存储格式：按列字典编码
+     */
+    private static final Codec<ColumnarResult> COLUMNAR = new Codec<ColumnarResult>() {
+        @Override
+        public ColumnarResult encode(List<String[]> rows) {
+            return ColumnarResult.encode(rows);
+        }
+
+        @Override
+        public long bytes(ColumnarResult encoded) {
+            return encoded.bytes;
+        }
+
+        @Override
+        public List<String[]> decode(ColumnarResult encoded) {
+            return encoded.decode();
+        }
+    };
+
+    private final long maxBytes;
+
+    private final Codec<?> codec;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private final StatsLogger statsLogger = new StatsLogger("Result cache", this::getStats);
+
+    public ResultCache(long maxBytes) {
+        this(maxBytes, COLUMNAR);
+    }
+
+    /**
+     * @param maxBytes
+     * @param codec    缓存结果的存储格式
+     */
+    public ResultCache(long maxBytes, Codec<?> codec) {
+        this.maxBytes = maxBytes;
+        this.codec = codec;
+    }
+
+    /**
+     * 计算缓存键：数据源 id、配置、规范化后的 SQL 以及其他影响结果的输入，如权限字段与视图字段
+     *
+     * @param datasourceId
+     * @param configuration
+     * @param query
+     * @param parts
+     * @return 以 "数据源 id:" 开头，invalidate 按此前缀清除
+     */
+    public static String key(String datasourceId, String configuration, String query, Object... parts) {
+        List<Object> canonical = new ArrayList<>(parts.length + 3);
+        canonical.add(datasourceId);
+        canonical.add(configuration);
+        canonical.add(normalizeSql(query));
+        canonical.addAll(Arrays.asList(parts));
+        return StringUtils.defaultString(datasourceId) + ":" + sha256(GSON.toJson(canonical));
+    }
+
+    /**
+     * 字段列表转换为参与缓存键的名称列表
+     *
+     * @param fields
+     * @param name
+     * @return
+     */
+    public static <T> List<String> names(List<T> fields, Function<T, String> name) {
+        List<String> names = new ArrayList<>();
+        if (fields != null) {
+            for (T field : fields) {
+                names.add(name.apply(field));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 读取缓存结果，不存在或超过有效期时通过 loader 查询
+     *
+     * @param key
+     * @param ttlMillis
+     * @param loader
+     * @return
+     * @throws Exception
+     */
+    public List<String[]> get(String key, long ttlMillis, Callable<List<String[]>> loader) throws Exception {
+        statsLogger.log();
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && now - entry.createTime < ttlMillis) {
+                hitCount.incrementAndGet();
+                return entry.reader.get();
+            }
+        }
+        missCount.incrementAndGet();
+        List<String[]> rows = loader.call();
+        if (rows == null) {
+            return null;
+        }
+        return put(key, codec, rows, now);
+    }
+
+    /**
+     * 清除数据源下的所有缓存结果
+     *
+     * @param datasourceId
+     */
+    public void invalidate(String datasourceId) {
+        String prefix = StringUtils.defaultString(datasourceId) + ":";
+        synchronized (entries) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    bytes -= entry.getValue().bytes;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hitCount", hitCount.get());
+        stats.put("missCount", missCount.get());
+        stats.put("evictionCount", evictionCount.get());
+        synchronized (entries) {
+            stats.put("size", (long) entries.size());
+            stats.put("bytes", bytes);
+        }
+        return stats;
+    }
+
+    /**
+     * 编码并写入查询结果
+     *
+     * @return 编码结果就是查询结果本身时返回解码后的结果，以免调用方修改缓存内容
+     */
+    private <T> List<String[]> put(String key, Codec<T> codec, List<String[]> rows, long now) {
+        T encoded = codec.encode(rows);
+        long resultBytes = codec.bytes(encoded);
+        if (resultBytes <= maxBytes) {
+            put(key, new Entry(() -> codec.decode(encoded), resultBytes, now));
+        }
+        return encoded == rows ? codec.decode(encoded) : rows;
+    }
+
+    private void put(String key, Entry entry) {
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                bytes -= previous.bytes;
+            }
+            bytes += entry.bytes;
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<String, Entry> eldest = iterator.next();
+                bytes -= eldest.getValue().bytes;
+                iterator.remove();
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 压缩引号之外的连续空白，仅格式不同的 SQL 得到相同的键
+     *
+     * @param sql
+     * @return
+     */
+    static String normalizeSql(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean space = false;
+        for (char c : sql.trim().toCharArray()) {
+            if (quote != 0) {
+                builder.append(c);
+                if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            }
+            if (space) {
+                builder.append(' ');
+                space = false;
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (Exception e) {
+            return text;
+        }
+    }
+
+    /**
+     * 缓存结果的存储格式
+     *
+     * @param <T> 编码后的类型
+     */
+    public interface Codec<T> {
+        T encode(List<String[]> rows);
+
+        /**
+         * @param encoded
+         * @return 估算占用的字节数，用于按预算淘汰
+         */
+        long bytes(T encoded);
+
+        /**
+         * @param encoded
+         * @return 每次命中都会调用，返回的结果不能与缓存共享可修改的数据
+         */
+        List<String[]> decode(T encoded);
+    }
+
+    private static class Entry {
+        private final Supplier<List<String[]>> reader;
+        private final long bytes;
+        private final long createTime;
+
+        private Entry(Supplier<List<String[]>> reader, long bytes, long createTime) {
+            this.reader = reader;
+            this.bytes = bytes;
+            this.createTime = createTime;
+        }
+    }
+
+    /**
+     * 列式存储的查询结果
+     * 每列保存去重后的取值数组与每行的取值下标，null 以 -1 表示；
+     * 各行列数不一致时额外保存每行的列数。
+     */
+    static class ColumnarResult {
+        private final int rowCount;
+        private final int[] rowWidths;
+        private final int width;
+        private final String[][] dictionaries;
+        private final int[][] codes;
+        private final long bytes;
+
+        private ColumnarResult(int rowCount, int[] rowWidths, int width, String[][] dictionaries, int[][] codes, long bytes) {
+            this.rowCount = rowCount;
+            this.rowWidths = rowWidths;
+            this.width = width;
+            this.dictionaries = dictionaries;
+            this.codes = codes;
+            this.bytes = bytes;
+        }
+
+        static ColumnarResult encode(List<String[]> rows) {
+            int rowCount = rows.size();
+            int firstWidth = rowCount > 0 ? rows.get(0).length : 0;
+            int width = 0;
+            boolean uniform = true;
+            for (String[] row : rows) {
+                if (row.length != firstWidth) {
+                    uniform = false;
+                }
+                width = Math.max(width, row.length);
+            }
+            int[] rowWidths = uniform ? null : new int[rowCount];
+            String[][] dictionaries = new String[width][];
+            int[][] codes = new int[width][rowCount];
+            long bytes = 64L + (rowWidths == null ? 0 : 4L * rowCount);
+            for (int column = 0; column < width; column++) {
+                Map<String, Integer> dictionary = new HashMap<>();
+                List<String> values = new ArrayList<>();
+                int[] columnCodes = codes[column];
+                for (int r = 0; r < rowCount; r++) {
+                    String[] row = rows.get(r);
+                    String value = column < row.length ? row[column] : null;
+                    if (value == null) {
+                        columnCodes[r] = -1;
+                        continue;
+                    }
+                    Integer code = dictionary.get(value);
+                    if (code == null) {
+                        code = values.size();
+                        dictionary.put(value, code);
+                        values.add(value);
+                        bytes += 40L + 2L * value.length();
+                    }
+                    columnCodes[r] = code;
+                }
+                dictionaries[column] = values.toArray(new String[0]);
+                bytes += 16L + 4L * rowCount + 4L * values.size();
+            }
+            if (rowWidths != null) {
+                for (int r = 0; r < rowCount; r++) {
+                    rowWidths[r] = rows.get(r).length;
+                }
+            }
+            return new ColumnarResult(rowCount, rowWidths, width, dictionaries, codes, bytes);
+        }
+
+        List<String[]> decode() {
+            List<String[]> rows = new ArrayList<>(rowCount);
+            for (int r = 0; r < rowCount; r++) {
+                int rowWidth = rowWidths == null ? width : rowWidths[r];
+                String[] row = new String[rowWidth];
+                for (int column = 0; column < rowWidth; column++) {
+                    int code = codes[column][r];
+                    row[column] = code < 0 ? null : dictionaries[column][code];
+                }
+                rows.add(row);
+            }
+            return rows;
+        }
+    }
+}
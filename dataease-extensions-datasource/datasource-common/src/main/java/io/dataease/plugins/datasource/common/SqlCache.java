@@ -0,0 +1,148 @@
+package io.dataease.plugins.datasource.common;
+
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 视图 SQL 缓存
+ * 以表、视图字段、过滤条件、行权限、计算字段引用的字段、数据源配置与结果模式的规范化摘要为键，缓存生成的 SQL；
+ * 按字符数限制总占用，超出后淘汰最久未使用的条目，并统计命中与未命中次数，统计信息定时输出到日志。
+ */
+public class SqlCache {
+
+    private static final long TTL_MILLIS = 60000;
+
+    // 约 32MB（按每个字符两字节计）
+    private static final long DEFAULT_MAX_CHARS = 16 * 1024 * 1024;
+
+    private static final Gson GSON = new Gson();
+
+    private final long maxChars;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long chars;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private final StatsLogger statsLogger = new StatsLogger("SQL cache", this::getStats);
+
+    public SqlCache() {
+        this(DEFAULT_MAX_CHARS);
+    }
+
+    /**
+     * @param maxChars 缓存的键与 SQL 的总字符数上限
+     */
+    public SqlCache(long maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * 计算缓存键，输入按固定顺序序列化后取 SHA-256
+     *
+     * @param parts
+     * @return
+     */
+    public static String key(Object... parts) {
+        return sha256(GSON.toJson(Arrays.asList(parts)));
+    }
+
+    /**
+     * 读取缓存的 SQL，不存在或已过期时调用 builder 生成
+     *
+     * @param key
+     * @param builder
+     * @return
+     */
+    public String get(String key, Supplier<String> builder) {
+        statsLogger.log();
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && now - entry.createTime < TTL_MILLIS) {
+                hitCount.incrementAndGet();
+                return entry.sql;
+            }
+        }
+        missCount.incrementAndGet();
+        String sql = builder.get();
+        if (sql != null) {
+            put(key, sql, now);
+        }
+        return sql;
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hitCount", hitCount.get());
+        stats.put("missCount", missCount.get());
+        stats.put("evictionCount", evictionCount.get());
+        synchronized (entries) {
+            stats.put("size", (long) entries.size());
+            stats.put("chars", chars);
+        }
+        return stats;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            chars = 0;
+        }
+    }
+
+    private void put(String key, String sql, long now) {
+        long size = key.length() + sql.length();
+        if (size > maxChars) {
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(key, new Entry(sql, now));
+            if (previous != null) {
+                chars -= key.length() + previous.sql.length();
+            }
+            chars += size;
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (chars > maxChars && iterator.hasNext()) {
+                Map.Entry<String, Entry> eldest = iterator.next();
+                chars -= eldest.getKey().length() + eldest.getValue().sql.length();
+                iterator.remove();
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (Exception e) {
+            // SHA-256 为 JDK 必备算法，正常不会走到这里
+            return text;
+        }
+    }
+
+    private static class Entry {
+        private final String sql;
+        private final long createTime;
+
+        private Entry(String sql, long createTime) {
+            this.sql = sql;
+            this.createTime = createTime;
+        }
+    }
+}
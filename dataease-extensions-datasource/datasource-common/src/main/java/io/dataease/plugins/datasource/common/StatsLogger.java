@@ -0,0 +1,56 @@
+package io.dataease.plugins.datasource.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 缓存等组件统计信息的定时日志
+ * 不单独启动线程，由组件在每次访问时调用 log，距上次输出超过间隔时按 info 级别输出一次。
+ */
+public class StatsLogger {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatsLogger.class);
+
+    private static final long INTERVAL_MILLIS = 10 * 60 * 1000;
+
+    private final String name;
+
+    private final Supplier<? extends Map<String, ?>> stats;
+
+    private final long intervalMillis;
+
+    private final AtomicLong lastLogTime = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * @param name  日志中的组件名称
+     * @param stats 统计信息
+     */
+    public StatsLogger(String name, Supplier<? extends Map<String, ?>> stats) {
+        this(name, stats, INTERVAL_MILLIS);
+    }
+
+    StatsLogger(String name, Supplier<? extends Map<String, ?>> stats, long intervalMillis) {
+        this.name = name;
+        this.stats = stats;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * 距上次输出超过间隔时输出统计信息，并发调用时只有一个线程输出
+     *
+     * @return 是否输出
+     */
+    public boolean log() {
+        long now = System.currentTimeMillis();
+        long last = lastLogTime.get();
+        if (now - last < intervalMillis || !lastLogTime.compareAndSet(last, now)) {
+            return false;
+        }
+        LOGGER.info("{} stats: {}", name, stats.get());
+        return true;
+    }
+}
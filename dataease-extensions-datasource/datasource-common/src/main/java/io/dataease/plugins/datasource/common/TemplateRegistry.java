@@ -0,0 +1,106 @@
+package io.dataease.plugins.datasource.common;
+
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STGroupFile;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SQL 模板缓存
+ * 每个模板文件只解析一次，解析后的 STGroup 在线程间共享；
+ * 模板位于磁盘文件时按修改时间热加载，检查间隔为 RELOAD_CHECK_INTERVAL_MILLIS。
+ */
+public class TemplateRegistry {
+
+    private static final long RELOAD_CHECK_INTERVAL_MILLIS = 5000;
+
+    private static final Map<String, TemplateHolder> GROUPS = new ConcurrentHashMap<>();
+
+    private TemplateRegistry() {
+    }
+
+    public static STGroup getGroup(String fileName) {
+        URL url = resolve(fileName);
+        if (url == null) {
+            // 找不到文件时交给 STGroupFile 报错，保持原有的异常信息
+            return new STGroupFile(fileName);
+        }
+        TemplateHolder holder = GROUPS.computeIfAbsent(url.toExternalForm(), key -> new TemplateHolder(url));
+        return holder.group();
+    }
+
+    private static URL resolve(String fileName) {
+        try {
+            // 与 STGroupFile 的查找顺序一致：先找磁盘文件，再找类路径
+            File file = new File(fileName);
+            if (file.exists()) {
+                return file.toURI().toURL();
+            }
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            URL url = classLoader != null ? classLoader.getResource(fileName) : null;
+            if (url == null) {
+                url = TemplateRegistry.class.getClassLoader().getResource(fileName);
+            }
+            return url;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static class TemplateHolder {
+        private final URL url;
+        private final File file;
+        private volatile STGroup group;
+        private volatile long lastModified;
+        private volatile long lastCheck;
+
+        private TemplateHolder(URL url) {
+            this.url = url;
+            this.file = toFile(url);
+        }
+
+        private STGroup group() {
+            STGroup current = group;
+            if (current != null && !modified()) {
+                return current;
+            }
+            synchronized (this) {
+                // 其他线程已经重新加载过则直接使用
+                if (group == current) {
+                    long modifiedTime = file != null ? file.lastModified() : 0L;
+                    STGroup loaded = new STGroupFile(url, "UTF-8", '<', '>');
+                    loaded.load();
+                    lastModified = modifiedTime;
+                    group = loaded;
+                }
+                return group;
+            }
+        }
+
+        private static File toFile(URL url) {
+            if (!"file".equalsIgnoreCase(url.getProtocol())) {
+                return null;
+            }
+            try {
+                return new File(url.toURI());
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        private boolean modified() {
+            if (file == null) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastCheck < RELOAD_CHECK_INTERVAL_MILLIS) {
+                return false;
+            }
+            lastCheck = now;
+            return file.lastModified() != lastModified;
+        }
+    }
+}
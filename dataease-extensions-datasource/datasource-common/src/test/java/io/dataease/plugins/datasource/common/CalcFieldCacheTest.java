@@ -0,0 +1,157 @@
+package io.dataease.plugins.datasource.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CalcFieldCacheTest {
+
+    private final Map<String, String[]> fields = new HashMap<>();
+
+    private final List<List<String>> queries = new ArrayList<>();
+
+    private final CalcFieldCache<String[]> cache = new CalcFieldCache<>(this::load, field -> field[0]);
+
+    @Test
+    void prefetchLoadsAllReferencedFieldsInOneQuery() {
+        fields.put("a", new String[]{"a", "price"});
+        fields.put("b", new String[]{"b", "amount"});
+
+        cache.prefetch(Arrays.asList("[a] * 2", "[a] + [b]", "[missing]"));
+        assertEquals(1, queries.size());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "missing")), new HashSet<>(queries.get(0)));
+
+        assertEquals("t.price + t.amount", cache.resolve("[a] + [b]", field -> "t." + field[1]));
+        assertEquals("[missing] + 1", cache.resolve("[missing] + 1", field -> "t." + field[1]));
+        // 已缓存的字段与不存在的 id 都不再查询
+        assertEquals(1, queries.size());
+    }
+
+    @Test
+    void referencedCalcFieldIsNotExpanded() {
+        fields.put("a", new String[]{"a", "price"});
+        fields.put("calc", new String[]{"calc", "[a] * 2"});
+
+        // 与逐个查询时一致：引用的计算字段按 columnFormatter 转换，不展开其表达式，也不加载其引用的字段
+        assertEquals("\"[a] * 2\" + 1", cache.resolve("[calc] + 1", field -> "\"" + field[1] + "\""));
+        assertEquals(Collections.singletonList(Collections.singletonList("calc")), queries);
+    }
+
+    @Test
+    void referencedFieldsAreSortedById() {
+        fields.put("b", new String[]{"b", "amount"});
+        fields.put("a", new String[]{"a", "price"});
+
+        SortedMap<String, String[]> referenced = cache.referencedFields(Arrays.asList("[b] + [a]", "[missing]"));
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(referenced.keySet()));
+        assertEquals("amount", referenced.get("b")[1]);
+    }
+
+    @Test
+    void expressionWithoutReferencesIsReturnedAsIs() {
+        assertEquals("1 + 1", cache.resolve("1 + 1", field -> field[1]));
+        assertTrue(queries.isEmpty());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        CalcFieldCache<String[]> small = new CalcFieldCache<>(this::load, field -> field[0], 60000, 2);
+        fields.put("a", new String[]{"a", "price"});
+        fields.put("b", new String[]{"b", "amount"});
+        fields.put("c", new String[]{"c", "cost"});
+
+        small.prefetch(Arrays.asList("[a]", "[b]"));
+        small.prefetch(Collections.singletonList("[a]"));
+        small.prefetch(Collections.singletonList("[c]"));
+        assertEquals(2, queries.size());
+
+        // b 最久未使用，被淘汰后重新查询
+        small.prefetch(Arrays.asList("[a]", "[c]"));
+        assertEquals(2, queries.size());
+        small.prefetch(Collections.singletonList("[b]"));
+        assertEquals(Collections.singletonList("b"), queries.get(2));
+    }
+
+    @Test
+    void reloadsAfterTtl() throws Exception {
+        CalcFieldCache<String[]> shortLived = new CalcFieldCache<>(this::load, field -> field[0], 50, 10);
+        fields.put("a", new String[]{"a", "price"});
+        assertEquals("t.price", shortLived.resolve("[a]", field -> "t." + field[1]));
+
+        // 字段修改后在有效期内仍使用缓存，过期后读取新的定义
+        fields.put("a", new String[]{"a", "amount"});
+        assertEquals("t.price", shortLived.resolve("[a]", field -> "t." + field[1]));
+        Thread.sleep(100);
+        assertEquals("t.amount", shortLived.resolve("[a]", field -> "t." + field[1]));
+        assertEquals(2, queries.size());
+    }
+
+    @Test
+    void prefetchInputsFindsNestedCalcFields() {
+        fields.put("a", new String[]{"a", "price"});
+        fields.put("b", new String[]{"b", "amount"});
+        fields.put("c", new String[]{"c", "cost"});
+
+        // 视图字段、过滤条件中的字段与行权限条件树的子树
+        List<Field> axis = Arrays.asList(new Field(2, "[a] * 2"), new Field(0, "[c]"));
+        Tree subTree = new Tree(null, Collections.singletonList(new Tree(new Field(2, "[b] + 1"), null)));
+        cache.prefetchInputs(axis, null, Collections.singletonList(new Tree(null, Collections.singletonList(subTree))));
+
+        assertEquals(1, queries.size());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(queries.get(0)));
+    }
+
+    @Test
+    void prefetchInputsWithoutCalcFieldsDoesNotQuery() {
+        cache.prefetchInputs(Collections.singletonList(new Field(0, "[a]")), null);
+        assertTrue(queries.isEmpty());
+    }
+
+    @Test
+    void sqlCacheKeyFollowsReferencedDefinition() {
+        CalcFieldCache<String[]> uncached = new CalcFieldCache<>(this::load, field -> field[0], 0, 10);
+        fields.put("a", new String[]{"a", "price"});
+        List<Field> axis = Collections.singletonList(new Field(2, "[a] * 2"));
+
+        String key = uncached.sqlCacheKey(field -> field[1], "getSQL", "t", axis);
+        assertEquals(key, uncached.sqlCacheKey(field -> field[1], "getSQL", "t", axis));
+        assertNotEquals(key, uncached.sqlCacheKey(field -> field[1], "getSQL", "t2", axis));
+
+        // 引用的字段修改后不再命中
+        fields.put("a", new String[]{"a", "amount"});
+        assertNotEquals(key, uncached.sqlCacheKey(field -> field[1], "getSQL", "t", axis));
+    }
+
+    private static class Field {
+        private final Integer extField;
+        private final String originName;
+
+        private Field(Integer extField, String originName) {
+            this.extField = extField;
+            this.originName = originName;
+        }
+    }
+
+    private static class Tree {
+        private final Field field;
+        private final List<Tree> items;
+
+        private Tree(Field field, List<Tree> items) {
+            this.field = field;
+            this.items = items;
+        }
+    }
+
+    private List<String[]> load(List<String> ids) {
+        queries.add(new ArrayList<>(ids));
+        List<String[]> result = new ArrayList<>();
+        for (String id : ids) {
+            if (fields.containsKey(id)) {
+                result.add(fields.get(id));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+package io.dataease.plugins.datasource.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Callable<Map<String, List<StringBuilder>>> loader = () -> {
+        loads.incrementAndGet();
+        Map<String, List<StringBuilder>> catalog = new HashMap<>();
+        catalog.put("t1", Arrays.asList(new StringBuilder("id"), new StringBuilder("name")));
+        catalog.put("t2", Collections.singletonList(new StringBuilder("code")));
+        return catalog;
+    };
+
+    @Test
+    void loadsSchemaOncePerDatasource() throws Exception {
+        CatalogCache<StringBuilder> cache = new CatalogCache<>(60_000, StringBuilder::new);
+
+        assertEquals(2, cache.get("ds1", "c1", "t1", loader).size());
+        assertEquals(1, cache.get("ds1", "c1", "t2", loader).size());
+        assertNull(cache.get("ds1", "c1", "missing", loader));
+        assertEquals(1, loads.get());
+
+        cache.get("ds2", "c1", "t1", loader);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void returnsCopies() throws Exception {
+        CatalogCache<StringBuilder> cache = new CatalogCache<>(60_000, StringBuilder::new);
+        cache.get("ds1", "c1", "t1", loader).get(0).append("_changed");
+
+        assertEquals("id", cache.get("ds1", "c1", "t1", loader).get(0).toString());
+    }
+
+    @Test
+    void reloadsOnConfigurationChangeAndInvalidate() throws Exception {
+        CatalogCache<StringBuilder> cache = new CatalogCache<>(60_000, StringBuilder::new);
+        cache.get("ds1", "c1", "t1", loader);
+        cache.get("ds1", "c2", "t1", loader);
+        assertEquals(2, loads.get());
+
+        cache.invalidate("ds1");
+        cache.get("ds1", "c2", "t1", loader);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void reloadsAfterTtl() throws Exception {
+        CatalogCache<StringBuilder> cache = new CatalogCache<>(0, StringBuilder::new);
+        cache.get("ds1", "c1", "t1", loader);
+        cache.get("ds1", "c1", "t1", loader);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void returnsTableNamesInLoaderOrder() throws Exception {
+        CatalogCache<StringBuilder> cache = new CatalogCache<>(60_000, StringBuilder::new);
+        Map<String, List<StringBuilder>> catalog = new LinkedHashMap<>();
+        catalog.put("orders", Collections.emptyList());
+        catalog.put("items", Collections.emptyList());
+
+        assertEquals(Arrays.asList("orders", "items"), cache.getTableNames("ds1", "c1", () -> catalog));
+        assertEquals(Arrays.asList("orders", "items"), cache.getTableNames("ds1", "c1", loader));
+    }
+
+    @Test
+    void refreshesInBackgroundAfterHalfTtl() throws Exception {
+        CatalogCache<StringBuilder> cache = new CatalogCache<>(400, StringBuilder::new, true);
+        try {
+            cache.getTableNames("ds1", "c1", () -> Collections.singletonMap("a", Collections.emptyList()));
+            Thread.sleep(250);
+
+            // 过半有效期后先返回旧值，后台刷新完成后返回新值
+            assertEquals("a", cache.getTableNames("ds1", "c1", () -> Collections.singletonMap("b", Collections.emptyList())).get(0));
+            String name = null;
+            for (int i = 0; i < 50 && !"b".equals(name); i++) {
+                Thread.sleep(5);
+                name = cache.getTableNames("ds1", "c1", loader).get(0);
+            }
+            assertEquals("b", name);
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    void keepsOldCatalogWhenRefreshFails() throws Exception {
+        CatalogCache<StringBuilder> cache = new CatalogCache<>(400, StringBuilder::new, true);
+        AtomicInteger failures = new AtomicInteger();
+        Callable<Map<String, List<StringBuilder>>> failing = () -> {
+            failures.incrementAndGet();
+            throw new IllegalStateException("offline");
+        };
+        try {
+            cache.get("ds1", "c1", "t1", loader);
+            Thread.sleep(250);
+
+            assertEquals(2, cache.get("ds1", "c1", "t1", failing).size());
+            for (int i = 0; i < 50 && failures.get() == 0; i++) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, failures.get());
+            assertEquals(2, cache.get("ds1", "c1", "t1", failing).size());
+            assertEquals(1, loads.get());
+        } finally {
+            cache.shutdown();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.dataease.plugins.datasource.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+
+    private final ConnectionPool pool = new ConnectionPool("test", null);
+
+    private final CountingDriver driver = new CountingDriver();
+
+    @AfterEach
+    void closePools() {
+        pool.closeAll();
+    }
+
+    @Test
+    void unsavedDatasourcesAreKeyedByConfiguration() {
+        assertEquals("ds1", ConnectionPool.poolKey("ds1", "{\"host\":\"a\"}"));
+        assertEquals(ConnectionPool.poolKey(null, "{\"host\":\"a\"}"), ConnectionPool.poolKey("", "{\"host\":\"a\"}"));
+        assertNotEquals(ConnectionPool.poolKey(null, "{\"host\":\"a\"}"), ConnectionPool.poolKey(null, "{\"host\":\"b\"}"));
+        assertTrue(ConnectionPool.poolKey(null, "{\"host\":\"a\"}").startsWith("config-"));
+    }
+
+    @Test
+    void reusesPoolForSameDatasource() throws Exception {
+        connect("ds1", "{\"host\":\"a\"}");
+        connect("ds1", "{\"host\":\"a\"}");
+        assertEquals(1, driver.connects.get());
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    void unsavedDatasourcesDoNotSharePools() throws Exception {
+        connect(null, "{\"host\":\"a\"}");
+        connect(null, "{\"host\":\"b\"}");
+        connect(null, "{\"host\":\"a\"}");
+        assertEquals(2, driver.connects.get());
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    void rebuildsPoolWhenConfigurationChanges() throws Exception {
+        connect("ds1", "{\"host\":\"a\"}");
+        connect("ds1", "{\"host\":\"b\"}");
+        assertEquals(2, driver.connects.get());
+        assertEquals(1, pool.size());
+
+        pool.invalidate("ds1");
+        assertEquals(0, pool.size());
+    }
+
+    private void connect(String datasourceId, String configuration) throws SQLException {
+        Connection connection = pool.getConnection(datasourceId, configuration, getClass().getClassLoader(), driver,
+                "jdbc:test://" + configuration.hashCode(), new Properties(), 0, 1, null);
+        connection.close();
+    }
+
+    private static class CountingDriver implements Driver {
+        private final AtomicInteger connects = new AtomicInteger();
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            connects.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class}, (proxy, method, args) -> {
+                Class<?> type = method.getReturnType();
+                if (type == boolean.class) {
+                    return method.getName().equals("getAutoCommit") || method.getName().equals("isValid");
+                }
+                if (type == int.class) {
+                    return Connection.TRANSACTION_READ_COMMITTED;
+                }
+                return null;
+            });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:test:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package io.dataease.plugins.datasource.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountRegistryTest {
+
+    @Test
+    void containsRegisteredQueries() {
+        CountRegistry registry = new CountRegistry(10);
+        registry.register("SELECT COUNT(*) FROM t");
+
+        assertTrue(registry.contains("SELECT COUNT(*) FROM t"));
+        assertFalse(registry.contains("SELECT * FROM t"));
+        assertFalse(registry.contains(null));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        CountRegistry registry = new CountRegistry(2);
+        registry.register("a");
+        registry.register("b");
+        // 访问 a 后 b 成为最久未使用的查询
+        assertTrue(registry.contains("a"));
+        registry.register("c");
+
+        assertTrue(registry.contains("a"));
+        assertFalse(registry.contains("b"));
+        assertTrue(registry.contains("c"));
+    }
+}
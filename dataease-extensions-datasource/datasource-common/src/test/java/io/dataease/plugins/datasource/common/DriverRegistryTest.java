@@ -0,0 +1,145 @@
+package io.dataease.plugins.datasource.common;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DriverRegistryTest {
+
+    private final Map<String, String> driverClasses = new HashMap<>();
+
+    private final Map<String, ClassLoader> classLoaders = new HashMap<>();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @TempDir
+    Path driverPath;
+
+    private DriverRegistry<String, ClassLoader> registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new DriverRegistry<>(id -> {
+            loads.incrementAndGet();
+            return driverClasses.containsKey(id) ? id : null;
+        }, driverClasses::get, classLoaders::get, driverPath.toString(), 0);
+    }
+
+    @Test
+    void defaultDriverFollowsClassLoader() throws Exception {
+        ClassLoader first = newClassLoader();
+        Driver driver = registry.getDriver(null, StubDriver.class.getName(), first, true).getDriver();
+        assertSame(driver, registry.getDriver(null, StubDriver.class.getName(), first, true).getDriver());
+        assertNotSame(driver, registry.getDriver(null, StubDriver.class.getName(), newClassLoader(), true).getDriver());
+    }
+
+    @Test
+    void customDriverReloadsOnClassLoaderOrDriverClassChange() throws Exception {
+        driverClasses.put("d1", StubDriver.class.getName());
+        classLoaders.put("d1", newClassLoader());
+        Driver driver = registry.getDriver("d1", null, null, false).getDriver();
+        assertSame(driver, registry.getDriver("d1", null, null, false).getDriver());
+
+        // 驱动 jar 变化时核心模块会提供新的类加载器
+        classLoaders.put("d1", newClassLoader());
+        Driver reloaded = registry.getDriver("d1", null, null, false).getDriver();
+        assertNotSame(driver, reloaded);
+
+        driverClasses.put("d1", OtherStubDriver.class.getName());
+        assertTrue(registry.getDriver("d1", null, null, false).getDriver() instanceof OtherStubDriver);
+    }
+
+    @Test
+    void customDriverReloadsOnJarChange() throws Exception {
+        driverClasses.put("d1", StubDriver.class.getName());
+        classLoaders.put("d1", newClassLoader());
+        File jar = driverPath.resolve("d1").resolve("driver.jar").toFile();
+        Files.createDirectories(jar.toPath().getParent());
+        Files.write(jar.toPath(), new byte[]{1});
+        Driver driver = registry.getDriver("d1", null, null, false).getDriver();
+        assertSame(driver, registry.getDriver("d1", null, null, false).getDriver());
+
+        Files.write(jar.toPath(), new byte[]{1, 2});
+        assertNotSame(driver, registry.getDriver("d1", null, null, false).getDriver());
+    }
+
+    @Test
+    void customDriverIsCheckedOncePerInterval() throws Exception {
+        DriverRegistry<String, ClassLoader> cached = new DriverRegistry<>(id -> {
+            loads.incrementAndGet();
+            return id;
+        }, id -> StubDriver.class.getName(), id -> getClass().getClassLoader());
+        cached.getDriver("d1", null, null, false);
+        cached.getDriver("d1", null, null, false);
+        assertEquals(1, loads.get());
+
+        cached.invalidate("d1");
+        cached.getDriver("d1", null, null, false);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void missingCustomDriverFails() {
+        Exception e = assertThrows(Exception.class, () -> registry.getDriver("missing", null, null, false));
+        assertTrue(e.getMessage().contains("missing"));
+    }
+
+    private ClassLoader newClassLoader() {
+        return new ClassLoader(getClass().getClassLoader()) {
+        };
+    }
+
+    public static class StubDriver implements Driver {
+        @Override
+        public Connection connect(String url, Properties info) {
+            return null;
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return false;
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+
+    public static class OtherStubDriver extends StubDriver {
+    }
+}
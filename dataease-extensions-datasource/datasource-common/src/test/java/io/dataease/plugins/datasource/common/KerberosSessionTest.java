@@ -0,0 +1,81 @@
+package io.dataease.plugins.datasource.common;
+
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KerberosSessionTest {
+
+    @TempDir
+    Path keytabDir;
+
+    private KerberosSession session;
+
+    private final ClassLoader classLoader = getClass().getClassLoader();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        UserGroupInformation.reset();
+        Files.write(keytabDir.resolve("user.keytab"), "v1".getBytes(StandardCharsets.UTF_8));
+        session = new KerberosSession("test", keytabDir.toString() + File.separator);
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.shutdown();
+        UserGroupInformation.reset();
+    }
+
+    @Test
+    void logsInOncePerCredentials() throws Exception {
+        session.login(classLoader, "user", "user.keytab");
+        session.login(classLoader, "user", "user.keytab");
+        assertEquals(1, UserGroupInformation.LOGINS.size());
+
+        session.login(classLoader, "other", "user.keytab");
+        assertEquals(2, UserGroupInformation.LOGINS.size());
+    }
+
+    @Test
+    void replacedKeytabLogsInAgain() throws Exception {
+        session.login(classLoader, "user", "user.keytab");
+        Path keytab = keytabDir.resolve("user.keytab");
+        Files.write(keytab, "version 2".getBytes(StandardCharsets.UTF_8));
+        assertTrue(keytab.toFile().setLastModified(keytab.toFile().lastModified() + 2000));
+
+        session.login(classLoader, "user", "user.keytab");
+        assertEquals(2, UserGroupInformation.LOGINS.size());
+    }
+
+    @Test
+    void renewalFailureIsReportedWithNextLoginFailure() throws Exception {
+        session.login(classLoader, "user", "user.keytab");
+        UserGroupInformation.reloginFailure = "ticket expired";
+        session.renew();
+
+        UserGroupInformation.loginFailure = "kdc unreachable";
+        Exception e = assertThrows(IllegalStateException.class, () -> session.login(classLoader, "user", "user.keytab"));
+        assertEquals("kdc unreachable", e.getMessage());
+        assertEquals(1, e.getSuppressed().length);
+        assertEquals("ticket expired", e.getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    void renewalFailureRecoversOnNextLogin() throws Exception {
+        session.login(classLoader, "user", "user.keytab");
+        UserGroupInformation.reloginFailure = "ticket expired";
+        session.renew();
+
+        session.login(classLoader, "user", "user.keytab");
+        assertEquals(2, UserGroupInformation.LOGINS.size());
+    }
+}
@@ -0,0 +1,97 @@
+package io.dataease.plugins.datasource.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageCursorCacheTest {
+
+    private static final String SQL = "SELECT * FROM t";
+
+    @Test
+    void recordStripsRowIdAndKeepsCursor() {
+        PageCursorCache cache = new PageCursorCache(10);
+        cache.register("ds1", "v1", "page1", SQL, 1, 2, 0, 2, false);
+
+        List<String[]> rows = cache.record("ds1", "page1", Arrays.asList(
+                new String[]{"a", "x", "r1"},
+                new String[]{"b", "y", "r2"}));
+
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[]{"b", "y"}, rows.get(1));
+        PageCursorCache.Cursor cursor = cache.getCursor("ds1", "v1", SQL, 0, 2, 1);
+        assertEquals("b", cursor.getValue());
+        assertEquals("r2", cursor.getRowId());
+    }
+
+    @Test
+    void hasNextTrimsExtraRowAndTracksReached() {
+        PageCursorCache cache = new PageCursorCache(10);
+        cache.register("ds1", "v1", "page2", SQL, 2, 2, -1, -1, true);
+
+        List<String[]> rows = cache.record("ds1", "page2", Arrays.asList(
+                new String[]{"c"}, new String[]{"d"}, new String[]{"e"}));
+
+        assertEquals(2, rows.size());
+        // 第二页多取的一行说明至少有 5 行
+        assertEquals(5, cache.getReached("ds1", "v1", SQL));
+        assertEquals(0, cache.getReached("ds1", "v2", SQL));
+        assertNull(cache.getCursor("ds1", "v1", SQL, -1, 2, 2));
+    }
+
+    @Test
+    void cursorsAreScopedByDatasourceAndView() {
+        PageCursorCache cache = new PageCursorCache(10);
+        cache.register("ds1", "v1", "page1", SQL, 1, 1, 0, 1, false);
+
+        // 其他数据源执行相同的 SQL 不会记录或读到该游标
+        List<String[]> rows = Arrays.asList(new String[][]{{"a", "r1"}});
+        assertSame(rows, cache.record("ds2", "page1", rows));
+        assertNull(cache.getCursor("ds2", "v1", SQL, 0, 1, 1));
+
+        cache.record("ds1", "page1", rows);
+        assertNotNull(cache.getCursor("ds1", "v1", SQL, 0, 1, 1));
+        assertNull(cache.getCursor("ds1", "v2", SQL, 0, 1, 1));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        PageCursorCache cache = new PageCursorCache(2);
+        for (int page = 1; page <= 3; page++) {
+            cache.register("ds1", "v1", "page" + page, SQL, page, 1, 0, 1, false);
+            cache.record("ds1", "page" + page, Arrays.asList(new String[][]{{"k" + page, "r" + page}}));
+        }
+
+        assertNull(cache.getCursor("ds1", "v1", SQL, 0, 1, 1));
+        assertEquals("k3", cache.getCursor("ds1", "v1", SQL, 0, 1, 3).getValue());
+    }
+
+    @Test
+    void seekConditionBreaksTiesByRowId() {
+        PageCursorCache.Cursor cursor = new PageCursorCache.Cursor("5", "r");
+        // 空值视为最小值时，升序的空值在前，降序的空值在后
+        assertEquals("(k > 5 OR (k = 5 AND id > 'r'))",
+                PageCursorCache.seekCondition("k", "id", false, true, cursor, "5", "'r'"));
+        assertEquals("(k < 5 OR (k = 5 AND id > 'r') OR k IS NULL)",
+                PageCursorCache.seekCondition("k", "id", true, true, cursor, "5", "'r'"));
+        assertEquals("(k > 5 OR (k = 5 AND id > 'r') OR k IS NULL)",
+                PageCursorCache.seekCondition("k", "id", false, false, cursor, "5", "'r'"));
+
+        PageCursorCache.Cursor nullCursor = new PageCursorCache.Cursor(null, "r");
+        assertEquals("((k IS NULL AND id > 'r') OR k IS NOT NULL)",
+                PageCursorCache.seekCondition("k", "id", false, true, nullCursor, null, "'r'"));
+        assertEquals("(k IS NULL AND id > 'r')",
+                PageCursorCache.seekCondition("k", "id", false, false, nullCursor, null, "'r'"));
+    }
+
+    @Test
+    void seekOrderKeepsNativeNullOrder() {
+        assertEquals("k ASC NULLS FIRST, id ASC", PageCursorCache.seekOrder("k", "id", false, true));
+        assertEquals("k DESC NULLS LAST, id ASC", PageCursorCache.seekOrder("k", "id", true, true));
+        assertEquals("k ASC NULLS LAST, id ASC", PageCursorCache.seekOrder("k", "id", false, false));
+        assertEquals("k DESC NULLS FIRST, id ASC", PageCursorCache.seekOrder("k", "id", true, false));
+    }
+}
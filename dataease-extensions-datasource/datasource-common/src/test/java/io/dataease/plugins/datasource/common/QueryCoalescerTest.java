@@ -0,0 +1,130 @@
+package io.dataease.plugins.datasource.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryCoalescerTest {
+
+    @Test
+    void identicalQueriesShareOneExecution() throws Exception {
+        QueryCoalescer<List<String[]>> coalescer = new QueryCoalescer<>(10000, QueryCoalescer::copyRows);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        Callable<List<String[]>> loader = () -> {
+            executions.incrementAndGet();
+            started.countDown();
+            release.await();
+            return new ArrayList<>(Collections.singletonList(new String[]{"a"}));
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<String[]>> leader = executor.submit(() -> coalescer.execute("k", loader));
+            started.await();
+            Future<List<String[]>> follower = executor.submit(() -> coalescer.execute("k", loader));
+            while ((Long) coalescer.getStats().get("coalescedCount") == 0) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            List<String[]> first = leader.get();
+            List<String[]> second = follower.get();
+            assertEquals(1, executions.get());
+            assertEquals("a", second.get(0)[0]);
+            // 各调用方取得独立的副本
+            first.get(0)[0] = "changed";
+            assertEquals("a", second.get(0)[0]);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void differentKeysRunSeparately() throws Exception {
+        QueryCoalescer<List<String[]>> coalescer = new QueryCoalescer<>(10000, QueryCoalescer::copyRows);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        AtomicInteger executions = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<List<String[]>>> futures = new ArrayList<>();
+            for (String key : Arrays.asList("ds1:k", "ds2:k")) {
+                futures.add(executor.submit(() -> coalescer.execute(key, () -> {
+                    executions.incrementAndGet();
+                    // 两个查询同时执行，互不等待
+                    bothStarted.countDown();
+                    assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+                    return new ArrayList<>(Collections.singletonList(new String[]{key}));
+                })));
+            }
+            assertEquals("ds1:k", futures.get(0).get().get(0)[0]);
+            assertEquals("ds2:k", futures.get(1).get().get(0)[0]);
+            assertEquals(2, executions.get());
+            assertEquals(0L, coalescer.getStats().get("coalescedCount"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void finishedQueryIsNotReused() throws Exception {
+        QueryCoalescer<List<String[]>> coalescer = new QueryCoalescer<>(10000, QueryCoalescer::copyRows);
+        List<String[]> first = new ArrayList<>(Collections.singletonList(new String[]{"a"}));
+        // 没有等待方时直接返回原结果，不复制
+        assertSame(first, coalescer.execute("k", () -> first));
+        assertEquals("b", coalescer.execute("k", () -> Collections.singletonList(new String[]{"b"})).get(0)[0]);
+        assertEquals(2L, coalescer.getStats().get("executedCount"));
+        assertEquals(0, coalescer.getStats().get("inFlight"));
+    }
+
+    @Test
+    void failureIsSharedAndNotRetained() throws Exception {
+        QueryCoalescer<List<String[]>> coalescer = new QueryCoalescer<>(10000, QueryCoalescer::copyRows);
+        assertThrows(IllegalStateException.class, () -> coalescer.execute("k", () -> {
+            throw new IllegalStateException("broken");
+        }));
+        assertEquals(0, coalescer.getStats().get("inFlight"));
+        assertEquals(1, coalescer.execute("k", () -> Collections.singletonList(new String[]{"a"})).size());
+    }
+
+    @Test
+    void followerTimesOut() throws Exception {
+        QueryCoalescer<List<String[]>> coalescer = new QueryCoalescer<>(50, QueryCoalescer::copyRows);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> coalescer.execute("k", () -> {
+                started.countDown();
+                release.await();
+                return new ArrayList<>();
+            }));
+            started.await();
+            assertThrows(TimeoutException.class, () -> coalescer.execute("k", ArrayList::new));
+            assertEquals(1L, coalescer.getStats().get("timeoutCount"));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    void copyResultAndFieldCopiesRows() {
+        Map<String, List> result = new HashMap<>();
+        List<String[]> dataList = new ArrayList<>(Collections.singletonList(new String[]{"a"}));
+        List<Object> fieldList = new ArrayList<>(Collections.singletonList("field"));
+        result.put("dataList", dataList);
+        result.put("fieldList", fieldList);
+
+        Map<String, List> copy = QueryCoalescer.copyResultAndField(result);
+        ((String[]) copy.get("dataList").get(0))[0] = "changed";
+        copy.get("fieldList").clear();
+        assertEquals("a", dataList.get(0)[0]);
+        assertEquals(1, fieldList.size());
+    }
+}
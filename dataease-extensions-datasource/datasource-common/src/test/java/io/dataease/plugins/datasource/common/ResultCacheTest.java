@@ -0,0 +1,131 @@
+package io.dataease.plugins.datasource.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultCacheTest {
+
+    @Test
+    void normalizeSqlKeepsQuotedText() {
+        assertEquals("SELECT a FROM t WHERE b = '  x  '", ResultCache.normalizeSql("  SELECT a\n  FROM t\tWHERE b = '  x  ' "));
+        assertEquals(ResultCache.key("ds1", "{}", "SELECT  1"), ResultCache.key("ds1", "{}", "SELECT\n1"));
+        assertNotEquals(ResultCache.key("ds1", "{}", "SELECT ' 1'"), ResultCache.key("ds1", "{}", "SELECT '  1'"));
+    }
+
+    @Test
+    void keyDependsOnDatasourceAndParts() {
+        String key = ResultCache.key("ds1", "{}", "SELECT 1", Collections.singletonList("f1:a"));
+        assertTrue(key.startsWith("ds1:"));
+        assertNotEquals(key, ResultCache.key("ds2", "{}", "SELECT 1", Collections.singletonList("f1:a")));
+        assertNotEquals(key, ResultCache.key("ds1", "{\"host\":\"h\"}", "SELECT 1", Collections.singletonList("f1:a")));
+        // 权限字段不同的用户不共享结果
+        assertNotEquals(key, ResultCache.key("ds1", "{}", "SELECT 1", Collections.singletonList("f2:a")));
+    }
+
+    @Test
+    void reusesResultWithinTtl() throws Exception {
+        ResultCache cache = new ResultCache(1 << 20);
+        AtomicInteger loads = new AtomicInteger();
+        List<String[]> first = cache.get("ds1:k", 60000, () -> rows(loads.incrementAndGet()));
+        List<String[]> second = cache.get("ds1:k", 60000, () -> rows(loads.incrementAndGet()));
+        assertEquals(1, loads.get());
+        assertArrayEquals(first.get(0), second.get(0));
+        // 每次返回新的行，调用方修改不影响缓存
+        assertNotSame(first.get(0), second.get(0));
+
+        cache.get("ds1:k", 0, () -> rows(loads.incrementAndGet()));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void columnarResultRoundTrip() {
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[]{"a", null, "1"});
+        rows.add(new String[]{"a", "b"});
+        rows.add(new String[]{});
+        rows.add(new String[]{null, "b", "1", "x"});
+        List<String[]> decoded = ResultCache.ColumnarResult.encode(rows).decode();
+        assertEquals(rows.size(), decoded.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertArrayEquals(rows.get(i), decoded.get(i));
+        }
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverBudget() throws Exception {
+        ResultCache probe = new ResultCache(1 << 20);
+        probe.get("ds1:a", 60000, () -> rows(9));
+        long entryBytes = probe.getStats().get("bytes");
+        ResultCache cache = new ResultCache(entryBytes * 2);
+        cache.get("ds1:a", 60000, () -> rows(1));
+        cache.get("ds1:b", 60000, () -> rows(2));
+        cache.get("ds1:a", 60000, () -> rows(3));
+        cache.get("ds1:c", 60000, () -> rows(4));
+
+        assertEquals(1L, cache.getStats().get("evictionCount"));
+        assertEquals("1", cache.get("ds1:a", 60000, () -> rows(5)).get(0)[0]);
+        assertEquals("6", cache.get("ds1:b", 60000, () -> rows(6)).get(0)[0]);
+    }
+
+    @Test
+    void invalidateRemovesOnlyThatDatasource() throws Exception {
+        ResultCache cache = new ResultCache(1 << 20);
+        String key1 = ResultCache.key("ds1", "{}", "SELECT 1");
+        String key10 = ResultCache.key("ds10", "{}", "SELECT 1");
+        cache.get(key1, 60000, () -> rows(1));
+        cache.get(key10, 60000, () -> rows(1));
+
+        cache.invalidate("ds1");
+        assertEquals(1L, cache.getStats().get("size"));
+        assertEquals("2", cache.get(key1, 60000, () -> rows(2)).get(0)[0]);
+        assertEquals("1", cache.get(key10, 60000, () -> rows(2)).get(0)[0]);
+    }
+
+    @Test
+    void customCodecKeepsCachedResultPrivate() throws Exception {
+        // 直接保存查询结果的存储格式，解码时复制
+        ResultCache.Codec<List<String[]>> codec = new ResultCache.Codec<List<String[]>>() {
+            @Override
+            public List<String[]> encode(List<String[]> rows) {
+                return rows;
+            }
+
+            @Override
+            public long bytes(List<String[]> encoded) {
+                return 100L * encoded.size();
+            }
+
+            @Override
+            public List<String[]> decode(List<String[]> encoded) {
+                List<String[]> copy = new ArrayList<>();
+                for (String[] row : encoded) {
+                    copy.add(row.clone());
+                }
+                return copy;
+            }
+        };
+        ResultCache cache = new ResultCache(250, codec);
+        List<String[]> loaded = rows(1);
+        List<String[]> first = cache.get("ds1:a", 60000, () -> loaded);
+        assertNotSame(loaded, first);
+        first.get(0)[0] = "changed";
+        assertEquals("1", cache.get("ds1:a", 60000, () -> rows(2)).get(0)[0]);
+        assertEquals(200L, cache.getStats().get("bytes"));
+
+        // 总占用超过预算时淘汰最久未使用的结果
+        cache.get("ds1:b", 60000, () -> rows(3));
+        assertEquals(1L, cache.getStats().get("evictionCount"));
+        assertEquals(1L, cache.getStats().get("size"));
+    }
+
+    private static List<String[]> rows(int value) {
+        return new ArrayList<>(Arrays.asList(new String[]{String.valueOf(value), "v"}, new String[]{"0", "v"}));
+    }
+}
@@ -0,0 +1,61 @@
+package io.dataease.plugins.datasource.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlCacheTest {
+
+    @Test
+    void keyDependsOnEveryPart() {
+        String key = SqlCache.key("getSQL", "t", "ds1", Collections.singletonList("calc:price * 2"), Arrays.asList("x", "y"));
+        assertEquals(key, SqlCache.key("getSQL", "t", "ds1", Collections.singletonList("calc:price * 2"), Arrays.asList("x", "y")));
+        assertNotEquals(key, SqlCache.key("getSQL", "t", "ds2", Collections.singletonList("calc:price * 2"), Arrays.asList("x", "y")));
+        // 计算字段引用的字段修改后得到新的键
+        assertNotEquals(key, SqlCache.key("getSQL", "t", "ds1", Collections.singletonList("calc:price * 3"), Arrays.asList("x", "y")));
+        assertNotEquals(key, SqlCache.key("getSQL", "t", "ds1", Collections.singletonList("calc:price * 2"), Arrays.asList("y", "x")));
+    }
+
+    @Test
+    void buildsOncePerKey() {
+        SqlCache cache = new SqlCache();
+        AtomicInteger builds = new AtomicInteger();
+        assertEquals("SELECT 1", cache.get("k", () -> "SELECT " + builds.incrementAndGet()));
+        assertEquals("SELECT 1", cache.get("k", () -> "SELECT " + builds.incrementAndGet()));
+        assertEquals(1, builds.get());
+        assertEquals(1L, cache.getStats().get("hitCount"));
+        assertEquals(1L, cache.getStats().get("missCount"));
+
+        cache.clear();
+        assertEquals("SELECT 2", cache.get("k", () -> "SELECT " + builds.incrementAndGet()));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverBudget() {
+        // 每个条目 1 + 10 个字符，最多放下两个
+        SqlCache cache = new SqlCache(25);
+        cache.get("a", () -> "SELECT 'a'");
+        cache.get("b", () -> "SELECT 'b'");
+        cache.get("a", () -> "unused");
+        cache.get("c", () -> "SELECT 'c'");
+
+        assertEquals(1L, cache.getStats().get("evictionCount"));
+        assertEquals(2L, cache.getStats().get("size"));
+        assertEquals("SELECT 'a'", cache.get("a", () -> "rebuilt"));
+        assertEquals("rebuilt", cache.get("b", () -> "rebuilt"));
+    }
+
+    @Test
+    void oversizedSqlIsNotCached() {
+        SqlCache cache = new SqlCache(5);
+        AtomicInteger builds = new AtomicInteger();
+        cache.get("k", () -> "SELECT " + builds.incrementAndGet());
+        cache.get("k", () -> "SELECT " + builds.incrementAndGet());
+        assertEquals(2, builds.get());
+        assertEquals(0L, cache.getStats().get("size"));
+    }
+}
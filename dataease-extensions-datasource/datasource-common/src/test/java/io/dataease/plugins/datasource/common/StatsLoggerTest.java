@@ -0,0 +1,32 @@
+package io.dataease.plugins.datasource.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatsLoggerTest {
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    private Map<String, Long> stats() {
+        reads.incrementAndGet();
+        return Collections.singletonMap("hitCount", 1L);
+    }
+
+    @Test
+    void logsOncePerInterval() throws Exception {
+        StatsLogger logger = new StatsLogger("test cache", this::stats, 50);
+        // 创建后第一个间隔内不输出，也不读取统计
+        assertFalse(logger.log());
+        assertEquals(0, reads.get());
+
+        Thread.sleep(100);
+        assertTrue(logger.log());
+        assertFalse(logger.log());
+        assertEquals(1, reads.get());
+    }
+}
@@ -0,0 +1,43 @@
+package io.dataease.plugins.datasource.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.stringtemplate.v4.STGroup;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateRegistryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parsesEachFileOnce() throws Exception {
+        File first = write("first.stg", "select() ::= \"SELECT 1\"\n");
+        File second = write("second.stg", "select() ::= \"SELECT 2\"\n");
+
+        STGroup group = TemplateRegistry.getGroup(first.getPath());
+        assertSame(group, TemplateRegistry.getGroup(first.getPath()));
+        assertEquals("SELECT 1", group.getInstanceOf("select").render());
+
+        STGroup other = TemplateRegistry.getGroup(second.getPath());
+        assertNotSame(group, other);
+        assertEquals("SELECT 2", other.getInstanceOf("select").render());
+    }
+
+    @Test
+    void missingFileFailsLikeSTGroupFile() {
+        assertThrows(IllegalArgumentException.class, () -> TemplateRegistry.getGroup(dir.resolve("missing.stg").toString()));
+    }
+
+    private File write(String name, String content) throws Exception {
+        Path path = dir.resolve(name);
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path.toFile();
+    }
+}
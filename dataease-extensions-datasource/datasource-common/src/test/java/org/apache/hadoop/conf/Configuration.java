@@ -0,0 +1,10 @@
+package org.apache.hadoop.conf;
+
+/**
+ * KerberosSessionTest 使用的 Hadoop 配置替身
+ */
+public class Configuration {
+
+    public void set(String name, String value) {
+    }
+}
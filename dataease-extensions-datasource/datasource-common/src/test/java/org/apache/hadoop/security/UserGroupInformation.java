@@ -0,0 +1,44 @@
+package org.apache.hadoop.security;
+
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * KerberosSessionTest 使用的 UserGroupInformation 替身，记录登录并按需失败
+ */
+public class UserGroupInformation {
+
+    public static final List<String> LOGINS = new ArrayList<>();
+
+    public static volatile String loginFailure;
+
+    public static volatile String reloginFailure;
+
+    public static void reset() {
+        LOGINS.clear();
+        loginFailure = null;
+        reloginFailure = null;
+    }
+
+    public static void setConfiguration(Configuration configuration) {
+    }
+
+    public static void loginUserFromKeytab(String principal, String keytab) {
+        if (loginFailure != null) {
+            throw new IllegalStateException(loginFailure);
+        }
+        LOGINS.add(principal + "@" + keytab);
+    }
+
+    public static UserGroupInformation getLoginUser() {
+        return new UserGroupInformation();
+    }
+
+    public void checkTGTAndReloginFromKeytab() {
+        if (reloginFailure != null) {
+            throw new IllegalStateException(reloginFailure);
+        }
+    }
+}
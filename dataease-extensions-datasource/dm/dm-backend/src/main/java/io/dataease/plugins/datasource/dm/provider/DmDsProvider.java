@@ -4,22 +4,32 @@ import com.google.gson.Gson;
 import io.dataease.plugins.common.base.domain.DeDriver;
 import io.dataease.plugins.common.base.mapper.DeDriverMapper;
 import io.dataease.plugins.common.constants.DatasourceTypes;
+import io.dataease.plugins.common.dto.chart.ChartViewFieldDTO;
 import io.dataease.plugins.common.dto.datasource.TableDesc;
 import io.dataease.plugins.common.dto.datasource.TableField;
 import io.dataease.plugins.common.exception.DataEaseException;
 import io.dataease.plugins.common.request.datasource.DatasourceRequest;
+import io.dataease.plugins.datasource.common.CatalogCache;
+import io.dataease.plugins.datasource.common.ConnectionPool;
+import io.dataease.plugins.datasource.common.DriverRegistry;
+import io.dataease.plugins.datasource.common.KerberosSession;
+import io.dataease.plugins.datasource.common.QueryCoalescer;
+import io.dataease.plugins.datasource.common.ResultCache;
+import io.dataease.plugins.datasource.dm.query.DmQueryProvider;
 import io.dataease.plugins.datasource.entity.JdbcConfiguration;
 import io.dataease.plugins.datasource.provider.DefaultJdbcProvider;
 import io.dataease.plugins.datasource.provider.ExtendedJdbcClassLoader;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import java.lang.reflect.Method;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 
@@ -28,6 +38,35 @@ public class DmDsProvider extends DefaultJdbcProvider {
     @Resource
     private DeDriverMapper deDriverMapper;
 
+    @Resource
+    private DmQueryProvider dmQueryProvider;
+
+    private static final long RESULT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final long COALESCE_WAIT_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
+    private static final long CATALOG_CACHE_TTL_MILLIS = 5 * 60 * 1000L;
+
+    private static final String CATALOG_SQL = "select c.table_name, c.column_name, c.data_type, c.data_length, c.data_precision, m.comments"
+            + " from all_tab_columns c left join all_col_comments m"
+            + " on m.owner = c.owner and m.table_name = c.table_name and m.column_name = c.column_name"
+            + " where c.owner = ? order by c.table_name, c.column_id";
+
+    private final ResultCache resultCache = new ResultCache(RESULT_CACHE_MAX_BYTES);
+
+    private final QueryCoalescer<List<String[]>> queryCoalescer = new QueryCoalescer<>(COALESCE_WAIT_TIMEOUT_MILLIS, QueryCoalescer::copyRows);
+
+    private final QueryCoalescer<Map<String, List>> resultAndFieldCoalescer = new QueryCoalescer<>(COALESCE_WAIT_TIMEOUT_MILLIS, QueryCoalescer::copyResultAndField);
+
+    private final ConnectionPool connectionPool = new ConnectionPool("dm", "SELECT 1 FROM DUAL");
+
+    private final DriverRegistry<DeDriver, ExtendedJdbcClassLoader> driverRegistry = new DriverRegistry<>(id -> deDriverMapper.selectByPrimaryKey(id),
+            DeDriver::getDriverClass, this::getCustomJdbcClassLoader);
+
+    private final KerberosSession kerberosSession = new KerberosSession("dm");
+
+    private final CatalogCache<TableField> catalogCache = new CatalogCache<>(CATALOG_CACHE_TTL_MILLIS, DmDsProvider::copyField);
+
     @Override
     public String getType() {
         return "dm";
@@ -38,6 +77,52 @@ public class DmDsProvider extends DefaultJdbcProvider {
         return false;
     }
 
+    @PreDestroy
+    public void destroy() {
+        connectionPool.closeAll();
+        kerberosSession.shutdown();
+    }
+
+    @Override
+    public List<String[]> getData(DatasourceRequest datasourceRequest) throws Exception {
+        DmConfig dmConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), DmConfig.class);
+        Integer resultCacheTtl = dmConfig.getResultCacheTtl();
+        if (dmQueryProvider.isCountQuery(datasourceRequest.getQuery())) {
+            // 明细总行数按计数缓存有效期缓存，翻页时不再重复计数
+            resultCacheTtl = dmConfig.getCountCacheTtl();
+        }
+        String key = resultCacheKey(datasourceRequest);
+        List<String[]> data;
+        // 相同查询正在执行时共享其结果
+        if (resultCacheTtl == null || resultCacheTtl <= 0) {
+            data = queryCoalescer.execute(key, () -> super.getData(datasourceRequest));
+        } else {
+            data = resultCache.get(key, resultCacheTtl * 1000L, () -> queryCoalescer.execute(key, () -> super.getData(datasourceRequest)));
+        }
+        // 记录明细分页的游标，下一页从本页最后一行继续读取
+        return dmQueryProvider.recordPage(datasourceRequest.getDatasource().getId(), datasourceRequest.getQuery(), data);
+    }
+
+    /**
+     * 查询结果缓存与相同查询合并的键：数据源、最终 SQL 以及影响结果的权限字段与视图字段
+     *
+     * @param datasourceRequest
+     * @return
+     */
+    private String resultCacheKey(DatasourceRequest datasourceRequest) {
+        return ResultCache.key(datasourceRequest.getDatasource().getId(), datasourceRequest.getDatasource().getConfiguration(),
+                datasourceRequest.getQuery(), datasourceRequest.isPreviewData(), datasourceRequest.isTotalPageFlag(),
+                ResultCache.names(datasourceRequest.getPermissionFields(), field -> field.getId() + ":" + field.getOriginName()),
+                ResultCache.names(datasourceRequest.getXAxis(), ChartViewFieldDTO::getOriginName),
+                ResultCache.names(datasourceRequest.getYAxis(), ChartViewFieldDTO::getOriginName));
+    }
+
+    @Override
+    public Map<String, List> fetchResultAndField(DatasourceRequest datasourceRequest) throws Exception {
+        // 与 getData 使用相同的请求指纹，相同查询正在执行时共享其结果与字段
+        return resultAndFieldCoalescer.execute(resultCacheKey(datasourceRequest), () -> super.fetchResultAndField(datasourceRequest));
+    }
+
     @Override
     public Connection getConnection(DatasourceRequest datasourceRequest) throws Exception {
         DmConfig dmConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), DmConfig.class);
@@ -47,26 +132,9 @@ public class DmDsProvider extends DefaultJdbcProvider {
 
         String url = dmConfig.getJdbc();
         Properties props = new Properties();
-        DeDriver deDriver = null;
+        DriverRegistry.ResolvedDriver<ExtendedJdbcClassLoader> resolvedDriver = driverRegistry.getDriver(customDriver, defaultDriver, extendedJdbcClassLoader, isDefaultClassLoader(customDriver));
         if (StringUtils.isNotEmpty(dmConfig.getAuthMethod()) && dmConfig.getAuthMethod().equalsIgnoreCase("kerberos")) {
-            System.setProperty("java.security.krb5.conf", "/opt/dataease/conf/krb5.conf");
-            ExtendedJdbcClassLoader classLoader;
-            if (isDefaultClassLoader(customDriver)) {
-                classLoader = extendedJdbcClassLoader;
-            } else {
-                deDriver = deDriverMapper.selectByPrimaryKey(customDriver);
-                classLoader = getCustomJdbcClassLoader(deDriver);
-            }
-            Class<?> ConfigurationClass = classLoader.loadClass("org.apache.hadoop.conf.Configuration");
-            Method set = ConfigurationClass.getMethod("set", String.class, String.class);
-            Object obj = ConfigurationClass.newInstance();
-            set.invoke(obj, "hadoop.security.authentication", "Kerberos");
-
-            Class<?> UserGroupInformationClass = classLoader.loadClass("org.apache.hadoop.security.UserGroupInformation");
-            Method setConfiguration = UserGroupInformationClass.getMethod("setConfiguration", ConfigurationClass);
-            Method loginUserFromKeytab = UserGroupInformationClass.getMethod("loginUserFromKeytab", String.class, String.class);
-            setConfiguration.invoke(null, obj);
-            loginUserFromKeytab.invoke(null, dmConfig.getUsername(), "/opt/dataease/conf/" + dmConfig.getPassword());
+            kerberosSession.login(resolvedDriver.getClassLoader(), dmConfig.getUsername(), dmConfig.getPassword());
         } else {
             if (StringUtils.isNotBlank(dmConfig.getUsername())) {
                 props.setProperty("user", dmConfig.getUsername());
@@ -77,24 +145,17 @@ public class DmDsProvider extends DefaultJdbcProvider {
         }
 
         Connection conn;
-        String driverClassName;
-        ExtendedJdbcClassLoader jdbcClassLoader;
-        if (isDefaultClassLoader(customDriver)) {
-            driverClassName = defaultDriver;
-            jdbcClassLoader = extendedJdbcClassLoader;
-        } else {
-            if (deDriver == null) {
-                deDriver = deDriverMapper.selectByPrimaryKey(customDriver);
-            }
-            driverClassName = deDriver.getDriverClass();
-            jdbcClassLoader = getCustomJdbcClassLoader(deDriver);
-        }
-
-        Driver driverClass = (Driver) jdbcClassLoader.loadClass(driverClassName).newInstance();
+        ExtendedJdbcClassLoader jdbcClassLoader = resolvedDriver.getClassLoader();
+        Driver driverClass = resolvedDriver.getDriver();
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(jdbcClassLoader);
-            conn = driverClass.connect(url, props);
+            if (Boolean.TRUE.equals(dmConfig.getPoolEnabled())) {
+                conn = connectionPool.getConnection(datasourceRequest.getDatasource().getId(), datasourceRequest.getDatasource().getConfiguration(),
+                        jdbcClassLoader, driverClass, url, props, dmConfig.getPoolMinIdle(), dmConfig.getPoolMaxActive(), dmConfig.getPoolRemoveAbandonedMinutes());
+            } else {
+                conn = driverClass.connect(url, props);
+            }
         } catch (Exception e) {
             e.printStackTrace();
             throw e;
@@ -129,6 +190,20 @@ public class DmDsProvider extends DefaultJdbcProvider {
 
     @Override
     public List<TableField> getTableFields(DatasourceRequest datasourceRequest) throws Exception {
+        DmConfig dmConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), DmConfig.class);
+        if (Boolean.TRUE.equals(dmConfig.getCatalogPrefetch()) && StringUtils.isNotEmpty(dmConfig.getSchema())) {
+            try {
+                List<TableField> fields = catalogCache.get(datasourceRequest.getDatasource().getId(),
+                        datasourceRequest.getDatasource().getConfiguration(), datasourceRequest.getTable(),
+                        () -> loadCatalog(datasourceRequest, dmConfig.getSchema()));
+                if (fields != null) {
+                    return fields;
+                }
+            } catch (Exception e) {
+                // 读取字典视图失败时退回逐表查询
+                e.printStackTrace();
+            }
+        }
         List<TableField> list = new LinkedList<>();
         try (Connection connection = getConnectionFromPool(datasourceRequest)) {
             DatabaseMetaData databaseMetaData = connection.getMetaData();
@@ -158,13 +233,64 @@ public class DmDsProvider extends DefaultJdbcProvider {
         return list;
     }
 
+    /**
+     * 通过 all_tab_columns / all_col_comments 一次读取模式下所有表的字段
+     *
+     * @param datasourceRequest
+     * @param schema
+     * @return 表名到字段列表的映射
+     * @throws Exception
+     */
+    private Map<String, List<TableField>> loadCatalog(DatasourceRequest datasourceRequest, String schema) throws Exception {
+        Map<String, List<TableField>> catalog = new HashMap<>();
+        try (Connection connection = getConnectionFromPool(datasourceRequest);
+             PreparedStatement statement = connection.prepareStatement(CATALOG_SQL)) {
+            statement.setString(1, schema);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    catalog.computeIfAbsent(resultSet.getString("TABLE_NAME"), k -> new LinkedList<>()).add(getCatalogField(resultSet));
+                }
+            }
+        }
+        return catalog;
+    }
+
+    static TableField getCatalogField(ResultSet resultSet) throws SQLException {
+        TableField tableField = new TableField();
+        String colName = resultSet.getString("COLUMN_NAME");
+        tableField.setFieldName(colName);
+        String remarks = resultSet.getString("COMMENTS");
+        if (remarks == null || remarks.equals("")) {
+            remarks = colName;
+        }
+        tableField.setRemarks(remarks);
+        tableField.setFieldType(StringUtils.defaultString(resultSet.getString("DATA_TYPE")).toUpperCase());
+        // 与 getColumns 的 COLUMN_SIZE 一致：数值类型取精度，其余取长度；
+        // 逐表查询中 LONG / 日期类型的长度调整会被 COLUMN_SIZE 覆盖，这里同样以该值为准
+        String size = resultSet.getString("DATA_PRECISION");
+        if (size == null) {
+            size = resultSet.getString("DATA_LENGTH");
+        }
+        tableField.setFieldSize(size == null ? 1 : Integer.valueOf(size));
+        return tableField;
+    }
+
+    private static TableField copyField(TableField field) {
+        TableField tableField = new TableField();
+        tableField.setFieldName(field.getFieldName());
+        tableField.setRemarks(field.getRemarks());
+        tableField.setFieldType(field.getFieldType());
+        tableField.setFieldSize(field.getFieldSize());
+        return tableField;
+    }
+
     private String getDatabase(DatasourceRequest datasourceRequest) {
         JdbcConfiguration jdbcConfiguration = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), JdbcConfiguration.class);
         return jdbcConfiguration.getDataBase();
     }
 
 
-    private TableField getTableFiled(ResultSet resultSet, DatasourceRequest datasourceRequest) throws SQLException {
+    static TableField getTableFiled(ResultSet resultSet, DatasourceRequest datasourceRequest) throws SQLException {
         TableField tableField = new TableField();
         String colName = resultSet.getString("COLUMN_NAME");
         tableField.setFieldName(colName);
@@ -197,6 +323,7 @@ public class DmDsProvider extends DefaultJdbcProvider {
 
     @Override
     public String checkStatus(DatasourceRequest datasourceRequest) throws Exception {
+        catalogCache.invalidate(datasourceRequest.getDatasource().getId());
         String queryStr = getTablesSql(datasourceRequest);
         JdbcConfiguration jdbcConfiguration = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), JdbcConfiguration.class);
         int queryTimeout = jdbcConfiguration.getQueryTimeout() > 0 ? jdbcConfiguration.getQueryTimeout() : 0;
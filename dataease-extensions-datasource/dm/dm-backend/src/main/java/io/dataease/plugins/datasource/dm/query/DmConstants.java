@@ -55,6 +55,8 @@ public class DmConstants extends SQLConstants {
     // public static final String GROUP_CONCAT = "vm_concat(%s)";
     public static final String GROUP_CONCAT = "to_char(listagg(%s,',' ) within GROUP (order by (%s)))";
 
+    public static final String OFFSET_FETCH = " OFFSET %s ROWS FETCH NEXT %s ROWS ONLY";
+
     public static final String NAME = "oracle";
 
 
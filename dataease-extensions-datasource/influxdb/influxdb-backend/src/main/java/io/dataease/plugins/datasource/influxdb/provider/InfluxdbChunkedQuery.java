@@ -0,0 +1,107 @@
+package io.dataease.plugins.datasource.influxdb.provider;
+
+import org.apache.commons.lang3.StringUtils;
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDB.Cancellable;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * InfluxDB 分块查询
+ * 基于 chunked 响应逐块读取查询结果，OkHttp 线程与调用线程之间只缓冲少量分块，
+ * 调用方处理不过来时会阻塞读取，内存占用与分块大小相关而与结果总量无关。
+ */
+class InfluxdbChunkedQuery implements Closeable {
+
+    private static final int QUEUE_CAPACITY = 2;
+
+    private static final long OFFER_INTERVAL_MILLIS = 100;
+
+    private static final String CHUNK_DONE = "DONE";
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> chunks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private final long timeoutMillis;
+
+    private volatile Cancellable cancellable;
+
+    private volatile boolean closed;
+
+    private boolean finished;
+
+    InfluxdbChunkedQuery(InfluxDB influxDB, String sql, int chunkSize, long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        // 带回调的 query 不返回句柄，只能在分块回调中取得；关闭早于首个分块时由回调取消查询
+        influxDB.query(new Query(sql), chunkSize, (handle, queryResult) -> {
+            this.cancellable = handle;
+            if (closed) {
+                handle.cancel();
+                return;
+            }
+            offer(queryResult);
+        }, () -> offer(END), this::offer);
+    }
+
+    /**
+     * 读取下一个分块，全部读取完毕后返回 null
+     *
+     * @return
+     * @throws Exception
+     */
+    QueryResult next() throws Exception {
+        if (finished) {
+            return null;
+        }
+        Object chunk = chunks.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (chunk == null) {
+            throw new TimeoutException("Query timed out after " + timeoutMillis + " ms waiting for the next chunk");
+        }
+        if (chunk == END) {
+            finished = true;
+            return null;
+        }
+        if (chunk instanceof Throwable) {
+            finished = true;
+            throw new RuntimeException(((Throwable) chunk).getMessage(), (Throwable) chunk);
+        }
+        QueryResult queryResult = (QueryResult) chunk;
+        if (StringUtils.equals(CHUNK_DONE, queryResult.getError())) {
+            finished = true;
+            return null;
+        }
+        if (StringUtils.isNotEmpty(queryResult.getError())) {
+            finished = true;
+            throw new RuntimeException(queryResult.getError());
+        }
+        return queryResult;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (!finished && cancellable != null) {
+            cancellable.cancel();
+        }
+        chunks.clear();
+    }
+
+    private void offer(Object chunk) {
+        try {
+            while (!closed) {
+                if (chunks.offer(chunk, OFFER_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package io.dataease.plugins.datasource.influxdb.provider;
+
+import com.google.gson.Gson;
+import io.dataease.plugins.common.base.domain.Datasource;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.apache.commons.lang3.StringUtils;
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDBFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InfluxDB 客户端注册表
+ * 按数据源 id 缓存 InfluxDB 客户端，所有客户端共用同一个 OkHttp 连接池与调度器；
+ * 数据源配置变更时重建客户端，长时间未使用的客户端会被回收。
+ * 客户端本身不持有独立的连接资源，回收时不调用 InfluxDB.close()，避免关闭共享的调度器与连接池。
+ */
+public class InfluxdbClientRegistry {
+
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final OkHttpClient sharedClient;
+
+    private final Map<String, ClientHolder> clients = new ConcurrentHashMap<>();
+
+    private volatile long lastSweep = System.currentTimeMillis();
+
+    public InfluxdbClientRegistry() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(128);
+        dispatcher.setMaxRequestsPerHost(32);
+        this.sharedClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(32, 5, TimeUnit.MINUTES))
+                .readTimeout(120, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 获取数据源对应的客户端，配置发生变化时重建
+     *
+     * @param datasource
+     * @return
+     */
+    public InfluxDB getClient(Datasource datasource) {
+        sweepIdleClients();
+
+        String configuration = datasource.getConfiguration();
+        String key = datasourceKey(datasource);
+        ClientHolder holder = clients.compute(key, (k, current) -> {
+            if (current != null && current.matches(configuration)) {
+                return current;
+            }
+            return new ClientHolder(configuration, connect(configuration));
+        });
+        holder.lastAccess = System.currentTimeMillis();
+        return holder.influxDB;
+    }
+
+    /**
+     * 数据源被编辑或删除时主动移除客户端
+     *
+     * @param datasource
+     */
+    public void invalidate(Datasource datasource) {
+        clients.remove(datasourceKey(datasource));
+    }
+
+    public void closeAll() {
+        clients.clear();
+        sharedClient.dispatcher().executorService().shutdown();
+        sharedClient.connectionPool().evictAll();
+    }
+
+    private InfluxDB connect(String configuration) {
+        InfluxdbConfig influxdbConfig = new Gson().fromJson(configuration, InfluxdbConfig.class);
+        String url = "http://" + influxdbConfig.getHost() + ":" + influxdbConfig.getPort();
+        // newBuilder 会沿用共享的连接池与调度器
+        InfluxDB influxDB = InfluxDBFactory.connect(url, influxdbConfig.getUsername(), influxdbConfig.getPassword(), sharedClient.newBuilder());
+        influxDB.setDatabase(influxdbConfig.getDataBase());
+        return influxDB;
+    }
+
+    static String datasourceKey(Datasource datasource) {
+        // 新建数据源校验连接时还没有 id，此时按配置区分
+        if (StringUtils.isNotEmpty(datasource.getId())) {
+            return datasource.getId();
+        }
+        return "config:" + StringUtils.defaultString(datasource.getConfiguration()).hashCode();
+    }
+
+    private void sweepIdleClients() {
+        long now = System.currentTimeMillis();
+        if (now - lastSweep < SWEEP_INTERVAL_MILLIS) {
+            return;
+        }
+        lastSweep = now;
+        clients.values().removeIf(holder -> now - holder.lastAccess > IDLE_TIMEOUT_MILLIS);
+    }
+
+    private static class ClientHolder {
+        private final int configHash;
+        private final String configuration;
+        private final InfluxDB influxDB;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private ClientHolder(String configuration, InfluxDB influxDB) {
+            this.configHash = StringUtils.defaultString(configuration).hashCode();
+            this.configuration = configuration;
+            this.influxDB = influxDB;
+        }
+
+        private boolean matches(String configuration) {
+            return configHash == StringUtils.defaultString(configuration).hashCode()
+                    && StringUtils.equals(this.configuration, configuration);
+        }
+    }
+}
@@ -0,0 +1,502 @@
+package io.dataease.plugins.datasource.influxdb.provider;
+
+import io.dataease.plugins.datasource.common.ResultCache;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * 列式查询结果
+ * 数值列以 double[] / long[] 保存并用位图记录空值，文本列按字典编码保存取值下标；
+ * 作为 List<String[]> 使用时每行在首次读取时生成字符串数组并保留，数值在此时才格式化，对行数组的修改在之后的读取中可见。
+ * 同一列出现不同类型的取值时，该列转换为文本列。
+ * 列表修改操作（set / add / remove）会先把全部行转换为字符串数组，之后按行保存，不影响共享的列数据。
+ */
+public class InfluxdbColumnarResult extends AbstractList<String[]> implements RandomAccess {
+
+    public enum ColumnType {
+        EMPTY, DOUBLE, LONG, STRING
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * 查询结果缓存的存储格式，命中时返回共享列数据的只读视图
+     */
+    public static final ResultCache.Codec<InfluxdbColumnarResult> CACHE_CODEC = new ResultCache.Codec<InfluxdbColumnarResult>() {
+        @Override
+        public InfluxdbColumnarResult encode(List<String[]> rows) {
+            return of(rows);
+        }
+
+        @Override
+        public long bytes(InfluxdbColumnarResult encoded) {
+            return encoded.estimatedBytes();
+        }
+
+        @Override
+        public List<String[]> decode(InfluxdbColumnarResult encoded) {
+            return encoded.view();
+        }
+    };
+
+    private Column[] columns;
+
+    private int[] rowWidths;
+
+    private int rowCount;
+
+    // 与其他实例共享列数据时不能再追加行
+    private final boolean shared;
+
+    // 发生修改后改为按行保存
+    private List<String[]> rows;
+
+    // 已读取过的行
+    private String[][] rowCache;
+
+    public InfluxdbColumnarResult() {
+        this(new Column[0], new int[INITIAL_CAPACITY], 0, false);
+    }
+
+    private InfluxdbColumnarResult(Column[] columns, int[] rowWidths, int rowCount, boolean shared) {
+        this.columns = columns;
+        this.rowWidths = rowWidths;
+        this.rowCount = rowCount;
+        this.shared = shared;
+    }
+
+    /**
+     * 由按行保存的结果转换
+     *
+     * @param rows
+     * @return
+     */
+    public static InfluxdbColumnarResult of(List<String[]> rows) {
+        if (rows instanceof InfluxdbColumnarResult) {
+            return (InfluxdbColumnarResult) rows;
+        }
+        InfluxdbColumnarResult result = new InfluxdbColumnarResult();
+        for (String[] row : rows) {
+            result.addRow(row);
+        }
+        result.compact();
+        return result;
+    }
+
+    /**
+     * 追加一行，各列初始为空值
+     *
+     * @param width 该行的列数
+     * @return 行号
+     */
+    public int newRow(int width) {
+        checkWritable();
+        if (rowCount == rowWidths.length) {
+            grow(rowCount * 2);
+        }
+        if (width > columns.length) {
+            Column[] expanded = Arrays.copyOf(columns, width);
+            for (int column = columns.length; column < width; column++) {
+                expanded[column] = new Column(rowWidths.length);
+            }
+            columns = expanded;
+        }
+        for (int column = 0; column < width; column++) {
+            columns[column].clear(rowCount);
+        }
+        rowWidths[rowCount] = width;
+        return rowCount++;
+    }
+
+    public void addRow(String[] values) {
+        int row = newRow(values.length);
+        for (int column = 0; column < values.length; column++) {
+            setString(row, column, values[column]);
+        }
+    }
+
+    /**
+     * 设置单元格取值，Double 与整数类型按数值保存，其余类型按文本保存
+     *
+     * @param row
+     * @param column
+     * @param value
+     * @param integer double 取值是否按整数格式化（count 列）
+     */
+    public void setValue(int row, int column, Object value, boolean integer) {
+        checkWritable();
+        evict(row);
+        Column target = columns[column];
+        if (value == null) {
+            // 数值列的空值显示为空字符串
+            if (target.type == ColumnType.STRING) {
+                target.setString(row, "", rowCount);
+            }
+            return;
+        }
+        if (value instanceof Double) {
+            target.setDouble(row, (Double) value, integer, rowCount);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            target.setLong(row, ((Number) value).longValue(), rowCount);
+        } else {
+            target.setString(row, value.toString(), rowCount);
+        }
+    }
+
+    public void setString(int row, int column, String value) {
+        checkWritable();
+        evict(row);
+        columns[column].setString(row, value, rowCount);
+    }
+
+    /**
+     * 单元格被重新赋值后丢弃该行已生成的字符串数组
+     *
+     * @param row
+     */
+    private void evict(int row) {
+        if (rowCache != null && row < rowCache.length) {
+            rowCache[row] = null;
+        }
+    }
+
+    /**
+     * 填充结束后释放字典索引，并把数组收缩到实际行数
+     */
+    public void compact() {
+        grow(rowCount);
+        for (Column column : columns) {
+            column.dictionaryIndex = null;
+        }
+    }
+
+    /**
+     * 共享列数据的只读副本，供缓存命中时返回
+     *
+     * @return
+     */
+    public InfluxdbColumnarResult view() {
+        if (rows != null) {
+            InfluxdbColumnarResult copy = new InfluxdbColumnarResult(columns, rowWidths, rowCount, true);
+            // 行数组各自复制，对副本的修改不影响缓存中的数据
+            copy.rows = new ArrayList<>(rows.size());
+            for (String[] row : rows) {
+                copy.rows.add(row.clone());
+            }
+            return copy;
+        }
+        return new InfluxdbColumnarResult(columns, rowWidths, rowCount, true);
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public ColumnType getColumnType(int column) {
+        return columns[column].type;
+    }
+
+    public boolean isNull(int row, int column) {
+        return column >= rowWidths[row] || columns[column].isNull(row);
+    }
+
+    public double getDouble(int row, int column) {
+        Column target = columns[column];
+        return target.type == ColumnType.LONG ? target.longs[row] : target.doubles[row];
+    }
+
+    public long getLong(int row, int column) {
+        Column target = columns[column];
+        return target.type == ColumnType.DOUBLE ? (long) target.doubles[row] : target.longs[row];
+    }
+
+    public String getString(int row, int column) {
+        return column < rowWidths[row] ? columns[column].format(row) : null;
+    }
+
+    /**
+     * 估算占用的字节数
+     *
+     * @return
+     */
+    public long estimatedBytes() {
+        long bytes = 64L + 4L * rowWidths.length;
+        for (Column column : columns) {
+            bytes += column.estimatedBytes();
+        }
+        if (rows != null) {
+            for (String[] row : rows) {
+                bytes += 16L + 4L * row.length;
+                for (String value : row) {
+                    bytes += value == null ? 0 : 40L + 2L * value.length();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String[] get(int index) {
+        if (rows != null) {
+            return rows.get(index);
+        }
+        if (index < 0 || index >= rowCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rowCount);
+        }
+        if (rowCache == null || rowCache.length < rowCount) {
+            rowCache = rowCache == null ? new String[rowCount][] : Arrays.copyOf(rowCache, rowCount);
+        }
+        String[] row = rowCache[index];
+        if (row == null) {
+            row = new String[rowWidths[index]];
+            for (int column = 0; column < row.length; column++) {
+                row[column] = columns[column].format(index);
+            }
+            rowCache[index] = row;
+        }
+        return row;
+    }
+
+    @Override
+    public int size() {
+        return rows != null ? rows.size() : rowCount;
+    }
+
+    @Override
+    public String[] set(int index, String[] element) {
+        return materialize().set(index, element);
+    }
+
+    @Override
+    public void add(int index, String[] element) {
+        materialize().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public String[] remove(int index) {
+        modCount++;
+        return materialize().remove(index);
+    }
+
+    private List<String[]> materialize() {
+        if (rows == null) {
+            List<String[]> materialized = new ArrayList<>(rowCount);
+            for (int row = 0; row < rowCount; row++) {
+                materialized.add(get(row));
+            }
+            rows = materialized;
+            rowCache = null;
+        }
+        return rows;
+    }
+
+    private void checkWritable() {
+        if (shared || rows != null) {
+            throw new IllegalStateException("Columnar result is read only");
+        }
+    }
+
+    private void grow(int capacity) {
+        capacity = Math.max(capacity, 1);
+        rowWidths = Arrays.copyOf(rowWidths, capacity);
+        for (Column column : columns) {
+            column.resize(capacity);
+        }
+    }
+
+    /**
+     * double 取值格式化，与原有的字符串转换一致：科学计数法转换为普通数值，count 列转换为整数
+     *
+     * @param value
+     * @param integer
+     * @return
+     */
+    public static String formatDouble(double value, boolean integer) {
+        String text = Double.toString(value);
+        // Double.toString 仅在科学计数法时包含 E
+        if (text.indexOf('E') >= 0) {
+            return new BigDecimal(value).toString();
+        }
+        if (integer) {
+            return Integer.toString((int) value);
+        }
+        return text;
+    }
+
+    private static class Column {
+        private ColumnType type = ColumnType.EMPTY;
+        private int capacity;
+        private boolean integer;
+        private double[] doubles;
+        private long[] longs;
+        private int[] codes;
+        private long[] nulls;
+        private List<String> dictionary;
+        private Map<String, Integer> dictionaryIndex;
+
+        private Column(int capacity) {
+            this.capacity = capacity;
+            this.nulls = new long[(capacity + 63) >>> 6];
+        }
+
+        private void setDouble(int row, double value, boolean integer, int rowCount) {
+            if (type == ColumnType.EMPTY) {
+                type = ColumnType.DOUBLE;
+                this.integer = integer;
+                doubles = new double[capacity];
+                Arrays.fill(nulls, -1L);
+            }
+            if (type != ColumnType.DOUBLE || this.integer != integer) {
+                setString(row, formatDouble(value, integer), rowCount);
+                return;
+            }
+            doubles[row] = value;
+            nulls[row >>> 6] &= ~(1L << row);
+        }
+
+        private void setLong(int row, long value, int rowCount) {
+            if (type == ColumnType.EMPTY) {
+                type = ColumnType.LONG;
+                longs = new long[capacity];
+                Arrays.fill(nulls, -1L);
+            }
+            if (type != ColumnType.LONG) {
+                setString(row, Long.toString(value), rowCount);
+                return;
+            }
+            longs[row] = value;
+            nulls[row >>> 6] &= ~(1L << row);
+        }
+
+        private void setString(int row, String value, int rowCount) {
+            if (type != ColumnType.STRING) {
+                toStringColumn(rowCount);
+            }
+            codes[row] = value == null ? -1 : code(value);
+        }
+
+        private int code(String value) {
+            if (dictionaryIndex == null) {
+                dictionaryIndex = new HashMap<>();
+                for (int i = 0; i < dictionary.size(); i++) {
+                    dictionaryIndex.put(dictionary.get(i), i);
+                }
+            }
+            Integer code = dictionaryIndex.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                dictionaryIndex.put(value, code);
+            }
+            return code;
+        }
+
+        /**
+         * 转换为文本列，已有的数值按读取时的格式转换为文本
+         *
+         * @param rowCount
+         */
+        private void toStringColumn(int rowCount) {
+            int[] stringCodes = new int[capacity];
+            dictionary = new ArrayList<>();
+            dictionaryIndex = new HashMap<>();
+            for (int row = 0; row < rowCount; row++) {
+                stringCodes[row] = code(format(row));
+            }
+            type = ColumnType.STRING;
+            codes = stringCodes;
+            doubles = null;
+            longs = null;
+            nulls = null;
+        }
+
+        /**
+         * 新增行的单元格置为空值
+         *
+         * @param row
+         */
+        private void clear(int row) {
+            switch (type) {
+                case STRING:
+                    codes[row] = -1;
+                    break;
+                case DOUBLE:
+                case LONG:
+                    nulls[row >>> 6] |= 1L << row;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private boolean isNull(int row) {
+            switch (type) {
+                case STRING:
+                    return codes[row] < 0;
+                case EMPTY:
+                    return true;
+                default:
+                    return (nulls[row >>> 6] & (1L << row)) != 0;
+            }
+        }
+
+        private String format(int row) {
+            switch (type) {
+                case DOUBLE:
+                    return isNull(row) ? "" : formatDouble(doubles[row], integer);
+                case LONG:
+                    return isNull(row) ? "" : Long.toString(longs[row]);
+                case STRING:
+                    return codes[row] < 0 ? null : dictionary.get(codes[row]);
+                default:
+                    return "";
+            }
+        }
+
+        private void resize(int newCapacity) {
+            if (doubles != null) {
+                doubles = Arrays.copyOf(doubles, newCapacity);
+            }
+            if (longs != null) {
+                longs = Arrays.copyOf(longs, newCapacity);
+            }
+            if (codes != null) {
+                codes = Arrays.copyOf(codes, newCapacity);
+            }
+            if (nulls != null) {
+                int words = (newCapacity + 63) >>> 6;
+                int oldWords = nulls.length;
+                nulls = Arrays.copyOf(nulls, words);
+                if (type != ColumnType.STRING && words > oldWords) {
+                    // 新增的行默认为空值
+                    Arrays.fill(nulls, oldWords, words, type == ColumnType.EMPTY ? 0L : -1L);
+                }
+            }
+            capacity = newCapacity;
+        }
+
+        private long estimatedBytes() {
+            long bytes = 48L;
+            if (doubles != null) {
+                bytes += 8L * doubles.length;
+            }
+            if (longs != null) {
+                bytes += 8L * longs.length;
+            }
+            if (codes != null) {
+                bytes += 4L * codes.length;
+            }
+            if (nulls != null) {
+                bytes += 8L * nulls.length;
+            }
+            if (dictionary != null) {
+                for (String value : dictionary) {
+                    bytes += 40L + 2L * value.length();
+                }
+            }
+            return bytes;
+        }
+    }
+}
@@ -10,6 +10,16 @@ public class InfluxdbConfig extends JdbcConfiguration {
 
     private String driver = "influxdb.jdbc.driver.InfluxdbDriver";
     private String extraParams;
+    // 分块查询时每个分块的行数
+    private Integer chunkSize = 10000;
+    // 批量获取表字段时的并发查询数
+    private Integer metadataParallelism = 4;
+    // 查询结果缓存有效期（秒），为空或不大于 0 时不缓存
+    private Integer resultCacheTtl;
+    // 明细总行数计算方式：exact 每次精确计数，cached 计数一次后缓存，estimate 只对一个字段计数
+    private String countMode;
+    // 明细总行数缓存有效期（秒）
+    private Integer countCacheTtl = 600;
 
 
     public String getJdbc() {
@@ -2,36 +2,82 @@ package io.dataease.plugins.datasource.influxdb.provider;
 
 import com.google.common.collect.Lists;
 import com.google.gson.Gson;
-import io.dataease.plugins.common.base.domain.DatasetTableField;
 import io.dataease.plugins.common.dto.chart.ChartViewFieldDTO;
 import io.dataease.plugins.common.dto.datasource.TableDesc;
 import io.dataease.plugins.common.dto.datasource.TableField;
 import io.dataease.plugins.common.exception.DataEaseException;
 import io.dataease.plugins.common.request.datasource.DatasourceRequest;
-import io.dataease.plugins.datasource.entity.JdbcConfiguration;
+import io.dataease.plugins.datasource.common.QueryCoalescer;
+import io.dataease.plugins.datasource.common.ResultCache;
+import io.dataease.plugins.datasource.influxdb.query.InfluxdbQueryProvider;
 import io.dataease.plugins.datasource.provider.DefaultJdbcProvider;
-import okhttp3.OkHttpClient;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.ibatis.logging.LogException;
 import org.influxdb.InfluxDB;
-import org.influxdb.InfluxDBFactory;
 import org.influxdb.dto.Query;
 import org.influxdb.dto.QueryResult;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 
 @Component()
 public class InfluxdbDsProvider extends DefaultJdbcProvider {
+
+    private static final int DEFAULT_CHUNK_SIZE = 10000;
+
+    private static final long CHUNK_TIMEOUT_MILLIS = 120 * 1000L;
+
+    private static final long SCHEMA_CACHE_TTL_MILLIS = 5 * 60 * 1000L;
+
+    private static final int SCHEMA_CACHE_MAX_SIZE = 2000;
+
+    private static final int METADATA_THREADS = 8;
+
+    private static final int BATCH_MEASUREMENTS_PER_QUERY = 100;
+
+    private static final long RESULT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final long COALESCE_WAIT_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
+    private final InfluxdbClientRegistry clientRegistry = new InfluxdbClientRegistry();
+
+    // 元数据查询线程池，队列满时由调用线程执行
+    private final ThreadPoolExecutor metadataExecutor = new ThreadPoolExecutor(METADATA_THREADS, METADATA_THREADS,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(1000), runnable -> {
+        Thread thread = new Thread(runnable, "influxdb-metadata");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+    // 表字段预取线程，不能使用元数据线程池，否则会与其提交的子任务互相等待
+    private final ThreadPoolExecutor prefetchExecutor = new ThreadPoolExecutor(1, 1,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(16), runnable -> {
+        Thread thread = new Thread(runnable, "influxdb-schema-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.AbortPolicy());
+
+    // 已提交预取任务的数据源，任务结束前不再重复提交
+    private final Set<String> prefetching = ConcurrentHashMap.newKeySet();
+
+    private final InfluxdbSchemaCache schemaCache = new InfluxdbSchemaCache(SCHEMA_CACHE_TTL_MILLIS, SCHEMA_CACHE_MAX_SIZE, true);
+
+    private final ResultCache resultCache = new ResultCache(RESULT_CACHE_MAX_BYTES, InfluxdbColumnarResult.CACHE_CODEC);
+
+    private final QueryCoalescer<List<String[]>> queryCoalescer = new QueryCoalescer<>(COALESCE_WAIT_TIMEOUT_MILLIS, QueryCoalescer::copyRows);
+
+    private final QueryCoalescer<Map<String, List>> resultAndFieldCoalescer = new QueryCoalescer<>(COALESCE_WAIT_TIMEOUT_MILLIS, QueryCoalescer::copyResultAndField);
+
+    @Resource
+    private InfluxdbQueryProvider influxdbQueryProvider;
+
     @Override
     public String getType() {
         return "influxdb";
@@ -46,9 +92,8 @@ public class InfluxdbDsProvider extends DefaultJdbcProvider {
     public List<TableDesc> getTables(DatasourceRequest datasourceRequest) {
         List<TableDesc> tables = new ArrayList<>();
         String queryStr = getTablesSql(datasourceRequest);
-        JdbcConfiguration jdbcConfiguration = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), JdbcConfiguration.class);
         try {
-            List<QueryResult.Result> resultList = executeSql(jdbcConfiguration, queryStr);
+            List<QueryResult.Result> resultList = executeSql(datasourceRequest, queryStr);
 
             List<QueryResult.Series> seriesList = Optional.ofNullable(resultList)
                     .filter(CollectionUtils::isNotEmpty).map(s -> s.get(0))
@@ -59,9 +104,39 @@ public class InfluxdbDsProvider extends DefaultJdbcProvider {
             DataEaseException.throwException(e);
         }
 
+        prefetchTableFields(datasourceRequest, tables);
         return tables;
     }
 
+    /**
+     * 后台预取未缓存或已过期的表字段，打开数据集编辑时直接命中缓存
+     *
+     * @param datasourceRequest
+     * @param tables
+     */
+    private void prefetchTableFields(DatasourceRequest datasourceRequest, List<TableDesc> tables) {
+        List<String> measurements = tables.stream().map(TableDesc::getName)
+                .filter(measurement -> !schemaCache.isFresh(datasourceRequest.getDatasource(), measurement))
+                .collect(Collectors.toList());
+        String datasourceKey = InfluxdbClientRegistry.datasourceKey(datasourceRequest.getDatasource());
+        if (measurements.isEmpty() || !prefetching.add(datasourceKey)) {
+            return;
+        }
+        try {
+            prefetchExecutor.execute(() -> {
+                try {
+                    getTableFields(datasourceRequest, measurements);
+                } catch (Exception ignore) {
+                } finally {
+                    prefetching.remove(datasourceKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 队列已满或已关闭，放弃本次预取
+            prefetching.remove(datasourceKey);
+        }
+    }
+
     private List<TableDesc> getTableDesc(List<QueryResult.Series> seriesList) {
         List<TableDesc> tables = new ArrayList<>();
         if (CollectionUtils.isNotEmpty(seriesList)) {
@@ -78,39 +153,166 @@ public class InfluxdbDsProvider extends DefaultJdbcProvider {
 
     @Override
     public List<TableField> getTableFields(DatasourceRequest datasourceRequest) {
-        List<TableField> list = new LinkedList<>();
+        String table = datasourceRequest.getTable();
+        try {
+            return schemaCache.get(datasourceRequest.getDatasource(), table, () -> loadTableFields(datasourceRequest, table));
+        } catch (Exception e) {
+            DataEaseException.throwException("Data source connection exception: " + e.getMessage());
+        }
+        return new LinkedList<>();
+    }
+
+    /**
+     * 批量获取多个表的字段，按数据源配置的并发数查询
+     *
+     * @param datasourceRequest
+     * @param measurements
+     * @return
+     */
+    public Map<String, List<TableField>> getTableFields(DatasourceRequest datasourceRequest, List<String> measurements) throws Exception {
+        InfluxdbConfig influxdbConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), InfluxdbConfig.class);
+        int parallelism = influxdbConfig.getMetadataParallelism() != null && influxdbConfig.getMetadataParallelism() > 0 ? influxdbConfig.getMetadataParallelism() : 1;
+        return getTableFields(datasourceRequest, measurements, parallelism);
+    }
+
+    /**
+     * 批量获取多个表的字段
+     * 未命中缓存的表每 BATCH_MEASUREMENTS_PER_QUERY 个合并为一条 show tag keys / show field keys 查询，
+     * 最多同时执行 parallelism 条查询
+     *
+     * @param datasourceRequest
+     * @param measurements
+     * @param parallelism
+     * @return
+     */
+    public Map<String, List<TableField>> getTableFields(DatasourceRequest datasourceRequest, List<String> measurements, int parallelism) throws Exception {
+        Map<String, List<TableField>> result = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String measurement : measurements) {
+            List<TableField> fields = schemaCache.getIfPresent(datasourceRequest.getDatasource(), measurement);
+            result.put(measurement, fields);
+            if (fields == null) {
+                missing.add(measurement);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<String, List<TableField>> tagFields = new ConcurrentHashMap<>();
+        Map<String, List<TableField>> valueFields = new ConcurrentHashMap<>();
+        Semaphore permits = new Semaphore(Math.max(parallelism, 1));
+        List<Future<?>> futures = new ArrayList<>();
         try {
-            InfluxdbConfig influxdbConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), InfluxdbConfig.class);
+            for (List<String> batch : Lists.partition(missing, BATCH_MEASUREMENTS_PER_QUERY)) {
+                String from = batch.stream().map(this::quoteMeasurement).collect(Collectors.joining(","));
+                futures.add(submitWithPermit(permits, () -> collectBatchFields(executeSql(datasourceRequest, "show tag keys from " + from), tagFields, true)));
+                futures.add(submitWithPermit(permits, () -> collectBatchFields(executeSql(datasourceRequest, "show field keys from " + from), valueFields, false)));
+            }
+            for (Future<?> future : futures) {
+                awaitResult(future);
+            }
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
 
+        for (String measurement : missing) {
+            List<TableField> list = new LinkedList<>();
             list.add(getTableDefaultFiled());
+            list.addAll(tagFields.getOrDefault(measurement, Collections.emptyList()));
+            list.addAll(valueFields.getOrDefault(measurement, Collections.emptyList()));
+            schemaCache.put(datasourceRequest.getDatasource(), measurement, list);
+            result.put(measurement, list);
+        }
+        return result;
+    }
 
-            // 查询当前表的所有标签字段
-            String showTagSql = "show tag keys from " + datasourceRequest.getTable();
-            List<QueryResult.Result> tagResultList = executeSql(influxdbConfig, showTagSql);
-            List<QueryResult.Series> seriesList = getSeriesListFromResult(tagResultList);
-            if (CollectionUtils.isNotEmpty(seriesList)) {
-                for (QueryResult.Series series : seriesList) {
-                    Optional.ofNullable(series.getValues()).orElse(new ArrayList<>()).forEach(value -> {
-                        TableField tableField = getTableTagFiled(value.get(0).toString());
-                        list.add(tableField);
-                    });
+    private Future<?> submitWithPermit(Semaphore permits, Runnable task) throws InterruptedException {
+        permits.acquire();
+        try {
+            return metadataExecutor.submit(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
                 }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 按 measurement 归集多表查询返回的标签或数值字段
+     */
+    private void collectBatchFields(List<QueryResult.Result> resultList, Map<String, List<TableField>> fieldsByMeasurement, boolean tag) {
+        for (QueryResult.Series series : getSeriesListFromResult(resultList)) {
+            List<TableField> fields = new ArrayList<>();
+            Optional.ofNullable(series.getValues()).orElse(new ArrayList<>()).forEach(value ->
+                    fields.add(tag ? getTableTagFiled(value.get(0).toString()) : getTableFieldFiled(value)));
+            fieldsByMeasurement.computeIfAbsent(series.getName(), k -> new ArrayList<>()).addAll(fields);
+        }
+    }
+
+    private String quoteMeasurement(String measurement) {
+        return "\"" + measurement.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private <T> T awaitResult(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
             }
+            throw e;
+        }
+    }
 
-            // 查询当前表的数值字段
-            String showFieldSql = "show field keys from " + datasourceRequest.getTable();
-            List<QueryResult.Result> fieldResultList = executeSql(influxdbConfig, showFieldSql);
-            List<QueryResult.Series> fieldSeriesList = getSeriesListFromResult(fieldResultList);
-            if (CollectionUtils.isNotEmpty(fieldSeriesList)) {
-                for (QueryResult.Series series : fieldSeriesList) {
-                    Optional.ofNullable(series.getValues()).orElse(new ArrayList<>()).forEach(value -> {
-                        TableField tableField = getTableFieldFiled(value);
-                        list.add(tableField);
-                    });
-                }
+    /**
+     * 查询表的时间、标签以及数值字段，标签与数值字段的查询并发执行
+     *
+     * @param datasourceRequest
+     * @param table
+     * @return
+     */
+    private List<TableField> loadTableFields(DatasourceRequest datasourceRequest, String table) throws Exception {
+        String showTagSql = "show tag keys from " + table;
+        String showFieldSql = "show field keys from " + table;
+        Future<List<QueryResult.Result>> tagFuture = metadataExecutor.submit(() -> executeSql(datasourceRequest, showTagSql));
+        Future<List<QueryResult.Result>> fieldFuture = metadataExecutor.submit(() -> executeSql(datasourceRequest, showFieldSql));
+
+        List<TableField> list = new LinkedList<>();
+        list.add(getTableDefaultFiled());
+
+        // 当前表的所有标签字段
+        List<QueryResult.Series> seriesList;
+        List<QueryResult.Series> fieldSeriesList;
+        try {
+            seriesList = getSeriesListFromResult(awaitResult(tagFuture));
+            fieldSeriesList = getSeriesListFromResult(awaitResult(fieldFuture));
+        } finally {
+            tagFuture.cancel(true);
+            fieldFuture.cancel(true);
+        }
+        if (CollectionUtils.isNotEmpty(seriesList)) {
+            for (QueryResult.Series series : seriesList) {
+                Optional.ofNullable(series.getValues()).orElse(new ArrayList<>()).forEach(value -> {
+                    TableField tableField = getTableTagFiled(value.get(0).toString());
+                    list.add(tableField);
+                });
+            }
+        }
+
+        // 当前表的数值字段
+        if (CollectionUtils.isNotEmpty(fieldSeriesList)) {
+            for (QueryResult.Series series : fieldSeriesList) {
+                Optional.ofNullable(series.getValues()).orElse(new ArrayList<>()).forEach(value -> {
+                    TableField tableField = getTableFieldFiled(value);
+                    list.add(tableField);
+                });
             }
-        } catch (Exception e) {
-            DataEaseException.throwException("Data source connection exception: " + e.getMessage());
         }
         return list;
     }
@@ -155,9 +357,8 @@ public class InfluxdbDsProvider extends DefaultJdbcProvider {
     @Override
     public String checkStatus(DatasourceRequest datasourceRequest) {
         String queryStr = getCheckSql();
-        JdbcConfiguration influxdbConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), JdbcConfiguration.class);
         try {
-            executeSql(influxdbConfig, queryStr);
+            executeSql(datasourceRequest, queryStr);
         } catch (Exception e) {
             e.printStackTrace();
             DataEaseException.throwException(e.getMessage());
@@ -175,30 +376,47 @@ public class InfluxdbDsProvider extends DefaultJdbcProvider {
     }
 
     /**
-     * 使用 SQL 查询数据
+     * 使用 SQL 查询数据，客户端从注册表中复用
      *
      * @param sql
      * @return
      */
-    private List<QueryResult.Result> executeSql(JdbcConfiguration jdbcConfiguration, String sql) {
-        OkHttpClient.Builder builder = new OkHttpClient.Builder()
-                .readTimeout(120, TimeUnit.SECONDS);
-
-        InfluxDB influxDB = InfluxDBFactory.connect(getUrl(jdbcConfiguration), jdbcConfiguration.getUsername(), jdbcConfiguration.getPassword(), builder);
-        influxDB.setDatabase(jdbcConfiguration.getDataBase());
+    private List<QueryResult.Result> executeSql(DatasourceRequest datasourceRequest, String sql) {
+        InfluxDB influxDB = clientRegistry.getClient(datasourceRequest.getDatasource());
         QueryResult queryResult = influxDB.query(new Query(sql));
         return queryResult.getResults();
     }
 
-    private String getUrl(JdbcConfiguration jdbcConfiguration) {
-        return "http://" + jdbcConfiguration.getHost() + ":" + jdbcConfiguration.getPort();
+    /**
+     * 以分块方式执行查询，结果需要逐块读取
+     *
+     * @param datasourceRequest
+     * @param sql
+     * @return
+     */
+    private InfluxdbChunkedQuery executeChunkedSql(DatasourceRequest datasourceRequest, String sql) {
+        InfluxdbConfig influxdbConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), InfluxdbConfig.class);
+        int chunkSize = influxdbConfig.getChunkSize() != null && influxdbConfig.getChunkSize() > 0 ? influxdbConfig.getChunkSize() : DEFAULT_CHUNK_SIZE;
+        InfluxDB influxDB = clientRegistry.getClient(datasourceRequest.getDatasource());
+        return new InfluxdbChunkedQuery(influxDB, sql, chunkSize, CHUNK_TIMEOUT_MILLIS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        prefetchExecutor.shutdownNow();
+        metadataExecutor.shutdownNow();
+        clientRegistry.closeAll();
+        schemaCache.shutdown();
     }
 
     @Override
     public Map<String, List> fetchResultAndField(DatasourceRequest datasourceRequest) {
         try {
-            List<TableField> allFieldList = getTableFields(datasourceRequest);
-            return getDataResult(datasourceRequest, allFieldList);
+            // 与 getData 使用相同的请求指纹，相同查询正在执行时共享其结果与字段
+            return resultAndFieldCoalescer.execute(resultCacheKey(datasourceRequest), () -> {
+                List<TableField> allFieldList = getTableFields(datasourceRequest);
+                return getDataResult(datasourceRequest, allFieldList);
+            });
         } catch (Exception e) {
             DataEaseException.throwException(e);
         }
@@ -212,110 +430,42 @@ public class InfluxdbDsProvider extends DefaultJdbcProvider {
      * @param allFieldList
      * @return
      */
-    private Map<String, List> getDataResult(DatasourceRequest datasourceRequest, List<TableField> allFieldList) {
+    private Map<String, List> getDataResult(DatasourceRequest datasourceRequest, List<TableField> allFieldList) throws Exception {
         Map<String, List> resultMap = new HashMap<>();
 
-        try {
-            /*获取数据源中的数据*/
-            InfluxdbConfig dmConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), InfluxdbConfig.class);
-            String sql = datasourceRequest.getQuery();
-            List<QueryResult.Result> resultList = executeSql(dmConfig, sql);
-            List<QueryResult.Series> seriesList = getSeriesListFromResult(resultList);
-
-            // 当所有字段仅有时间字段时，根据表名重新获取所有字段
-            if (allFieldList.stream().allMatch(field -> StringUtils.equals("time", field.getFieldName()))
-                    && CollectionUtils.isNotEmpty(seriesList)) {
-                datasourceRequest.setTable(seriesList.get(0).getName());
-                allFieldList = getTableFields(datasourceRequest);
-            }
-
-            /*组织字段数据，包括查询返回的列字段和标签字段*/
-            List<TableField> fieldList = dealWithFields(seriesList, allFieldList);
-            resultMap.put("fieldList", fieldList);
-
-            /*组织数据行数据*/
-            List<ArrayList> dataRowList = new LinkedList<>();
-            if (CollectionUtils.isNotEmpty(seriesList)) {
-                dataRowList = resolveSeriesForFetchResultAndField(seriesList, datasourceRequest);
-            }
-
-            List<String[]> dataList = new LinkedList<>();
-            Optional.ofNullable(dataRowList).orElse(new ArrayList<>()).forEach(bo -> {
-                String[] row = new String[bo.size()];
-                for (int i = 0; i < bo.size(); i++) {
-                    row[i] = bo.get(i).toString();
+        /*获取数据源中的数据，逐块转换为行数据*/
+        List<TableField> fieldList = null;
+        InfluxdbColumnarResult dataList = new InfluxdbColumnarResult();
+        InfluxdbRowConverter rowConverter = InfluxdbRowConverter.forFetchResult(datasourceRequest);
+        try (InfluxdbChunkedQuery chunkedQuery = executeChunkedSql(datasourceRequest, datasourceRequest.getQuery())) {
+            QueryResult chunk;
+            while ((chunk = chunkedQuery.next()) != null) {
+                List<QueryResult.Series> seriesList = getSeriesListFromResult(chunk.getResults());
+                if (CollectionUtils.isEmpty(seriesList)) {
+                    continue;
                 }
-                dataList.add(row);
-            });
-            resultMap.put("dataList", dataList);
-        } catch (LogException e) {
-            throw e;
-        }
-
-        return resultMap;
-    }
-
-    private List<ArrayList> resolveSeriesForFetchResultAndField(List<QueryResult.Series> seriesList, DatasourceRequest datasourceRequest) {
-        List<ArrayList> dataRowList = new LinkedList<>();
 
-        for (QueryResult.Series series : seriesList) {
-            List<DatasetTableField> permissionFields = datasourceRequest.getPermissionFields();
-            if (CollectionUtils.isNotEmpty(permissionFields) && !datasourceRequest.isPreviewData()) {
-                /*过滤组件处理，取标签字段值*/
-                ArrayList rowValues = resolveTagValuesForFilter(series.getTags());
-                dataRowList.add(rowValues);
-            } else {
-                /*行数据集合处理，遍历行数据集合，处理空时间字段以及字段排序问题*/
-                List<List<Object>> rows = series.getValues();
-                Optional.ofNullable(rows).orElse(new ArrayList<>()).forEach(rowValues -> {
-                    // 处理之后的行数据
-                    ArrayList dealAfterRow = new ArrayList();
-
-                    // 查询总页数的情况下取下标为 1 的列
-                    if (datasourceRequest.isTotalPageFlag()) {
-                        if (rowValues.size() > 1) {
-                            dealAfterRow.add(((Double) rowValues.get(1)).intValue());
-                        }
-                    } else {
-                        Stream.iterate(0, i -> i + 1).limit(rowValues.size()).forEach(index -> {
-                            Object rowValue = fetchValueForRow(rowValues.get(index), index, rowValues.get(0).toString(), series.getColumns().get(index).contains("count"));
-                            if (rowValue != null) {
-                                dealAfterRow.add(rowValue);
-                            }
-                        });
-                        // 标签值处理，与字段列对应，在行数据最后添加
-                        dealAfterRow.addAll(resolveTagValuesForFilter(series.getTags()));
+                if (fieldList == null) {
+                    // 当所有字段仅有时间字段时，根据表名重新获取所有字段
+                    if (allFieldList.stream().allMatch(field -> StringUtils.equals("time", field.getFieldName()))) {
+                        datasourceRequest.setTable(seriesList.get(0).getName());
+                        allFieldList = getTableFields(datasourceRequest);
                     }
 
-                    dataRowList.add(dealAfterRow);
-                });
-            }
-        }
-
-        return dataRowList;
-    }
-
+                    /*组织字段数据，包括查询返回的列字段和标签字段*/
+                    fieldList = dealWithFields(seriesList, allFieldList);
+                }
 
-    private Object fetchValueForRow(Object value, Integer index, String time, Boolean isCountColumn) {
-        if (index == 0) {
-//            return dataFormat(time);
-            return time;
-        }
-        if (value == null) {
-            return "";
-        } else {
-            // double类型数值科学计数法转换
-            if (value.getClass().equals(Double.class) &&
-                    Pattern.compile("^[+-]?\\d+\\.?\\d*[Ee][+-]?\\d+$").matcher(value.toString()).find()) {
-                return new BigDecimal(((Double) value).doubleValue());
-            } else if (isCountColumn && value instanceof Double) {
-                return ((Double) value).intValue();
-            } else {
-                return value;
+                /*组织数据行数据*/
+                rowConverter.convert(seriesList, dataList);
             }
         }
-    }
 
+        dataList.compact();
+        resultMap.put("fieldList", fieldList != null ? fieldList : new ArrayList<>());
+        resultMap.put("dataList", dataList);
+        return resultMap;
+    }
 
     private List<TableField> dealWithFields(List<QueryResult.Series> seriesList, List<TableField> allFieldList) {
         List<TableField> tableFieldList = new ArrayList<>();
@@ -350,144 +500,6 @@ public class InfluxdbDsProvider extends DefaultJdbcProvider {
         return timeIndex;
     }
 
-    /**
-     * 过滤组件处理，取标签字段值
-     * @param tagMap
-     * @return
-     */
-    private ArrayList resolveTagValuesForFilter(Map<String, String> tagMap) {
-        ArrayList rowVales = new ArrayList();
-        if (tagMap != null && !tagMap.isEmpty()) {
-            for (String key : tagMap.keySet()) {
-                rowVales.add(StringUtils.isNotEmpty(tagMap.get(key)) ? tagMap.get(key) : "");
-            }
-        }
-        return rowVales;
-    }
-
-    private List<Object> sortValueForRow(Object value, Integer timeIndex, Integer index, String time, Boolean isCountColumn) {
-        List<Object> values = new ArrayList<>();
-        if (index == 0) {
-            if (timeIndex != null && timeIndex - 1 == 0) {
-                values.add(time);
-                return values;
-            }
-            return null;
-        }
-
-        if (value == null) {
-            values.add("");
-        } else {
-            // double类型数值科学计数法转换
-            if (value.getClass().equals(Double.class) &&
-                    Pattern.compile("^[+-]?\\d+\\.?\\d*[Ee][+-]?\\d+$").matcher(value.toString()).find()) {
-                values.add(new BigDecimal(((Double) value).doubleValue()));
-            } else if (isCountColumn && value instanceof Double) {
-                values.add(((Double) value).intValue());
-            } else {
-                values.add(value);
-            }
-        }
-
-        // 明细表中有时间列
-        if (timeIndex != null && timeIndex-1 == index) {
-            values.add(time);
-        }
-        return values;
-    }
-
-    private Object dealWithValueForRow(Object value, Integer timeIndex, Integer index, String time, Boolean isCountColumn) {
-        if (index == 0) {
-            return null;
-        }
-        // 明细表中有时间列
-        if (timeIndex != null && timeIndex == index) {
-            return time;
-        }
-        if (value == null) {
-            return "";
-        } else {
-            // double类型数值科学计数法转换
-            if (value.getClass().equals(Double.class) &&
-                    Pattern.compile("^[+-]?\\d+\\.?\\d*[Ee][+-]?\\d+$").matcher(value.toString()).find()) {
-                return new BigDecimal(((Double) value).doubleValue());
-            } else if (isCountColumn && value instanceof Double) {
-                return ((Double) value).intValue();
-            } else {
-                return value;
-            }
-        }
-    }
-
-    private List<ArrayList> resolveSeries(List<QueryResult.Series> seriesList, Integer timeIndex, DatasourceRequest datasourceRequest) {
-        List<ArrayList> dataRowList = new LinkedList<>();
-
-        Integer xCount = datasourceRequest.getXAxis() != null ? datasourceRequest.getXAxis().size() : 0;
-        Integer yCount = datasourceRequest.getYAxis() != null ? datasourceRequest.getYAxis().size() : 0;
-
-        for (QueryResult.Series series : seriesList) {
-            List<DatasetTableField> permissionFields = datasourceRequest.getPermissionFields();
-            if (CollectionUtils.isNotEmpty(permissionFields) && !datasourceRequest.isPreviewData()) {
-                /*过滤组件处理，取标签字段值*/
-                ArrayList rowValues = resolveTagValuesForFilter(series.getTags());
-                dataRowList.add(rowValues);
-            } else {
-                /*行数据集合处理，遍历行数据集合，处理空时间字段以及字段排序问题*/
-                List<List<Object>> rows = series.getValues();
-                Optional.ofNullable(rows).orElse(new ArrayList<>()).forEach(rowValues -> {
-                    // 处理之后的行数据
-                    ArrayList dealAfterRow = new ArrayList();
-
-                    // 查询总页数的情况下取下标为 1 的列
-                    if (datasourceRequest.isTotalPageFlag()) {
-                        if (rowValues.size() > 1) {
-                            dealAfterRow.add(((Double) rowValues.get(1)).intValue());
-                        }
-                    } else {
-                        Stream.iterate(0, i -> i + 1).limit(rowValues.size()).forEach(index -> {
-                            if (datasourceRequest.isPreviewData()) {
-                                if (CollectionUtils.isEmpty(datasourceRequest.getPermissionFields())) {
-//                                    Object rowValue = fetchValueForRow(rowValues.get(index), index, dataFormat(rowValues.get(0).toString()), series.getColumns().get(index).contains("count"));
-                                    Object rowValue = fetchValueForRow(rowValues.get(index), index, rowValues.get(0).toString(), series.getColumns().get(index).contains("count"));
-                                    if (rowValue != null) {
-                                        dealAfterRow.add(rowValue);
-                                    }
-                                } else if (datasourceRequest.getPermissionFields().stream().anyMatch(field -> StringUtils.equals(series.getColumns().get(index), field.getOriginName()))) {
-//                                    Object rowValue = fetchValueForRow(rowValues.get(index), index, dataFormat(rowValues.get(0).toString()), series.getColumns().get(index).contains("count"));
-                                    Object rowValue = fetchValueForRow(rowValues.get(index), index, rowValues.get(0).toString(), series.getColumns().get(index).contains("count"));
-                                    if (rowValue != null) {
-                                        dealAfterRow.add(rowValue);
-                                    }
-                                }
-                            } else {
-                                if (series.getColumns().size() == xCount + yCount) {
-//                                    List<Object> rowValue = sortValueForRow(rowValues.get(index), timeIndex, index, dataFormat(rowValues.get(0).toString()), series.getColumns().get(index).contains("count"));
-                                    List<Object> rowValue = sortValueForRow(rowValues.get(index), timeIndex, index, rowValues.get(0).toString(), series.getColumns().get(index).contains("count"));
-                                    if (rowValue != null) {
-                                        dealAfterRow.addAll(rowValue);
-                                    }
-                                } else {
-                                    // timeIndex+1 是因为influxdb返回的第一个字段time是自带的，不算在下标范围内
-//                                    Object rowValue = dealWithValueForRow(rowValues.get(index), timeIndex, index, dataFormat(rowValues.get(0).toString()), series.getColumns().get(index).contains("count"));
-                                    Object rowValue = dealWithValueForRow(rowValues.get(index), timeIndex, index, rowValues.get(0).toString(), series.getColumns().get(index).contains("count"));
-                                    if (rowValue != null) {
-                                        dealAfterRow.add(rowValue);
-                                    }
-                                }
-                            }
-                        });
-                        // 标签值处理，与字段列对应，在行数据最后添加
-                        dealAfterRow.addAll(resolveTagValuesForFilter(series.getTags()));
-                    }
-
-                    dataRowList.add(dealAfterRow);
-                });
-            }
-        }
-
-        return dataRowList;
-    }
-
     /**
      * 封装字段信息
      * @param columns
@@ -528,48 +540,54 @@ public class InfluxdbDsProvider extends DefaultJdbcProvider {
 
     @Override
     public List<String[]> getData(DatasourceRequest request) {
-        List<String[]> resultList = new LinkedList<>();
+        InfluxdbConfig influxdbConfig = new Gson().fromJson(request.getDatasource().getConfiguration(), InfluxdbConfig.class);
+        Integer resultCacheTtl = influxdbConfig.getResultCacheTtl();
+        if (influxdbQueryProvider.isCountQuery(request.getQuery())) {
+            // 明细总行数按计数缓存有效期缓存，翻页时不再重复计数
+            resultCacheTtl = influxdbConfig.getCountCacheTtl();
+        }
+        String key = resultCacheKey(request);
         try {
-            List<ArrayList> dataRowList = new LinkedList<>();
-            try {
-                /*获取数据源中的数据*/
-                InfluxdbConfig dmConfig = new Gson().fromJson(request.getDatasource().getConfiguration(), InfluxdbConfig.class);
-                String sql = request.getQuery();
-                List<QueryResult.Result> influxDBResultList = executeSql(dmConfig, sql);
-                List<QueryResult.Series> seriesList = getSeriesListFromResult(influxDBResultList);
-
-                /*组织数据行数据*/
-                if (CollectionUtils.isNotEmpty(seriesList)) {
-                    Integer timeIndex = validateContainsTimeField(request);
-                    dataRowList = resolveSeries(seriesList, timeIndex, request);
-                }
-            } catch (LogException e) {
-                throw e;
+            // 相同查询正在执行时共享其结果
+            if (resultCacheTtl == null || resultCacheTtl <= 0) {
+                return queryCoalescer.execute(key, () -> queryData(request));
             }
-
-            /*数据格式转换为字符数组集合*/
-            resultList = dataFormatToStringArrayList(dataRowList, request.getQuery());
+            return resultCache.get(key, resultCacheTtl * 1000L, () -> queryCoalescer.execute(key, () -> queryData(request)));
         } catch (Exception e) {
-            DataEaseException.throwException("Data source connection exception: " + e.getMessage());
+            DataEaseException.throwException(e);
         }
-        return resultList;
+        return new ArrayList<>();
     }
 
     /**
-     * 数据格式转换为字符数组集合
-     * @param list
-     * @param querySql
+     * 查询结果缓存与相同查询合并的键：数据源、最终 SQL 以及影响结果的权限字段与视图字段
+     *
+     * @param datasourceRequest
      * @return
      */
-    private List<String[]> dataFormatToStringArrayList(List<ArrayList> list, String querySql) {
-        List<String[]> resultList = new LinkedList<>();
-        Optional.ofNullable(list).orElse(new ArrayList<>()).forEach(bo -> {
-            String[] row = new String[bo.size()];
-            for (int i = 0; i < bo.size(); i++) {
-                row[i] = bo.get(i).toString();
+    private String resultCacheKey(DatasourceRequest datasourceRequest) {
+        return ResultCache.key(datasourceRequest.getDatasource().getId(), datasourceRequest.getDatasource().getConfiguration(),
+                datasourceRequest.getQuery(), datasourceRequest.isPreviewData(), datasourceRequest.isTotalPageFlag(),
+                ResultCache.names(datasourceRequest.getPermissionFields(), field -> field.getId() + ":" + field.getOriginName()),
+                ResultCache.names(datasourceRequest.getXAxis(), ChartViewFieldDTO::getOriginName),
+                ResultCache.names(datasourceRequest.getYAxis(), ChartViewFieldDTO::getOriginName));
+    }
+
+    private List<String[]> queryData(DatasourceRequest request) {
+        InfluxdbColumnarResult resultList = new InfluxdbColumnarResult();
+        InfluxdbRowConverter rowConverter = InfluxdbRowConverter.forChartData(request, validateContainsTimeField(request));
+        /*获取数据源中的数据，每个分块直接转换为字符数组，不再保留完整的查询结果*/
+        try (InfluxdbChunkedQuery chunkedQuery = executeChunkedSql(request, request.getQuery())) {
+            QueryResult chunk;
+            while ((chunk = chunkedQuery.next()) != null) {
+                List<QueryResult.Series> seriesList = getSeriesListFromResult(chunk.getResults());
+                /*数据格式转换为字符数组集合*/
+                rowConverter.convert(seriesList, resultList);
             }
-            resultList.add(row);
-        });
+        } catch (Exception e) {
+            DataEaseException.throwException("Data source connection exception: " + e.getMessage());
+        }
+        resultList.compact();
         return resultList;
     }
 
@@ -577,13 +595,12 @@ public class InfluxdbDsProvider extends DefaultJdbcProvider {
     public List<TableField> fetchResultField(DatasourceRequest datasourceRequest) {
         List<TableField> fieldList = new ArrayList<>();
 
-        InfluxdbConfig dmConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), InfluxdbConfig.class);
         try {
             List<TableField> allFieldList = getTableFields(datasourceRequest);
 
             String sql = datasourceRequest.getQuery();
 
-            List<QueryResult.Result> resultList = executeSql(dmConfig, sql);
+            List<QueryResult.Result> resultList = executeSql(datasourceRequest, sql);
 
             List<QueryResult.Series> seriesList = getSeriesListFromResult(resultList);
 
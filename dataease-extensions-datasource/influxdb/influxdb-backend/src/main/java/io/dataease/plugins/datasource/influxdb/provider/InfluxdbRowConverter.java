@@ -0,0 +1,200 @@
+package io.dataease.plugins.datasource.influxdb.provider;
+
+import io.dataease.plugins.common.base.domain.DatasetTableField;
+import io.dataease.plugins.common.request.datasource.DatasourceRequest;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.influxdb.dto.QueryResult;
+
+import java.util.*;
+
+/**
+ * InfluxDB 查询结果行转换
+ * 每个 series 只计算一次列计划（输出列顺序、时间列位置、count 列标记、标签值），
+ * 然后直接填充列式结果，不再经过中间的 ArrayList / LinkedList。
+ */
+public class InfluxdbRowConverter {
+
+    // 列计划中代表时间值的位置
+    private static final int TIME_SLOT = -1;
+
+    private static final String[] EMPTY_ROW = new String[0];
+
+    // 过滤组件：只取标签字段值
+    private final boolean tagOnly;
+
+    // 查询总页数：只取下标为 1 的列
+    private final boolean totalPage;
+
+    private final boolean previewData;
+
+    private final Set<String> permissionFieldNames;
+
+    private final int axisCount;
+
+    private final Integer timeIndex;
+
+    public InfluxdbRowConverter(boolean tagOnly, boolean totalPage, boolean previewData, Set<String> permissionFieldNames, int axisCount, Integer timeIndex) {
+        this.tagOnly = tagOnly;
+        this.totalPage = totalPage;
+        this.previewData = previewData;
+        this.permissionFieldNames = permissionFieldNames;
+        this.axisCount = axisCount;
+        this.timeIndex = timeIndex;
+    }
+
+    /**
+     * fetchResultAndField 使用：返回全部列，时间列在首位
+     *
+     * @param datasourceRequest
+     * @return
+     */
+    public static InfluxdbRowConverter forFetchResult(DatasourceRequest datasourceRequest) {
+        boolean tagOnly = CollectionUtils.isNotEmpty(datasourceRequest.getPermissionFields()) && !datasourceRequest.isPreviewData();
+        return new InfluxdbRowConverter(tagOnly, datasourceRequest.isTotalPageFlag(), true, Collections.emptySet(), 0, null);
+    }
+
+    /**
+     * getData 使用：按视图横轴、纵轴以及权限字段组织列
+     *
+     * @param datasourceRequest
+     * @param timeIndex
+     * @return
+     */
+    public static InfluxdbRowConverter forChartData(DatasourceRequest datasourceRequest, Integer timeIndex) {
+        List<DatasetTableField> permissionFields = datasourceRequest.getPermissionFields();
+        boolean tagOnly = CollectionUtils.isNotEmpty(permissionFields) && !datasourceRequest.isPreviewData();
+        Set<String> permissionFieldNames = new HashSet<>();
+        if (CollectionUtils.isNotEmpty(permissionFields)) {
+            for (DatasetTableField field : permissionFields) {
+                permissionFieldNames.add(field.getOriginName());
+            }
+        }
+        int xCount = datasourceRequest.getXAxis() != null ? datasourceRequest.getXAxis().size() : 0;
+        int yCount = datasourceRequest.getYAxis() != null ? datasourceRequest.getYAxis().size() : 0;
+        return new InfluxdbRowConverter(tagOnly, datasourceRequest.isTotalPageFlag(), datasourceRequest.isPreviewData(), permissionFieldNames, xCount + yCount, timeIndex);
+    }
+
+    /**
+     * 转换 series 集合，结果追加到 rows 中，数值直接写入列式结果，不生成中间字符串
+     *
+     * @param seriesList
+     * @param rows
+     */
+    public void convert(List<QueryResult.Series> seriesList, InfluxdbColumnarResult rows) {
+        if (seriesList == null) {
+            return;
+        }
+        for (QueryResult.Series series : seriesList) {
+            String[] tagValues = tagValues(series.getTags());
+            if (tagOnly) {
+                rows.addRow(tagValues);
+                continue;
+            }
+
+            List<List<Object>> values = series.getValues();
+            if (values == null) {
+                continue;
+            }
+            if (totalPage) {
+                for (List<Object> value : values) {
+                    rows.addRow(value.size() > 1 ? new String[]{Integer.toString(((Double) value.get(1)).intValue())} : EMPTY_ROW);
+                }
+                continue;
+            }
+
+            List<String> columns = series.getColumns();
+            int[] slots = columnSlots(columns);
+            boolean[] countColumns = new boolean[columns.size()];
+            for (int i = 0; i < columns.size(); i++) {
+                countColumns[i] = columns.get(i).contains("count");
+            }
+
+            int width = slots.length + tagValues.length;
+            for (List<Object> value : values) {
+                int row = rows.newRow(width);
+                String time = Objects.toString(value.get(0), "");
+                for (int i = 0; i < slots.length; i++) {
+                    int slot = slots[i];
+                    if (slot == TIME_SLOT) {
+                        rows.setString(row, i, time);
+                    } else if (slot < value.size()) {
+                        rows.setValue(row, i, value.get(slot), countColumns[slot]);
+                    } else {
+                        rows.setString(row, i, "");
+                    }
+                }
+                for (int i = 0; i < tagValues.length; i++) {
+                    rows.setString(row, slots.length + i, tagValues[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 计算输出列对应的原始列下标，TIME_SLOT 表示输出时间值
+     *
+     * @param columns
+     * @return
+     */
+    private int[] columnSlots(List<String> columns) {
+        int[] slots = new int[columns.size() * 2];
+        int size = 0;
+        if (previewData) {
+            for (int index = 0; index < columns.size(); index++) {
+                if (permissionFieldNames.isEmpty() || permissionFieldNames.contains(columns.get(index))) {
+                    slots[size++] = index == 0 ? TIME_SLOT : index;
+                }
+            }
+        } else if (columns.size() == axisCount) {
+            // 字段顺序与视图一致，时间列插入到对应位置
+            for (int index = 0; index < columns.size(); index++) {
+                if (index == 0) {
+                    if (timeIndex != null && timeIndex == 1) {
+                        slots[size++] = TIME_SLOT;
+                    }
+                    continue;
+                }
+                slots[size++] = index;
+                if (timeIndex != null && timeIndex - 1 == index) {
+                    slots[size++] = TIME_SLOT;
+                }
+            }
+        } else {
+            // timeIndex 不减一是因为 influxdb 返回的第一个字段 time 是自带的，不算在下标范围内
+            for (int index = 1; index < columns.size(); index++) {
+                slots[size++] = timeIndex != null && timeIndex == index ? TIME_SLOT : index;
+            }
+        }
+        return Arrays.copyOf(slots, size);
+    }
+
+    private String[] tagValues(Map<String, String> tagMap) {
+        if (tagMap == null || tagMap.isEmpty()) {
+            return EMPTY_ROW;
+        }
+        String[] values = new String[tagMap.size()];
+        int i = 0;
+        for (String value : tagMap.values()) {
+            values[i++] = StringUtils.isNotEmpty(value) ? value : "";
+        }
+        return values;
+    }
+
+    /**
+     * 单元格取值，double 类型的科学计数法转换为普通数值，count 列转换为整数
+     *
+     * @param value
+     * @param countColumn
+     * @return
+     */
+    static String formatValue(Object value, boolean countColumn) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof Double) {
+            return InfluxdbColumnarResult.formatDouble((Double) value, countColumn);
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,206 @@
+package io.dataease.plugins.datasource.influxdb.provider;
+
+import io.dataease.plugins.common.base.domain.Datasource;
+import io.dataease.plugins.common.dto.datasource.TableField;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * InfluxDB 表结构缓存
+ * 按数据源、measurement 缓存 show tag keys / show field keys 的结果，
+ * 超过有效期后重新查询，超过容量后淘汰最久未使用的表；
+ * 开启后台刷新时，条目过半有效期后先返回旧值并异步刷新。
+ */
+public class InfluxdbSchemaCache {
+
+    private static final String KEY_SEPARATOR = "\u0000";
+
+    private final long ttlMillis;
+
+    private final long refreshAfterMillis;
+
+    private final Map<String, CachedFields> entries;
+
+    private final Map<String, Integer> configHashes = new ConcurrentHashMap<>();
+
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService refreshExecutor;
+
+    public InfluxdbSchemaCache(long ttlMillis, int maxSize, boolean backgroundRefresh) {
+        this.ttlMillis = ttlMillis;
+        this.refreshAfterMillis = backgroundRefresh ? ttlMillis / 2 : Long.MAX_VALUE;
+        this.entries = new LinkedHashMap<String, CachedFields>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedFields> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.refreshExecutor = backgroundRefresh ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "influxdb-schema-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * 读取表字段，缓存不存在或已过期时通过 loader 查询
+     *
+     * @param datasource
+     * @param measurement
+     * @param loader
+     * @return
+     * @throws Exception
+     */
+    public List<TableField> get(Datasource datasource, String measurement, Callable<List<TableField>> loader) throws Exception {
+        String key = entryKey(datasource, measurement);
+        long now = System.currentTimeMillis();
+        CachedFields entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null && now - entry.loadTime < ttlMillis) {
+            if (now - entry.loadTime >= refreshAfterMillis) {
+                scheduleRefresh(key, loader);
+            }
+            return copyOf(entry.fields);
+        }
+
+        List<TableField> fields = loader.call();
+        put(key, fields);
+        return copyOf(fields);
+    }
+
+    /**
+     * 读取未过期的表字段，不存在时返回 null
+     *
+     * @param datasource
+     * @param measurement
+     * @return
+     */
+    public List<TableField> getIfPresent(Datasource datasource, String measurement) {
+        String key = entryKey(datasource, measurement);
+        CachedFields entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null || System.currentTimeMillis() - entry.loadTime >= ttlMillis) {
+            return null;
+        }
+        return copyOf(entry.fields);
+    }
+
+    /**
+     * 表字段是否已缓存且未过期，到达刷新时间的条目由读取时的后台刷新处理
+     *
+     * @param datasource
+     * @param measurement
+     * @return
+     */
+    public boolean isFresh(Datasource datasource, String measurement) {
+        String key = entryKey(datasource, measurement);
+        CachedFields entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        return entry != null && System.currentTimeMillis() - entry.loadTime < ttlMillis;
+    }
+
+    /**
+     * 写入批量查询得到的表字段
+     *
+     * @param datasource
+     * @param measurement
+     * @param fields
+     */
+    public void put(Datasource datasource, String measurement, List<TableField> fields) {
+        put(entryKey(datasource, measurement), fields);
+    }
+
+    /**
+     * 清除该数据源下的所有缓存；配置变化时读取会自动失效，无需调用
+     *
+     * @param datasource
+     */
+    public void invalidate(Datasource datasource) {
+        String datasourceKey = InfluxdbClientRegistry.datasourceKey(datasource);
+        configHashes.remove(datasourceKey);
+        invalidate(datasourceKey);
+    }
+
+    public void shutdown() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private String entryKey(Datasource datasource, String measurement) {
+        String datasourceKey = InfluxdbClientRegistry.datasourceKey(datasource);
+        // 数据源配置变更后，该数据源下的缓存全部失效
+        Integer configHash = StringUtils.defaultString(datasource.getConfiguration()).hashCode();
+        Integer previousHash = configHashes.put(datasourceKey, configHash);
+        if (previousHash != null && !previousHash.equals(configHash)) {
+            invalidate(datasourceKey);
+        }
+        return datasourceKey + KEY_SEPARATOR + measurement;
+    }
+
+    private void invalidate(String datasourceKey) {
+        String prefix = datasourceKey + KEY_SEPARATOR;
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    private void put(String key, List<TableField> fields) {
+        synchronized (entries) {
+            entries.put(key, new CachedFields(copyOf(fields), System.currentTimeMillis()));
+        }
+    }
+
+    private void scheduleRefresh(String key, Callable<List<TableField>> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    put(key, loader.call());
+                } catch (Exception ignore) {
+                    // 刷新失败时保留旧值，过期后由查询线程重新加载
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    private static List<TableField> copyOf(List<TableField> fields) {
+        List<TableField> result = new ArrayList<>(fields.size());
+        for (TableField field : fields) {
+            TableField tableField = new TableField();
+            tableField.setFieldName(field.getFieldName());
+            tableField.setRemarks(field.getRemarks());
+            tableField.setFieldType(field.getFieldType());
+            result.add(tableField);
+        }
+        return result;
+    }
+
+    private static class CachedFields {
+        private final List<TableField> fields;
+        private final long loadTime;
+
+        private CachedFields(List<TableField> fields, long loadTime) {
+            this.fields = fields;
+            this.loadTime = loadTime;
+        }
+    }
+}
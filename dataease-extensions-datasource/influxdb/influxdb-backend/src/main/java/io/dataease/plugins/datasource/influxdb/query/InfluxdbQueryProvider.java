@@ -16,6 +16,10 @@ import io.dataease.plugins.common.dto.sqlObj.SQLObj;
 import io.dataease.plugins.common.request.chart.ChartExtFilterRequest;
 import io.dataease.plugins.common.request.permission.DataSetRowPermissionsTreeDTO;
 import io.dataease.plugins.common.request.permission.DatasetRowPermissionsTreeItem;
+import io.dataease.plugins.datasource.common.CalcFieldCache;
+import io.dataease.plugins.datasource.common.CountRegistry;
+import io.dataease.plugins.datasource.common.SqlCache;
+import io.dataease.plugins.datasource.common.TemplateRegistry;
 import io.dataease.plugins.datasource.entity.JdbcConfiguration;
 import io.dataease.plugins.datasource.entity.PageInfo;
 import io.dataease.plugins.datasource.influxdb.dto.InfluxdbSQLObj;
@@ -29,7 +33,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.stringtemplate.v4.ST;
 import org.stringtemplate.v4.STGroup;
-import org.stringtemplate.v4.STGroupFile;
 
 import javax.annotation.Resource;
 import java.io.BufferedReader;
@@ -41,8 +44,6 @@ import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.jar.JarFile;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -55,6 +56,14 @@ public class InfluxdbQueryProvider extends QueryProvider {
     @Resource
     private DatasetTableFieldMapper datasetTableFieldMapper;
 
+    private final CalcFieldCache<DatasetTableField> calcFieldCache = new CalcFieldCache<>(this::selectCalcFields, DatasetTableField::getId);
+
+    private final SqlCache sqlCache = new SqlCache();
+
+    private static final int COUNT_REGISTRY_MAX_ENTRIES = 1000;
+
+    private final CountRegistry countRegistry = new CountRegistry(COUNT_REGISTRY_MAX_ENTRIES);
+
     @Value("${dataease.plugin.dir:/opt/dataease/plugins/}")
     private String pluginDir="/opt/dataease/plugins/";
 
@@ -92,6 +101,7 @@ public class InfluxdbQueryProvider extends QueryProvider {
     @Override
     public String createQuerySQL(String table, List<DatasetTableField> fields, boolean isGroup, Datasource ds,
                                  List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<DeSortField> sortFields) {
+        calcFieldCache.prefetchInputs(fields, fieldCustomFilter, rowPermissionsTree);
         SQLObj tableObj = SQLObj.builder()
                 .tableName(table)
                 .build();
@@ -99,7 +109,7 @@ public class InfluxdbQueryProvider extends QueryProvider {
         setSchema(tableObj, ds);
         List<SQLObj> xFields = xFields(table, fields);
 
-        STGroup stg = new STGroupFile(pluginDir + InfluxdbConstants.INFLUXDB_SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(pluginDir + InfluxdbConstants.INFLUXDB_SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("previewSql");
         st_sql.add("isGroup", isGroup);
         if (CollectionUtils.isNotEmpty(xFields))
@@ -205,6 +215,7 @@ public class InfluxdbQueryProvider extends QueryProvider {
     }
 
     private List<SQLObj> xFields(String table, List<DatasetTableField> fields) {
+        calcFieldCache.prefetchInputs(fields);
         SQLObj tableObj = SQLObj.builder()
                 .tableName(table)
                 .build();
@@ -303,6 +314,14 @@ public class InfluxdbQueryProvider extends QueryProvider {
     public String getSQL(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis,
                          List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList,
                          Datasource ds, ChartViewWithBLOBs view) {
+        String cacheKey = sqlCacheKey("getSQL", table, ds, view, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
+        return sqlCache.get(cacheKey, () -> buildSQL(table, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view));
+    }
+
+    private String buildSQL(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis,
+                            List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList,
+                            Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table
                         : String.format(InfluxdbConstants.KEYWORD_TABLE, table))
@@ -406,7 +425,7 @@ public class InfluxdbQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(pluginDir + InfluxdbConstants.INFLUXDB_SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(pluginDir + InfluxdbConstants.INFLUXDB_SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(gFields))
             st_sql.add("groups", gFields);
@@ -487,6 +506,7 @@ public class InfluxdbQueryProvider extends QueryProvider {
     }
 
     private String originalTableInfo(String table, List<ChartViewFieldDTO> xAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table
                         : String.format(InfluxdbConstants.KEYWORD_TABLE, table))
@@ -549,7 +569,7 @@ public class InfluxdbQueryProvider extends QueryProvider {
         List<SQLObj> orders = new ArrayList<>();
         orders.addAll(xOrders);
 
-        STGroup stg = new STGroupFile(pluginDir + InfluxdbConstants.INFLUXDB_SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(pluginDir + InfluxdbConstants.INFLUXDB_SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("previewSql");
         st_sql.add("isGroup", false);
         if (CollectionUtils.isNotEmpty(xFields))
@@ -576,6 +596,12 @@ public class InfluxdbQueryProvider extends QueryProvider {
 
     @Override
     public String getSQLTableInfo(String table, List<ChartViewFieldDTO> xAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view) {
+        String cacheKey = sqlCacheKey("getSQLTableInfo", table, ds, view, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
+        return sqlCache.get(cacheKey, () -> buildSQLTableInfo(table, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view));
+    }
+
+    private String buildSQLTableInfo(String table, List<ChartViewFieldDTO> xAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table
                         : String.format(InfluxdbConstants.KEYWORD_TABLE, table))
@@ -629,6 +655,12 @@ public class InfluxdbQueryProvider extends QueryProvider {
 
     @Override
     public String getSQLStack(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, List<ChartViewFieldDTO> extStack, Datasource ds, ChartViewWithBLOBs view) {
+        String cacheKey = sqlCacheKey("getSQLStack", table, ds, view, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extStack);
+        return sqlCache.get(cacheKey, () -> buildSQLStack(table, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extStack, ds, view));
+    }
+
+    private String buildSQLStack(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, List<ChartViewFieldDTO> extStack, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, yAxis, extStack, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table
                         : String.format(InfluxdbConstants.KEYWORD_TABLE, table))
@@ -732,7 +764,7 @@ public class InfluxdbQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(pluginDir + InfluxdbConstants.INFLUXDB_SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(pluginDir + InfluxdbConstants.INFLUXDB_SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(gFields))
             st_sql.add("groups", gFields);
@@ -769,6 +801,14 @@ public class InfluxdbQueryProvider extends QueryProvider {
     public String getSQLScatter(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis,
                                 List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList,
                                 List<ChartViewFieldDTO> extBubble, Datasource ds, ChartViewWithBLOBs view) {
+        String cacheKey = sqlCacheKey("getSQLScatter", table, ds, view, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extBubble);
+        return sqlCache.get(cacheKey, () -> buildSQLScatter(table, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extBubble, ds, view));
+    }
+
+    private String buildSQLScatter(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis,
+                                   List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList,
+                                   List<ChartViewFieldDTO> extBubble, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, yAxis, extBubble, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table
                         : String.format(InfluxdbConstants.KEYWORD_TABLE, table))
@@ -865,7 +905,7 @@ public class InfluxdbQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(pluginDir + InfluxdbConstants.INFLUXDB_SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(pluginDir + InfluxdbConstants.INFLUXDB_SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(gFields))
             st_sql.add("groups", gFields);
@@ -907,7 +947,15 @@ public class InfluxdbQueryProvider extends QueryProvider {
     public String getSQLSummary(String table, List<ChartViewFieldDTO> yAxis,
                                 List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList,
                                 ChartViewWithBLOBs view, Datasource ds) {
+        String cacheKey = sqlCacheKey("getSQLSummary", table, ds, view, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
+        return sqlCache.get(cacheKey, () -> buildSQLSummary(table, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, view, ds));
+    }
+
+    private String buildSQLSummary(String table, List<ChartViewFieldDTO> yAxis,
+                                   List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList,
+                                   ChartViewWithBLOBs view, Datasource ds) {
         // 字段汇总 排序等
+        calcFieldCache.prefetchInputs(yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table
                         : String.format(InfluxdbConstants.KEYWORD_TABLE, table))
@@ -967,7 +1015,7 @@ public class InfluxdbQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(pluginDir + InfluxdbConstants.INFLUXDB_SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(pluginDir + InfluxdbConstants.INFLUXDB_SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(yFields))
             st_sql.add("aggregators", yFields);
@@ -1761,27 +1809,28 @@ public class InfluxdbQueryProvider extends QueryProvider {
     }
 
     private String calcFieldRegex(String originField, SQLObj tableObj) {
-        originField = originField.replaceAll("[\\t\\n\\r]]", "");
-        // 正则提取[xxx]
-        String regex = "\\[(.*?)]";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(originField);
-        Set<String> ids = new HashSet<>();
-        while (matcher.find()) {
-            String id = matcher.group(1);
-            ids.add(id);
-        }
-        if (CollectionUtils.isEmpty(ids)) {
-            return originField;
-        }
+        return calcFieldCache.resolve(originField, field -> String.format(InfluxdbConstants.KEYWORD_FIX, tableObj.getTableAlias(), field.getOriginName()));
+    }
+
+    private List<DatasetTableField> selectCalcFields(List<String> ids) {
         DatasetTableFieldExample datasetTableFieldExample = new DatasetTableFieldExample();
-        datasetTableFieldExample.createCriteria().andIdIn(new ArrayList<>(ids));
-        List<DatasetTableField> calcFields = datasetTableFieldMapper.selectByExample(datasetTableFieldExample);
-        for (DatasetTableField ele : calcFields) {
-            originField = originField.replaceAll("\\[" + ele.getId() + "]",
-                    String.format(InfluxdbConstants.KEYWORD_FIX, tableObj.getTableAlias(), ele.getOriginName()));
-        }
-        return originField;
+        datasetTableFieldExample.createCriteria().andIdIn(ids);
+        return datasetTableFieldMapper.selectByExample(datasetTableFieldExample);
+    }
+
+    /**
+     * SQL 缓存键
+     *
+     * @param method
+     * @param table
+     * @param ds
+     * @param view
+     * @param inputs
+     * @return
+     */
+    private String sqlCacheKey(String method, String table, Datasource ds, ChartViewWithBLOBs view, Object... inputs) {
+        return calcFieldCache.sqlCacheKey(DatasetTableField::getOriginName, method, table, ds == null ? null : ds.getId(), ds == null ? null : ds.getConfiguration(),
+                view == null ? null : view.getResultMode(), view == null ? null : view.getResultCount(), inputs);
     }
 
     private String sqlLimit(String sql, ChartViewWithBLOBs view, List<SQLObj> xFields, List<SQLObj> yFields) {
@@ -1886,13 +1935,51 @@ public class InfluxdbQueryProvider extends QueryProvider {
         return directionField;
     }
 
+    /**
+     * 是否为按计数策略生成的总行数查询，取数时按计数缓存有效期缓存结果
+     *
+     * @param sql
+     * @return
+     */
+    public boolean isCountQuery(String sql) {
+        return countRegistry.contains(sql);
+    }
+
+    /**
+     * 明细总行数：
+     * exact（默认）每次翻页都精确计数；cached 计数一次后按过滤条件缓存；
+     * estimate 只对一个数值字段 count()，不再对每个字段分别计数，该字段为空的点不计入，结果同样缓存
+     */
     @Override
     public String getResultCount(boolean isTable, String sql, List<ChartViewFieldDTO> xAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view) {
+        String countMode = ds == null ? null : new Gson().fromJson(ds.getConfiguration(), InfluxdbConfig.class).getCountMode();
+        String countField = "COUNT(*)";
+        int countIndex = StringUtils.equalsIgnoreCase(countMode, "estimate") ? countFieldIndex(xAxis) : -1;
+        if (countIndex >= 0) {
+            countField = String.format(InfluxdbConstants.AGG_FIELD, "COUNT", String.format(SQLConstants.FIELD_ALIAS_X_PREFIX, countIndex));
+        }
+        String countSql;
         if (isTable) {
             String subSql = getSQLTableInfo(sql, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view);
-            return "SELECT COUNT(*) from (" + subSql + ") " + previewOrderBy(subSql);
+            countSql = "SELECT " + countField + " from (" + subSql + ") " + previewOrderBy(subSql);
         } else {
-            return "SELECT COUNT(*) from (" + getSQLAsTmpTableInfo(sql, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view) + ")";
+            countSql = "SELECT " + countField + " from (" + getSQLAsTmpTableInfo(sql, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view) + ")";
+        }
+        if (StringUtils.isNotEmpty(countMode) && !StringUtils.equalsIgnoreCase(countMode, "exact")) {
+            countRegistry.register(countSql);
+        }
+        return countSql;
+    }
+
+    private int countFieldIndex(List<ChartViewFieldDTO> xAxis) {
+        for (int i = 0; CollectionUtils.isNotEmpty(xAxis) && i < xAxis.size(); i++) {
+            ChartViewFieldDTO x = xAxis.get(i);
+            // 数值字段一般是 field，tag 与 time 不能 count
+            if ((x.getDeType() == DeTypeConstants.DE_INT || x.getDeType() == DeTypeConstants.DE_FLOAT)
+                    && (x.getExtField() == null || x.getExtField() == 0)) {
+                return i;
+            }
         }
+        return -1;
     }
 }
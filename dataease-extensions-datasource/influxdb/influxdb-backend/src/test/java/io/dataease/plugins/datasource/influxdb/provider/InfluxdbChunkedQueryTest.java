@@ -0,0 +1,67 @@
+package io.dataease.plugins.datasource.influxdb.provider;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDB.Cancellable;
+import org.influxdb.dto.QueryResult;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InfluxdbChunkedQueryTest {
+
+    private final AtomicReference<BiConsumer<Cancellable, QueryResult>> onNext = new AtomicReference<>();
+
+    private final AtomicInteger cancels = new AtomicInteger();
+
+    private final Cancellable handle = new Cancellable() {
+        @Override
+        public void cancel() {
+            cancels.incrementAndGet();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return cancels.get() > 0;
+        }
+    };
+
+    /**
+     * 只记录分块回调的 InfluxDB
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private InfluxDB influxDB() {
+        return (InfluxDB) Proxy.newProxyInstance(InfluxDB.class.getClassLoader(), new Class[]{InfluxDB.class}, (proxy, method, args) -> {
+            if ("query".equals(method.getName()) && args.length == 5) {
+                onNext.set((BiConsumer<Cancellable, QueryResult>) args[2]);
+            }
+            return null;
+        });
+    }
+
+    @Test
+    void closeBeforeFirstChunkCancelsQuery() throws Exception {
+        InfluxdbChunkedQuery query = new InfluxdbChunkedQuery(influxDB(), "select * from cpu", 100, 1000);
+        query.close();
+        assertEquals(0, cancels.get());
+
+        onNext.get().accept(handle, new QueryResult());
+        assertEquals(1, cancels.get());
+    }
+
+    @Test
+    void closeAfterFirstChunkCancelsQuery() throws Exception {
+        InfluxdbChunkedQuery query = new InfluxdbChunkedQuery(influxDB(), "select * from cpu", 100, 1000);
+        onNext.get().accept(handle, new QueryResult());
+        assertNotNull(query.next());
+
+        query.close();
+        assertEquals(1, cancels.get());
+    }
+}
@@ -0,0 +1,68 @@
+package io.dataease.plugins.datasource.influxdb.provider;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InfluxdbColumnarResultTest {
+
+    private InfluxdbColumnarResult result() {
+        InfluxdbColumnarResult result = new InfluxdbColumnarResult();
+        for (int i = 0; i < 3; i++) {
+            int row = result.newRow(3);
+            result.setValue(row, 0, "host-" + i, false);
+            result.setValue(row, 1, i * 1.5, false);
+            result.setValue(row, 2, (long) i, false);
+        }
+        result.compact();
+        return result;
+    }
+
+    @Test
+    void writesToRowAreVisibleOnNextRead() {
+        InfluxdbColumnarResult result = result();
+        result.get(1)[1] = "changed";
+        for (String[] row : result) {
+            row[2] = row[2] + "%";
+        }
+
+        assertArrayEquals(new String[]{"host-1", "changed", "1%"}, result.get(1));
+        assertEquals("0%", result.get(0)[2]);
+        assertSame(result.get(2), result.get(2));
+    }
+
+    @Test
+    void writesSurviveMaterialize() {
+        InfluxdbColumnarResult result = result();
+        result.get(0)[0] = "changed";
+        result.add(new String[]{"host-3", "4.5", "3"});
+
+        assertEquals(4, result.size());
+        assertEquals("changed", result.get(0)[0]);
+    }
+
+    @Test
+    void reassignedCellIsFormattedAgain() {
+        InfluxdbColumnarResult result = new InfluxdbColumnarResult();
+        int row = result.newRow(1);
+        result.setValue(row, 0, 1.0, false);
+        assertEquals("1.0", result.get(row)[0]);
+
+        result.setValue(row, 0, 2.0, false);
+        assertEquals("2.0", result.get(row)[0]);
+    }
+
+    @Test
+    void viewsDoNotShareRowArrays() {
+        InfluxdbColumnarResult cached = InfluxdbColumnarResult.of(Arrays.asList(new String[]{"a", "1"}, new String[]{"b", "2"}));
+        List<String[]> first = InfluxdbColumnarResult.CACHE_CODEC.decode(cached);
+        first.get(0)[0] = "changed";
+
+        List<String[]> second = InfluxdbColumnarResult.CACHE_CODEC.decode(cached);
+        assertEquals("a", second.get(0)[0]);
+        assertEquals("changed", first.get(0)[0]);
+    }
+}
@@ -0,0 +1,126 @@
+package io.dataease.plugins.datasource.influxdb.provider;
+
+import io.dataease.plugins.common.base.domain.Datasource;
+import io.dataease.plugins.common.dto.datasource.TableField;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InfluxdbSchemaCacheTest {
+
+    private InfluxdbSchemaCache cache;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        if (cache != null) {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    void keysByDatasourceAndMeasurement() throws Exception {
+        cache = new InfluxdbSchemaCache(60000, 10, false);
+        cache.get(datasource("ds1", "{}"), "cpu", load("usage"));
+        cache.get(datasource("ds1", "{}"), "cpu", load("other"));
+        assertEquals(1, loads.get());
+
+        cache.get(datasource("ds1", "{}"), "mem", load("used"));
+        cache.get(datasource("ds2", "{}"), "cpu", load("usage"));
+        // 新建数据源没有 id，按配置区分
+        cache.get(datasource(null, "{\"host\":\"a\"}"), "cpu", load("usage"));
+        cache.get(datasource(null, "{\"host\":\"b\"}"), "cpu", load("usage"));
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    void returnsCopies() throws Exception {
+        cache = new InfluxdbSchemaCache(60000, 10, false);
+        List<TableField> first = cache.get(datasource("ds1", "{}"), "cpu", load("usage"));
+        first.get(0).setFieldName("changed");
+        first.clear();
+
+        assertEquals("usage", cache.getIfPresent(datasource("ds1", "{}"), "cpu").get(0).getFieldName());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedMeasurement() throws Exception {
+        cache = new InfluxdbSchemaCache(60000, 2, false);
+        cache.put(datasource("ds1", "{}"), "cpu", fields("usage"));
+        cache.put(datasource("ds1", "{}"), "mem", fields("used"));
+        cache.get(datasource("ds1", "{}"), "cpu", load("other"));
+        cache.put(datasource("ds1", "{}"), "disk", fields("free"));
+
+        assertNull(cache.getIfPresent(datasource("ds1", "{}"), "mem"));
+        assertNotNull(cache.getIfPresent(datasource("ds1", "{}"), "cpu"));
+        assertNotNull(cache.getIfPresent(datasource("ds1", "{}"), "disk"));
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void configurationChangeDropsTheDatasourceEntries() throws Exception {
+        cache = new InfluxdbSchemaCache(60000, 10, false);
+        cache.put(datasource("ds1", "{}"), "cpu", fields("usage"));
+        cache.put(datasource("ds1", "{}"), "mem", fields("used"));
+        cache.put(datasource("ds2", "{}"), "cpu", fields("usage"));
+
+        cache.get(datasource("ds1", "{\"database\":\"other\"}"), "cpu", load("load"));
+        assertEquals(1, loads.get());
+        assertNull(cache.getIfPresent(datasource("ds1", "{\"database\":\"other\"}"), "mem"));
+        assertNotNull(cache.getIfPresent(datasource("ds2", "{}"), "cpu"));
+
+        cache.invalidate(datasource("ds2", "{}"));
+        assertNull(cache.getIfPresent(datasource("ds2", "{}"), "cpu"));
+    }
+
+    @Test
+    void expiresAfterTtl() throws Exception {
+        cache = new InfluxdbSchemaCache(50, 10, false);
+        cache.get(datasource("ds1", "{}"), "cpu", load("usage"));
+        Thread.sleep(100);
+
+        assertNull(cache.getIfPresent(datasource("ds1", "{}"), "cpu"));
+        assertEquals("load", cache.get(datasource("ds1", "{}"), "cpu", load("load")).get(0).getFieldName());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void freshUntilTtl() throws Exception {
+        cache = new InfluxdbSchemaCache(50, 10, false);
+        assertFalse(cache.isFresh(datasource("ds1", "{}"), "cpu"));
+        cache.put(datasource("ds1", "{}"), "cpu", fields("usage"));
+        assertTrue(cache.isFresh(datasource("ds1", "{}"), "cpu"));
+        assertFalse(cache.isFresh(datasource("ds2", "{}"), "cpu"));
+
+        Thread.sleep(100);
+        assertFalse(cache.isFresh(datasource("ds1", "{}"), "cpu"));
+    }
+
+    private Callable<List<TableField>> load(String name) {
+        return () -> {
+            loads.incrementAndGet();
+            return fields(name);
+        };
+    }
+
+    private static List<TableField> fields(String name) {
+        TableField field = new TableField();
+        field.setFieldName(name);
+        field.setFieldType("FLOAT");
+        return Collections.singletonList(field);
+    }
+
+    private static Datasource datasource(String id, String configuration) {
+        Datasource datasource = new Datasource();
+        datasource.setId(id);
+        datasource.setConfiguration(configuration);
+        return datasource;
+    }
+}
@@ -13,6 +13,22 @@ public class KingbaseConfig extends JdbcConfiguration {
 
     private String driver = "com.kingbase8.Driver";//驱动类名
     private String extraParams;
+    // 查询结果缓存有效期（秒），为空或不大于 0 时不缓存
+    private Integer resultCacheTtl;
+    // 是否使用连接池
+    private Boolean poolEnabled = false;
+    // 连接池最小空闲连接数，启动时预先建立
+    private Integer poolMinIdle;
+    // 连接池最大连接数
+    private Integer poolMaxActive;
+    // 借出超过该时长（分钟）未归还的连接强制回收并打印借出位置，为空时不回收
+    private Integer poolRemoveAbandonedMinutes;
+    // 是否一次读取整个模式的字段目录并缓存，获取表字段时直接从缓存返回
+    private Boolean catalogPrefetch = false;
+    // 明细总行数计算方式：exact 每次精确计数，cached 计数一次后缓存，estimate 读取统计信息，hasNext 按是否有下一页计数
+    private String countMode;
+    // 明细总行数缓存有效期（秒）
+    private Integer countCacheTtl = 600;
 
 
     /**
@@ -20,6 +20,11 @@ import io.dataease.plugins.common.dto.sqlObj.SQLObj;
 import io.dataease.plugins.common.request.chart.ChartExtFilterRequest;
 import io.dataease.plugins.common.request.permission.DataSetRowPermissionsTreeDTO;
 import io.dataease.plugins.common.request.permission.DatasetRowPermissionsTreeItem;
+import io.dataease.plugins.datasource.common.CalcFieldCache;
+import io.dataease.plugins.datasource.common.CountRegistry;
+import io.dataease.plugins.datasource.common.PageCursorCache;
+import io.dataease.plugins.datasource.common.SqlCache;
+import io.dataease.plugins.datasource.common.TemplateRegistry;
 import io.dataease.plugins.datasource.kingbase.provider.KingbaseConfig;
 import io.dataease.plugins.datasource.entity.Dateformat;
 import io.dataease.plugins.datasource.entity.JdbcConfiguration;
@@ -32,14 +37,11 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 import org.stringtemplate.v4.ST;
 import org.stringtemplate.v4.STGroup;
-import org.stringtemplate.v4.STGroupFile;
 
 import javax.annotation.Resource;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static io.dataease.plugins.common.constants.datasource.SQLConstants.TABLE_ALIAS_PREFIX;
@@ -50,6 +52,26 @@ public class KingbaseQueryProvider extends QueryProvider {
     @Resource
     private DatasetTableFieldMapper datasetTableFieldMapper;
 
+    private final CalcFieldCache<DatasetTableField> calcFieldCache = new CalcFieldCache<>(this::selectCalcFields, DatasetTableField::getId);
+
+    private final SqlCache sqlCache = new SqlCache();
+
+    private static final int PAGE_CURSOR_MAX_ENTRIES = 1000;
+
+    private final PageCursorCache pageCursorCache = new PageCursorCache(PAGE_CURSOR_MAX_ENTRIES);
+
+    // 键集分页的行标识伪列，排序值相同的行按行标识排序
+    private static final String ROW_ID = "ctid";
+
+    private static final String ROW_ID_ALIAS = "DE_ROWID";
+
+    // 人大金仓默认空值视为最大值，升序时排在最后
+    private static final boolean NULLS_LOW = false;
+
+    private static final int COUNT_PROBE_ROWS = 1000;
+
+    private final CountRegistry countRegistry = new CountRegistry(PAGE_CURSOR_MAX_ENTRIES);
+
     /**
      * 字段类型
      */
@@ -128,6 +150,7 @@ public class KingbaseQueryProvider extends QueryProvider {
     public String createQuerySQL(String table, List<DatasetTableField> fields, boolean isGroup, Datasource ds,
                                  List<ChartFieldCustomFilterDTO> fieldCustomFilter,
                                  List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<DeSortField> sortFields) {
+        calcFieldCache.prefetchInputs(fields, fieldCustomFilter, rowPermissionsTree);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table
                         : String.format(OracleConstants.KEYWORD_TABLE, table))
@@ -137,7 +160,7 @@ public class KingbaseQueryProvider extends QueryProvider {
         //setSchema(tableObj, ds);
         List<SQLObj> xFields = xFields(table, fields);
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("previewSql");
         st_sql.add("isGroup", isGroup);
         if (CollectionUtils.isNotEmpty(xFields))
@@ -260,6 +283,7 @@ public class KingbaseQueryProvider extends QueryProvider {
     }
 
     private List<SQLObj> xFields(String table, List<DatasetTableField> fields) {
+        calcFieldCache.prefetchInputs(fields);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table
                         : String.format(OracleConstants.KEYWORD_TABLE, table))
@@ -347,9 +371,9 @@ public class KingbaseQueryProvider extends QueryProvider {
         List<SQLObj> xFields = xFields(table, fields);
 
         return MessageFormat.format(
-                "SELECT {0} FROM ( SELECT DE_TMP.*, rownum r FROM ( {1} ) DE_TMP WHERE rownum <= {2} ) WHERE r > {3} ",
+                "SELECT {0} FROM ( {1} ) DE_TMP OFFSET {2} ROWS FETCH NEXT {3} ROWS ONLY",
                 sqlColumn(xFields), createQuerySQL(table, fields, isGroup, ds, fieldCustomFilter, rowPermissionsTree),
-                Integer.valueOf(page * realSize).toString(), Integer.valueOf((page - 1) * pageSize).toString());
+                Long.toString((long) (page - 1) * pageSize), realSize.toString());
     }
 
     @Override
@@ -359,9 +383,9 @@ public class KingbaseQueryProvider extends QueryProvider {
                                          List<DataSetRowPermissionsTreeDTO> rowPermissionsTree) {
         List<SQLObj> xFields = xFields("(" + sqlFix(sql) + ")", fields);
         return MessageFormat.format(
-                "SELECT {0} FROM ( SELECT DE_TMP.*, rownum r FROM ( {1} ) DE_TMP WHERE rownum <= {2} ) WHERE r > {3} ",
+                "SELECT {0} FROM ( {1} ) DE_TMP OFFSET {2} ROWS FETCH NEXT {3} ROWS ONLY",
                 sqlColumn(xFields), createQuerySQLAsTmp(sql, fields, isGroup, fieldCustomFilter, rowPermissionsTree),
-                Integer.valueOf(page * realSize).toString(), Integer.valueOf((page - 1) * pageSize).toString());
+                Long.toString((long) (page - 1) * pageSize), realSize.toString());
     }
 
     @Override
@@ -389,6 +413,16 @@ public class KingbaseQueryProvider extends QueryProvider {
                          List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
                          List<ChartExtFilterRequest> extFilterRequestList,
                          Datasource ds, ChartViewWithBLOBs view) {
+        String cacheKey = sqlCacheKey("getSQL", table, ds, view, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
+        return sqlCache.get(cacheKey, () -> buildSQL(table, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view));
+    }
+
+    private String buildSQL(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis,
+                            List<ChartFieldCustomFilterDTO> fieldCustomFilter,
+                            List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
+                            List<ChartExtFilterRequest> extFilterRequestList,
+                            Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table
                         : String.format(OracleConstants.KEYWORD_TABLE, table))
@@ -484,7 +518,7 @@ public class KingbaseQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(xFields))
             st_sql.add("groups", xFields);
@@ -515,6 +549,19 @@ public class KingbaseQueryProvider extends QueryProvider {
                                      List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
                                      List<ChartExtFilterRequest> extFilterRequestList, Datasource ds,
                                      ChartViewWithBLOBs view) {
+        return originalTableInfo(table, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view,
+                null);
+    }
+
+    /**
+     * @param rowId 不为空时在明细字段之后追加该行标识伪列，用于键集分页
+     */
+    private String originalTableInfo(String table, List<ChartViewFieldDTO> xAxis,
+                                     List<ChartFieldCustomFilterDTO> fieldCustomFilter,
+                                     List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
+                                     List<ChartExtFilterRequest> extFilterRequestList, Datasource ds,
+                                     ChartViewWithBLOBs view, String rowId) {
+        calcFieldCache.prefetchInputs(xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table
                         : String.format(OracleConstants.KEYWORD_TABLE, table))
@@ -557,6 +604,12 @@ public class KingbaseQueryProvider extends QueryProvider {
                 }
             }
         }
+        if (rowId != null) {
+            xFields.add(SQLObj.builder()
+                    .fieldName(tableObj.getTableAlias() + "." + rowId)
+                    .fieldAlias(String.format(OracleConstants.ALIAS_FIX, ROW_ID_ALIAS))
+                    .build());
+        }
         // 处理视图中字段过滤
         String customWheres = transCustomFilterList(tableObj, fieldCustomFilter);
         // 处理仪表板字段过滤
@@ -579,7 +632,7 @@ public class KingbaseQueryProvider extends QueryProvider {
         List<SQLObj> orders = new ArrayList<>();
         orders.addAll(xOrders);
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("previewSql");
         st_sql.add("isGroup", false);
         if (CollectionUtils.isNotEmpty(xFields))
@@ -609,6 +662,15 @@ public class KingbaseQueryProvider extends QueryProvider {
                                   List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
                                   List<ChartExtFilterRequest> extFilterRequestList, Datasource ds,
                                   ChartViewWithBLOBs view) {
+        String cacheKey = sqlCacheKey("getSQLTableInfo", table, ds, view, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
+        return sqlCache.get(cacheKey, () -> buildSQLTableInfo(table, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view));
+    }
+
+    private String buildSQLTableInfo(String table, List<ChartViewFieldDTO> xAxis,
+                                     List<ChartFieldCustomFilterDTO> fieldCustomFilter,
+                                     List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
+                                     List<ChartExtFilterRequest> extFilterRequestList, Datasource ds,
+                                     ChartViewWithBLOBs view) {
         return sqlLimit(originalTableInfo(table, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList,
                 ds, view), view);
     }
@@ -619,15 +681,183 @@ public class KingbaseQueryProvider extends QueryProvider {
                                  List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
                                  List<ChartExtFilterRequest> extFilterRequestList, Datasource ds,
                                  ChartViewWithBLOBs view, PageInfo pageInfo) {
-        String limit = ((pageInfo.getGoPage() != null && pageInfo.getPageSize() != null) ?
-                " LIMIT " + (pageInfo.getGoPage() - 1) * pageInfo.getPageSize() + "," + pageInfo.getPageSize() : "");
+        String sql;
         if (isTable) {
-            return originalTableInfo(table, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds,
-                    view) + limit;
+            sql = originalTableInfo(table, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds,
+                    view);
         } else {
-            return originalTableInfo("(" + sqlFix(table) + ")", xAxis, fieldCustomFilter, rowPermissionsTree,
-                    extFilterRequestList, ds, view) + limit;
+            sql = originalTableInfo("(" + sqlFix(table) + ")", xAxis, fieldCustomFilter, rowPermissionsTree,
+                    extFilterRequestList, ds, view);
+        }
+        if (pageInfo.getGoPage() == null || pageInfo.getPageSize() == null) {
+            return sql;
         }
+        boolean hasNext = StringUtils.equalsIgnoreCase(countMode(ds), "hasNext");
+        // 自定义 SQL 数据集没有可用的行标识，只使用 OFFSET 分页
+        int keyIndex = isTable ? seekKeyIndex(xAxis) : -1;
+        String rowIdSql = keyIndex < 0 ? null
+                : originalTableInfo(table, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds,
+                view, ROW_ID);
+        return pageSql(sql, rowIdSql, xAxis, keyIndex, ds, view, pageInfo.getGoPage(), pageInfo.getPageSize(), hasNext);
+    }
+
+    /**
+     * 取数后记录分页游标，供下一页使用键集分页
+     *
+     * @param datasourceId
+     * @param sql
+     * @param rows
+     * @return 去掉行标识列与"下一页"模式多取的一行后的结果
+     */
+    public List<String[]> recordPage(String datasourceId, String sql, List<String[]> rows) {
+        return pageCursorCache.record(datasourceId, sql, rows);
+    }
+
+    /**
+     * 是否为按计数策略生成的总行数查询，取数时按计数缓存有效期缓存结果
+     *
+     * @param sql
+     * @return
+     */
+    public boolean isCountQuery(String sql) {
+        return countRegistry.contains(sql);
+    }
+
+    /**
+     * 明细总行数：
+     * exact（默认）每次翻页都精确计数；cached 精确计数一次后按过滤条件缓存；
+     * estimate 没有过滤条件时读取 sys_class 中的统计行数，没有统计信息或有过滤条件时精确计数并缓存；
+     * hasNext 只计数到 COUNT_PROBE_ROWS 行，之后按翻页已读到的最远位置逐页增加
+     */
+    @Override
+    public String getResultCount(boolean isTable, String sql, List<ChartViewFieldDTO> xAxis,
+                                 List<ChartFieldCustomFilterDTO> fieldCustomFilter,
+                                 List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
+                                 List<ChartExtFilterRequest> extFilterRequestList, Datasource ds,
+                                 ChartViewWithBLOBs view) {
+        String countMode = countMode(ds);
+        if (StringUtils.isEmpty(countMode) || StringUtils.equalsIgnoreCase(countMode, "exact")
+                || StringUtils.equalsIgnoreCase(view.getResultMode(), "custom")) {
+            return super.getResultCount(isTable, sql, xAxis, fieldCustomFilter, rowPermissionsTree,
+                    extFilterRequestList, ds, view);
+        }
+        String countSql;
+        if (StringUtils.equalsIgnoreCase(countMode, "hasNext")) {
+            String tableInfo = isTable
+                    ? originalTableInfo(sql, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view)
+                    : originalTableInfo("(" + sqlFix(sql) + ")", xAxis, fieldCustomFilter, rowPermissionsTree,
+                    extFilterRequestList, ds, view);
+            long reached = pageCursorCache.getReached(ds == null ? null : ds.getId(), view == null ? null : view.getId(),
+                    tableInfo);
+            if (reached > COUNT_PROBE_ROWS) {
+                return "SELECT " + reached;
+            }
+            countSql = "SELECT COUNT(*) FROM (" + tableInfo
+                    + String.format(KingbaseConstants.OFFSET_FETCH, 0, COUNT_PROBE_ROWS) + ") DE_COUNT_TMP";
+        } else {
+            countSql = super.getResultCount(isTable, sql, xAxis, fieldCustomFilter, rowPermissionsTree,
+                    extFilterRequestList, ds, view);
+            if (StringUtils.equalsIgnoreCase(countMode, "estimate") && isTable
+                    && CollectionUtils.isEmpty(fieldCustomFilter) && CollectionUtils.isEmpty(rowPermissionsTree)
+                    && CollectionUtils.isEmpty(extFilterRequestList)) {
+                // 表未分析过时 reltuples 不大于 0，退回精确计数
+                String schema = new Gson().fromJson(ds.getConfiguration(), JdbcConfiguration.class).getSchema();
+                countSql = "SELECT COALESCE((SELECT CAST(c.reltuples AS BIGINT) FROM sys_class c"
+                        + " JOIN sys_namespace n ON n.oid = c.relnamespace WHERE n.nspname = '"
+                        + StringUtils.defaultString(schema).replace("'", "''") + "' AND c.relname = '"
+                        + sql.replace("'", "''") + "' AND c.reltuples > 0), (" + countSql + "))";
+            }
+        }
+        countRegistry.register(countSql);
+        return countSql;
+    }
+
+    private String countMode(Datasource ds) {
+        if (ds == null) {
+            return null;
+        }
+        return new Gson().fromJson(ds.getConfiguration(), KingbaseConfig.class).getCountMode();
+    }
+
+    /**
+     * 明细分页：数据表只按一个文本或数值字段排序时使用键集分页，按（排序字段，行标识）排序，
+     * 有上一页游标时从游标之后继续读取，每页只扫描本页数据；没有游标时按同样的排序 OFFSET 跳页。
+     * 自定义 SQL、没有排序字段、多字段排序或按其他类型字段排序时使用 OFFSET 分页。
+     * 游标按数据源与视图区分
+     *
+     * @param sql      分页前的基础查询
+     * @param rowIdSql 带行标识列的基础查询，为空时使用 OFFSET 分页
+     * @param xAxis
+     * @param keyIndex
+     * @param ds
+     * @param view
+     * @param page
+     * @param pageSize
+     * @param hasNext  多取一行用于判断有无下一页
+     * @return
+     */
+    private String pageSql(String sql, String rowIdSql, List<ChartViewFieldDTO> xAxis, int keyIndex, Datasource ds, ChartViewWithBLOBs view,
+                           int page, int pageSize, boolean hasNext) {
+        String datasourceId = ds == null ? null : ds.getId();
+        String viewId = view == null ? null : view.getId();
+        int fetchSize = hasNext ? pageSize + 1 : pageSize;
+        long offset = (long) (page - 1) * pageSize;
+        if (rowIdSql == null) {
+            String pageSql = sql + String.format(KingbaseConstants.OFFSET_FETCH, offset, fetchSize);
+            if (hasNext) {
+                pageCursorCache.register(datasourceId, viewId, pageSql, sql, page, pageSize, -1, -1, true);
+            }
+            return pageSql;
+        }
+        ChartViewFieldDTO key = xAxis.get(keyIndex);
+        boolean desc = StringUtils.equalsIgnoreCase(key.getSort(), "desc");
+        String keyField = "DE_PAGE." + String.format(OracleConstants.ALIAS_FIX, String.format(SQLConstants.FIELD_ALIAS_X_PREFIX, keyIndex));
+        String rowIdField = "DE_PAGE." + String.format(OracleConstants.ALIAS_FIX, ROW_ID_ALIAS);
+        PageCursorCache.Cursor cursor = page > 1 ? pageCursorCache.getCursor(datasourceId, viewId, sql, keyIndex, pageSize, page - 1) : null;
+        String where = "";
+        if (cursor != null) {
+            where = " WHERE " + PageCursorCache.seekCondition(keyField, rowIdField, desc, NULLS_LOW, cursor,
+                    cursor.getValue() == null ? null : seekValue(key, cursor.getValue()), quote(cursor.getRowId()));
+            offset = 0;
+        }
+        String pageSql = "SELECT * FROM (" + rowIdSql + ") DE_PAGE" + where + " ORDER BY " + PageCursorCache.seekOrder(keyField, rowIdField, desc, NULLS_LOW)
+                + String.format(KingbaseConstants.OFFSET_FETCH, offset, fetchSize);
+        // 行标识为明细字段之后的一列，记录游标后去掉
+        pageCursorCache.register(datasourceId, viewId, pageSql, sql, page, pageSize, keyIndex, xAxis.size(), hasNext);
+        return pageSql;
+    }
+
+    private int seekKeyIndex(List<ChartViewFieldDTO> xAxis) {
+        int keyIndex = -1;
+        for (int i = 0; CollectionUtils.isNotEmpty(xAxis) && i < xAxis.size(); i++) {
+            String sort = xAxis.get(i).getSort();
+            if (StringUtils.equalsIgnoreCase(sort, "asc") || StringUtils.equalsIgnoreCase(sort, "desc")) {
+                if (keyIndex >= 0) {
+                    return -1;
+                }
+                keyIndex = i;
+            } else if (StringUtils.isNotEmpty(sort) && !StringUtils.equalsIgnoreCase(sort, "none")) {
+                return -1;
+            }
+        }
+        if (keyIndex >= 0) {
+            Integer deType = xAxis.get(keyIndex).getDeType();
+            if (deType == null || !(deType == 0 || deType == 2 || deType == 3)) {
+                return -1;
+            }
+        }
+        return keyIndex;
+    }
+
+    private String seekValue(ChartViewFieldDTO key, String value) {
+        if ((key.getDeType() == 2 || key.getDeType() == 3) && value.matches("-?\\d+(\\.\\d+)?([eE][-+]?\\d+)?")) {
+            return value;
+        }
+        return quote(value);
+    }
+
+    private String quote(String value) {
+        return "'" + StringUtils.defaultString(value).replace("'", "''") + "'";
     }
 
     @Override
@@ -655,6 +885,16 @@ public class KingbaseQueryProvider extends QueryProvider {
                               List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
                               List<ChartExtFilterRequest> extFilterRequestList,
                               List<ChartViewFieldDTO> extStack, Datasource ds, ChartViewWithBLOBs view) {
+        String cacheKey = sqlCacheKey("getSQLStack", table, ds, view, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extStack);
+        return sqlCache.get(cacheKey, () -> buildSQLStack(table, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extStack, ds, view));
+    }
+
+    private String buildSQLStack(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis,
+                                 List<ChartFieldCustomFilterDTO> fieldCustomFilter,
+                                 List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
+                                 List<ChartExtFilterRequest> extFilterRequestList,
+                                 List<ChartViewFieldDTO> extStack, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, yAxis, extStack, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table
                         : String.format(OracleConstants.KEYWORD_TABLE, table))
@@ -753,7 +993,7 @@ public class KingbaseQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(xFields))
             st_sql.add("groups", xFields);
@@ -810,6 +1050,16 @@ public class KingbaseQueryProvider extends QueryProvider {
                                 List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
                                 List<ChartExtFilterRequest> extFilterRequestList,
                                 List<ChartViewFieldDTO> extBubble, Datasource ds, ChartViewWithBLOBs view) {
+        String cacheKey = sqlCacheKey("getSQLScatter", table, ds, view, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extBubble);
+        return sqlCache.get(cacheKey, () -> buildSQLScatter(table, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extBubble, ds, view));
+    }
+
+    private String buildSQLScatter(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis,
+                                   List<ChartFieldCustomFilterDTO> fieldCustomFilter,
+                                   List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
+                                   List<ChartExtFilterRequest> extFilterRequestList,
+                                   List<ChartViewFieldDTO> extBubble, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, yAxis, extBubble, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table
                         : String.format(OracleConstants.KEYWORD_TABLE, table))
@@ -908,7 +1158,7 @@ public class KingbaseQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(xFields))
             st_sql.add("groups", xFields);
@@ -962,7 +1212,17 @@ public class KingbaseQueryProvider extends QueryProvider {
                                 List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
                                 List<ChartExtFilterRequest> extFilterRequestList,
                                 ChartViewWithBLOBs view, Datasource ds) {
+        String cacheKey = sqlCacheKey("getSQLSummary", table, ds, view, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
+        return sqlCache.get(cacheKey, () -> buildSQLSummary(table, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, view, ds));
+    }
+
+    private String buildSQLSummary(String table, List<ChartViewFieldDTO> yAxis,
+                                   List<ChartFieldCustomFilterDTO> fieldCustomFilter,
+                                   List<DataSetRowPermissionsTreeDTO> rowPermissionsTree,
+                                   List<ChartExtFilterRequest> extFilterRequestList,
+                                   ChartViewWithBLOBs view, Datasource ds) {
         // 字段汇总 排序等
+        calcFieldCache.prefetchInputs(yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table
                         : String.format(OracleConstants.KEYWORD_TABLE, table))
@@ -1023,7 +1283,7 @@ public class KingbaseQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(yFields))
             st_sql.add("aggregators", yFields);
@@ -1647,27 +1907,28 @@ public class KingbaseQueryProvider extends QueryProvider {
     }
 
     private String calcFieldRegex(String originField, SQLObj tableObj) {
-        originField = originField.replaceAll("[\\t\\n\\r]]", "");
-        // 正则提取[xxx]
-        String regex = "\\[(.*?)]";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(originField);
-        Set<String> ids = new HashSet<>();
-        while (matcher.find()) {
-            String id = matcher.group(1);
-            ids.add(id);
-        }
-        if (CollectionUtils.isEmpty(ids)) {
-            return originField;
-        }
+        return calcFieldCache.resolve(originField, field -> String.format(OracleConstants.KEYWORD_FIX, tableObj.getTableAlias(), field.getOriginName()));
+    }
+
+    private List<DatasetTableField> selectCalcFields(List<String> ids) {
         DatasetTableFieldExample datasetTableFieldExample = new DatasetTableFieldExample();
-        datasetTableFieldExample.createCriteria().andIdIn(new ArrayList<>(ids));
-        List<DatasetTableField> calcFields = datasetTableFieldMapper.selectByExample(datasetTableFieldExample);
-        for (DatasetTableField ele : calcFields) {
-            originField = originField.replaceAll("\\[" + ele.getId() + "]",
-                    String.format(OracleConstants.KEYWORD_FIX, tableObj.getTableAlias(), ele.getOriginName()));
-        }
-        return originField;
+        datasetTableFieldExample.createCriteria().andIdIn(ids);
+        return datasetTableFieldMapper.selectByExample(datasetTableFieldExample);
+    }
+
+    /**
+     * SQL 缓存键
+     *
+     * @param method
+     * @param table
+     * @param ds
+     * @param view
+     * @param inputs
+     * @return
+     */
+    private String sqlCacheKey(String method, String table, Datasource ds, ChartViewWithBLOBs view, Object... inputs) {
+        return calcFieldCache.sqlCacheKey(DatasetTableField::getOriginName, method, table, ds == null ? null : ds.getId(), ds == null ? null : ds.getConfiguration(),
+                view == null ? null : view.getResultMode(), view == null ? null : view.getResultCount(), inputs);
     }
 
     /**
@@ -0,0 +1,69 @@
+package io.dataease.plugins.datasource.kingbase.provider;
+
+import io.dataease.plugins.common.base.domain.Datasource;
+import io.dataease.plugins.common.dto.datasource.TableField;
+import io.dataease.plugins.common.request.datasource.DatasourceRequest;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KingbaseDsProviderTest {
+
+    /**
+     * 按列名返回取值的 ResultSet
+     *
+     * @param values
+     * @return
+     */
+    private static ResultSet resultSet(Map<String, String> values) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class[]{ResultSet.class},
+                (proxy, method, args) -> values.get((String) args[0]));
+    }
+
+    /**
+     * 同一列分别经过 getColumns 与字典视图两条路径得到的字段
+     *
+     * @param type
+     * @param columnSize getColumns 的 COLUMN_SIZE
+     * @param precision  all_tab_columns 的 DATA_PRECISION
+     * @param length     all_tab_columns 的 DATA_LENGTH
+     */
+    private static void assertSameField(String type, String columnSize, String precision, String length) throws Exception {
+        Map<String, String> columns = new HashMap<>();
+        columns.put("COLUMN_NAME", "C1");
+        columns.put("REMARKS", "备注");
+        columns.put("TYPE_NAME", type);
+        columns.put("COLUMN_SIZE", columnSize);
+        Datasource datasource = new Datasource();
+        datasource.setType("kingbase");
+        DatasourceRequest request = new DatasourceRequest();
+        request.setDatasource(datasource);
+        TableField expected = KingbaseDsProvider.getTableFiled(resultSet(columns), request);
+
+        Map<String, String> catalog = new HashMap<>();
+        catalog.put("COLUMN_NAME", "C1");
+        catalog.put("COMMENTS", "备注");
+        catalog.put("DATA_TYPE", type);
+        catalog.put("DATA_PRECISION", precision);
+        catalog.put("DATA_LENGTH", length);
+        TableField actual = KingbaseDsProvider.getCatalogField(resultSet(catalog));
+
+        assertEquals(expected.getFieldName(), actual.getFieldName());
+        assertEquals(expected.getRemarks(), actual.getRemarks());
+        assertEquals(expected.getFieldType(), actual.getFieldType());
+        assertEquals(expected.getFieldSize(), actual.getFieldSize(), type);
+    }
+
+    @Test
+    void catalogFieldMatchesGetColumns() throws Exception {
+        assertSameField("VARCHAR", "50", null, "50");
+        assertSameField("DECIMAL", "10", "10", "9");
+        assertSameField("LONG", "2147483647", null, "2147483647");
+        assertSameField("DATE", "13", null, "13");
+    }
+}
@@ -10,6 +10,17 @@ public class KylinConfig extends JdbcConfiguration {
 
     private String driver = "org.apache.kylin.jdbc.Driver";
 
+    // 查询结果缓存有效期（秒），为空或不大于 0 时不缓存
+    private Integer resultCacheTtl;
+    // 是否使用连接池
+    private Boolean poolEnabled = false;
+    // 连接池最小空闲连接数，启动时预先建立
+    private Integer poolMinIdle;
+    // 连接池最大连接数
+    private Integer poolMaxActive;
+    // 借出超过该时长（分钟）未归还的连接强制回收并打印借出位置，为空时不回收
+    private Integer poolRemoveAbandonedMinutes;
+
     public String getJdbc() {
         return "jdbc:kylin://HOSTNAME:PORT/DATABASE"
                 .replace("HOSTNAME", getHost().trim())
@@ -2,22 +2,31 @@ package io.dataease.plugins.datasource.kylin.provider;
 
 import com.alibaba.druid.pool.DruidPooledConnection;
 import com.google.gson.Gson;
+import io.dataease.plugins.common.base.domain.Datasource;
 import io.dataease.plugins.common.base.domain.DeDriver;
 import io.dataease.plugins.common.base.mapper.DeDriverMapper;
 import io.dataease.plugins.common.constants.DatasourceTypes;
+import io.dataease.plugins.common.dto.chart.ChartViewFieldDTO;
 import io.dataease.plugins.common.dto.datasource.TableDesc;
 import io.dataease.plugins.common.dto.datasource.TableField;
 import io.dataease.plugins.common.exception.DataEaseException;
 import io.dataease.plugins.common.request.datasource.DatasourceRequest;
+import io.dataease.plugins.datasource.common.CatalogCache;
+import io.dataease.plugins.datasource.common.ConnectionPool;
+import io.dataease.plugins.datasource.common.DriverRegistry;
+import io.dataease.plugins.datasource.common.QueryCoalescer;
+import io.dataease.plugins.datasource.common.ResultCache;
 import io.dataease.plugins.datasource.entity.JdbcConfiguration;
 import io.dataease.plugins.datasource.provider.DefaultJdbcProvider;
 import io.dataease.plugins.datasource.provider.ExtendedJdbcClassLoader;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.sql.*;
 import java.util.*;
+import java.util.function.UnaryOperator;
 
 
 @Component()
@@ -25,6 +34,26 @@ public class KylinDsProvider extends DefaultJdbcProvider {
     @Resource
     private DeDriverMapper deDriverMapper;
 
+    private static final long RESULT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final long COALESCE_WAIT_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
+    private static final long CATALOG_CACHE_TTL_MILLIS = 10 * 60 * 1000L;
+
+    private final ResultCache resultCache = new ResultCache(RESULT_CACHE_MAX_BYTES);
+
+    private final QueryCoalescer<List<String[]>> queryCoalescer = new QueryCoalescer<>(COALESCE_WAIT_TIMEOUT_MILLIS, QueryCoalescer::copyRows);
+
+    private final QueryCoalescer<Map<String, List>> resultAndFieldCoalescer = new QueryCoalescer<>(COALESCE_WAIT_TIMEOUT_MILLIS, QueryCoalescer::copyResultAndField);
+
+    private final ConnectionPool connectionPool = new ConnectionPool("kylin", "SELECT 1");
+
+    private final DriverRegistry<DeDriver, ExtendedJdbcClassLoader> driverRegistry = new DriverRegistry<>(id -> deDriverMapper.selectByPrimaryKey(id),
+            DeDriver::getDriverClass, this::getCustomJdbcClassLoader);
+
+    // 只缓存表清单，字段列表为空；过半有效期后后台刷新
+    private final CatalogCache<TableField> catalogCache = new CatalogCache<>(CATALOG_CACHE_TTL_MILLIS, UnaryOperator.identity(), true);
+
     @Override
     public String getType() {
         return "kylin";
@@ -35,6 +64,44 @@ public class KylinDsProvider extends DefaultJdbcProvider {
         return false;
     }
 
+    @PreDestroy
+    public void destroy() {
+        connectionPool.closeAll();
+        catalogCache.shutdown();
+    }
+
+    @Override
+    public List<String[]> getData(DatasourceRequest datasourceRequest) throws Exception {
+        KylinConfig kylinConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), KylinConfig.class);
+        Integer resultCacheTtl = kylinConfig.getResultCacheTtl();
+        String key = resultCacheKey(datasourceRequest);
+        // 相同查询正在执行时共享其结果
+        if (resultCacheTtl == null || resultCacheTtl <= 0) {
+            return queryCoalescer.execute(key, () -> super.getData(datasourceRequest));
+        }
+        return resultCache.get(key, resultCacheTtl * 1000L, () -> queryCoalescer.execute(key, () -> super.getData(datasourceRequest)));
+    }
+
+    /**
+     * 查询结果缓存与相同查询合并的键：数据源、最终 SQL 以及影响结果的权限字段与视图字段
+     *
+     * @param datasourceRequest
+     * @return
+     */
+    private String resultCacheKey(DatasourceRequest datasourceRequest) {
+        return ResultCache.key(datasourceRequest.getDatasource().getId(), datasourceRequest.getDatasource().getConfiguration(),
+                datasourceRequest.getQuery(), datasourceRequest.isPreviewData(), datasourceRequest.isTotalPageFlag(),
+                ResultCache.names(datasourceRequest.getPermissionFields(), field -> field.getId() + ":" + field.getOriginName()),
+                ResultCache.names(datasourceRequest.getXAxis(), ChartViewFieldDTO::getOriginName),
+                ResultCache.names(datasourceRequest.getYAxis(), ChartViewFieldDTO::getOriginName));
+    }
+
+    @Override
+    public Map<String, List> fetchResultAndField(DatasourceRequest datasourceRequest) throws Exception {
+        // 与 getData 使用相同的请求指纹，相同查询正在执行时共享其结果与字段
+        return resultAndFieldCoalescer.execute(resultCacheKey(datasourceRequest), () -> super.fetchResultAndField(datasourceRequest));
+    }
+
     @Override
     public Connection getConnection(DatasourceRequest datasourceRequest) throws Exception {
         io.dataease.plugins.datasource.kylin.provider.KylinConfig prestoConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), KylinConfig.class);
@@ -44,7 +111,7 @@ public class KylinDsProvider extends DefaultJdbcProvider {
 
         String url = prestoConfig.getJdbc();
         Properties props = new Properties();
-        DeDriver deDriver = null;
+        DriverRegistry.ResolvedDriver<ExtendedJdbcClassLoader> resolvedDriver = driverRegistry.getDriver(customDriver, defaultDriver, extendedJdbcClassLoader, isDefaultClassLoader(customDriver));
         if (StringUtils.isNotBlank(prestoConfig.getUsername())) {
             props.setProperty("user", prestoConfig.getUsername());
             if (StringUtils.isNotBlank(prestoConfig.getPassword())) {
@@ -53,23 +120,17 @@ public class KylinDsProvider extends DefaultJdbcProvider {
         }
 
         Connection conn;
-        String driverClassName ;
-        ExtendedJdbcClassLoader jdbcClassLoader;
-        if(isDefaultClassLoader(customDriver)){
-            driverClassName = defaultDriver;
-            jdbcClassLoader =  extendedJdbcClassLoader;
-        }else {
-            if(deDriver == null){
-                deDriver = deDriverMapper.selectByPrimaryKey(customDriver);
-            }
-            driverClassName = deDriver.getDriverClass();
-            jdbcClassLoader = getCustomJdbcClassLoader(deDriver);
-        }
+        ExtendedJdbcClassLoader jdbcClassLoader = resolvedDriver.getClassLoader();
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(jdbcClassLoader);
-            Driver driverClass = (Driver) jdbcClassLoader.loadClass(driverClassName).newInstance();
-            conn= driverClass.connect(url, props);
+            Driver driverClass = resolvedDriver.getDriver();
+            if (Boolean.TRUE.equals(prestoConfig.getPoolEnabled())) {
+                conn = connectionPool.getConnection(datasourceRequest.getDatasource().getId(), datasourceRequest.getDatasource().getConfiguration(),
+                        jdbcClassLoader, driverClass, url, props, prestoConfig.getPoolMinIdle(), prestoConfig.getPoolMaxActive(), prestoConfig.getPoolRemoveAbandonedMinutes());
+            } else {
+                conn = driverClass.connect(url, props);
+            }
         }catch (Exception e){
             e.printStackTrace();
             throw e;
@@ -82,27 +143,37 @@ public class KylinDsProvider extends DefaultJdbcProvider {
     @Override
     public List<TableDesc> getTables(DatasourceRequest datasourceRequest) throws Exception {
         List<TableDesc> tables = new ArrayList<>();
-
-        List<String> tableNames = new ArrayList<>();
-        try (Connection con = getConnectionFromPool(datasourceRequest)) {
-            DatabaseMetaData databaseMetaData = con.getMetaData();
-            ResultSet resultSet = databaseMetaData.getColumns(null, "%", "%", "%");
-            while (resultSet.next()) {
-                String tableName = resultSet.getString("TABLE_NAME");
-                if(!tableNames.contains(tableName)){
-                    tableNames.add(tableName);
-                    TableDesc tableDesc = new TableDesc();
-                    tableDesc.setName(tableName);
-                    tables.add(tableDesc);
-                }
+        try {
+            Datasource datasource = datasourceRequest.getDatasource();
+            for (String tableName : catalogCache.getTableNames(datasource.getId(), datasource.getConfiguration(), () -> loadTableNames(datasourceRequest))) {
+                TableDesc tableDesc = new TableDesc();
+                tableDesc.setName(tableName);
+                tables.add(tableDesc);
             }
         } catch (Exception e) {
             DataEaseException.throwException(e);
         }
-
         return tables;
     }
 
+    /**
+     * 通过 getTables 读取表名，不再遍历所有列
+     *
+     * @param datasourceRequest
+     * @return 表名到空字段列表的映射
+     * @throws Exception
+     */
+    private Map<String, List<TableField>> loadTableNames(DatasourceRequest datasourceRequest) throws Exception {
+        Map<String, List<TableField>> tableNames = new LinkedHashMap<>();
+        try (Connection con = getConnectionFromPool(datasourceRequest);
+             ResultSet resultSet = con.getMetaData().getTables(null, "%", "%", null)) {
+            while (resultSet.next()) {
+                tableNames.put(resultSet.getString("TABLE_NAME"), Collections.emptyList());
+            }
+        }
+        return tableNames;
+    }
+
 
     @Override
     public List<TableField> getTableFields(DatasourceRequest datasourceRequest) throws Exception {
@@ -166,19 +237,10 @@ public class KylinDsProvider extends DefaultJdbcProvider {
 
     @Override
     public String checkStatus(DatasourceRequest datasourceRequest) throws Exception {
-        try (Connection con = getConnection(datasourceRequest)) {
-            List<TableDesc> tables = new ArrayList<>();
-            List<String> tableNames = new ArrayList<>();
-            ResultSet resultSet = con.getMetaData().getColumns(null, "%", "%", "%");
-            while (resultSet.next()) {
-                String tableName = resultSet.getString("TABLE_NAME");
-                if(!tableNames.contains(tableName)){
-                    tableNames.add(tableName);
-                    TableDesc tableDesc = new TableDesc();
-                    tableDesc.setName(tableName);
-                    tables.add(tableDesc);
-                }
-            }
+        // 只读取一行表信息确认连接与权限可用，不枚举整个目录
+        try (Connection con = getConnection(datasourceRequest);
+             ResultSet resultSet = con.getMetaData().getTables(null, "%", "%", null)) {
+            resultSet.next();
         } catch (Exception e) {
             DataEaseException.throwException(e.getMessage());
         }
@@ -19,6 +19,9 @@ import io.dataease.plugins.common.dto.sqlObj.SQLObj;
 import io.dataease.plugins.common.request.chart.ChartExtFilterRequest;
 import io.dataease.plugins.common.request.permission.DataSetRowPermissionsTreeDTO;
 import io.dataease.plugins.common.request.permission.DatasetRowPermissionsTreeItem;
+import io.dataease.plugins.datasource.common.CalcFieldCache;
+import io.dataease.plugins.datasource.common.SqlCache;
+import io.dataease.plugins.datasource.common.TemplateRegistry;
 import io.dataease.plugins.datasource.entity.Dateformat;
 import io.dataease.plugins.datasource.entity.JdbcConfiguration;
 import io.dataease.plugins.datasource.query.QueryProvider;
@@ -28,14 +31,11 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 import org.stringtemplate.v4.ST;
 import org.stringtemplate.v4.STGroup;
-import org.stringtemplate.v4.STGroupFile;
 
 import javax.annotation.Resource;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static io.dataease.plugins.common.constants.datasource.SQLConstants.TABLE_ALIAS_PREFIX;
@@ -46,6 +46,10 @@ public class KylinQueryProvider extends QueryProvider {
     @Resource
     private DatasetTableFieldMapper datasetTableFieldMapper;
 
+    private final CalcFieldCache<DatasetTableField> calcFieldCache = new CalcFieldCache<>(this::selectCalcFields, DatasetTableField::getId);
+
+    private final SqlCache sqlCache = new SqlCache();
+
     private static final Gson json = new Gson();
 
     @Override
@@ -90,6 +94,7 @@ public class KylinQueryProvider extends QueryProvider {
 
     @Override
     public String createQuerySQL(String table, List<DatasetTableField> fields, boolean isGroup, Datasource ds, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<DeSortField> sortFields) {
+        calcFieldCache.prefetchInputs(fields, fieldCustomFilter, rowPermissionsTree);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table : String.format(KylinConstants.KEYWORD_TABLE, table))
                 .tableAlias(String.format(TABLE_ALIAS_PREFIX, 0))
@@ -145,7 +150,7 @@ public class KylinQueryProvider extends QueryProvider {
             }
         }
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("previewSql");
         st_sql.add("isGroup", isGroup);
         if (CollectionUtils.isNotEmpty(xFields)) st_sql.add("groups", xFields);
@@ -248,6 +253,12 @@ public class KylinQueryProvider extends QueryProvider {
 
     @Override
     public String getSQL(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view) {
+        String cacheKey = sqlCacheKey("getSQL", table, ds, view, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
+        return sqlCache.get(cacheKey, () -> buildSQL(table, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view));
+    }
+
+    private String buildSQL(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table : String.format(KylinConstants.KEYWORD_TABLE, table))
                 .tableAlias(String.format(TABLE_ALIAS_PREFIX, 0))
@@ -333,7 +344,7 @@ public class KylinQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(xFields)) st_sql.add("groups", xFields);
         if (CollectionUtils.isNotEmpty(yFields)) st_sql.add("aggregators", yFields);
@@ -354,6 +365,12 @@ public class KylinQueryProvider extends QueryProvider {
 
     @Override
     public String getSQLTableInfo(String table, List<ChartViewFieldDTO> xAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view) {
+        String cacheKey = sqlCacheKey("getSQLTableInfo", table, ds, view, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
+        return sqlCache.get(cacheKey, () -> buildSQLTableInfo(table, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view));
+    }
+
+    private String buildSQLTableInfo(String table, List<ChartViewFieldDTO> xAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table : String.format(KylinConstants.KEYWORD_TABLE, table))
                 .tableAlias(String.format(TABLE_ALIAS_PREFIX, 0))
@@ -409,7 +426,7 @@ public class KylinQueryProvider extends QueryProvider {
         List<SQLObj> orders = new ArrayList<>();
         orders.addAll(xOrders);
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("previewSql");
         st_sql.add("isGroup", false);
         if (CollectionUtils.isNotEmpty(xFields)) st_sql.add("groups", xFields);
@@ -441,6 +458,12 @@ public class KylinQueryProvider extends QueryProvider {
 
     @Override
     public String getSQLStack(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, List<ChartViewFieldDTO> extStack, Datasource ds, ChartViewWithBLOBs view) {
+        String cacheKey = sqlCacheKey("getSQLStack", table, ds, view, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extStack);
+        return sqlCache.get(cacheKey, () -> buildSQLStack(table, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extStack, ds, view));
+    }
+
+    private String buildSQLStack(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, List<ChartViewFieldDTO> extStack, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, yAxis, extStack, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table : String.format(KylinConstants.KEYWORD_TABLE, table))
                 .tableAlias(String.format(TABLE_ALIAS_PREFIX, 0))
@@ -529,7 +552,7 @@ public class KylinQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(xFields)) st_sql.add("groups", xFields);
         if (CollectionUtils.isNotEmpty(yFields)) st_sql.add("aggregators", yFields);
@@ -555,6 +578,12 @@ public class KylinQueryProvider extends QueryProvider {
 
     @Override
     public String getSQLScatter(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, List<ChartViewFieldDTO> extBubble, Datasource ds, ChartViewWithBLOBs view) {
+        String cacheKey = sqlCacheKey("getSQLScatter", table, ds, view, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extBubble);
+        return sqlCache.get(cacheKey, () -> buildSQLScatter(table, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extBubble, ds, view));
+    }
+
+    private String buildSQLScatter(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, List<ChartViewFieldDTO> extBubble, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, yAxis, extBubble, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table : String.format(KylinConstants.KEYWORD_TABLE, table))
                 .tableAlias(String.format(TABLE_ALIAS_PREFIX, 0))
@@ -643,7 +672,7 @@ public class KylinQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(xFields)) st_sql.add("groups", xFields);
         if (CollectionUtils.isNotEmpty(yFields)) st_sql.add("aggregators", yFields);
@@ -674,7 +703,13 @@ public class KylinQueryProvider extends QueryProvider {
 
     @Override
     public String getSQLSummary(String table, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, ChartViewWithBLOBs view, Datasource ds) {
+        String cacheKey = sqlCacheKey("getSQLSummary", table, ds, view, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
+        return sqlCache.get(cacheKey, () -> buildSQLSummary(table, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, view, ds));
+    }
+
+    private String buildSQLSummary(String table, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, ChartViewWithBLOBs view, Datasource ds) {
         // 字段汇总 排序等
+        calcFieldCache.prefetchInputs(yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table : String.format(KylinConstants.KEYWORD_TABLE, table))
                 .tableAlias(String.format(TABLE_ALIAS_PREFIX, 0))
@@ -730,7 +765,7 @@ public class KylinQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(yFields)) st_sql.add("aggregators", yFields);
         if (CollectionUtils.isNotEmpty(wheres)) st_sql.add("filters", wheres);
@@ -1216,27 +1251,28 @@ public class KylinQueryProvider extends QueryProvider {
     }
 
     private String calcFieldRegex(String originField, SQLObj tableObj) {
-        originField = originField.replaceAll("[\\t\\n\\r]]", "");
-        // 正则提取[xxx]
-        String regex = "\\[(.*?)]";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(originField);
-        Set<String> ids = new HashSet<>();
-        while (matcher.find()) {
-            String id = matcher.group(1);
-            ids.add(id);
-        }
-        if (CollectionUtils.isEmpty(ids)) {
-            return originField;
-        }
+        return calcFieldCache.resolve(originField, field -> String.format(KylinConstants.KEYWORD_FIX, tableObj.getTableAlias(), field.getOriginName()));
+    }
+
+    private List<DatasetTableField> selectCalcFields(List<String> ids) {
         DatasetTableFieldExample datasetTableFieldExample = new DatasetTableFieldExample();
-        datasetTableFieldExample.createCriteria().andIdIn(new ArrayList<>(ids));
-        List<DatasetTableField> calcFields = datasetTableFieldMapper.selectByExample(datasetTableFieldExample);
-        for (DatasetTableField ele : calcFields) {
-            originField = originField.replaceAll("\\[" + ele.getId() + "]",
-                    String.format(KylinConstants.KEYWORD_FIX, tableObj.getTableAlias(), ele.getOriginName()));
-        }
-        return originField;
+        datasetTableFieldExample.createCriteria().andIdIn(ids);
+        return datasetTableFieldMapper.selectByExample(datasetTableFieldExample);
+    }
+
+    /**
+     * SQL 缓存键
+     *
+     * @param method
+     * @param table
+     * @param ds
+     * @param view
+     * @param inputs
+     * @return
+     */
+    private String sqlCacheKey(String method, String table, Datasource ds, ChartViewWithBLOBs view, Object... inputs) {
+        return calcFieldCache.sqlCacheKey(DatasetTableField::getOriginName, method, table, ds == null ? null : ds.getId(), ds == null ? null : ds.getConfiguration(),
+                view == null ? null : view.getResultMode(), view == null ? null : view.getResultCount(), inputs);
     }
 
     private String sqlLimit(String sql, ChartViewWithBLOBs view) {
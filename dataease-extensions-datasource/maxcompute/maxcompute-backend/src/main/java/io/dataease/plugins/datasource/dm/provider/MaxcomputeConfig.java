@@ -15,6 +15,26 @@ public class MaxcomputeConfig extends JdbcConfiguration {
     private String access_key;
     private String end_point;
     private String extraParams;
+    // 查询结果缓存有效期（秒），为空或不大于 0 时不缓存
+    private Integer resultCacheTtl;
+    // 是否使用连接池
+    private Boolean poolEnabled = false;
+    // 连接池最小空闲连接数，启动时预先建立
+    private Integer poolMinIdle;
+    // 连接池最大连接数
+    private Integer poolMaxActive;
+    // 借出超过该时长（分钟）未归还的连接强制回收并打印借出位置，为空时不回收
+    private Integer poolRemoveAbandonedMinutes;
+    // 整表查询是否通过 Table Tunnel 并行下载
+    private Boolean tunnelEnabled = false;
+    // 其余查询是否通过 Instance Tunnel 下载结果，需同时开启 tunnelEnabled
+    private Boolean tunnelSqlEnabled = false;
+    // Tunnel 服务地址，为空时由服务端路由
+    private String tunnelEndpoint;
+    // Tunnel 并行下载线程数
+    private Integer tunnelThreads;
+    // 分区表查询未按分区列过滤时的处理：warn 打印告警，reject 拒绝查询，为空时不检查
+    private String partitionScanCheck;
 
 
     public String getJdbc() {
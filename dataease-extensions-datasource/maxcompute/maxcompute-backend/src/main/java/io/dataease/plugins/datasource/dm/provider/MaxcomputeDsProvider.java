@@ -1,31 +1,62 @@
 package io.dataease.plugins.datasource.dm.provider;
 
 import com.google.gson.Gson;
+import io.dataease.plugins.common.base.domain.Datasource;
 import io.dataease.plugins.common.base.domain.DeDriver;
 import io.dataease.plugins.common.base.mapper.DeDriverMapper;
+import io.dataease.plugins.common.dto.chart.ChartViewFieldDTO;
 import io.dataease.plugins.common.dto.datasource.TableDesc;
 import io.dataease.plugins.common.dto.datasource.TableField;
 import io.dataease.plugins.common.exception.DataEaseException;
 import io.dataease.plugins.common.request.datasource.DatasourceRequest;
+import io.dataease.plugins.datasource.common.ConnectionPool;
+import io.dataease.plugins.datasource.common.DriverRegistry;
+import io.dataease.plugins.datasource.common.QueryCoalescer;
+import io.dataease.plugins.datasource.common.ResultCache;
 import io.dataease.plugins.datasource.entity.JdbcConfiguration;
 import io.dataease.plugins.datasource.provider.DefaultJdbcProvider;
 import io.dataease.plugins.datasource.provider.ExtendedJdbcClassLoader;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 
 @Component()
 public class MaxcomputeDsProvider extends DefaultJdbcProvider {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(MaxcomputeDsProvider.class);
+
     @Resource
     private DeDriverMapper deDriverMapper;
 
+    @Resource
+    private MaxcomputePartitionMetadata partitionMetadata;
+
+    private static final long RESULT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final long COALESCE_WAIT_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
+    private final ResultCache resultCache = new ResultCache(RESULT_CACHE_MAX_BYTES);
+
+    private final QueryCoalescer<List<String[]>> queryCoalescer = new QueryCoalescer<>(COALESCE_WAIT_TIMEOUT_MILLIS, QueryCoalescer::copyRows);
+
+    private final QueryCoalescer<Map<String, List>> resultAndFieldCoalescer = new QueryCoalescer<>(COALESCE_WAIT_TIMEOUT_MILLIS, QueryCoalescer::copyResultAndField);
+
+    private final ConnectionPool connectionPool = new ConnectionPool("maxcompute", null);
+
+    private final DriverRegistry<DeDriver, ExtendedJdbcClassLoader> driverRegistry = new DriverRegistry<>(id -> deDriverMapper.selectByPrimaryKey(id),
+            DeDriver::getDriverClass, this::getCustomJdbcClassLoader);
+
     @Override
     public String getType() {
         return "maxcompute";
@@ -36,6 +67,96 @@ public class MaxcomputeDsProvider extends DefaultJdbcProvider {
         return false;
     }
 
+    @PostConstruct
+    public void init() {
+        partitionMetadata.setLoader(this::getPartitionColumns);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        connectionPool.closeAll();
+    }
+
+    @Override
+    public List<String[]> getData(DatasourceRequest datasourceRequest) throws Exception {
+        MaxcomputeConfig maxcomputeConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), MaxcomputeConfig.class);
+        Integer resultCacheTtl = maxcomputeConfig.getResultCacheTtl();
+        String key = resultCacheKey(datasourceRequest);
+        // 相同查询正在执行时共享其结果
+        if (resultCacheTtl == null || resultCacheTtl <= 0) {
+            return queryCoalescer.execute(key, () -> queryData(datasourceRequest, maxcomputeConfig));
+        }
+        return resultCache.get(key, resultCacheTtl * 1000L, () -> queryCoalescer.execute(key, () -> queryData(datasourceRequest, maxcomputeConfig)));
+    }
+
+    /**
+     * 查询结果缓存与相同查询合并的键：数据源、最终 SQL 以及影响结果的权限字段与视图字段
+     *
+     * @param datasourceRequest
+     * @return
+     */
+    private String resultCacheKey(DatasourceRequest datasourceRequest) {
+        return ResultCache.key(datasourceRequest.getDatasource().getId(), datasourceRequest.getDatasource().getConfiguration(),
+                datasourceRequest.getQuery(), datasourceRequest.isPreviewData(), datasourceRequest.isTotalPageFlag(),
+                ResultCache.names(datasourceRequest.getPermissionFields(), field -> field.getId() + ":" + field.getOriginName()),
+                ResultCache.names(datasourceRequest.getXAxis(), ChartViewFieldDTO::getOriginName),
+                ResultCache.names(datasourceRequest.getYAxis(), ChartViewFieldDTO::getOriginName));
+    }
+
+    @Override
+    public Map<String, List> fetchResultAndField(DatasourceRequest datasourceRequest) throws Exception {
+        // 与 getData 使用相同的请求指纹，相同查询正在执行时共享其结果与字段
+        return resultAndFieldCoalescer.execute(resultCacheKey(datasourceRequest), () -> super.fetchResultAndField(datasourceRequest));
+    }
+
+    /**
+     * 开启 Tunnel 时整表查询与大查询通过 Tunnel 下载，否则通过 JDBC 查询
+     *
+     * @param datasourceRequest
+     * @param maxcomputeConfig
+     * @return
+     * @throws Exception
+     */
+    private List<String[]> queryData(DatasourceRequest datasourceRequest, MaxcomputeConfig maxcomputeConfig) throws Exception {
+        if (!Boolean.TRUE.equals(maxcomputeConfig.getTunnelEnabled()) || datasourceRequest.isPreviewData()) {
+            return super.getData(datasourceRequest);
+        }
+        MaxcomputeTunnelReader.TableScan tableScan = MaxcomputeTunnelReader.parseTableScan(datasourceRequest.getQuery());
+        if (tableScan == null && !Boolean.TRUE.equals(maxcomputeConfig.getTunnelSqlEnabled())) {
+            return super.getData(datasourceRequest);
+        }
+        MaxcomputeTunnelReader tunnelReader = null;
+        try {
+            ClassLoader classLoader = driverRegistry.getDriver(maxcomputeConfig.getCustomDriver(), maxcomputeConfig.getDriver(),
+                    extendedJdbcClassLoader, isDefaultClassLoader(maxcomputeConfig.getCustomDriver())).getClassLoader();
+            tunnelReader = new MaxcomputeTunnelReader(classLoader, maxcomputeConfig);
+            return tableScan != null ? tunnelReader.readTable(tableScan) : tunnelReader.readQuery(datasourceRequest.getQuery());
+        } catch (Exception e) {
+            if (tunnelReader != null && tunnelReader.isDownloadStarted()) {
+                // 已开始下载后失败时直接报错，不再通过 JDBC 把整个查询重新执行一遍
+                throw e;
+            }
+            // 开始下载前 Tunnel 不可用时退回 JDBC 查询
+            LOGGER.warn("MaxCompute tunnel download failed, falling back to JDBC: " + e.getMessage(), e);
+            return super.getData(datasourceRequest);
+        }
+    }
+
+    /**
+     * 读取表的分区列，启动时登记到 MaxcomputePartitionMetadata，供查询构建时生成可裁剪分区的过滤条件
+     *
+     * @param datasource
+     * @param table
+     * @return
+     * @throws Exception
+     */
+    public List<String> getPartitionColumns(Datasource datasource, String table) throws Exception {
+        MaxcomputeConfig maxcomputeConfig = new Gson().fromJson(datasource.getConfiguration(), MaxcomputeConfig.class);
+        ClassLoader classLoader = driverRegistry.getDriver(maxcomputeConfig.getCustomDriver(), maxcomputeConfig.getDriver(),
+                extendedJdbcClassLoader, isDefaultClassLoader(maxcomputeConfig.getCustomDriver())).getClassLoader();
+        return new MaxcomputeTunnelReader(classLoader, maxcomputeConfig).getPartitionColumns(table);
+    }
+
     @Override
     public Connection getConnection(DatasourceRequest datasourceRequest) throws Exception {
 
@@ -55,21 +176,14 @@ public class MaxcomputeDsProvider extends DefaultJdbcProvider {
         String customDriver = maxcomputeConfig.getCustomDriver();
         String url = maxcomputeConfig.getJdbc();
 
-        DeDriver deDriver;
-        String driverClassName ;
-        ExtendedJdbcClassLoader jdbcClassLoader;
-        if(!isDefaultClassLoader(customDriver)){
-            deDriver = deDriverMapper.selectByPrimaryKey(customDriver);
-            driverClassName = deDriver.getDriverClass();
-            jdbcClassLoader = getCustomJdbcClassLoader(deDriver);
-        }else {
-            driverClassName = defaultDriver;
-            jdbcClassLoader = extendedJdbcClassLoader;
+        DriverRegistry.ResolvedDriver<ExtendedJdbcClassLoader> resolvedDriver = driverRegistry.getDriver(customDriver, defaultDriver, extendedJdbcClassLoader, isDefaultClassLoader(customDriver));
+        ExtendedJdbcClassLoader jdbcClassLoader = resolvedDriver.getClassLoader();
+        Driver driverClass = resolvedDriver.getDriver();
+        if (Boolean.TRUE.equals(maxcomputeConfig.getPoolEnabled())) {
+            return connectionPool.getConnection(datasourceRequest.getDatasource().getId(), datasourceRequest.getDatasource().getConfiguration(),
+                    jdbcClassLoader, driverClass, url, props, maxcomputeConfig.getPoolMinIdle(), maxcomputeConfig.getPoolMaxActive(), maxcomputeConfig.getPoolRemoveAbandonedMinutes());
         }
-
-        Driver driverClass = (Driver) jdbcClassLoader.loadClass(driverClassName).newInstance();
-        Connection conn = driverClass.connect(url, props);
-        return conn;
+        return driverClass.connect(url, props);
     }
 
     @Override
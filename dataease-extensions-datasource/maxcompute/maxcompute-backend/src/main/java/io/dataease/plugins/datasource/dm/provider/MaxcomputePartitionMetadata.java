@@ -0,0 +1,96 @@
+package io.dataease.plugins.datasource.dm.provider;
+
+import io.dataease.plugins.common.base.domain.Datasource;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分区元数据
+ * 按（数据源、表）缓存表的分区列名（小写），数据源配置变化或超过有效期后重新读取元数据；
+ * 读取失败时按空集合缓存同样的有效期，避免每次构建 SQL 都重新访问元数据服务。
+ * 元数据通过驱动类加载器读取，由 MaxcomputeDsProvider 启动时登记读取方式，查询构建只依赖本类。
+ */
+@Component
+public class MaxcomputePartitionMetadata {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MaxcomputePartitionMetadata.class);
+
+    private static final long TTL_MILLIS = 10 * 60 * 1000L;
+
+    private final long ttlMillis;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile Loader loader;
+
+    public MaxcomputePartitionMetadata() {
+        this(TTL_MILLIS);
+    }
+
+    MaxcomputePartitionMetadata(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public void setLoader(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * 读取物理表的分区列，缓存不存在、已过期或配置已变化时重新读取
+     *
+     * @param datasource
+     * @param table
+     * @return SQL 数据集、非分区表或读取失败时返回空集合
+     */
+    public Set<String> getPartitionColumns(Datasource datasource, String table) {
+        Loader current = loader;
+        if (datasource == null || current == null || (table.startsWith("(") && table.endsWith(")"))) {
+            return Collections.emptySet();
+        }
+        String key = StringUtils.defaultString(datasource.getId()) + "/" + table;
+        String configuration = StringUtils.defaultString(datasource.getConfiguration());
+        Entry entry = entries.get(key);
+        if (entry != null && entry.configuration.equals(configuration) && System.currentTimeMillis() - entry.loadTime < ttlMillis) {
+            return entry.columns;
+        }
+        Set<String> columns = new HashSet<>();
+        try {
+            for (String column : current.load(datasource, table)) {
+                columns.add(column.toLowerCase());
+            }
+            columns = Collections.unmodifiableSet(columns);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to load MaxCompute partition columns of " + table + ": " + e.getMessage(), e);
+            columns = Collections.emptySet();
+        }
+        entries.put(key, new Entry(configuration, columns, System.currentTimeMillis()));
+        return columns;
+    }
+
+    public interface Loader {
+        /**
+         * @param datasource
+         * @param table
+         * @return 分区列名，非分区表返回空列表
+         * @throws Exception
+         */
+        List<String> load(Datasource datasource, String table) throws Exception;
+    }
+
+    private static class Entry {
+        private final String configuration;
+        private final Set<String> columns;
+        private final long loadTime;
+
+        private Entry(String configuration, Set<String> columns, long loadTime) {
+            this.configuration = configuration;
+            this.columns = columns;
+            this.loadTime = loadTime;
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package io.dataease.plugins.datasource.dm.provider;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * MaxCompute Tunnel 下载
+ * 整表查询通过 Table Tunnel 按分区、按行区间并行下载，其余查询通过 Instance Tunnel 下载查询结果；
+ * ODPS SDK 随 JDBC 驱动加载，这里通过驱动类加载器反射调用。
+ */
+public class MaxcomputeTunnelReader {
+
+    // createRawQuerySQL 生成的整表查询：SELECT "col" AS alias,... FROM schema.table [LIMIT n]
+    private static final Pattern TABLE_SCAN_PATTERN = Pattern.compile("^\\s*SELECT\\s+(.+?)\\s+FROM\\s+([\\w.\"`]+)(?:\\s+LIMIT\\s+(\\d+))?\\s*;?\\s*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern COLUMN_PATTERN = Pattern.compile("^[\"`]?(\\w+)[\"`]?(\\s+AS\\s+\\S+)?$", Pattern.CASE_INSENSITIVE);
+
+    // 每个下载任务的最大行数
+    private static final long SPLIT_ROWS = 1000000L;
+
+    private static final int DEFAULT_THREADS = 4;
+
+    private static final int MAX_THREADS = 32;
+
+    private final ClassLoader classLoader;
+
+    private final MaxcomputeConfig config;
+
+    private final AtomicBoolean downloadStarted = new AtomicBoolean();
+
+    public MaxcomputeTunnelReader(ClassLoader classLoader, MaxcomputeConfig config) {
+        this.classLoader = classLoader;
+        this.config = config;
+    }
+
+    /**
+     * 解析整表查询，不是单表简单列投影时返回 null
+     *
+     * @param sql
+     * @return
+     */
+    public static TableScan parseTableScan(String sql) {
+        if (StringUtils.isEmpty(sql)) {
+            return null;
+        }
+        Matcher matcher = TABLE_SCAN_PATTERN.matcher(sql);
+        if (!matcher.matches()) {
+            return null;
+        }
+        String[] tableParts = matcher.group(2).replace("\"", "").replace("`", "").split("\\.");
+        String table = tableParts[tableParts.length - 1];
+        Long limit = matcher.group(3) == null ? null : Long.valueOf(matcher.group(3));
+        String selectList = matcher.group(1).trim();
+        if (selectList.equals("*")) {
+            return new TableScan(table, null, limit);
+        }
+        List<String> columns = new ArrayList<>();
+        for (String item : selectList.split(",")) {
+            Matcher column = COLUMN_PATTERN.matcher(item.trim());
+            if (!column.matches()) {
+                return null;
+            }
+            columns.add(column.group(1));
+        }
+        return new TableScan(table, columns, limit);
+    }
+
+    /**
+     * 是否已开始下载数据，开始下载后失败时不应再退回 JDBC 重新查询
+     *
+     * @return
+     */
+    public boolean isDownloadStarted() {
+        return downloadStarted.get();
+    }
+
+    /**
+     * 通过 Table Tunnel 下载整表，分区表按分区并行下载
+     *
+     * @param scan
+     * @return
+     * @throws Exception
+     */
+    public List<String[]> readTable(TableScan scan) throws Exception {
+        return withContextClassLoader(() -> {
+            Object odps = createOdps();
+            Object tunnel = newInstance("com.aliyun.odps.tunnel.TableTunnel", "com.aliyun.odps.Odps", odps);
+            setTunnelEndpoint(tunnel);
+            String project = config.getProjectName();
+            Object table = invoke(invoke(odps, "tables"), "get", new Class[]{String.class, String.class}, project, scan.table);
+            List<Object> partitionSpecs = new ArrayList<>();
+            if ((Boolean) invoke(table, "isPartitioned")) {
+                for (Object partition : (List<?>) invoke(table, "getPartitions")) {
+                    partitionSpecs.add(invoke(partition, "getPartitionSpec"));
+                }
+            } else {
+                partitionSpecs.add(null);
+            }
+
+            ExecutorService executor = newExecutor();
+            try {
+                List<Split> splits = new ArrayList<>();
+                if (scan.limit == null) {
+                    // 各分区的下载会话并行创建
+                    List<Future<Object>> sessions = new ArrayList<>();
+                    for (Object spec : partitionSpecs) {
+                        sessions.add(executor.submit(() -> withContextClassLoader(() -> createDownloadSession(tunnel, scan.table, spec))));
+                    }
+                    for (int i = 0; i < sessions.size(); i++) {
+                        addSplits(splits, getResult(sessions.get(i)), partitionSpecs.get(i), Long.MAX_VALUE);
+                    }
+                } else {
+                    // 有 LIMIT 时按分区顺序创建会话，只下载前 limit 行，够数后不再为后续分区创建会话
+                    long remaining = scan.limit;
+                    for (int i = 0; i < partitionSpecs.size() && remaining > 0; i++) {
+                        remaining -= addSplits(splits, createDownloadSession(tunnel, scan.table, partitionSpecs.get(i)), partitionSpecs.get(i), remaining);
+                    }
+                }
+                return readSplits(executor, splits, scan.columns);
+            } finally {
+                executor.shutdownNow();
+            }
+        });
+    }
+
+    /**
+     * 执行查询后通过 Instance Tunnel 并行下载结果
+     *
+     * @param sql
+     * @return
+     * @throws Exception
+     */
+    public List<String[]> readQuery(String sql) throws Exception {
+        return withContextClassLoader(() -> {
+            Object odps = createOdps();
+            String statement = sql.trim().endsWith(";") ? sql.trim() : sql.trim() + ";";
+            Class<?> sqlTaskClass = classLoader.loadClass("com.aliyun.odps.task.SQLTask");
+            Object instance = sqlTaskClass.getMethod("run", classLoader.loadClass("com.aliyun.odps.Odps"), String.class).invoke(null, odps, statement);
+            invoke(instance, "waitForSuccess");
+            Object tunnel = newInstance("com.aliyun.odps.tunnel.InstanceTunnel", "com.aliyun.odps.Odps", odps);
+            setTunnelEndpoint(tunnel);
+            Object session = invoke(tunnel, "createDownloadSession", new Class[]{String.class, String.class},
+                    config.getProjectName(), invoke(instance, "getId"));
+            ExecutorService executor = newExecutor();
+            try {
+                List<Split> splits = new ArrayList<>();
+                addSplits(splits, session, null, Long.MAX_VALUE);
+                return readSplits(executor, splits, null);
+            } finally {
+                executor.shutdownNow();
+            }
+        });
+    }
+
+    /**
+     * 读取表的分区列名，非分区表返回空列表
+     *
+     * @param table
+     * @return
+     * @throws Exception
+     */
+    public List<String> getPartitionColumns(String table) throws Exception {
+        return withContextClassLoader(() -> {
+            Object odps = createOdps();
+            Object odpsTable = invoke(invoke(odps, "tables"), "get", new Class[]{String.class, String.class}, config.getProjectName(), table);
+            return columnNames((List<?>) invoke(invoke(odpsTable, "getSchema"), "getPartitionColumns"));
+        });
+    }
+
+    /**
+     * 创建整表或单个分区的下载会话
+     *
+     * @param tunnel
+     * @param table
+     * @param partitionSpec 为空时表示非分区表
+     * @return
+     * @throws Exception
+     */
+    private Object createDownloadSession(Object tunnel, String table, Object partitionSpec) throws Exception {
+        if (partitionSpec == null) {
+            return invoke(tunnel, "createDownloadSession", new Class[]{String.class, String.class}, config.getProjectName(), table);
+        }
+        Class<?> partitionSpecClass = classLoader.loadClass("com.aliyun.odps.PartitionSpec");
+        return invoke(tunnel, "createDownloadSession", new Class[]{String.class, String.class, partitionSpecClass}, config.getProjectName(), table, partitionSpec);
+    }
+
+    /**
+     * 按 SPLIT_ROWS 拆分下载会话
+     *
+     * @param splits
+     * @param session
+     * @param partitionSpec
+     * @param maxRows       最多下载的行数
+     * @return 拆分出的行数
+     * @throws Exception
+     */
+    private long addSplits(List<Split> splits, Object session, Object partitionSpec, long maxRows) throws Exception {
+        long count = Math.min((Long) invoke(session, "getRecordCount"), maxRows);
+        for (long start = 0; start < count; start += SPLIT_ROWS) {
+            splits.add(new Split(session, partitionSpec, start, Math.min(SPLIT_ROWS, count - start)));
+        }
+        return count;
+    }
+
+    private List<String[]> readSplits(ExecutorService executor, List<Split> splits, List<String> columns) throws Exception {
+        List<Future<List<String[]>>> futures = new ArrayList<>();
+        for (Split split : splits) {
+            futures.add(executor.submit(() -> withContextClassLoader(() -> readSplit(split, columns))));
+        }
+        // 按分区与行区间的顺序拼接结果
+        List<String[]> rows = new ArrayList<>();
+        for (Future<List<String[]>> future : futures) {
+            rows.addAll(getResult(future));
+        }
+        return rows;
+    }
+
+    private List<String[]> readSplit(Split split, List<String> columns) throws Exception {
+        Object schema = invoke(split.session, "getSchema");
+        List<?> dataColumns = (List<?>) invoke(schema, "getColumns");
+        List<String> dataNames = columnNames(dataColumns);
+        List<String> partitionNames = split.partitionSpec == null ? new ArrayList<>() : columnNames((List<?>) invoke(schema, "getPartitionColumns"));
+        List<String> output = columns;
+        if (output == null) {
+            output = new ArrayList<>(dataNames);
+            output.addAll(partitionNames);
+        }
+
+        // 只传输查询用到的普通列，分区列的取值来自分区信息
+        List<Object> projection = new ArrayList<>();
+        int[] indexes = new int[output.size()];
+        String[] partitionValues = new String[output.size()];
+        for (int i = 0; i < output.size(); i++) {
+            int dataIndex = indexOfIgnoreCase(dataNames, output.get(i));
+            if (dataIndex >= 0) {
+                indexes[i] = projection.size();
+                projection.add(dataColumns.get(dataIndex));
+                continue;
+            }
+            int partitionIndex = indexOfIgnoreCase(partitionNames, output.get(i));
+            if (partitionIndex < 0) {
+                throw new Exception("Column not found in tunnel schema: " + output.get(i));
+            }
+            indexes[i] = -1;
+            partitionValues[i] = (String) invoke(split.partitionSpec, "get", new Class[]{String.class}, partitionNames.get(partitionIndex));
+        }
+
+        Object reader;
+        if (projection.isEmpty() || projection.size() == dataColumns.size() && columns == null) {
+            reader = invoke(split.session, "openRecordReader", new Class[]{long.class, long.class}, split.start, split.count);
+        } else {
+            reader = invoke(split.session, "openRecordReader", new Class[]{long.class, long.class, boolean.class, List.class}, split.start, split.count, true, projection);
+        }
+        downloadStarted.set(true);
+        // 行数只是上限，读到多少放多少，不按区间大小预先分配
+        List<String[]> rows = new ArrayList<>();
+        try {
+            Method read = method(reader.getClass(), "read");
+            Method get = null;
+            Object record;
+            while ((record = read.invoke(reader)) != null) {
+                if (get == null) {
+                    get = method(record.getClass(), "get", int.class);
+                }
+                String[] row = new String[indexes.length];
+                for (int i = 0; i < indexes.length; i++) {
+                    row[i] = indexes[i] < 0 ? partitionValues[i] : format(get.invoke(record, indexes[i]));
+                }
+                rows.add(row);
+            }
+        } catch (InvocationTargetException e) {
+            throw unwrap(e);
+        } finally {
+            invoke(reader, "close");
+        }
+        return rows;
+    }
+
+    private Object createOdps() throws Exception {
+        Object account = newInstance("com.aliyun.odps.account.AliyunAccount", new String[]{String.class.getName(), String.class.getName()},
+                config.getAccess_id(), config.getAccess_key());
+        Object odps = newInstance("com.aliyun.odps.Odps", "com.aliyun.odps.account.Account", account);
+        invoke(odps, "setEndpoint", new Class[]{String.class}, config.getEnd_point().trim());
+        invoke(odps, "setDefaultProject", new Class[]{String.class}, config.getProjectName().trim());
+        return odps;
+    }
+
+    private void setTunnelEndpoint(Object tunnel) throws Exception {
+        if (StringUtils.isNotBlank(config.getTunnelEndpoint())) {
+            invoke(tunnel, "setEndpoint", new Class[]{String.class}, config.getTunnelEndpoint().trim());
+        }
+    }
+
+    private ExecutorService newExecutor() {
+        int threads = config.getTunnelThreads() == null ? DEFAULT_THREADS : Math.max(1, Math.min(config.getTunnelThreads(), MAX_THREADS));
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "maxcompute-tunnel-download");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private <T> T withContextClassLoader(Callable<T> callable) throws Exception {
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        try {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            return callable.call();
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    private Object newInstance(String className, String parameterClassName, Object argument) throws Exception {
+        return newInstance(className, new String[]{parameterClassName}, argument);
+    }
+
+    private Object newInstance(String className, String[] parameterClassNames, Object... arguments) throws Exception {
+        Class<?>[] parameterTypes = new Class[parameterClassNames.length];
+        for (int i = 0; i < parameterClassNames.length; i++) {
+            parameterTypes[i] = classLoader.loadClass(parameterClassNames[i]);
+        }
+        try {
+            return classLoader.loadClass(className).getConstructor(parameterTypes).newInstance(arguments);
+        } catch (InvocationTargetException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static Object invoke(Object target, String methodName) throws Exception {
+        return invoke(target, methodName, new Class[0]);
+    }
+
+    private static Object invoke(Object target, String methodName, Class<?>[] parameterTypes, Object... arguments) throws Exception {
+        try {
+            return method(target.getClass(), methodName, parameterTypes).invoke(target, arguments);
+        } catch (InvocationTargetException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * SDK 返回的对象可能是非 public 的实现类，取到的方法需要设置为可访问
+     */
+    private static Method method(Class<?> type, String methodName, Class<?>... parameterTypes) throws NoSuchMethodException {
+        Method method = type.getMethod(methodName, parameterTypes);
+        method.setAccessible(true);
+        return method;
+    }
+
+    private static Exception unwrap(InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof Exception ? (Exception) cause : e;
+    }
+
+    private static <T> T getResult(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private static List<String> columnNames(List<?> columns) throws Exception {
+        List<String> names = new ArrayList<>(columns.size());
+        for (Object column : columns) {
+            names.add((String) invoke(column, "getName"));
+        }
+        return names;
+    }
+
+    private static int indexOfIgnoreCase(List<String> names, String name) {
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 转换为与 JDBC getString 一致的字符串
+     *
+     * @param value
+     * @return
+     */
+    private static String format(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        if (value instanceof java.sql.Timestamp || value instanceof java.sql.Date) {
+            return value.toString();
+        }
+        if (value instanceof java.util.Date) {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format((java.util.Date) value);
+        }
+        return value.toString();
+    }
+
+    public static class TableScan {
+        private final String table;
+        // 为空时表示 select *
+        private final List<String> columns;
+        // 为空时表示没有 LIMIT
+        private final Long limit;
+
+        private TableScan(String table, List<String> columns, Long limit) {
+            this.table = table;
+            this.columns = columns;
+            this.limit = limit;
+        }
+    }
+
+    private static class Split {
+        private final Object session;
+        private final Object partitionSpec;
+        private final long start;
+        private final long count;
+
+        private Split(Object session, Object partitionSpec, long start, long count) {
+            this.session = session;
+            this.partitionSpec = partitionSpec;
+            this.start = start;
+            this.count = count;
+        }
+    }
+}
@@ -16,9 +16,15 @@ import io.dataease.plugins.common.dto.chart.ChartFieldCustomFilterDTO;
 import io.dataease.plugins.common.dto.chart.ChartViewFieldDTO;
 import io.dataease.plugins.common.dto.datasource.DeSortField;
 import io.dataease.plugins.common.dto.sqlObj.SQLObj;
+import io.dataease.plugins.common.exception.DataEaseException;
 import io.dataease.plugins.common.request.chart.ChartExtFilterRequest;
 import io.dataease.plugins.common.request.permission.DataSetRowPermissionsTreeDTO;
 import io.dataease.plugins.common.request.permission.DatasetRowPermissionsTreeItem;
+import io.dataease.plugins.datasource.common.CalcFieldCache;
+import io.dataease.plugins.datasource.common.SqlCache;
+import io.dataease.plugins.datasource.common.TemplateRegistry;
+import io.dataease.plugins.datasource.dm.provider.MaxcomputeConfig;
+import io.dataease.plugins.datasource.dm.provider.MaxcomputePartitionMetadata;
 import io.dataease.plugins.datasource.entity.Dateformat;
 import io.dataease.plugins.datasource.entity.JdbcConfiguration;
 import io.dataease.plugins.datasource.entity.PageInfo;
@@ -26,17 +32,16 @@ import io.dataease.plugins.datasource.query.QueryProvider;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.stringtemplate.v4.ST;
 import org.stringtemplate.v4.STGroup;
-import org.stringtemplate.v4.STGroupFile;
 
 import javax.annotation.Resource;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static io.dataease.plugins.common.constants.datasource.SQLConstants.TABLE_ALIAS_PREFIX;
@@ -44,9 +49,18 @@ import static io.dataease.plugins.common.constants.datasource.SQLConstants.TABLE
 
 @Component()
 public class MaxcomputeQueryProvider extends QueryProvider {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MaxcomputeQueryProvider.class);
+
     @Resource
     private DatasetTableFieldMapper datasetTableFieldMapper;
 
+    private final CalcFieldCache<DatasetTableField> calcFieldCache = new CalcFieldCache<>(this::selectCalcFields, DatasetTableField::getId);
+
+    private final SqlCache sqlCache = new SqlCache();
+
+    @Resource
+    private MaxcomputePartitionMetadata partitionMetadata;
+
     @Override
     public Integer transFieldType(String field) {
         field = field.contains("(") ? field.split("\\(")[0] : field;
@@ -86,10 +100,12 @@ public class MaxcomputeQueryProvider extends QueryProvider {
 
     @Override
     public String createQuerySQL(String table, List<DatasetTableField> fields, boolean isGroup, Datasource ds, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<DeSortField> sortFields) {
+        calcFieldCache.prefetchInputs(fields, fieldCustomFilter, rowPermissionsTree);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table : String.format(MaxConstants.KEYWORD_TABLE, table))
                 .tableAlias(String.format(TABLE_ALIAS_PREFIX, 0))
                 .build();
+        Set<String> partitionColumns = partitionMetadata.getPartitionColumns(ds, table);
 
 
         List<SQLObj> xFields = new ArrayList<>();
@@ -141,12 +157,12 @@ public class MaxcomputeQueryProvider extends QueryProvider {
             }
         }
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("previewSql");
         st_sql.add("isGroup", isGroup);
         if (CollectionUtils.isNotEmpty(xFields)) st_sql.add("groups", xFields);
         if (ObjectUtils.isNotEmpty(tableObj)) st_sql.add("table", tableObj);
-        String customWheres = transCustomFilterList(tableObj, fieldCustomFilter);
+        String customWheres = transCustomFilterList(tableObj, fieldCustomFilter, partitionColumns);
         // row permissions tree
         String whereTrees = transFilterTrees(tableObj, rowPermissionsTree);
         List<String> wheres = new ArrayList<>();
@@ -249,10 +265,19 @@ public class MaxcomputeQueryProvider extends QueryProvider {
 
     @Override
     public String getSQL(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view) {
+        // 在读取 SQL 缓存前检查，缓存命中时同样告警或拒绝
+        checkPartitionScan(table, ds, fieldCustomFilter, extFilterRequestList);
+        String cacheKey = sqlCacheKey("getSQL", table, ds, view, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
+        return sqlCache.get(cacheKey, () -> buildSQL(table, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view));
+    }
+
+    private String buildSQL(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table : String.format(MaxConstants.KEYWORD_TABLE, table))
                 .tableAlias(String.format(TABLE_ALIAS_PREFIX, 0))
                 .build();
+        Set<String> partitionColumns = partitionMetadata.getPartitionColumns(ds, table);
 
         List<SQLObj> xFields = new ArrayList<>();
         List<SQLObj> xOrders = new ArrayList<>();
@@ -312,9 +337,9 @@ public class MaxcomputeQueryProvider extends QueryProvider {
             }
         }
         // 处理视图中字段过滤
-        String customWheres = transCustomFilterList(tableObj, fieldCustomFilter);
+        String customWheres = transCustomFilterList(tableObj, fieldCustomFilter, partitionColumns);
         // 处理仪表板字段过滤
-        String extWheres = transExtFilterList(tableObj, extFilterRequestList);
+        String extWheres = transExtFilterList(tableObj, extFilterRequestList, partitionColumns);
         // row permissions tree
         String whereTrees = transFilterTrees(tableObj, rowPermissionsTree);
         // 构建sql所有参数
@@ -334,7 +359,7 @@ public class MaxcomputeQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(xFields)) st_sql.add("groups", xFields);
         if (CollectionUtils.isNotEmpty(yFields)) st_sql.add("aggregators", yFields);
@@ -357,6 +382,7 @@ public class MaxcomputeQueryProvider extends QueryProvider {
     public String getSQLWithPage(boolean isTable, String table, List<ChartViewFieldDTO> xAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view, PageInfo pageInfo) {
         String limit = ((pageInfo.getGoPage() != null && pageInfo.getPageSize() != null) ? " LIMIT " + pageInfo.getPageSize() + " offset " + (pageInfo.getGoPage() - 1) * pageInfo.getPageSize() : "");
         if (isTable) {
+            checkPartitionScan(table, ds, fieldCustomFilter, extFilterRequestList);
             return originalTableInfo(table, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view) + limit;
         } else {
             return originalTableInfo("(" + sqlFix(table) + ")", xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view) + limit;
@@ -364,10 +390,12 @@ public class MaxcomputeQueryProvider extends QueryProvider {
     }
 
     private String originalTableInfo(String table, List<ChartViewFieldDTO> xAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table : String.format(MaxConstants.KEYWORD_TABLE, table))
                 .tableAlias(String.format(TABLE_ALIAS_PREFIX, 0))
                 .build();
+        Set<String> partitionColumns = partitionMetadata.getPartitionColumns(ds, table);
 
         List<SQLObj> xFields = new ArrayList<>();
         List<SQLObj> xOrders = new ArrayList<>();
@@ -401,9 +429,9 @@ public class MaxcomputeQueryProvider extends QueryProvider {
             }
         }
         // 处理视图中字段过滤
-        String customWheres = transCustomFilterList(tableObj, fieldCustomFilter);
+        String customWheres = transCustomFilterList(tableObj, fieldCustomFilter, partitionColumns);
         // 处理仪表板字段过滤
-        String extWheres = transExtFilterList(tableObj, extFilterRequestList);
+        String extWheres = transExtFilterList(tableObj, extFilterRequestList, partitionColumns);
         // row permissions tree
         String whereTrees = transFilterTrees(tableObj, rowPermissionsTree);
         // 构建sql所有参数
@@ -419,7 +447,7 @@ public class MaxcomputeQueryProvider extends QueryProvider {
         List<SQLObj> orders = new ArrayList<>();
         orders.addAll(xOrders);
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("previewSql");
         st_sql.add("isGroup", false);
         if (CollectionUtils.isNotEmpty(xFields)) st_sql.add("groups", xFields);
@@ -440,6 +468,12 @@ public class MaxcomputeQueryProvider extends QueryProvider {
 
     @Override
     public String getSQLTableInfo(String table, List<ChartViewFieldDTO> xAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view) {
+        checkPartitionScan(table, ds, fieldCustomFilter, extFilterRequestList);
+        String cacheKey = sqlCacheKey("getSQLTableInfo", table, ds, view, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
+        return sqlCache.get(cacheKey, () -> buildSQLTableInfo(table, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view));
+    }
+
+    private String buildSQLTableInfo(String table, List<ChartViewFieldDTO> xAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, Datasource ds, ChartViewWithBLOBs view) {
         return sqlLimit(originalTableInfo(table, xAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, ds, view), view);
     }
 
@@ -456,10 +490,18 @@ public class MaxcomputeQueryProvider extends QueryProvider {
 
     @Override
     public String getSQLStack(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, List<ChartViewFieldDTO> extStack, Datasource ds, ChartViewWithBLOBs view) {
+        checkPartitionScan(table, ds, fieldCustomFilter, extFilterRequestList);
+        String cacheKey = sqlCacheKey("getSQLStack", table, ds, view, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extStack);
+        return sqlCache.get(cacheKey, () -> buildSQLStack(table, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extStack, ds, view));
+    }
+
+    private String buildSQLStack(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, List<ChartViewFieldDTO> extStack, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, yAxis, extStack, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table : String.format(MaxConstants.KEYWORD_TABLE, table))
                 .tableAlias(String.format(TABLE_ALIAS_PREFIX, 0))
                 .build();
+        Set<String> partitionColumns = partitionMetadata.getPartitionColumns(ds, table);
 
         List<SQLObj> xFields = new ArrayList<>();
         List<SQLObj> xOrders = new ArrayList<>();
@@ -522,9 +564,9 @@ public class MaxcomputeQueryProvider extends QueryProvider {
             }
         }
         // 处理视图中字段过滤
-        String customWheres = transCustomFilterList(tableObj, fieldCustomFilter);
+        String customWheres = transCustomFilterList(tableObj, fieldCustomFilter, partitionColumns);
         // 处理仪表板字段过滤
-        String extWheres = transExtFilterList(tableObj, extFilterRequestList);
+        String extWheres = transExtFilterList(tableObj, extFilterRequestList, partitionColumns);
         // row permissions tree
         String whereTrees = transFilterTrees(tableObj, rowPermissionsTree);
         // 构建sql所有参数
@@ -544,7 +586,7 @@ public class MaxcomputeQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(xFields)) st_sql.add("groups", xFields);
         if (CollectionUtils.isNotEmpty(yFields)) st_sql.add("aggregators", yFields);
@@ -570,10 +612,18 @@ public class MaxcomputeQueryProvider extends QueryProvider {
 
     @Override
     public String getSQLScatter(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, List<ChartViewFieldDTO> extBubble, Datasource ds, ChartViewWithBLOBs view) {
+        checkPartitionScan(table, ds, fieldCustomFilter, extFilterRequestList);
+        String cacheKey = sqlCacheKey("getSQLScatter", table, ds, view, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extBubble);
+        return sqlCache.get(cacheKey, () -> buildSQLScatter(table, xAxis, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, extBubble, ds, view));
+    }
+
+    private String buildSQLScatter(String table, List<ChartViewFieldDTO> xAxis, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, List<ChartViewFieldDTO> extBubble, Datasource ds, ChartViewWithBLOBs view) {
+        calcFieldCache.prefetchInputs(xAxis, yAxis, extBubble, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table : String.format(MaxConstants.KEYWORD_TABLE, table))
                 .tableAlias(String.format(TABLE_ALIAS_PREFIX, 0))
                 .build();
+        Set<String> partitionColumns = partitionMetadata.getPartitionColumns(ds, table);
 
         List<SQLObj> xFields = new ArrayList<>();
         List<SQLObj> xOrders = new ArrayList<>();
@@ -636,9 +686,9 @@ public class MaxcomputeQueryProvider extends QueryProvider {
             }
         }
         // 处理视图中字段过滤
-        String customWheres = transCustomFilterList(tableObj, fieldCustomFilter);
+        String customWheres = transCustomFilterList(tableObj, fieldCustomFilter, partitionColumns);
         // 处理仪表板字段过滤
-        String extWheres = transExtFilterList(tableObj, extFilterRequestList);
+        String extWheres = transExtFilterList(tableObj, extFilterRequestList, partitionColumns);
         // row permissions tree
         String whereTrees = transFilterTrees(tableObj, rowPermissionsTree);
         // 构建sql所有参数
@@ -658,7 +708,7 @@ public class MaxcomputeQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(xFields)) st_sql.add("groups", xFields);
         if (CollectionUtils.isNotEmpty(yFields)) st_sql.add("aggregators", yFields);
@@ -689,11 +739,19 @@ public class MaxcomputeQueryProvider extends QueryProvider {
 
     @Override
     public String getSQLSummary(String table, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, ChartViewWithBLOBs view, Datasource ds) {
+        checkPartitionScan(table, ds, fieldCustomFilter, extFilterRequestList);
+        String cacheKey = sqlCacheKey("getSQLSummary", table, ds, view, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
+        return sqlCache.get(cacheKey, () -> buildSQLSummary(table, yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList, view, ds));
+    }
+
+    private String buildSQLSummary(String table, List<ChartViewFieldDTO> yAxis, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<DataSetRowPermissionsTreeDTO> rowPermissionsTree, List<ChartExtFilterRequest> extFilterRequestList, ChartViewWithBLOBs view, Datasource ds) {
         // 字段汇总 排序等
+        calcFieldCache.prefetchInputs(yAxis, fieldCustomFilter, rowPermissionsTree, extFilterRequestList);
         SQLObj tableObj = SQLObj.builder()
                 .tableName((table.startsWith("(") && table.endsWith(")")) ? table : String.format(MaxConstants.KEYWORD_TABLE, table))
                 .tableAlias(String.format(TABLE_ALIAS_PREFIX, 0))
                 .build();
+        Set<String> partitionColumns = partitionMetadata.getPartitionColumns(ds, table);
 
         List<SQLObj> yFields = new ArrayList<>();
         List<String> yWheres = new ArrayList<>();
@@ -726,9 +784,9 @@ public class MaxcomputeQueryProvider extends QueryProvider {
             }
         }
         // 处理视图中字段过滤
-        String customWheres = transCustomFilterList(tableObj, fieldCustomFilter);
+        String customWheres = transCustomFilterList(tableObj, fieldCustomFilter, partitionColumns);
         // 处理仪表板字段过滤
-        String extWheres = transExtFilterList(tableObj, extFilterRequestList);
+        String extWheres = transExtFilterList(tableObj, extFilterRequestList, partitionColumns);
         // row permissions tree
         String whereTrees = transFilterTrees(tableObj, rowPermissionsTree);
         // 构建sql所有参数
@@ -745,7 +803,7 @@ public class MaxcomputeQueryProvider extends QueryProvider {
         List<String> aggWheres = new ArrayList<>();
         aggWheres.addAll(yWheres.stream().filter(ObjectUtils::isNotEmpty).collect(Collectors.toList()));
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
         ST st_sql = stg.getInstanceOf("querySql");
         if (CollectionUtils.isNotEmpty(yFields)) st_sql.add("aggregators", yFields);
         if (CollectionUtils.isNotEmpty(wheres)) st_sql.add("filters", wheres);
@@ -919,6 +977,10 @@ public class MaxcomputeQueryProvider extends QueryProvider {
     }
 
     public String transCustomFilterList(SQLObj tableObj, List<ChartFieldCustomFilterDTO> requestList) {
+        return transCustomFilterList(tableObj, requestList, Collections.emptySet());
+    }
+
+    private String transCustomFilterList(SQLObj tableObj, List<ChartFieldCustomFilterDTO> requestList, Set<String> partitionColumns) {
         if (CollectionUtils.isEmpty(requestList)) {
             return null;
         }
@@ -967,7 +1029,8 @@ public class MaxcomputeQueryProvider extends QueryProvider {
 
             if (StringUtils.equalsIgnoreCase(request.getFilterType(), "enum")) {
                 if (CollectionUtils.isNotEmpty(request.getEnumCheckField())) {
-                    res.add("(" + whereName + " IN ('" + String.join("','", request.getEnumCheckField()) + "'))");
+                    String enumWhereName = isRawPartitionFilter(field, "in", partitionColumns) ? originName : whereName;
+                    res.add("(" + enumWhereName + " IN ('" + String.join("','", request.getEnumCheckField()) + "'))");
                 }
             } else {
                 List<ChartCustomFilterItemDTO> filter = request.getFilter();
@@ -992,7 +1055,7 @@ public class MaxcomputeQueryProvider extends QueryProvider {
                         whereValue = String.format(MaxConstants.WHERE_VALUE_VALUE, value);
                     }
                     list.add(SQLObj.builder()
-                            .whereField(whereName)
+                            .whereField(isRawPartitionFilter(field, filterItemDTO.getTerm(), partitionColumns) ? originName : whereName)
                             .whereTermAndValue(whereTerm + whereValue)
                             .build());
                 }
@@ -1008,12 +1071,17 @@ public class MaxcomputeQueryProvider extends QueryProvider {
     }
 
     public String transExtFilterList(SQLObj tableObj, List<ChartExtFilterRequest> requestList) {
+        return transExtFilterList(tableObj, requestList, Collections.emptySet());
+    }
+
+    private String transExtFilterList(SQLObj tableObj, List<ChartExtFilterRequest> requestList, Set<String> partitionColumns) {
         if (CollectionUtils.isEmpty(requestList)) {
             return null;
         }
         List<SQLObj> list = new ArrayList<>();
         for (ChartExtFilterRequest request : requestList) {
             List<String> value = request.getValue();
+            String partitionDateFormat = null;
 
             List<String> whereNameList = new ArrayList<>();
             List<DatasetTableField> fieldList = new ArrayList<>();
@@ -1063,6 +1131,12 @@ public class MaxcomputeQueryProvider extends QueryProvider {
                 } else {
                     whereName = originName;
                 }
+                if (!request.getIsTree()) {
+                    partitionDateFormat = getPartitionDateFormat(field, request.getOperator(), partitionColumns);
+                    if (partitionDateFormat != null || isRawPartitionFilter(field, request.getOperator(), partitionColumns)) {
+                        whereName = originName;
+                    }
+                }
                 whereNameList.add(whereName);
             }
 
@@ -1081,7 +1155,7 @@ public class MaxcomputeQueryProvider extends QueryProvider {
                 whereValue = "'%" + value.get(0) + "%'";
             } else if (StringUtils.containsIgnoreCase(request.getOperator(), "between")) {
                 if (request.getDatasetTableField().getDeType() == 1) {
-                    SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+                    SimpleDateFormat simpleDateFormat = new SimpleDateFormat(partitionDateFormat != null ? partitionDateFormat : "yyyy-MM-dd HH:mm:ss");
                     String startTime = simpleDateFormat.format(new Date(Long.parseLong(value.get(0))));
                     String endTime = simpleDateFormat.format(new Date(Long.parseLong(value.get(1))));
                     whereValue = String.format(MaxConstants.WHERE_BETWEEN, startTime, endTime);
@@ -1101,6 +1175,102 @@ public class MaxcomputeQueryProvider extends QueryProvider {
         return CollectionUtils.isNotEmpty(list) ? "(" + String.join(" AND ", strList) + ")" : null;
     }
 
+    private boolean isPartitionField(DatasetTableField field, Set<String> partitionColumns) {
+        if (ObjectUtils.isNotEmpty(field.getExtField()) && field.getExtField() == 2) {
+            return false;
+        }
+        return partitionColumns.contains(StringUtils.lowerCase(field.getOriginName()));
+    }
+
+    /**
+     * 分区值按字符串保存，在分区列上套用函数或类型转换会使 MaxCompute 无法裁剪分区，此时直接比较分区值；
+     * 数值类型的分区做范围比较时按字符串比较结果不对，仍做类型转换
+     *
+     * @param field
+     * @param term
+     * @param partitionColumns
+     * @return
+     */
+    private boolean isRawPartitionFilter(DatasetTableField field, String term, Set<String> partitionColumns) {
+        if (!isPartitionField(field, partitionColumns) || field.getDeType() == 1) {
+            return false;
+        }
+        if (field.getDeType() == 2 || field.getDeType() == 3) {
+            return !StringUtils.equalsAnyIgnoreCase(term, "lt", "le", "gt", "ge", "between");
+        }
+        return true;
+    }
+
+    /**
+     * 日期类型的字符串分区按时间区间过滤时，返回分区值对应的 Java 日期格式，用于把过滤值转换为分区值直接比较；
+     * 只处理年份在前、字典序与时间顺序一致的格式，其余情况返回 null
+     *
+     * @param field
+     * @param term
+     * @param partitionColumns
+     * @return
+     */
+    private String getPartitionDateFormat(DatasetTableField field, String term, Set<String> partitionColumns) {
+        if (!isPartitionField(field, partitionColumns) || field.getDeType() != 1 || !StringUtils.equalsIgnoreCase(term, "between")
+                || !(field.getDeExtractType() == 0 || field.getDeExtractType() == 5)) {
+            return null;
+        }
+        String dateFormat = StringUtils.lowerCase(StringUtils.isNotEmpty(field.getDateFormat()) ? field.getDateFormat() : MaxConstants.DEFAULT_DATE_FORMAT);
+        if (!dateFormat.startsWith("yyyy") || !dateFormat.matches("[ymdhis24\\-/: ]+")) {
+            return null;
+        }
+        return dateFormat.replace("mm", "MM").replace("mi", "mm").replace("hh24", "HH").replace("hh", "HH").replaceAll("s+", "ss");
+    }
+
+    /**
+     * 分区表查询没有按分区列过滤时按数据源配置记录告警或拒绝查询
+     *
+     * @param table
+     * @param ds
+     * @param fieldCustomFilter
+     * @param extFilterRequestList
+     */
+    private void checkPartitionScan(String table, Datasource ds, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<ChartExtFilterRequest> extFilterRequestList) {
+        Set<String> partitionColumns = partitionMetadata.getPartitionColumns(ds, table);
+        if (partitionColumns.isEmpty()) {
+            return;
+        }
+        String partitionScanCheck = new Gson().fromJson(ds.getConfiguration(), MaxcomputeConfig.class).getPartitionScanCheck();
+        if (StringUtils.isEmpty(partitionScanCheck) || hasPartitionFilter(partitionColumns, fieldCustomFilter, extFilterRequestList)) {
+            return;
+        }
+        String message = "Query on partitioned table " + table + " has no filter on partition columns " + partitionColumns;
+        if (StringUtils.equalsIgnoreCase(partitionScanCheck, "reject")) {
+            DataEaseException.throwException(message);
+        } else if (StringUtils.equalsIgnoreCase(partitionScanCheck, "warn")) {
+            LOGGER.warn(message);
+        }
+    }
+
+    private boolean hasPartitionFilter(Set<String> partitionColumns, List<ChartFieldCustomFilterDTO> fieldCustomFilter, List<ChartExtFilterRequest> extFilterRequestList) {
+        if (CollectionUtils.isNotEmpty(fieldCustomFilter)) {
+            for (ChartFieldCustomFilterDTO request : fieldCustomFilter) {
+                if (ObjectUtils.isEmpty(request.getField()) || !isPartitionField(request.getField(), partitionColumns)) {
+                    continue;
+                }
+                if (StringUtils.equalsIgnoreCase(request.getFilterType(), "enum") ? CollectionUtils.isNotEmpty(request.getEnumCheckField()) : CollectionUtils.isNotEmpty(request.getFilter())) {
+                    return true;
+                }
+            }
+        }
+        if (CollectionUtils.isNotEmpty(extFilterRequestList)) {
+            for (ChartExtFilterRequest request : extFilterRequestList) {
+                if (CollectionUtils.isEmpty(request.getValue()) || request.getIsTree()) {
+                    continue;
+                }
+                if (ObjectUtils.isNotEmpty(request.getDatasetTableField()) && isPartitionField(request.getDatasetTableField(), partitionColumns)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private String sqlFix(String sql) {
         if (sql.lastIndexOf(";") == (sql.length() - 1)) {
             sql = sql.substring(0, sql.length() - 1);
@@ -1234,27 +1404,28 @@ public class MaxcomputeQueryProvider extends QueryProvider {
     }
 
     private String calcFieldRegex(String originField, SQLObj tableObj) {
-        originField = originField.replaceAll("[\\t\\n\\r]]", "");
-        // 正则提取[xxx]
-        String regex = "\\[(.*?)]";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(originField);
-        Set<String> ids = new HashSet<>();
-        while (matcher.find()) {
-            String id = matcher.group(1);
-            ids.add(id);
-        }
-        if (CollectionUtils.isEmpty(ids)) {
-            return originField;
-        }
+        return calcFieldCache.resolve(originField, field -> String.format(MaxConstants.KEYWORD_FIX, tableObj.getTableAlias(), field.getOriginName()));
+    }
+
+    private List<DatasetTableField> selectCalcFields(List<String> ids) {
         DatasetTableFieldExample datasetTableFieldExample = new DatasetTableFieldExample();
-        datasetTableFieldExample.createCriteria().andIdIn(new ArrayList<>(ids));
-        List<DatasetTableField> calcFields = datasetTableFieldMapper.selectByExample(datasetTableFieldExample);
-        for (DatasetTableField ele : calcFields) {
-            originField = originField.replaceAll("\\[" + ele.getId() + "]",
-                    String.format(MaxConstants.KEYWORD_FIX, tableObj.getTableAlias(), ele.getOriginName()));
-        }
-        return originField;
+        datasetTableFieldExample.createCriteria().andIdIn(ids);
+        return datasetTableFieldMapper.selectByExample(datasetTableFieldExample);
+    }
+
+    /**
+     * SQL 缓存键
+     *
+     * @param method
+     * @param table
+     * @param ds
+     * @param view
+     * @param inputs
+     * @return
+     */
+    private String sqlCacheKey(String method, String table, Datasource ds, ChartViewWithBLOBs view, Object... inputs) {
+        return calcFieldCache.sqlCacheKey(DatasetTableField::getOriginName, method, table, ds == null ? null : ds.getId(), ds == null ? null : ds.getConfiguration(),
+                view == null ? null : view.getResultMode(), view == null ? null : view.getResultCount(), inputs);
     }
 
     private String sqlLimit(String sql, ChartViewWithBLOBs view) {
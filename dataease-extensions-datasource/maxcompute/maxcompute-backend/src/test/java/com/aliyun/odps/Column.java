@@ -0,0 +1,14 @@
+package com.aliyun.odps;
+
+public class Column {
+
+    private final String name;
+
+    public Column(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,17 @@
+package com.aliyun.odps;
+
+public class Instance {
+
+    private final String id;
+
+    public Instance(String id) {
+        this.id = id;
+    }
+
+    public void waitForSuccess() {
+    }
+
+    public String getId() {
+        return id;
+    }
+}
@@ -0,0 +1,71 @@
+package com.aliyun.odps;
+
+import com.aliyun.odps.account.Account;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Odps {
+
+    public Odps(Account account) {
+    }
+
+    public void setEndpoint(String endpoint) {
+    }
+
+    public void setDefaultProject(String project) {
+    }
+
+    public Tables tables() {
+        return new Tables();
+    }
+}
+
+class Tables {
+
+    public Table get(String project, String name) {
+        StandInServer.StandInTable table = StandInServer.TABLES.get(name);
+        if (table == null) {
+            throw new IllegalArgumentException("Table not found: " + name);
+        }
+        return new Table(table);
+    }
+}
+
+class Table {
+
+    private final StandInServer.StandInTable table;
+
+    Table(StandInServer.StandInTable table) {
+        this.table = table;
+    }
+
+    public boolean isPartitioned() {
+        return !table.partitionColumns.isEmpty();
+    }
+
+    public List<Partition> getPartitions() {
+        List<Partition> partitions = new ArrayList<>();
+        for (String spec : table.partitions.keySet()) {
+            partitions.add(new Partition(new PartitionSpec(spec)));
+        }
+        return partitions;
+    }
+
+    public TableSchema getSchema() {
+        return new TableSchema(table);
+    }
+}
+
+class Partition {
+
+    private final PartitionSpec spec;
+
+    Partition(PartitionSpec spec) {
+        this.spec = spec;
+    }
+
+    public PartitionSpec getPartitionSpec() {
+        return spec;
+    }
+}
@@ -0,0 +1,28 @@
+package com.aliyun.odps;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class PartitionSpec {
+
+    private final String spec;
+
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    public PartitionSpec(String spec) {
+        this.spec = spec;
+        for (String part : spec.split(",")) {
+            String[] pair = part.split("=");
+            values.put(pair[0], pair[1]);
+        }
+    }
+
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
@@ -0,0 +1,63 @@
+package com.aliyun.odps;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MaxcomputeTunnelReaderTest 使用的 MaxCompute 服务替身
+ * 在内存中保存表与查询结果，由 ODPS SDK 替身类读取；记录下载请求并可按需在建会话或读取时失败。
+ */
+public class StandInServer {
+
+    public static final Map<String, StandInTable> TABLES = new HashMap<>();
+
+    // 查询语句到结果的映射，结果不分区
+    public static final Map<String, StandInTable> QUERIES = new HashMap<>();
+
+    public static final List<String> SQL_TASKS = new CopyOnWriteArrayList<>();
+
+    // 每次创建下载会话的分区描述，非分区表为空字符串
+    public static final List<String> SESSIONS = new CopyOnWriteArrayList<>();
+
+    // 每次打开读取器的 [起始行, 行数, 传输列数]
+    public static final List<long[]> OPENED_READERS = new CopyOnWriteArrayList<>();
+
+    public static final AtomicInteger ROWS_SERVED = new AtomicInteger();
+
+    public static volatile String tunnelEndpoint;
+
+    public static volatile String sessionFailure;
+
+    // 读取到第几行时失败，小于 0 时不失败
+    public static volatile int failAtRow = -1;
+
+    public static void reset() {
+        TABLES.clear();
+        QUERIES.clear();
+        SQL_TASKS.clear();
+        SESSIONS.clear();
+        OPENED_READERS.clear();
+        ROWS_SERVED.set(0);
+        tunnelEndpoint = null;
+        sessionFailure = null;
+        failAtRow = -1;
+    }
+
+    public static class StandInTable {
+        public final List<String> columns;
+        public final List<String> partitionColumns;
+        // 分区描述（如 ds=1）到行的映射，非分区表的键为空字符串
+        public final Map<String, List<Object[]>> partitions = new LinkedHashMap<>();
+
+        public StandInTable(List<String> columns, List<String> partitionColumns) {
+            this.columns = columns;
+            this.partitionColumns = partitionColumns;
+        }
+
+        public StandInTable partition(String spec, Object[]... rows) {
+            partitions.put(spec, Arrays.asList(rows));
+            return this;
+        }
+    }
+}
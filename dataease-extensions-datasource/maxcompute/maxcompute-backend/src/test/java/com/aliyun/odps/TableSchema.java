@@ -0,0 +1,29 @@
+package com.aliyun.odps;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TableSchema {
+
+    private final StandInServer.StandInTable table;
+
+    public TableSchema(StandInServer.StandInTable table) {
+        this.table = table;
+    }
+
+    public List<Column> getColumns() {
+        return columns(table.columns);
+    }
+
+    public List<Column> getPartitionColumns() {
+        return columns(table.partitionColumns);
+    }
+
+    private static List<Column> columns(List<String> names) {
+        List<Column> columns = new ArrayList<>();
+        for (String name : names) {
+            columns.add(new Column(name));
+        }
+        return columns;
+    }
+}
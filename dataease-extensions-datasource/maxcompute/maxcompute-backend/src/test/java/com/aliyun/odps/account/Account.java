@@ -0,0 +1,4 @@
+package com.aliyun.odps.account;
+
+public interface Account {
+}
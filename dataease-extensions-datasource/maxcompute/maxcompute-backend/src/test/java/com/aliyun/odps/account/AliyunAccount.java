@@ -0,0 +1,7 @@
+package com.aliyun.odps.account;
+
+public class AliyunAccount implements Account {
+
+    public AliyunAccount(String accessId, String accessKey) {
+    }
+}
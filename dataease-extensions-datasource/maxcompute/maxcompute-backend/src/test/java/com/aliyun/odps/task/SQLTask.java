@@ -0,0 +1,13 @@
+package com.aliyun.odps.task;
+
+import com.aliyun.odps.Instance;
+import com.aliyun.odps.Odps;
+import com.aliyun.odps.StandInServer;
+
+public class SQLTask {
+
+    public static Instance run(Odps odps, String sql) {
+        StandInServer.SQL_TASKS.add(sql);
+        return new Instance(sql);
+    }
+}
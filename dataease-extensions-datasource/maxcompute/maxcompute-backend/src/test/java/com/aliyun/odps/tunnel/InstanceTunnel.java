@@ -0,0 +1,19 @@
+package com.aliyun.odps.tunnel;
+
+import com.aliyun.odps.Odps;
+import com.aliyun.odps.StandInServer;
+
+public class InstanceTunnel {
+
+    public InstanceTunnel(Odps odps) {
+    }
+
+    public void setEndpoint(String endpoint) {
+        StandInServer.tunnelEndpoint = endpoint;
+    }
+
+    public DownloadSession createDownloadSession(String project, String instanceId) {
+        StandInServer.StandInTable result = StandInServer.QUERIES.get(instanceId);
+        return new DownloadSession(result, result.partitions.get(""));
+    }
+}
@@ -0,0 +1,118 @@
+package com.aliyun.odps.tunnel;
+
+import com.aliyun.odps.Column;
+import com.aliyun.odps.Odps;
+import com.aliyun.odps.PartitionSpec;
+import com.aliyun.odps.StandInServer;
+import com.aliyun.odps.TableSchema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TableTunnel {
+
+    public TableTunnel(Odps odps) {
+    }
+
+    public void setEndpoint(String endpoint) {
+        StandInServer.tunnelEndpoint = endpoint;
+    }
+
+    public DownloadSession createDownloadSession(String project, String table) {
+        return createDownloadSession(project, table, null);
+    }
+
+    public DownloadSession createDownloadSession(String project, String table, PartitionSpec spec) {
+        if (StandInServer.sessionFailure != null) {
+            throw new IllegalStateException(StandInServer.sessionFailure);
+        }
+        StandInServer.SESSIONS.add(spec == null ? "" : spec.toString());
+        StandInServer.StandInTable standInTable = StandInServer.TABLES.get(table);
+        return new DownloadSession(standInTable, standInTable.partitions.get(spec == null ? "" : spec.toString()));
+    }
+}
+
+class DownloadSession {
+
+    private final StandInServer.StandInTable table;
+
+    private final List<Object[]> rows;
+
+    DownloadSession(StandInServer.StandInTable table, List<Object[]> rows) {
+        this.table = table;
+        this.rows = rows;
+    }
+
+    public long getRecordCount() {
+        return rows.size();
+    }
+
+    public TableSchema getSchema() {
+        return new TableSchema(table);
+    }
+
+    public RecordReader openRecordReader(long start, long count) {
+        return openRecordReader(start, count, false, null);
+    }
+
+    public RecordReader openRecordReader(long start, long count, boolean compress, List<Column> columns) {
+        List<Integer> indexes = new ArrayList<>();
+        if (columns == null) {
+            for (int i = 0; i < table.columns.size(); i++) {
+                indexes.add(i);
+            }
+        } else {
+            for (Column column : columns) {
+                indexes.add(table.columns.indexOf(column.getName()));
+            }
+        }
+        StandInServer.OPENED_READERS.add(new long[]{start, count, indexes.size()});
+        return new RecordReader(rows.subList((int) start, (int) (start + count)), indexes);
+    }
+}
+
+class RecordReader {
+
+    private final List<Object[]> rows;
+
+    private final List<Integer> indexes;
+
+    private int position;
+
+    RecordReader(List<Object[]> rows, List<Integer> indexes) {
+        this.rows = rows;
+        this.indexes = indexes;
+    }
+
+    public Record read() {
+        if (position >= rows.size()) {
+            return null;
+        }
+        if (StandInServer.ROWS_SERVED.getAndIncrement() == StandInServer.failAtRow) {
+            throw new IllegalStateException("connection reset");
+        }
+        Object[] row = rows.get(position++);
+        List<Object> values = new ArrayList<>();
+        for (int index : indexes) {
+            values.add(row[index]);
+        }
+        return new Record(values);
+    }
+
+    public void close() {
+    }
+}
+
+class Record {
+
+    private final List<Object> values;
+
+    Record(List<Object> values) {
+        this.values = Collections.unmodifiableList(values);
+    }
+
+    public Object get(int index) {
+        return values.get(index);
+    }
+}
@@ -0,0 +1,95 @@
+package io.dataease.plugins.datasource.dm.provider;
+
+import io.dataease.plugins.common.base.domain.Datasource;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MaxcomputePartitionMetadataTest {
+
+    @Test
+    void cachesByDatasourceAndTable() {
+        AtomicInteger loads = new AtomicInteger();
+        MaxcomputePartitionMetadata metadata = new MaxcomputePartitionMetadata(60_000);
+        metadata.setLoader((datasource, table) -> {
+            loads.incrementAndGet();
+            return Arrays.asList("DS", "Hr");
+        });
+
+        Set<String> columns = metadata.getPartitionColumns(datasource("ds1", "{}"), "orders");
+        metadata.getPartitionColumns(datasource("ds1", "{}"), "orders");
+        assertEquals(1, loads.get());
+        assertEquals(2, columns.size());
+        assertTrue(columns.contains("ds") && columns.contains("hr"));
+
+        metadata.getPartitionColumns(datasource("ds2", "{}"), "orders");
+        metadata.getPartitionColumns(datasource("ds1", "{}"), "items");
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void reloadsWhenConfigurationChangesOrExpires() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        MaxcomputePartitionMetadata metadata = new MaxcomputePartitionMetadata(50);
+        metadata.setLoader((datasource, table) -> {
+            loads.incrementAndGet();
+            return Collections.singletonList("ds");
+        });
+
+        metadata.getPartitionColumns(datasource("ds1", "{}"), "orders");
+        metadata.getPartitionColumns(datasource("ds1", "{\"projectName\":\"p2\"}"), "orders");
+        assertEquals(2, loads.get());
+
+        Thread.sleep(100);
+        metadata.getPartitionColumns(datasource("ds1", "{\"projectName\":\"p2\"}"), "orders");
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void skipsSqlDatasetsAndLoadFailures() {
+        AtomicInteger loads = new AtomicInteger();
+        MaxcomputePartitionMetadata metadata = new MaxcomputePartitionMetadata(60_000);
+        assertTrue(metadata.getPartitionColumns(datasource("ds1", "{}"), "orders").isEmpty());
+
+        metadata.setLoader((datasource, table) -> {
+            loads.incrementAndGet();
+            throw new IllegalStateException("metadata unavailable");
+        });
+        assertTrue(metadata.getPartitionColumns(datasource("ds1", "{}"), "(SELECT * FROM orders)").isEmpty());
+        assertEquals(0, loads.get());
+
+        // 读取失败按空集合缓存，有效期内不再重新读取
+        assertTrue(metadata.getPartitionColumns(datasource("ds1", "{}"), "orders").isEmpty());
+        assertTrue(metadata.getPartitionColumns(datasource("ds1", "{}"), "orders").isEmpty());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void retriesFailedLoadAfterTtl() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        MaxcomputePartitionMetadata metadata = new MaxcomputePartitionMetadata(50);
+        metadata.setLoader((datasource, table) -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException("metadata unavailable");
+            }
+            return Collections.singletonList("ds");
+        });
+
+        assertTrue(metadata.getPartitionColumns(datasource("ds1", "{}"), "orders").isEmpty());
+        Thread.sleep(100);
+        assertEquals(Collections.singleton("ds"), metadata.getPartitionColumns(datasource("ds1", "{}"), "orders"));
+        assertEquals(2, loads.get());
+    }
+
+    private static Datasource datasource(String id, String configuration) {
+        Datasource datasource = new Datasource();
+        datasource.setId(id);
+        datasource.setConfiguration(configuration);
+        return datasource;
+    }
+}
@@ -0,0 +1,115 @@
+package io.dataease.plugins.datasource.dm.provider;
+
+import com.aliyun.odps.StandInServer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 通过 ODPS SDK 替身（test 下的 com.aliyun.odps 包）与内存中的服务替身验证 Tunnel 下载
+ * 替身只模拟 MaxcomputeTunnelReader 反射调用的 SDK 方法，这里验证的是分片、投影、LIMIT 与失败处理，
+ * 与真实 ODPS SDK 及 Tunnel 服务的交互没有经过测试。
+ */
+class MaxcomputeTunnelReaderTest {
+
+    @BeforeEach
+    void setUp() {
+        StandInServer.reset();
+        StandInServer.TABLES.put("orders", new StandInServer.StandInTable(Arrays.asList("id", "name"), Collections.singletonList("ds"))
+                .partition("ds=1", new Object[]{1L, "a"}, new Object[]{2L, "b".getBytes()})
+                .partition("ds=2", new Object[]{3L, "c"}, new Object[]{4L, null}));
+    }
+
+    @Test
+    void parsesOnlySimpleTableScans() {
+        assertNotNull(MaxcomputeTunnelReader.parseTableScan("SELECT \"id\" AS f_1, \"name\" AS f_2 FROM proj.orders"));
+        assertNotNull(MaxcomputeTunnelReader.parseTableScan("SELECT * FROM `orders` LIMIT 10;"));
+        assertNull(MaxcomputeTunnelReader.parseTableScan("SELECT id + 1 FROM orders"));
+        assertNull(MaxcomputeTunnelReader.parseTableScan("SELECT id FROM orders WHERE ds = '1'"));
+    }
+
+    @Test
+    void readsPartitionsInOrderWithProjection() throws Exception {
+        MaxcomputeTunnelReader reader = reader("http://127.0.0.1:8080");
+        List<String[]> rows = reader.readTable(MaxcomputeTunnelReader.parseTableScan("SELECT \"name\" AS f_1, \"ds\" AS f_2 FROM proj.orders"));
+
+        assertEquals(4, rows.size());
+        assertArrayEquals(new String[]{"a", "1"}, rows.get(0));
+        assertArrayEquals(new String[]{"b", "1"}, rows.get(1));
+        assertArrayEquals(new String[]{"c", "2"}, rows.get(2));
+        assertArrayEquals(new String[]{null, "2"}, rows.get(3));
+        // 分区列不经 Tunnel 传输
+        for (long[] opened : StandInServer.OPENED_READERS) {
+            assertEquals(1, opened[2]);
+        }
+        assertEquals("http://127.0.0.1:8080", StandInServer.tunnelEndpoint);
+        assertTrue(reader.isDownloadStarted());
+    }
+
+    @Test
+    void limitCapsDownloadedRows() throws Exception {
+        List<String[]> rows = reader(null).readTable(MaxcomputeTunnelReader.parseTableScan("SELECT * FROM orders LIMIT 3"));
+
+        assertEquals(3, rows.size());
+        assertArrayEquals(new String[]{"3", "c", "2"}, rows.get(2));
+        assertEquals(3, StandInServer.ROWS_SERVED.get());
+        // 第二个分区只下载需要的一行
+        assertArrayEquals(new long[]{0, 1, 2}, StandInServer.OPENED_READERS.stream().filter(opened -> opened[1] == 1).findFirst().get());
+    }
+
+    @Test
+    void limitDoesNotOpenLaterPartitions() throws Exception {
+        List<String[]> rows = reader(null).readTable(MaxcomputeTunnelReader.parseTableScan("SELECT * FROM orders LIMIT 2"));
+
+        assertEquals(2, rows.size());
+        assertEquals(Collections.singletonList("ds=1"), StandInServer.SESSIONS);
+    }
+
+    @Test
+    void sessionFailureHappensBeforeDownload() {
+        StandInServer.sessionFailure = "tunnel unavailable";
+        MaxcomputeTunnelReader reader = reader(null);
+
+        Exception e = assertThrows(Exception.class, () -> reader.readTable(MaxcomputeTunnelReader.parseTableScan("SELECT * FROM orders")));
+        assertEquals("tunnel unavailable", e.getMessage());
+        assertFalse(reader.isDownloadStarted());
+    }
+
+    @Test
+    void readFailureHappensAfterDownloadStarted() {
+        StandInServer.failAtRow = 1;
+        MaxcomputeTunnelReader reader = reader(null);
+
+        Exception e = assertThrows(Exception.class, () -> reader.readTable(MaxcomputeTunnelReader.parseTableScan("SELECT * FROM orders")));
+        assertEquals("connection reset", e.getMessage());
+        assertTrue(reader.isDownloadStarted());
+    }
+
+    @Test
+    void readsQueryResultThroughInstanceTunnel() throws Exception {
+        StandInServer.QUERIES.put("SELECT name, COUNT(*) FROM orders GROUP BY name;",
+                new StandInServer.StandInTable(Arrays.asList("name", "cnt"), Collections.emptyList())
+                        .partition("", new Object[]{"a", 2L}));
+
+        List<String[]> rows = reader(null).readQuery("SELECT name, COUNT(*) FROM orders GROUP BY name");
+
+        assertEquals(Collections.singletonList("SELECT name, COUNT(*) FROM orders GROUP BY name;"), StandInServer.SQL_TASKS);
+        assertEquals(1, rows.size());
+        assertArrayEquals(new String[]{"a", "2"}, rows.get(0));
+    }
+
+    private static MaxcomputeTunnelReader reader(String tunnelEndpoint) {
+        MaxcomputeConfig config = new MaxcomputeConfig();
+        config.setProjectName("proj");
+        config.setAccess_id("id");
+        config.setAccess_key("key");
+        config.setEnd_point("http://127.0.0.1:8080/api");
+        config.setTunnelEndpoint(tunnelEndpoint);
+        return new MaxcomputeTunnelReader(MaxcomputeTunnelReaderTest.class.getClassLoader(), config);
+    }
+}
@@ -3,10 +3,15 @@ package io.dataease.plugins.datasource.mongo.provider;
 import com.google.gson.Gson;
 import io.dataease.plugins.common.base.domain.DeDriver;
 import io.dataease.plugins.common.base.mapper.DeDriverMapper;
+import io.dataease.plugins.common.dto.chart.ChartViewFieldDTO;
 import io.dataease.plugins.common.dto.datasource.TableDesc;
 import io.dataease.plugins.common.dto.datasource.TableField;
 import io.dataease.plugins.common.exception.DataEaseException;
 import io.dataease.plugins.common.request.datasource.DatasourceRequest;
+import io.dataease.plugins.datasource.common.ConnectionPool;
+import io.dataease.plugins.datasource.common.DriverRegistry;
+import io.dataease.plugins.datasource.common.QueryCoalescer;
+import io.dataease.plugins.datasource.common.ResultCache;
 import io.dataease.plugins.datasource.entity.JdbcConfiguration;
 import io.dataease.plugins.datasource.mongo.query.MongoConstants;
 import io.dataease.plugins.datasource.provider.DefaultJdbcProvider;
@@ -14,11 +19,13 @@ import io.dataease.plugins.datasource.provider.ExtendedJdbcClassLoader;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.lang.reflect.Method;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 
@@ -27,6 +34,21 @@ public class MongobiDsProvider extends DefaultJdbcProvider {
     @Resource
     private DeDriverMapper deDriverMapper;
 
+    private static final long RESULT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final long COALESCE_WAIT_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
+    private final ResultCache resultCache = new ResultCache(RESULT_CACHE_MAX_BYTES);
+
+    private final QueryCoalescer<List<String[]>> queryCoalescer = new QueryCoalescer<>(COALESCE_WAIT_TIMEOUT_MILLIS, QueryCoalescer::copyRows);
+
+    private final QueryCoalescer<Map<String, List>> resultAndFieldCoalescer = new QueryCoalescer<>(COALESCE_WAIT_TIMEOUT_MILLIS, QueryCoalescer::copyResultAndField);
+
+    private final ConnectionPool connectionPool = new ConnectionPool("mongobi", "SELECT 1");
+
+    private final DriverRegistry<DeDriver, ExtendedJdbcClassLoader> driverRegistry = new DriverRegistry<>(id -> deDriverMapper.selectByPrimaryKey(id),
+            DeDriver::getDriverClass, this::getCustomJdbcClassLoader);
+
     @Override
     public String getType() {
         return "mongobi";
@@ -37,6 +59,43 @@ public class MongobiDsProvider extends DefaultJdbcProvider {
         return false;
     }
 
+    @PreDestroy
+    public void destroy() {
+        connectionPool.closeAll();
+    }
+
+    @Override
+    public List<String[]> getData(DatasourceRequest datasourceRequest) throws Exception {
+        MongoConfig mongoConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), MongoConfig.class);
+        Integer resultCacheTtl = mongoConfig.getResultCacheTtl();
+        String key = resultCacheKey(datasourceRequest);
+        // 相同查询正在执行时共享其结果
+        if (resultCacheTtl == null || resultCacheTtl <= 0) {
+            return queryCoalescer.execute(key, () -> super.getData(datasourceRequest));
+        }
+        return resultCache.get(key, resultCacheTtl * 1000L, () -> queryCoalescer.execute(key, () -> super.getData(datasourceRequest)));
+    }
+
+    /**
+     * 查询结果缓存与相同查询合并的键：数据源、最终 SQL 以及影响结果的权限字段与视图字段
+     *
+     * @param datasourceRequest
+     * @return
+     */
+    private String resultCacheKey(DatasourceRequest datasourceRequest) {
+        return ResultCache.key(datasourceRequest.getDatasource().getId(), datasourceRequest.getDatasource().getConfiguration(),
+                datasourceRequest.getQuery(), datasourceRequest.isPreviewData(), datasourceRequest.isTotalPageFlag(),
+                ResultCache.names(datasourceRequest.getPermissionFields(), field -> field.getId() + ":" + field.getOriginName()),
+                ResultCache.names(datasourceRequest.getXAxis(), ChartViewFieldDTO::getOriginName),
+                ResultCache.names(datasourceRequest.getYAxis(), ChartViewFieldDTO::getOriginName));
+    }
+
+    @Override
+    public Map<String, List> fetchResultAndField(DatasourceRequest datasourceRequest) throws Exception {
+        // 与 getData 使用相同的请求指纹，相同查询正在执行时共享其结果与字段
+        return resultAndFieldCoalescer.execute(resultCacheKey(datasourceRequest), () -> super.fetchResultAndField(datasourceRequest));
+    }
+
     @Override
     public Connection getConnection(DatasourceRequest datasourceRequest) throws Exception {
         MongoConfig mongoConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), MongoConfig.class);
@@ -46,7 +105,7 @@ public class MongobiDsProvider extends DefaultJdbcProvider {
 
         String url = mongoConfig.getJdbc();
         Properties props = new Properties();
-        DeDriver deDriver = null;
+        DriverRegistry.ResolvedDriver<ExtendedJdbcClassLoader> resolvedDriver = driverRegistry.getDriver(customDriver, defaultDriver, extendedJdbcClassLoader, isDefaultClassLoader(customDriver));
         if (StringUtils.isNotBlank(mongoConfig.getUsername())) {
             props.setProperty("user", mongoConfig.getUsername());
             if (StringUtils.isNotBlank(mongoConfig.getPassword())) {
@@ -55,24 +114,17 @@ public class MongobiDsProvider extends DefaultJdbcProvider {
         }
 
         Connection conn;
-        String driverClassName ;
-        ExtendedJdbcClassLoader jdbcClassLoader;
-        if(isDefaultClassLoader(customDriver)){
-            driverClassName = defaultDriver;
-            jdbcClassLoader = extendedJdbcClassLoader;
-        }else {
-            if(deDriver == null){
-                deDriver = deDriverMapper.selectByPrimaryKey(customDriver);
-            }
-            driverClassName = deDriver.getDriverClass();
-            jdbcClassLoader = getCustomJdbcClassLoader(deDriver);
-        }
-
-        Driver driverClass = (Driver) jdbcClassLoader.loadClass(driverClassName).newInstance();
+        ExtendedJdbcClassLoader jdbcClassLoader = resolvedDriver.getClassLoader();
+        Driver driverClass = resolvedDriver.getDriver();
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(jdbcClassLoader);
-            conn= driverClass.connect(url, props);
+            if (Boolean.TRUE.equals(mongoConfig.getPoolEnabled())) {
+                conn = connectionPool.getConnection(datasourceRequest.getDatasource().getId(), datasourceRequest.getDatasource().getConfiguration(),
+                        jdbcClassLoader, driverClass, url, props, mongoConfig.getPoolMinIdle(), mongoConfig.getPoolMaxActive(), mongoConfig.getPoolRemoveAbandonedMinutes());
+            } else {
+                conn = driverClass.connect(url, props);
+            }
         }catch (Exception e){
             e.printStackTrace();
             throw e;
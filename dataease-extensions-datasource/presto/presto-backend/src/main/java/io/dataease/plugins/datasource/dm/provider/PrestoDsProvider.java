@@ -3,21 +3,28 @@ package io.dataease.plugins.datasource.dm.provider;
 import com.google.gson.Gson;
 import io.dataease.plugins.common.base.domain.DeDriver;
 import io.dataease.plugins.common.base.mapper.DeDriverMapper;
+import io.dataease.plugins.common.dto.chart.ChartViewFieldDTO;
 import io.dataease.plugins.common.dto.datasource.TableDesc;
 import io.dataease.plugins.common.dto.datasource.TableField;
 import io.dataease.plugins.common.exception.DataEaseException;
 import io.dataease.plugins.common.request.datasource.DatasourceRequest;
+import io.dataease.plugins.datasource.common.ConnectionPool;
+import io.dataease.plugins.datasource.common.DriverRegistry;
+import io.dataease.plugins.datasource.common.KerberosSession;
+import io.dataease.plugins.datasource.common.QueryCoalescer;
+import io.dataease.plugins.datasource.common.ResultCache;
 import io.dataease.plugins.datasource.entity.JdbcConfiguration;
 import io.dataease.plugins.datasource.provider.DefaultJdbcProvider;
 import io.dataease.plugins.datasource.provider.ExtendedJdbcClassLoader;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import java.lang.reflect.Method;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 
@@ -26,6 +33,23 @@ public class PrestoDsProvider extends DefaultJdbcProvider {
     @Resource
     private DeDriverMapper deDriverMapper;
 
+    private static final long RESULT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final long COALESCE_WAIT_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
+    private final ResultCache resultCache = new ResultCache(RESULT_CACHE_MAX_BYTES);
+
+    private final QueryCoalescer<List<String[]>> queryCoalescer = new QueryCoalescer<>(COALESCE_WAIT_TIMEOUT_MILLIS, QueryCoalescer::copyRows);
+
+    private final QueryCoalescer<Map<String, List>> resultAndFieldCoalescer = new QueryCoalescer<>(COALESCE_WAIT_TIMEOUT_MILLIS, QueryCoalescer::copyResultAndField);
+
+    private final ConnectionPool connectionPool = new ConnectionPool("presto", "SELECT 1");
+
+    private final DriverRegistry<DeDriver, ExtendedJdbcClassLoader> driverRegistry = new DriverRegistry<>(id -> deDriverMapper.selectByPrimaryKey(id),
+            DeDriver::getDriverClass, this::getCustomJdbcClassLoader);
+
+    private final KerberosSession kerberosSession = new KerberosSession("presto");
+
     @Override
     public String getType() {
         return "presto";
@@ -36,6 +60,44 @@ public class PrestoDsProvider extends DefaultJdbcProvider {
         return false;
     }
 
+    @PreDestroy
+    public void destroy() {
+        connectionPool.closeAll();
+        kerberosSession.shutdown();
+    }
+
+    @Override
+    public List<String[]> getData(DatasourceRequest datasourceRequest) throws Exception {
+        PrestoConfig prestoConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), PrestoConfig.class);
+        Integer resultCacheTtl = prestoConfig.getResultCacheTtl();
+        String key = resultCacheKey(datasourceRequest);
+        // 相同查询正在执行时共享其结果
+        if (resultCacheTtl == null || resultCacheTtl <= 0) {
+            return queryCoalescer.execute(key, () -> super.getData(datasourceRequest));
+        }
+        return resultCache.get(key, resultCacheTtl * 1000L, () -> queryCoalescer.execute(key, () -> super.getData(datasourceRequest)));
+    }
+
+    /**
+     * 查询结果缓存与相同查询合并的键：数据源、最终 SQL 以及影响结果的权限字段与视图字段
+     *
+     * @param datasourceRequest
+     * @return
+     */
+    private String resultCacheKey(DatasourceRequest datasourceRequest) {
+        return ResultCache.key(datasourceRequest.getDatasource().getId(), datasourceRequest.getDatasource().getConfiguration(),
+                datasourceRequest.getQuery(), datasourceRequest.isPreviewData(), datasourceRequest.isTotalPageFlag(),
+                ResultCache.names(datasourceRequest.getPermissionFields(), field -> field.getId() + ":" + field.getOriginName()),
+                ResultCache.names(datasourceRequest.getXAxis(), ChartViewFieldDTO::getOriginName),
+                ResultCache.names(datasourceRequest.getYAxis(), ChartViewFieldDTO::getOriginName));
+    }
+
+    @Override
+    public Map<String, List> fetchResultAndField(DatasourceRequest datasourceRequest) throws Exception {
+        // 与 getData 使用相同的请求指纹，相同查询正在执行时共享其结果与字段
+        return resultAndFieldCoalescer.execute(resultCacheKey(datasourceRequest), () -> super.fetchResultAndField(datasourceRequest));
+    }
+
     @Override
     public Connection getConnection(DatasourceRequest datasourceRequest) throws Exception {
         PrestoConfig prestoConfig = new Gson().fromJson(datasourceRequest.getDatasource().getConfiguration(), PrestoConfig.class);
@@ -45,26 +107,9 @@ public class PrestoDsProvider extends DefaultJdbcProvider {
 
         String url = prestoConfig.getJdbc();
         Properties props = new Properties();
-        DeDriver deDriver = null;
+        DriverRegistry.ResolvedDriver<ExtendedJdbcClassLoader> resolvedDriver = driverRegistry.getDriver(customDriver, defaultDriver, extendedJdbcClassLoader, isDefaultClassLoader(customDriver));
         if(StringUtils.isNotEmpty(prestoConfig.getAuthMethod()) && prestoConfig.getAuthMethod().equalsIgnoreCase("kerberos")){
-            System.setProperty("java.security.krb5.conf", "/opt/dataease/conf/krb5.conf");
-            ExtendedJdbcClassLoader classLoader;
-            if(isDefaultClassLoader(customDriver)){
-                classLoader = extendedJdbcClassLoader;
-            }else {
-                deDriver = deDriverMapper.selectByPrimaryKey(customDriver);
-                classLoader = getCustomJdbcClassLoader(deDriver);
-            }
-            Class<?> ConfigurationClass =  classLoader.loadClass("org.apache.hadoop.conf.Configuration");
-            Method set =  ConfigurationClass.getMethod("set",String.class, String.class) ;
-            Object obj = ConfigurationClass.newInstance();
-            set.invoke(obj, "hadoop.security.authentication", "Kerberos");
-
-            Class<?> UserGroupInformationClass =  classLoader.loadClass("org.apache.hadoop.security.UserGroupInformation");
-            Method setConfiguration =  UserGroupInformationClass.getMethod("setConfiguration",ConfigurationClass) ;
-            Method loginUserFromKeytab =  UserGroupInformationClass.getMethod("loginUserFromKeytab",String.class, String.class) ;
-            setConfiguration.invoke(null, obj);
-            loginUserFromKeytab.invoke(null, prestoConfig.getUsername(), "/opt/dataease/conf/" + prestoConfig.getPassword());
+            kerberosSession.login(resolvedDriver.getClassLoader(), prestoConfig.getUsername(), prestoConfig.getPassword());
         }else {
             if (StringUtils.isNotBlank(prestoConfig.getUsername())) {
                 props.setProperty("user", prestoConfig.getUsername());
@@ -75,24 +120,17 @@ public class PrestoDsProvider extends DefaultJdbcProvider {
         }
 
         Connection conn;
-        String driverClassName ;
-        ExtendedJdbcClassLoader jdbcClassLoader;
-        if(isDefaultClassLoader(customDriver)){
-            driverClassName = defaultDriver;
-            jdbcClassLoader = extendedJdbcClassLoader;
-        }else {
-            if(deDriver == null){
-                deDriver = deDriverMapper.selectByPrimaryKey(customDriver);
-            }
-            driverClassName = deDriver.getDriverClass();
-            jdbcClassLoader = getCustomJdbcClassLoader(deDriver);
-        }
-
-        Driver driverClass = (Driver) jdbcClassLoader.loadClass(driverClassName).newInstance();
+        ExtendedJdbcClassLoader jdbcClassLoader = resolvedDriver.getClassLoader();
+        Driver driverClass = resolvedDriver.getDriver();
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(jdbcClassLoader);
-            conn= driverClass.connect(url, props);
+            if (Boolean.TRUE.equals(prestoConfig.getPoolEnabled())) {
+                conn = connectionPool.getConnection(datasourceRequest.getDatasource().getId(), datasourceRequest.getDatasource().getConfiguration(),
+                        jdbcClassLoader, driverClass, url, props, prestoConfig.getPoolMinIdle(), prestoConfig.getPoolMaxActive(), prestoConfig.getPoolRemoveAbandonedMinutes());
+            } else {
+                conn = driverClass.connect(url, props);
+            }
         }catch (Exception e){
             e.printStackTrace();
             throw e;
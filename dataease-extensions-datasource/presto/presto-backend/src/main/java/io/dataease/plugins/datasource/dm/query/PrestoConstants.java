@@ -39,6 +39,8 @@ public class PrestoConstants extends SQLConstants {
 
     public static final String BRACKETS = "(%s)";
 
+    public static final String OFFSET_LIMIT = " OFFSET %s ROWS LIMIT %s";
+
     public static final String NAME = "pg";
 
 
@@ -15,4 +15,10 @@ public class SymbolMapResultDTO extends AxisChartDataAntVDTO {
     private Object busiValue;
 
     private Map<String, Object> properties;
+
+    // 聚合模式下单元内的点数
+    private Long count;
+
+    // 聚合模式下的单元标识
+    private String clusterKey;
 }
@@ -0,0 +1,331 @@
+package io.dataease.plugins.view.official.handler;
+
+import io.dataease.plugins.view.entity.PluginViewField;
+import io.dataease.plugins.view.entity.PluginViewParam;
+import org.apache.commons.lang3.StringUtils;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * 一次请求的聚合方案：单元划分方式、单元大小、符号大小字段以及是否在 SQL 中计算单元
+ * generateSQL 与 format 使用相同的参数得到相同的方案。
+ * SQL 聚合结果的列依次为：单元横向下标、单元纵向下标、点数、经度合计、纬度合计、符号大小聚合值（有符号大小字段时）。
+ */
+public class SymbolMapCluster {
+
+    public enum Mode {
+        GRID, GEOHASH, QUADKEY
+    }
+
+    // 支持 FLOOR 与数值运算、可以在 SQL 中计算网格的数据源
+    private static final Set<String> PUSH_DOWN_DS_TYPES = new HashSet<>(Arrays.asList(
+            "mysql", "mariadb", "ds_doris", "doris", "TiDB", "StarRocks", "pg", "redshift", "sqlServer", "oracle",
+            "db2", "ck", "hive", "impala", "dm", "kingbase", "presto", "maxcompute"));
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private static final int MAX_GEOHASH_PRECISION = 12;
+
+    private static final int MAX_QUADKEY_LEVEL = 30;
+
+    // Web 墨卡托投影的纬度范围
+    private static final double MAX_MERCATOR_LATITUDE = 85.05112878;
+
+    public static final int SQL_CELL_X = 0;
+    public static final int SQL_CELL_Y = 1;
+    public static final int SQL_COUNT = 2;
+    public static final int SQL_LONGITUDE = 3;
+    public static final int SQL_LATITUDE = 4;
+    public static final int SQL_SIZE = 5;
+
+    private final Mode mode;
+
+    // geohash 精度或 quadkey 层级
+    private final int level;
+
+    private final double cellWidth;
+
+    private final double cellHeight;
+
+    private final long columns;
+
+    private final long rows;
+
+    private final boolean pushDown;
+
+    // 符号大小字段在 yAxis 类字段中的下标，-1 表示没有
+    private final int sizeIndex;
+
+    private final PluginViewField sizeField;
+
+    private SymbolMapCluster(Mode mode, int level, double cellWidth, double cellHeight, long columns, long rows,
+                             boolean pushDown, int sizeIndex, PluginViewField sizeField) {
+        this.mode = mode;
+        this.level = level;
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.columns = columns;
+        this.rows = rows;
+        this.pushDown = pushDown;
+        this.sizeIndex = sizeIndex;
+        this.sizeField = sizeField;
+    }
+
+    /**
+     * 计算聚合方案，未开启聚合或字段不满足条件时返回 null
+     *
+     * @param pluginViewParam
+     * @param config
+     * @param yKeys           视为 yAxis 的字段类型
+     * @param viewport        可视范围，有可视范围时按范围计算缩放级别
+     * @return
+     */
+    public static SymbolMapCluster plan(PluginViewParam pluginViewParam, SymbolMapClusterConfig config, List<String> yKeys, SymbolMapViewport viewport) {
+        Mode mode = mode(config.getMode());
+        if (mode == null) {
+            return null;
+        }
+        List<PluginViewField> xAxis = new ArrayList<>();
+        PluginViewField sizeField = null;
+        int sizeIndex = -1;
+        int yCount = 0;
+        for (PluginViewField field : pluginViewParam.getPluginViewFields()) {
+            String typeField = field.getTypeField();
+            if (StringUtils.equals(typeField, "xAxis")) {
+                xAxis.add(field);
+            } else if (StringUtils.equals(typeField, "yAxis") || yKeys.contains(typeField)) {
+                if (sizeField == null && StringUtils.equals(typeField, "yAxis")) {
+                    sizeField = field;
+                    sizeIndex = yCount;
+                }
+                yCount++;
+            }
+        }
+        // 只有经纬度两个位置字段时才能聚合
+        if (xAxis.size() != 2) {
+            return null;
+        }
+
+        int zoom = viewport != null ? viewport.zoom(config.getViewportPixels()) : Math.max(0, Math.min(config.getZoom(), 24));
+        int cellPixels = Math.max(1, config.getCellPixels());
+        double cellDegrees = 360.0 / Math.pow(2, zoom) * cellPixels / 256;
+        String dsType = pluginViewParam.getPluginViewSet().getDsType();
+        boolean pushDown = config.isPushDown() && mode != Mode.QUADKEY && PUSH_DOWN_DS_TYPES.contains(dsType)
+                && numeric(xAxis.get(0)) && numeric(xAxis.get(1));
+        switch (mode) {
+            case GEOHASH: {
+                int precision = 1;
+                while (precision < MAX_GEOHASH_PRECISION && 360.0 / (1L << lonBits(precision)) > cellDegrees) {
+                    precision++;
+                }
+                long columns = 1L << lonBits(precision);
+                long rows = 1L << latBits(precision);
+                return new SymbolMapCluster(mode, precision, 360.0 / columns, 180.0 / rows, columns, rows, pushDown, sizeIndex, sizeField);
+            }
+            case QUADKEY: {
+                int level = zoom + (int) Math.round(Math.log(256.0 / cellPixels) / Math.log(2));
+                level = Math.max(1, Math.min(level, MAX_QUADKEY_LEVEL));
+                long tiles = 1L << level;
+                return new SymbolMapCluster(mode, level, 360.0 / tiles, 0, tiles, tiles, false, sizeIndex, sizeField);
+            }
+            default: {
+                long columns = (long) Math.ceil(360.0 / cellDegrees);
+                long rows = (long) Math.ceil(180.0 / cellDegrees);
+                return new SymbolMapCluster(mode, 0, cellDegrees, cellDegrees, columns, rows, pushDown, sizeIndex, sizeField);
+            }
+        }
+    }
+
+    private static Mode mode(String mode) {
+        for (Mode value : Mode.values()) {
+            if (value.name().equalsIgnoreCase(StringUtils.trim(mode))) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static boolean numeric(PluginViewField field) {
+        // 2: 整型 3: 浮点
+        return field.getDeType() != null && (field.getDeType() == 2 || field.getDeType() == 3);
+    }
+
+    private static int lonBits(int precision) {
+        return (precision * 5 + 1) / 2;
+    }
+
+    private static int latBits(int precision) {
+        return precision * 5 / 2;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public boolean isPushDown() {
+        return pushDown;
+    }
+
+    public int getSizeIndex() {
+        return sizeIndex;
+    }
+
+    public PluginViewField getSizeField() {
+        return sizeField;
+    }
+
+    /**
+     * 符号大小字段按汇总方式合并：求和、计数按求和，最大、最小值保持，其余按平均
+     *
+     * @return
+     */
+    public String sizeAggregator() {
+        String summary = sizeField != null ? StringUtils.defaultString(sizeField.getSummary()) : "";
+        switch (summary) {
+            case "sum":
+            case "count":
+            case "count_distinct":
+                return "SUM";
+            case "max":
+                return "MAX";
+            case "min":
+                return "MIN";
+            default:
+                return "AVG";
+        }
+    }
+
+    /**
+     * 计算单元横向下标的 SQL 表达式
+     *
+     * @param longitude 经度列
+     * @return
+     */
+    public String cellXExpression(String longitude) {
+        return "FLOOR((" + longitude + " + 180) / " + plain(cellWidth) + ")";
+    }
+
+    public String cellYExpression(String latitude) {
+        return "FLOOR((" + latitude + " + 90) / " + plain(cellHeight) + ")";
+    }
+
+    /**
+     * 经纬度所在单元，超出范围的坐标归入边缘单元；坐标无效时返回 -1
+     *
+     * @param longitude
+     * @param latitude
+     * @return 单元横向下标在高 32 位，纵向下标在低 32 位
+     */
+    public long cell(double longitude, double latitude) {
+        if (Double.isNaN(longitude) || Double.isNaN(latitude) || Double.isInfinite(longitude) || Double.isInfinite(latitude)) {
+            return -1;
+        }
+        long x;
+        long y;
+        if (mode == Mode.QUADKEY) {
+            double lat = Math.max(-MAX_MERCATOR_LATITUDE, Math.min(MAX_MERCATOR_LATITUDE, latitude));
+            double sin = Math.sin(Math.toRadians(lat));
+            x = (long) Math.floor((longitude + 180) / 360 * columns);
+            y = (long) Math.floor((0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * rows);
+        } else {
+            x = (long) Math.floor((longitude + 180) / cellWidth);
+            y = (long) Math.floor((latitude + 90) / cellHeight);
+        }
+        return cell(x, y);
+    }
+
+    /**
+     * SQL 计算得到的单元下标
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public long cell(long x, long y) {
+        x = Math.max(0, Math.min(columns - 1, x));
+        y = Math.max(0, Math.min(rows - 1, y));
+        return (x << 32) | y;
+    }
+
+    /**
+     * 单元的经纬度范围
+     *
+     * @param cell
+     * @return 西、东、南、北边界，边缘单元延伸到经纬度范围的边界
+     */
+    public double[] cellBounds(long cell) {
+        long x = cell >>> 32;
+        long y = cell & 0xFFFFFFFFL;
+        double west = x == 0 ? -180 : x * cellWidth - 180;
+        double east = x == columns - 1 ? 180 : west + cellWidth;
+        double south;
+        double north;
+        if (mode == Mode.QUADKEY) {
+            // 瓦片纵向下标自北向南增大
+            north = y == 0 ? 90 : tileLatitude(y);
+            south = y == rows - 1 ? -90 : tileLatitude(y + 1);
+        } else {
+            south = y == 0 ? -90 : y * cellHeight - 90;
+            north = y == rows - 1 ? 90 : south + cellHeight;
+        }
+        return new double[]{west, east, south, north};
+    }
+
+    private double tileLatitude(long y) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2.0 * y / rows))));
+    }
+
+    /**
+     * 单元标识：grid 为 横向下标_纵向下标，geohash 与 quadkey 为对应编码
+     *
+     * @param cell
+     * @return
+     */
+    public String key(long cell) {
+        long x = cell >>> 32;
+        long y = cell & 0xFFFFFFFFL;
+        switch (mode) {
+            case GEOHASH:
+                return geohash(x, y);
+            case QUADKEY:
+                return quadkey(x, y);
+            default:
+                return x + "_" + y;
+        }
+    }
+
+    private String geohash(long x, long y) {
+        int lonBits = lonBits(level);
+        int latBits = latBits(level);
+        StringBuilder builder = new StringBuilder(level);
+        int value = 0;
+        for (int bit = 0; bit < level * 5; bit++) {
+            // 偶数位取经度，奇数位取纬度，均从高位开始
+            long source = (bit & 1) == 0 ? (x >>> (--lonBits)) : (y >>> (--latBits));
+            value = (value << 1) | (int) (source & 1);
+            if (bit % 5 == 4) {
+                builder.append(BASE32.charAt(value));
+                value = 0;
+            }
+        }
+        return builder.toString();
+    }
+
+    private String quadkey(long x, long y) {
+        StringBuilder builder = new StringBuilder(level);
+        for (int i = level; i > 0; i--) {
+            int digit = (int) ((x >>> (i - 1)) & 1) + 2 * (int) ((y >>> (i - 1)) & 1);
+            builder.append((char) ('0' + digit));
+        }
+        return builder.toString();
+    }
+
+    private static String plain(double value) {
+        return BigDecimal.valueOf(value).toPlainString();
+    }
+}
@@ -0,0 +1,195 @@
+package io.dataease.plugins.view.official.handler;
+
+import io.dataease.plugins.view.official.dto.SymbolMapResultDTO;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * 逐行聚合点位到单元
+ * 单元以开放寻址的 long 键表保存，每个单元只记录点数、经纬度合计与符号大小聚合值，占用与单元数成正比，与行数无关。
+ * SQL 中已经计算好的单元同样通过 addCell 合并。
+ */
+public class SymbolMapClusterAggregator {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final long EMPTY = -1L;
+
+    private final SymbolMapCluster cluster;
+
+    private final String sizeAggregator;
+
+    private long[] cells;
+    private long[] counts;
+    private double[] longitudes;
+    private double[] latitudes;
+    private double[] sizes;
+    // 平均值的权重，其他汇总方式下表示是否已有取值
+    private double[] sizeWeights;
+    private int size;
+
+    public SymbolMapClusterAggregator(SymbolMapCluster cluster) {
+        this.cluster = cluster;
+        this.sizeAggregator = cluster.sizeAggregator();
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * 合并一个点位，经纬度无效时忽略
+     *
+     * @param longitude
+     * @param latitude
+     * @param sizeValue 没有符号大小时为 NaN
+     */
+    public void addPoint(double longitude, double latitude, double sizeValue) {
+        long cell = cluster.cell(longitude, latitude);
+        if (cell < 0) {
+            return;
+        }
+        add(cell, 1, longitude, latitude, sizeValue);
+    }
+
+    /**
+     * 合并 SQL 计算好的单元
+     *
+     * @param cell
+     * @param count
+     * @param longitudeSum
+     * @param latitudeSum
+     * @param sizeValue
+     */
+    public void addCell(long cell, long count, double longitudeSum, double latitudeSum, double sizeValue) {
+        if (count <= 0) {
+            return;
+        }
+        add(cell, count, longitudeSum, latitudeSum, sizeValue);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 输出聚合结果，坐标为单元内点位的平均位置；没有符号大小字段时以点数作为符号大小
+     *
+     * @param sizeName 符号大小字段名称
+     * @return
+     */
+    public List<SymbolMapResultDTO> results(String sizeName) {
+        List<SymbolMapResultDTO> results = new ArrayList<>(size);
+        for (int slot = 0; slot < cells.length; slot++) {
+            if (cells[slot] == EMPTY) {
+                continue;
+            }
+            String key = cluster.key(cells[slot]);
+            long count = counts[slot];
+            SymbolMapResultDTO dto = new SymbolMapResultDTO();
+            dto.setField(key);
+            dto.setName(key);
+            dto.setClusterKey(key);
+            dto.setCount(count);
+            dto.setLongitude(plain(longitudes[slot] / count));
+            dto.setLatitude(plain(latitudes[slot] / count));
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("count", count);
+            if (sizeName != null) {
+                String sizeValue = sizeWeights[slot] > 0 ? plain(sizeValue(slot)) : null;
+                dto.setCategory(sizeName);
+                dto.setBusiValue(sizeValue);
+                properties.put(sizeName, sizeValue);
+            } else {
+                dto.setBusiValue(count);
+            }
+            dto.setProperties(properties);
+            results.add(dto);
+        }
+        return results;
+    }
+
+    private double sizeValue(int slot) {
+        return "AVG".equals(sizeAggregator) ? sizes[slot] / sizeWeights[slot] : sizes[slot];
+    }
+
+    private void add(long cell, long count, double longitudeSum, double latitudeSum, double sizeValue) {
+        int slot = slot(cell);
+        if (cells[slot] == EMPTY) {
+            cells[slot] = cell;
+            if (++size * 2 > cells.length) {
+                // 先写入再扩容，扩容后重新定位
+                resize(cells.length * 2);
+                slot = slot(cell);
+            }
+        }
+        counts[slot] += count;
+        longitudes[slot] += longitudeSum;
+        latitudes[slot] += latitudeSum;
+        if (Double.isNaN(sizeValue)) {
+            return;
+        }
+        switch (sizeAggregator) {
+            case "MAX":
+                sizes[slot] = sizeWeights[slot] > 0 ? Math.max(sizes[slot], sizeValue) : sizeValue;
+                sizeWeights[slot] = 1;
+                break;
+            case "MIN":
+                sizes[slot] = sizeWeights[slot] > 0 ? Math.min(sizes[slot], sizeValue) : sizeValue;
+                sizeWeights[slot] = 1;
+                break;
+            case "AVG":
+                sizes[slot] += sizeValue * count;
+                sizeWeights[slot] += count;
+                break;
+            default:
+                sizes[slot] += sizeValue;
+                sizeWeights[slot] = 1;
+                break;
+        }
+    }
+
+    private int slot(long cell) {
+        int mask = cells.length - 1;
+        long hash = cell * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (cells[slot] != EMPTY && cells[slot] != cell) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        cells = new long[capacity];
+        Arrays.fill(cells, EMPTY);
+        counts = new long[capacity];
+        longitudes = new double[capacity];
+        latitudes = new double[capacity];
+        sizes = new double[capacity];
+        sizeWeights = new double[capacity];
+    }
+
+    private void resize(int capacity) {
+        long[] oldCells = cells;
+        long[] oldCounts = counts;
+        double[] oldLongitudes = longitudes;
+        double[] oldLatitudes = latitudes;
+        double[] oldSizes = sizes;
+        double[] oldSizeWeights = sizeWeights;
+        allocate(capacity);
+        for (int i = 0; i < oldCells.length; i++) {
+            if (oldCells[i] == EMPTY) {
+                continue;
+            }
+            int slot = slot(oldCells[i]);
+            cells[slot] = oldCells[i];
+            counts[slot] = oldCounts[i];
+            longitudes[slot] = oldLongitudes[i];
+            latitudes[slot] = oldLatitudes[i];
+            sizes[slot] = oldSizes[i];
+            sizeWeights[slot] = oldSizeWeights[i];
+        }
+    }
+
+    private static String plain(double value) {
+        return BigDecimal.valueOf(value).toPlainString();
+    }
+}
@@ -0,0 +1,33 @@
+package io.dataease.plugins.view.official.handler;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 符号地图聚合配置
+ * mode 为 none 时不聚合；grid 按经纬度网格、geohash 按 geohash 单元、quadkey 按瓦片聚合。
+ * 单元大小由地图缩放级别与单元像素宽度决定：缩放级别下 256 像素对应 360 / 2^zoom 度；
+ * 有可视范围时缩放级别按范围的经度跨度与 viewportPixels 计算，否则使用 zoom。
+ */
+@Getter
+@Component
+public class SymbolMapClusterConfig {
+
+    @Value("${dataease.plugin.symbol-map.cluster.mode:none}")
+    private String mode;
+
+    @Value("${dataease.plugin.symbol-map.cluster.zoom:6}")
+    private int zoom;
+
+    @Value("${dataease.plugin.symbol-map.cluster.cell-pixels:64}")
+    private int cellPixels;
+
+    // 由可视范围计算缩放级别时使用的地图宽度
+    @Value("${dataease.plugin.symbol-map.cluster.viewport-pixels:1024}")
+    private int viewportPixels;
+
+    // 是否允许把网格计算下推到 SQL
+    @Value("${dataease.plugin.symbol-map.cluster.push-down:true}")
+    private boolean pushDown;
+}
@@ -0,0 +1,277 @@
+package io.dataease.plugins.view.official.handler;
+
+import io.dataease.plugins.view.entity.PluginViewField;
+import io.dataease.plugins.view.entity.PluginViewParam;
+import io.dataease.plugins.view.entity.PluginViewSet;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 符号地图点位缓存
+ * 只有经纬度与符号大小字段的视图，按不含可视范围条件的点位 SQL 缓存全部点位的索引；
+ * 缓存键包含数据源与数据集，SQL 包含数据集的表或自定义 SQL、视图过滤与行权限条件，数据集或过滤变化后对应新的缓存。
+ * 缓存有效期内 generateSQL 只执行空查询并在当前线程记录，formatResult 据此直接从索引返回可视范围内的点位或聚合结果；
+ * 超过有效期后下一次请求重新查询，定时任务清理长时间未刷新的缓存，总占用超过预算后淘汰最久未使用的索引。
+ */
+@Component
+public class SymbolMapPointCache {
+
+    @Value("${dataease.plugin.symbol-map.point-cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${dataease.plugin.symbol-map.point-cache.refresh-seconds:600}")
+    private long refreshSeconds;
+
+    // 单个视图可以缓存的最大点数，超过时按原方式查询
+    @Value("${dataease.plugin.symbol-map.point-cache.max-points:1000000}")
+    private int maxPoints;
+
+    @Value("${dataease.plugin.symbol-map.point-cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+    // generateSQL 发出点位查询或空查询时记录，同一请求的 formatResult 取出后清除
+    private final ThreadLocal<Issued> issued = new ThreadLocal<>();
+
+    private ScheduledExecutorService cleanExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        cleanExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "symbol-map-point-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, refreshSeconds);
+        cleanExecutor.scheduleWithFixedDelay(this::clean, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (cleanExecutor != null) {
+            cleanExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 视图是否可以使用点位缓存：两个数值类型的经纬度字段，最多一个符号大小字段，没有标签与提示字段
+     *
+     * @param fields 未转换 yAxis 前的视图字段
+     * @param yKeys  视为 yAxis 的字段类型
+     * @return
+     */
+    public boolean cacheable(List<PluginViewField> fields, List<String> yKeys) {
+        if (!enabled) {
+            return false;
+        }
+        int xCount = 0;
+        int yCount = 0;
+        for (PluginViewField field : fields) {
+            String typeField = field.getTypeField();
+            if (StringUtils.equals(typeField, "xAxis")) {
+                if (field.getDeType() == null || (field.getDeType() != 2 && field.getDeType() != 3)) {
+                    return false;
+                }
+                xCount++;
+            } else if (yKeys.contains(typeField)) {
+                return false;
+            } else if (StringUtils.equals(typeField, "yAxis")) {
+                yCount++;
+            }
+        }
+        return xCount == 2 && yCount <= 1;
+    }
+
+    /**
+     * 是否有有效期内的点位索引，有则只需执行空查询
+     *
+     * @param param
+     * @param pointSQL
+     * @return
+     */
+    public boolean fresh(PluginViewParam param, String pointSQL) {
+        String key = key(param, pointSQL);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            return entry != null && entry.index != null && !expired(entry, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 点数超过上限的视图在记录被清理前按原方式查询
+     *
+     * @param param
+     * @param pointSQL
+     * @return
+     */
+    public boolean oversized(PluginViewParam param, String pointSQL) {
+        String key = key(param, pointSQL);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            return entry != null && entry.index == null;
+        }
+    }
+
+    /**
+     * 记录当前请求发出的点位查询或空查询
+     *
+     * @param param
+     * @param pointSQL
+     * @param probe
+     */
+    public void issue(PluginViewParam param, String pointSQL, boolean probe) {
+        issued.set(new Issued(key(param, pointSQL), probe));
+    }
+
+    /**
+     * 清除当前线程上一次请求的记录，本次按原方式查询
+     */
+    public void skip() {
+        issued.remove();
+    }
+
+    /**
+     * 当前请求是否由 generateSQL 发出了点位查询或空查询
+     *
+     * @param param
+     * @param pointSQL
+     * @return
+     */
+    public boolean issued(PluginViewParam param, String pointSQL) {
+        Issued current = issued.get();
+        return current != null && StringUtils.equals(current.key, key(param, pointSQL));
+    }
+
+    /**
+     * 取得点位索引：当前请求发出的是空查询时使用已缓存的索引（已超过有效期的同样可用），
+     * 否则由点位查询结果构建索引并缓存，点位查询没有结果时同样缓存
+     *
+     * @param param
+     * @param pointSQL
+     * @param data
+     * @return
+     */
+    public SymbolMapPointIndex load(PluginViewParam param, String pointSQL, List<String[]> data) {
+        String key = key(param, pointSQL);
+        long now = System.currentTimeMillis();
+        Issued current = issued.get();
+        issued.remove();
+        if (current != null && current.probe && StringUtils.equals(current.key, key)) {
+            synchronized (entries) {
+                Entry entry = entries.get(key);
+                if (entry != null && entry.index != null) {
+                    return entry.index;
+                }
+            }
+            // 空查询返回前索引已被淘汰，本次返回空结果，下一次请求重新查询点位
+            return SymbolMapPointIndex.of(Collections.emptyList());
+        }
+        SymbolMapPointIndex index = SymbolMapPointIndex.of(data);
+        if (index.size() > maxPoints || index.estimatedBytes() > maxBytes) {
+            // 记录点数过多，本次结果仍从索引返回
+            put(key, new Entry(null, 0, now));
+        } else {
+            put(key, new Entry(index, index.estimatedBytes(), now));
+        }
+        return index;
+    }
+
+    private void put(String key, Entry entry) {
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                bytes -= previous.bytes;
+            }
+            bytes += entry.bytes;
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<String, Entry> eldest = iterator.next();
+                bytes -= eldest.getValue().bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 清理超过两个有效期未刷新的缓存，有效期内发出的空查询在返回前仍能取得索引
+     */
+    private void clean() {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next().getValue();
+                if (now - entry.createTime >= 2 * refreshMillis()) {
+                    bytes -= entry.bytes;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private boolean expired(Entry entry, long now) {
+        return now - entry.createTime >= refreshMillis();
+    }
+
+    private long refreshMillis() {
+        return TimeUnit.SECONDS.toMillis(Math.max(1, refreshSeconds));
+    }
+
+    private static String key(PluginViewParam param, String pointSQL) {
+        PluginViewSet viewSet = param.getPluginViewSet();
+        return StringUtils.defaultString(viewSet.getDsType()) + ":" + StringUtils.defaultString(viewSet.getDataSourceId())
+                + ":" + StringUtils.defaultString(viewSet.getId()) + ":" + sha256(StringUtils.defaultString(pointSQL));
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (Exception e) {
+            return text;
+        }
+    }
+
+    private static class Issued {
+        private final String key;
+        private final boolean probe;
+
+        private Issued(String key, boolean probe) {
+            this.key = key;
+            this.probe = probe;
+        }
+    }
+
+    private static class Entry {
+        // 点数超过上限时为 null
+        private final SymbolMapPointIndex index;
+        private final long bytes;
+        private final long createTime;
+
+        private Entry(SymbolMapPointIndex index, long bytes, long createTime) {
+            this.index = index;
+            this.bytes = bytes;
+            this.createTime = createTime;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package io.dataease.plugins.view.official.handler;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 符号地图点位索引
+ * 经度、纬度、符号大小以 double 数组保存，点位按 Hilbert 曲线排序后每 BLOCK_SIZE 个点记录一次外包矩形，
+ * 范围查询只检查与范围相交的块，完全落在范围内的块不再逐点判断。
+ */
+public class SymbolMapPointIndex {
+
+    private static final int BLOCK_SIZE = 64;
+
+    // Hilbert 曲线的阶数，经纬度各划分为 2^15 份，编码左移 32 位后仍为正数
+    private static final int HILBERT_ORDER = 15;
+
+    private final double[] longitudes;
+    private final double[] latitudes;
+    // 没有符号大小字段或取值为空时为 NaN
+    private final double[] values;
+    // 每个块的西、东、南、北边界
+    private final double[] blockBounds;
+    private final int size;
+
+    /**
+     * 点位访问
+     */
+    public interface Visitor {
+        void visit(double longitude, double latitude, double value);
+    }
+
+    private SymbolMapPointIndex(double[] longitudes, double[] latitudes, double[] values, int size) {
+        this.longitudes = longitudes;
+        this.latitudes = latitudes;
+        this.values = values;
+        this.size = size;
+        int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.blockBounds = new double[blocks * 4];
+        for (int block = 0; block < blocks; block++) {
+            double west = Double.POSITIVE_INFINITY;
+            double east = Double.NEGATIVE_INFINITY;
+            double south = Double.POSITIVE_INFINITY;
+            double north = Double.NEGATIVE_INFINITY;
+            for (int i = block * BLOCK_SIZE, end = Math.min(size, i + BLOCK_SIZE); i < end; i++) {
+                west = Math.min(west, longitudes[i]);
+                east = Math.max(east, longitudes[i]);
+                south = Math.min(south, latitudes[i]);
+                north = Math.max(north, latitudes[i]);
+            }
+            blockBounds[block * 4] = west;
+            blockBounds[block * 4 + 1] = east;
+            blockBounds[block * 4 + 2] = south;
+            blockBounds[block * 4 + 3] = north;
+        }
+    }
+
+    /**
+     * 由点位查询结果构建索引，每行依次为经度、纬度以及可选的符号大小；经纬度无法解析的行跳过
+     *
+     * @param data
+     * @return
+     */
+    public static SymbolMapPointIndex of(List<String[]> data) {
+        int rowCount = data.size();
+        double[] rawLongitudes = new double[rowCount];
+        double[] rawLatitudes = new double[rowCount];
+        double[] rawValues = new double[rowCount];
+        int size = 0;
+        for (String[] row : data) {
+            double longitude = parseDouble(row[0]);
+            double latitude = parseDouble(row[1]);
+            if (Double.isNaN(longitude) || Double.isNaN(latitude) || Double.isInfinite(longitude) || Double.isInfinite(latitude)) {
+                continue;
+            }
+            rawLongitudes[size] = longitude;
+            rawLatitudes[size] = latitude;
+            rawValues[size] = row.length > 2 ? parseDouble(row[2]) : Double.NaN;
+            size++;
+        }
+
+        // 高 32 位为 Hilbert 编码，低 32 位为原下标，直接对 long 数组排序
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (hilbert(rawLongitudes[i], rawLatitudes[i]) << 32) | i;
+        }
+        Arrays.sort(order);
+        double[] longitudes = new double[size];
+        double[] latitudes = new double[size];
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            int source = (int) (order[i] & 0xFFFFFFFFL);
+            longitudes[i] = rawLongitudes[source];
+            latitudes[i] = rawLatitudes[source];
+            values[i] = rawValues[source];
+        }
+        return new SymbolMapPointIndex(longitudes, latitudes, values, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long estimatedBytes() {
+        return 64L + size * 24L + blockBounds.length * 8L;
+    }
+
+    /**
+     * 访问范围内（含边界）的点位，west 大于 east 时表示跨越 180 度经线的范围
+     *
+     * @param west
+     * @param east
+     * @param south
+     * @param north
+     * @param visitor
+     */
+    public void query(double west, double east, double south, double north, Visitor visitor) {
+        if (west > east) {
+            query(west, 180, south, north, visitor);
+            query(-180, east, south, north, visitor);
+            return;
+        }
+        for (int block = 0; block * BLOCK_SIZE < size; block++) {
+            double blockWest = blockBounds[block * 4];
+            double blockEast = blockBounds[block * 4 + 1];
+            double blockSouth = blockBounds[block * 4 + 2];
+            double blockNorth = blockBounds[block * 4 + 3];
+            if (blockWest > east || blockEast < west || blockSouth > north || blockNorth < south) {
+                continue;
+            }
+            boolean contained = blockWest >= west && blockEast <= east && blockSouth >= south && blockNorth <= north;
+            for (int i = block * BLOCK_SIZE, end = Math.min(size, i + BLOCK_SIZE); i < end; i++) {
+                if (contained || (longitudes[i] >= west && longitudes[i] <= east && latitudes[i] >= south && latitudes[i] <= north)) {
+                    visitor.visit(longitudes[i], latitudes[i], values[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 访问全部点位
+     *
+     * @param visitor
+     */
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < size; i++) {
+            visitor.visit(longitudes[i], latitudes[i], values[i]);
+        }
+    }
+
+    /**
+     * 经纬度在 Hilbert 曲线上的位置，超出范围的坐标归入边缘
+     *
+     * @param longitude
+     * @param latitude
+     * @return
+     */
+    private static long hilbert(double longitude, double latitude) {
+        long n = 1L << HILBERT_ORDER;
+        long x = Math.max(0, Math.min(n - 1, (long) ((longitude + 180) / 360 * n)));
+        long y = Math.max(0, Math.min(n - 1, (long) ((latitude + 90) / 180 * n)));
+        long d = 0;
+        for (long s = n / 2; s > 0; s /= 2) {
+            long rx = (x & s) > 0 ? 1 : 0;
+            long ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            // 旋转象限
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                long t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    private static double parseDouble(String value) {
+        if (value == null || value.isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
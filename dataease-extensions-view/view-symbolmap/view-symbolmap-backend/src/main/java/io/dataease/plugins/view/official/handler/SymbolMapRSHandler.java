@@ -1,33 +1,30 @@
 package io.dataease.plugins.view.official.handler;
 
-import io.dataease.plugins.common.dto.chart.AxisChartDataAntVDTO;
 import io.dataease.plugins.common.dto.chart.ChartDimensionDTO;
 import io.dataease.plugins.common.dto.chart.ChartQuotaDTO;
 import io.dataease.plugins.view.entity.*;
 import io.dataease.plugins.view.handler.PluginViewRSHandler;
 import io.dataease.plugins.view.official.dto.SymbolMapResultDTO;
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Resource;
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import javax.annotation.PostConstruct;
+import java.util.*;
 
 @Component
 public class SymbolMapRSHandler implements PluginViewRSHandler<Map> {
 
-    private static List<String> trans2Ykeys = new ArrayList<String>();
+    private static final List<String> trans2Ykeys = Collections.unmodifiableList(Arrays.asList("labelAxis", "tooltipAxis"));
 
-    @PostConstruct
-    public void init() {
-        trans2Ykeys.add("labelAxis");
-        trans2Ykeys.add("tooltipAxis");
-    }
+    // 点数达到该值且只有经纬度与符号大小字段时，返回紧凑的坐标数组
+    public static final int COMPACT_THRESHOLD = 5000;
+
+    // 紧凑模式下每个点占用的数组长度：经度、纬度、值
+    public static final int COMPACT_STRIDE = 3;
+
+    @Resource
+    private SymbolMapClusterConfig symbolMapClusterConfig;
 
     public List<String> getTrans2Ykeys() {
         return trans2Ykeys;
@@ -35,108 +32,321 @@ public class SymbolMapRSHandler implements PluginViewRSHandler<Map> {
 
     @Override
     public Map format(PluginViewParam pluginViewParam, List<String[]> data, boolean isDrill) {
-        List<PluginViewField> xAxis = new ArrayList<>();
-        List<PluginViewField> yAxis = new ArrayList<>();
-
-        pluginViewParam.getPluginViewFields().forEach(pluginViewField -> {
-            if (StringUtils.equals(pluginViewField.getTypeField(), "xAxis")) {
-                xAxis.add(pluginViewField);
-            }
-            if (StringUtils.equals(pluginViewField.getTypeField(), "yAxis")
-                    || trans2Ykeys.contains(pluginViewField.getTypeField())) {
-                yAxis.add(pluginViewField);
-            }
-        });
+        AxisLayout layout = new AxisLayout(pluginViewParam.getPluginViewFields());
         Map<String, Object> map = new HashMap<>();
-        List<AxisChartDataAntVDTO> datalist = new ArrayList<>();
-
-        for (int i1 = 0; i1 < data.size(); i1++) {
-            String[] row = data.get(i1);
+        SymbolMapCluster cluster = SymbolMapCluster.plan(pluginViewParam, symbolMapClusterConfig, trans2Ykeys,
+                SymbolMapViewport.resolve(pluginViewParam));
+        if (cluster != null) {
+            return cluster(cluster, layout, data);
+        }
+        if (layout.compactable(isDrill, data.size())) {
+            map.put("data", new ArrayList<>());
+            map.put("compact", compact(layout, data));
+            return map;
+        }
 
-            StringBuilder a = new StringBuilder();
+        List<SymbolMapResultDTO> datalist = new ArrayList<>(data.size());
+        StringBuilder name = new StringBuilder();
+        int xSize = layout.xIds.length;
+        for (String[] row : data) {
+            name.setLength(0);
             if (isDrill) {
-                a.append(row[xAxis.size() - 1]);
+                name.append(row[xSize - 1]);
             } else {
-                for (int i = 0; i < xAxis.size(); i++) {
-                    if (i == xAxis.size() - 1) {
-                        a.append(row[i]);
-                    } else {
-                        a.append(row[i]).append("\n");
+                for (int i = 0; i < xSize; i++) {
+                    if (i > 0) {
+                        name.append('\n');
                     }
+                    name.append(row[i]);
                 }
             }
+            String field = name.toString();
 
-            if (CollectionUtils.isEmpty(yAxis)) {
-                for (int i = 0; i < xAxis.size() + yAxis.size(); i++) {
-                    SymbolMapResultDTO axisChartDataDTO = new SymbolMapResultDTO();
-                    axisChartDataDTO.setField(a.toString());
-                    axisChartDataDTO.setName(a.toString());
+            ChartDimensionDTO[] dimensions = new ChartDimensionDTO[xSize];
+            for (int j = 0; j < xSize; j++) {
+                ChartDimensionDTO chartDimensionDTO = new ChartDimensionDTO();
+                chartDimensionDTO.setId(layout.xIds[j]);
+                chartDimensionDTO.setValue(row[j]);
+                dimensions[j] = chartDimensionDTO;
+            }
 
-                    List<ChartDimensionDTO> dimensionList = new ArrayList<>();
-                    List<ChartQuotaDTO> quotaList = new ArrayList<>();
+            SymbolMapResultDTO axisChartDataDTO = new SymbolMapResultDTO();
+            axisChartDataDTO.setField(field);
+            axisChartDataDTO.setName(field);
+            axisChartDataDTO.setDimensionList(Arrays.asList(dimensions));
+            axisChartDataDTO.setLongitude(row[0]);
+            axisChartDataDTO.setLatitude(row[1]);
+            if (layout.yNames.length == 0) {
+                // 没有符号大小等字段时每行只对应一个点
+                datalist.add(axisChartDataDTO);
+                continue;
+            }
 
-                    for (int j = 0; j < xAxis.size(); j++) {
-                        ChartDimensionDTO chartDimensionDTO = new ChartDimensionDTO();
-                        chartDimensionDTO.setId(xAxis.get(j).getId());
-                        chartDimensionDTO.setValue(row[j]);
-                        dimensionList.add(chartDimensionDTO);
-                    }
-                    axisChartDataDTO.setDimensionList(dimensionList);
-
-                    int j = i - xAxis.size();
-                    if (j > -1) {
-                        ChartQuotaDTO chartQuotaDTO = new ChartQuotaDTO();
-                        chartQuotaDTO.setId(yAxis.get(j).getId());
-                        quotaList.add(chartQuotaDTO);
-                        axisChartDataDTO.setQuotaList(quotaList);
-                        try {
-                            axisChartDataDTO.setBusiValue(row[i]);
-                            axisChartDataDTO.setValue(StringUtils.isEmpty(row[i]) ? null : new BigDecimal(row[i]));
-                        } catch (Exception e) {
-                            axisChartDataDTO.setValue(new BigDecimal(0));
-                        }
-                        axisChartDataDTO.setCategory(yAxis.get(j).getName());
-                    }
-                    axisChartDataDTO.setLongitude(dimensionList.get(0).getValue());
-                    axisChartDataDTO.setLatitude(dimensionList.get(1).getValue());
-                    datalist.add(axisChartDataDTO);
-                }
-            } else {
-                SymbolMapResultDTO axisChartDataDTO = new SymbolMapResultDTO();
-                axisChartDataDTO.setField(a.toString());
-                axisChartDataDTO.setName(a.toString());
+            axisChartDataDTO.setQuotaList(layout.quotaList);
+            Map<String, Object> properties = new HashMap<>(layout.propertiesCapacity);
+            for (int i = 0; i < layout.yNames.length; i++) {
+                properties.put(layout.yNames[i], row[i + xSize]);
+            }
+            axisChartDataDTO.setProperties(properties);
+            if (layout.valueIndex >= 0) {
+                axisChartDataDTO.setCategory(layout.yNames[layout.valueIndex]);
+                axisChartDataDTO.setBusiValue(row[layout.valueIndex + xSize]);
+            }
+            datalist.add(axisChartDataDTO);
+        }
+        map.put("data", datalist);
+        return map;
+    }
+
+    /**
+     * 紧凑模式：经度、纬度、值依次写入同一个 double 数组，经纬度无法解析的行跳过，值为空时按 0 处理；
+     * 维度与指标 id 只返回一份，前端点击时再组装 dimensionList
+     *
+     * @param layout
+     * @param data
+     * @return
+     */
+    private Map<String, Object> compact(AxisLayout layout, List<String[]> data) {
+        int xSize = layout.xIds.length;
+        double[] coordinates = new double[data.size() * COMPACT_STRIDE];
+        int size = 0;
+        for (String[] row : data) {
+            double longitude = parseDouble(row[0]);
+            double latitude = parseDouble(row[1]);
+            if (Double.isNaN(longitude) || Double.isNaN(latitude)) {
+                continue;
+            }
+            double value = layout.valueIndex >= 0 ? parseDouble(row[layout.valueIndex + xSize]) : 0;
+            coordinates[size++] = longitude;
+            coordinates[size++] = latitude;
+            coordinates[size++] = Double.isNaN(value) ? 0 : value;
+        }
+        return compact(layout, coordinates, size);
+    }
 
-                List<ChartDimensionDTO> dimensionList = new ArrayList<>();
+    private Map<String, Object> compact(AxisLayout layout, double[] coordinates, int size) {
+        Map<String, Object> compact = new HashMap<>();
+        compact.put("stride", COMPACT_STRIDE);
+        compact.put("dimensionIds", layout.xIds);
+        compact.put("quotaList", layout.quotaList);
+        compact.put("category", layout.valueIndex >= 0 ? layout.yNames[layout.valueIndex] : null);
+        compact.put("coordinates", size == coordinates.length ? coordinates : Arrays.copyOf(coordinates, size));
+        return compact;
+    }
 
-                for (int j = 0; j < xAxis.size(); j++) {
-                    ChartDimensionDTO chartDimensionDTO = new ChartDimensionDTO();
-                    chartDimensionDTO.setId(xAxis.get(j).getId());
-                    chartDimensionDTO.setValue(row[j]);
-                    dimensionList.add(chartDimensionDTO);
+    /**
+     * 聚合模式：SQL 已按单元汇总时合并单元，否则逐行把点位聚合到单元
+     *
+     * @param cluster
+     * @param layout
+     * @param data
+     * @return
+     */
+    private Map<String, Object> cluster(SymbolMapCluster cluster, AxisLayout layout, List<String[]> data) {
+        SymbolMapClusterAggregator aggregator = new SymbolMapClusterAggregator(cluster);
+        boolean hasSize = cluster.getSizeIndex() >= 0;
+        if (cluster.isPushDown()) {
+            for (String[] row : data) {
+                double x = parseDouble(row[SymbolMapCluster.SQL_CELL_X]);
+                double y = parseDouble(row[SymbolMapCluster.SQL_CELL_Y]);
+                if (Double.isNaN(x) || Double.isNaN(y)) {
+                    continue;
                 }
-                axisChartDataDTO.setDimensionList(dimensionList);
-                axisChartDataDTO.setQuotaList(new ArrayList<>());
-                axisChartDataDTO.setProperties(new HashMap<>());
-                int step = xAxis.size();
-                Boolean valueFilled = false;
-                for (int i = 0; i < yAxis.size(); i++) {
-                    PluginViewField curY = yAxis.get(i);
-                    ChartQuotaDTO chartQuotaDTO = new ChartQuotaDTO();
-                    chartQuotaDTO.setId(curY.getId());
-                    axisChartDataDTO.getQuotaList().add(chartQuotaDTO);
-                    axisChartDataDTO.getProperties().put(curY.getName(), row[i + step]);
-                    axisChartDataDTO.setLongitude(dimensionList.get(0).getValue());
-                    axisChartDataDTO.setLatitude(dimensionList.get(1).getValue());
-                    if (StringUtils.equals(curY.getTypeField(), "yAxis") && !valueFilled) {
-                        axisChartDataDTO.setCategory(curY.getName());
-                        axisChartDataDTO.setBusiValue(row[i + step]);
-                        valueFilled = true;
-                    }
+                aggregator.addCell(cluster.cell((long) x, (long) y), (long) parseDouble(row[SymbolMapCluster.SQL_COUNT]),
+                        parseDouble(row[SymbolMapCluster.SQL_LONGITUDE]), parseDouble(row[SymbolMapCluster.SQL_LATITUDE]),
+                        hasSize ? parseDouble(row[SymbolMapCluster.SQL_SIZE]) : Double.NaN);
+            }
+        } else {
+            int sizeColumn = layout.xIds.length + cluster.getSizeIndex();
+            for (String[] row : data) {
+                aggregator.addPoint(parseDouble(row[0]), parseDouble(row[1]), hasSize ? parseDouble(row[sizeColumn]) : Double.NaN);
+            }
+        }
+        return clusterResult(cluster, layout, aggregator, cluster.isPushDown());
+    }
+
+    private Map<String, Object> clusterResult(SymbolMapCluster cluster, AxisLayout layout, SymbolMapClusterAggregator aggregator, boolean pushDown) {
+        boolean hasSize = cluster.getSizeIndex() >= 0;
+        Map<String, Object> clusterInfo = new HashMap<>();
+        clusterInfo.put("mode", cluster.getMode().name().toLowerCase());
+        clusterInfo.put("level", cluster.getLevel());
+        clusterInfo.put("pushDown", pushDown);
+        Map<String, Object> map = new HashMap<>();
+        map.put("data", aggregator.results(hasSize ? layout.yNames[cluster.getSizeIndex()] : null));
+        map.put("cluster", clusterInfo);
+        return map;
+    }
+
+    /**
+     * 从点位缓存的索引返回结果：有可视范围时只返回范围内的点位（聚合时范围扩展到单元边界），
+     * 输出与按查询结果格式化时相同
+     *
+     * @param pluginViewParam
+     * @param index
+     * @param isDrill
+     * @return
+     */
+    public Map format(PluginViewParam pluginViewParam, SymbolMapPointIndex index, boolean isDrill) {
+        AxisLayout layout = new AxisLayout(pluginViewParam.getPluginViewFields());
+        SymbolMapViewport viewport = SymbolMapViewport.resolve(pluginViewParam);
+        SymbolMapCluster cluster = SymbolMapCluster.plan(pluginViewParam, symbolMapClusterConfig, trans2Ykeys, viewport);
+        if (cluster != null) {
+            SymbolMapClusterAggregator aggregator = new SymbolMapClusterAggregator(cluster);
+            boolean hasSize = cluster.getSizeIndex() >= 0;
+            visit(index, viewport != null ? viewport.snap(cluster) : null,
+                    (longitude, latitude, value) -> aggregator.addPoint(longitude, latitude, hasSize ? value : Double.NaN));
+            return clusterResult(cluster, layout, aggregator, false);
+        }
+
+        PointBuffer points = new PointBuffer();
+        visit(index, viewport, points);
+        Map<String, Object> map = new HashMap<>();
+        if (layout.compactable(isDrill, points.size / COMPACT_STRIDE)) {
+            for (int i = 2; i < points.size; i += COMPACT_STRIDE) {
+                if (Double.isNaN(points.coordinates[i])) {
+                    points.coordinates[i] = 0;
                 }
-                datalist.add(axisChartDataDTO);
             }
+            map.put("data", new ArrayList<>());
+            map.put("compact", compact(layout, points.coordinates, points.size));
+            return map;
+        }
+
+        List<SymbolMapResultDTO> datalist = new ArrayList<>(points.size / COMPACT_STRIDE);
+        for (int i = 0; i < points.size; i += COMPACT_STRIDE) {
+            String longitude = plain(points.coordinates[i]);
+            String latitude = plain(points.coordinates[i + 1]);
+            String field = isDrill ? latitude : longitude + "\n" + latitude;
+            List<ChartDimensionDTO> dimensions = new ArrayList<>(2);
+            for (int j = 0; j < 2; j++) {
+                ChartDimensionDTO chartDimensionDTO = new ChartDimensionDTO();
+                chartDimensionDTO.setId(layout.xIds[j]);
+                chartDimensionDTO.setValue(j == 0 ? longitude : latitude);
+                dimensions.add(chartDimensionDTO);
+            }
+            SymbolMapResultDTO axisChartDataDTO = new SymbolMapResultDTO();
+            axisChartDataDTO.setField(field);
+            axisChartDataDTO.setName(field);
+            axisChartDataDTO.setDimensionList(dimensions);
+            axisChartDataDTO.setLongitude(longitude);
+            axisChartDataDTO.setLatitude(latitude);
+            if (layout.valueIndex >= 0) {
+                double value = points.coordinates[i + 2];
+                String busiValue = Double.isNaN(value) ? null : plain(value);
+                axisChartDataDTO.setQuotaList(layout.quotaList);
+                Map<String, Object> properties = new HashMap<>(layout.propertiesCapacity);
+                properties.put(layout.yNames[layout.valueIndex], busiValue);
+                axisChartDataDTO.setProperties(properties);
+                axisChartDataDTO.setCategory(layout.yNames[layout.valueIndex]);
+                axisChartDataDTO.setBusiValue(busiValue);
+            }
+            datalist.add(axisChartDataDTO);
         }
         map.put("data", datalist);
         return map;
     }
+
+    private static void visit(SymbolMapPointIndex index, SymbolMapViewport viewport, SymbolMapPointIndex.Visitor visitor) {
+        if (viewport == null) {
+            index.forEach(visitor);
+            return;
+        }
+        index.query(viewport.getMinLongitude(), viewport.getMaxLongitude(), viewport.getMinLatitude(), viewport.getMaxLatitude(), visitor);
+    }
+
+    private static String plain(double value) {
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    private static double parseDouble(String value) {
+        if (StringUtils.isEmpty(value)) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * 按经度、纬度、值依次收集点位
+     */
+    private static class PointBuffer implements SymbolMapPointIndex.Visitor {
+        private double[] coordinates = new double[COMPACT_STRIDE * 1024];
+        private int size;
+
+        @Override
+        public void visit(double longitude, double latitude, double value) {
+            if (size + COMPACT_STRIDE > coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+            }
+            coordinates[size++] = longitude;
+            coordinates[size++] = latitude;
+            coordinates[size++] = value;
+        }
+    }
+
+    /**
+     * 每次请求只计算一次的字段布局，结果行之间共享
+     */
+    private static class AxisLayout {
+        private final String[] xIds;
+        private final String[] yNames;
+        private final List<ChartQuotaDTO> quotaList;
+        // 第一个 yAxis 字段的下标，作为符号大小取值
+        private final int valueIndex;
+        // 只有 yAxis 字段，没有标签与提示字段
+        private final boolean valueOnly;
+        // 经纬度字段均为数值类型
+        private final boolean numericLocation;
+        private final int propertiesCapacity;
+
+        private AxisLayout(List<PluginViewField> fields) {
+            List<String> xIdList = new ArrayList<>();
+            List<String> yNameList = new ArrayList<>();
+            List<ChartQuotaDTO> quotas = new ArrayList<>();
+            int index = -1;
+            boolean onlyValue = true;
+            boolean numeric = true;
+            for (PluginViewField field : fields) {
+                String typeField = field.getTypeField();
+                if (StringUtils.equals(typeField, "xAxis")) {
+                    xIdList.add(field.getId());
+                    // 2: 整型 3: 浮点
+                    numeric &= field.getDeType() != null && (field.getDeType() == 2 || field.getDeType() == 3);
+                }
+                boolean yAxis = StringUtils.equals(typeField, "yAxis");
+                if (yAxis || trans2Ykeys.contains(typeField)) {
+                    if (yAxis && index < 0) {
+                        index = yNameList.size();
+                    }
+                    onlyValue &= yAxis;
+                    ChartQuotaDTO chartQuotaDTO = new ChartQuotaDTO();
+                    chartQuotaDTO.setId(field.getId());
+                    quotas.add(chartQuotaDTO);
+                    yNameList.add(field.getName());
+                }
+            }
+            this.xIds = xIdList.toArray(new String[0]);
+            this.yNames = yNameList.toArray(new String[0]);
+            this.quotaList = Collections.unmodifiableList(quotas);
+            this.valueIndex = index;
+            this.valueOnly = onlyValue;
+            this.numericLocation = numeric;
+            this.propertiesCapacity = (int) (yNames.length / 0.75f) + 1;
+        }
+
+        /**
+         * 钻取、多于经纬度的维度或带标签、提示字段时需要完整的点数据；
+         * 紧凑模式只返回解析后的坐标，经纬度为文本字段时联动、钻取需要原始文本，也返回完整的点数据
+         *
+         * @param isDrill
+         * @param rowCount
+         * @return
+         */
+        private boolean compactable(boolean isDrill, int rowCount) {
+            return !isDrill && xIds.length == 2 && numericLocation && valueOnly && rowCount >= COMPACT_THRESHOLD;
+        }
+    }
 }
@@ -2,6 +2,7 @@ package io.dataease.plugins.view.official.handler;
 
 import io.dataease.plugins.common.constants.datasource.SQLConstants;
 import io.dataease.plugins.common.util.ConstantsUtil;
+import io.dataease.plugins.datasource.common.TemplateRegistry;
 import io.dataease.plugins.view.entity.*;
 import io.dataease.plugins.view.handler.PluginViewStatHandler;
 import io.dataease.plugins.view.service.ViewPluginBaseService;
@@ -12,9 +13,9 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 import org.stringtemplate.v4.ST;
 import org.stringtemplate.v4.STGroup;
-import org.stringtemplate.v4.STGroupFile;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -48,21 +49,10 @@ public class SymbolMapStatHandler implements PluginViewStatHandler {
                 .filter(singleField -> ObjectUtils.isNotEmpty(singleField.getSort()))
                 .map(singleField -> singleField.getSort()).collect(Collectors.toList());
 
-        // 处理视图中字段过滤
-        String customWheres = baseService.customWhere(dsType, pluginViewParam.getPluginChartFieldCustomFilters(),
-                tableObj);
-        // 处理仪表板字段过滤
-        String panelWheres = baseService.panelWhere(dsType, pluginViewParam.getPluginChartExtFilters(), tableObj);
-        // 构建sql所有参数
-
-        String permissionWhere = baseService.permissionWhere(dsType, pluginViewParam.getRowPermissionsTree(), tableObj);
-        List<String> wheres = new ArrayList<>();
-        if (customWheres != null)
-            wheres.add(customWheres);
-        if (panelWheres != null)
-            wheres.add(panelWheres);
-        if (StringUtils.isNotBlank(permissionWhere)) {
-            wheres.add(permissionWhere);
+        SymbolMapViewport viewport = SymbolMapViewport.resolve(pluginViewParam);
+        List<String> wheres = wheres(baseService, dsType, pluginViewParam, tableObj, viewport);
+        if (viewport != null) {
+            wheres.addAll(viewport.predicates(xFields.get(0).getFieldName(), xFields.get(1).getFieldName()));
         }
         List<PluginViewSQL> groups = new ArrayList<>();
         groups.addAll(xFields);
@@ -70,7 +60,7 @@ public class SymbolMapStatHandler implements PluginViewStatHandler {
         List<PluginViewSQL> orders = new ArrayList<>();
         orders.addAll(xOrders);
 
-        STGroup stg = new STGroupFile(SQLConstants.SQL_TEMPLATE);
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
 
         ST st_sql = stg.getInstanceOf("previewSql");
         st_sql.add("isGroup", false);
@@ -98,4 +88,188 @@ public class SymbolMapStatHandler implements PluginViewStatHandler {
         return baseService.sqlLimit(dsType, st.render(), pluginViewParam.getPluginViewLimit());
     }
 
+    /**
+     * 聚合查询：内层按位置查询（有符号大小字段时按位置分组汇总），外层按单元分组，
+     * 返回单元下标、点数、经纬度合计与符号大小聚合值；结果条数限制作用于单元数
+     *
+     * @param pluginViewParam
+     * @param viewPluginService
+     * @param cluster
+     * @return
+     */
+    public String buildCluster(PluginViewParam pluginViewParam, ViewPluginService viewPluginService, SymbolMapCluster cluster) {
+        ViewPluginBaseService baseService = viewPluginService.getBaseService();
+        PluginViewSet pluginViewSet = pluginViewParam.getPluginViewSet();
+        String dsType = pluginViewSet.getDsType();
+        PluginViewSQL tableObj = baseService.getTableObj(pluginViewSet);
+
+        List<PluginViewSQL> xFields = new ArrayList<>();
+        PluginViewSQL sizeField = pointFields(baseService, dsType, pluginViewParam, tableObj, cluster.getSizeField(), xFields);
+        // 可视范围扩展到单元边界
+        SymbolMapViewport viewport = SymbolMapViewport.resolve(pluginViewParam);
+        List<String> wheres = wheres(baseService, dsType, pluginViewParam, tableObj, viewport);
+        if (viewport != null) {
+            wheres.addAll(viewport.snap(cluster).predicates(xFields.get(0).getFieldName(), xFields.get(1).getFieldName()));
+        }
+        String sql = pointSQL(tableObj, xFields, sizeField, wheres);
+
+        String brackets = ConstantsUtil.constantsValue(dsType, "BRACKETS");
+        String table_alias_prefix = ConstantsUtil.constantsValue(dsType, "TABLE_ALIAS_PREFIX");
+        String longitude = xFields.get(0).getFieldAlias();
+        String latitude = xFields.get(1).getFieldAlias();
+
+        List<PluginViewSQL> cells = new ArrayList<>();
+        cells.add(PluginViewSQL.builder().fieldName(cluster.cellXExpression(longitude)).fieldAlias("de_cell_x").build());
+        cells.add(PluginViewSQL.builder().fieldName(cluster.cellYExpression(latitude)).fieldAlias("de_cell_y").build());
+        List<PluginViewSQL> aggregators = new ArrayList<>();
+        aggregators.add(PluginViewSQL.builder().fieldName("COUNT(*)").fieldAlias("de_count").build());
+        aggregators.add(PluginViewSQL.builder().fieldName("SUM(" + longitude + ")").fieldAlias("de_longitude").build());
+        aggregators.add(PluginViewSQL.builder().fieldName("SUM(" + latitude + ")").fieldAlias("de_latitude").build());
+        if (sizeField != null) {
+            aggregators.add(PluginViewSQL.builder().fieldName(cluster.sizeAggregator() + "(" + sizeField.getFieldAlias() + ")").fieldAlias("de_size").build());
+        }
+        List<String> notNull = new ArrayList<>();
+        notNull.add(longitude + " IS NOT NULL");
+        notNull.add(latitude + " IS NOT NULL");
+
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
+        ST st = stg.getInstanceOf("previewSql");
+        st.add("isGroup", true);
+        st.add("groups", cells);
+        st.add("aggregators", aggregators);
+        st.add("filters", notNull);
+        st.add("table", PluginViewSQL.builder()
+                .tableName(String.format(brackets, sql))
+                .tableAlias(String.format(table_alias_prefix, 1))
+                .build());
+        return baseService.sqlLimit(dsType, st.render(), pluginViewParam.getPluginViewLimit());
+    }
+
+    /**
+     * 点位缓存使用的全部点位查询：与聚合查询的内层相同，但不带可视范围条件，平移、缩放时 SQL 保持不变
+     *
+     * @param pluginViewParam
+     * @param viewPluginService
+     * @return
+     */
+    public String buildPoints(PluginViewParam pluginViewParam, ViewPluginService viewPluginService) {
+        ViewPluginBaseService baseService = viewPluginService.getBaseService();
+        PluginViewSet pluginViewSet = pluginViewParam.getPluginViewSet();
+        String dsType = pluginViewSet.getDsType();
+        PluginViewSQL tableObj = baseService.getTableObj(pluginViewSet);
+
+        PluginViewField size = null;
+        for (PluginViewField pluginViewField : pluginViewParam.getPluginViewFields()) {
+            if (StringUtils.equals(pluginViewField.getTypeField(), "yAxis")) {
+                size = pluginViewField;
+                break;
+            }
+        }
+        List<PluginViewSQL> xFields = new ArrayList<>();
+        PluginViewSQL sizeField = pointFields(baseService, dsType, pluginViewParam, tableObj, size, xFields);
+        List<String> wheres = wheres(baseService, dsType, pluginViewParam, tableObj, SymbolMapViewport.resolve(pluginViewParam));
+        return pointSQL(tableObj, xFields, sizeField, wheres);
+    }
+
+    /**
+     * 点位缓存有效时执行的空查询，只查询经纬度字段且条件恒为假
+     *
+     * @param pluginViewParam
+     * @param viewPluginService
+     * @return
+     */
+    public String buildProbe(PluginViewParam pluginViewParam, ViewPluginService viewPluginService) {
+        ViewPluginBaseService baseService = viewPluginService.getBaseService();
+        PluginViewSet pluginViewSet = pluginViewParam.getPluginViewSet();
+        String dsType = pluginViewSet.getDsType();
+        PluginViewSQL tableObj = baseService.getTableObj(pluginViewSet);
+
+        List<PluginViewSQL> xFields = new ArrayList<>();
+        pointFields(baseService, dsType, pluginViewParam, tableObj, null, xFields);
+        return pointSQL(tableObj, xFields, null, Collections.singletonList("1 = 0"));
+    }
+
+    /**
+     * 收集经纬度字段，返回符号大小字段
+     *
+     * @param baseService
+     * @param dsType
+     * @param pluginViewParam
+     * @param tableObj
+     * @param size            符号大小字段，没有时为 null
+     * @param xFields         经纬度字段
+     * @return
+     */
+    private PluginViewSQL pointFields(ViewPluginBaseService baseService, String dsType, PluginViewParam pluginViewParam, PluginViewSQL tableObj,
+                                      PluginViewField size, List<PluginViewSQL> xFields) {
+        PluginViewSQL sizeField = null;
+        for (int i = 0; i < pluginViewParam.getPluginViewFields().size(); i++) {
+            PluginViewField pluginViewField = pluginViewParam.getPluginViewFields().get(i);
+            if (StringUtils.equals(pluginViewField.getTypeField(), "xAxis")) {
+                xFields.add(baseService.buildField(dsType, pluginViewField, tableObj, i).getField());
+            } else if (pluginViewField == size) {
+                sizeField = baseService.buildField(dsType, pluginViewField, tableObj, i).getField();
+            }
+        }
+        return sizeField;
+    }
+
+    /**
+     * 按位置查询，有符号大小字段时按位置分组汇总
+     *
+     * @param tableObj
+     * @param xFields
+     * @param sizeField
+     * @param wheres
+     * @return
+     */
+    private String pointSQL(PluginViewSQL tableObj, List<PluginViewSQL> xFields, PluginViewSQL sizeField, List<String> wheres) {
+        STGroup stg = TemplateRegistry.getGroup(SQLConstants.SQL_TEMPLATE);
+        ST st_sql = stg.getInstanceOf("previewSql");
+        st_sql.add("isGroup", sizeField != null);
+        st_sql.add("groups", xFields);
+        if (sizeField != null)
+            st_sql.add("aggregators", Collections.singletonList(sizeField));
+        if (CollectionUtils.isNotEmpty(wheres))
+            st_sql.add("filters", wheres);
+        if (ObjectUtils.isNotEmpty(tableObj))
+            st_sql.add("table", tableObj);
+        return st_sql.render();
+    }
+
+    /**
+     * 视图过滤、仪表板过滤与行权限条件；有可视范围时经纬度范围过滤不在这里处理，由调用方生成范围条件
+     *
+     * @param baseService
+     * @param dsType
+     * @param pluginViewParam
+     * @param tableObj
+     * @param viewport
+     * @return
+     */
+    private List<String> wheres(ViewPluginBaseService baseService, String dsType, PluginViewParam pluginViewParam, PluginViewSQL tableObj,
+                                SymbolMapViewport viewport) {
+        // 处理视图中字段过滤
+        String customWheres = baseService.customWhere(dsType, pluginViewParam.getPluginChartFieldCustomFilters(),
+                tableObj);
+        // 处理仪表板字段过滤
+        List<PluginChartExtFilter> extFilters = pluginViewParam.getPluginChartExtFilters();
+        if (viewport != null) {
+            extFilters = viewport.remaining(extFilters);
+        }
+        String panelWheres = baseService.panelWhere(dsType, extFilters, tableObj);
+        // 构建sql所有参数
+
+        String permissionWhere = baseService.permissionWhere(dsType, pluginViewParam.getRowPermissionsTree(), tableObj);
+        List<String> wheres = new ArrayList<>();
+        if (customWheres != null)
+            wheres.add(customWheres);
+        if (StringUtils.isNotBlank(panelWheres))
+            wheres.add(panelWheres);
+        if (StringUtils.isNotBlank(permissionWhere)) {
+            wheres.add(permissionWhere);
+        }
+        return wheres;
+    }
+
 }
@@ -0,0 +1,250 @@
+package io.dataease.plugins.view.official.handler;
+
+import io.dataease.plugins.view.entity.PluginChartExtFilter;
+import io.dataease.plugins.view.entity.PluginViewField;
+import io.dataease.plugins.view.entity.PluginViewParam;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * 地图可视范围
+ * 由作用在经度、纬度字段上的范围过滤（仪表板数值区间过滤、外部参数、联动）得到，
+ * 经度最小值大于最大值时表示跨越 180 度经线的范围。
+ * 可视范围内的条件由插件生成（聚合时扩展到单元边界），对应的过滤不再交给 panelWhere 处理；
+ * 聚合的缩放级别按可视范围的经度跨度计算。
+ */
+public class SymbolMapViewport {
+
+    private static final double MIN_LONGITUDE = -180;
+    private static final double MAX_LONGITUDE = 180;
+    private static final double MIN_LATITUDE = -90;
+    private static final double MAX_LATITUDE = 90;
+
+    private final double minLongitude;
+    private final double maxLongitude;
+    private final double minLatitude;
+    private final double maxLatitude;
+
+    // 已转换为可视范围的过滤条件
+    private final Set<PluginChartExtFilter> consumed;
+
+    private SymbolMapViewport(double minLongitude, double maxLongitude, double minLatitude, double maxLatitude,
+                              Set<PluginChartExtFilter> consumed) {
+        this.minLongitude = minLongitude;
+        this.maxLongitude = maxLongitude;
+        this.minLatitude = minLatitude;
+        this.maxLatitude = maxLatitude;
+        this.consumed = consumed;
+    }
+
+    /**
+     * 从过滤条件中解析可视范围，经纬度字段不是数值类型或没有范围过滤时返回 null
+     *
+     * @param pluginViewParam
+     * @return
+     */
+    public static SymbolMapViewport resolve(PluginViewParam pluginViewParam) {
+        List<PluginChartExtFilter> filters = pluginViewParam.getPluginChartExtFilters();
+        if (CollectionUtils.isEmpty(filters)) {
+            return null;
+        }
+        List<PluginViewField> xAxis = new ArrayList<>();
+        for (PluginViewField field : pluginViewParam.getPluginViewFields()) {
+            if (StringUtils.equals(field.getTypeField(), "xAxis")) {
+                xAxis.add(field);
+            }
+        }
+        if (xAxis.size() != 2 || !numeric(xAxis.get(0)) || !numeric(xAxis.get(1))) {
+            return null;
+        }
+        double[] longitude = {MIN_LONGITUDE, MAX_LONGITUDE};
+        double[] latitude = {MIN_LATITUDE, MAX_LATITUDE};
+        Set<PluginChartExtFilter> consumed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (PluginChartExtFilter filter : filters) {
+            if (StringUtils.equals(filter.getFieldId(), xAxis.get(0).getId())) {
+                if (range(filter, longitude)) {
+                    consumed.add(filter);
+                }
+            } else if (StringUtils.equals(filter.getFieldId(), xAxis.get(1).getId())) {
+                if (range(filter, latitude)) {
+                    consumed.add(filter);
+                }
+            }
+        }
+        if (consumed.isEmpty()) {
+            return null;
+        }
+        return new SymbolMapViewport(longitude[0], longitude[1], Math.max(MIN_LATITUDE, latitude[0]),
+                Math.min(MAX_LATITUDE, latitude[1]), consumed);
+    }
+
+    /**
+     * 合并一个范围过滤，无法识别的过滤返回 false，仍按原方式处理
+     *
+     * @param filter
+     * @param range
+     * @return
+     */
+    private static boolean range(PluginChartExtFilter filter, double[] range) {
+        List<String> values = filter.getValue();
+        if (CollectionUtils.isEmpty(values)) {
+            return false;
+        }
+        String operator = StringUtils.defaultString(filter.getOperator());
+        switch (operator) {
+            case "between": {
+                Double min = parse(values.get(0));
+                Double max = values.size() > 1 ? parse(values.get(1)) : null;
+                if (min == null && max == null) {
+                    return false;
+                }
+                if (min != null) {
+                    range[0] = min;
+                }
+                if (max != null) {
+                    range[1] = max;
+                }
+                return true;
+            }
+            case "ge":
+            case "gt": {
+                Double min = parse(values.get(0));
+                if (min == null) {
+                    return false;
+                }
+                range[0] = min;
+                return true;
+            }
+            case "le":
+            case "lt": {
+                Double max = parse(values.get(0));
+                if (max == null) {
+                    return false;
+                }
+                range[1] = max;
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    private static Double parse(String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        try {
+            double parsed = Double.parseDouble(value.trim());
+            return Double.isNaN(parsed) || Double.isInfinite(parsed) ? null : parsed;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean numeric(PluginViewField field) {
+        // 2: 整型 3: 浮点
+        return field.getDeType() != null && (field.getDeType() == 2 || field.getDeType() == 3);
+    }
+
+    /**
+     * 除可视范围以外的过滤条件
+     *
+     * @param filters
+     * @return
+     */
+    public List<PluginChartExtFilter> remaining(List<PluginChartExtFilter> filters) {
+        List<PluginChartExtFilter> remaining = new ArrayList<>();
+        for (PluginChartExtFilter filter : filters) {
+            if (!consumed.contains(filter)) {
+                remaining.add(filter);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * 按经度跨度计算缩放级别，viewportPixels 为地图宽度（像素）
+     *
+     * @param viewportPixels
+     * @return
+     */
+    public int zoom(int viewportPixels) {
+        double span = longitudeSpan();
+        if (span <= 0) {
+            return 24;
+        }
+        int zoom = (int) Math.floor(Math.log(360.0 * viewportPixels / 256 / span) / Math.log(2));
+        return Math.max(0, Math.min(zoom, 24));
+    }
+
+    private double longitudeSpan() {
+        return crossesAntimeridian() ? maxLongitude + 360 - minLongitude : maxLongitude - minLongitude;
+    }
+
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public boolean crossesAntimeridian() {
+        return minLongitude > maxLongitude;
+    }
+
+    /**
+     * 聚合时把范围扩展到单元边界，边缘单元包含完整的点，平移后单元保持一致
+     *
+     * @param cluster
+     * @return
+     */
+    public SymbolMapViewport snap(SymbolMapCluster cluster) {
+        double[] lower = cluster.cellBounds(cluster.cell(minLongitude, minLatitude));
+        double[] upper = cluster.cellBounds(cluster.cell(maxLongitude, maxLatitude));
+        return new SymbolMapViewport(lower[0], upper[1], Math.min(lower[2], upper[2]), Math.max(lower[3], upper[3]), consumed);
+    }
+
+    /**
+     * 经纬度范围条件
+     *
+     * @param longitude 经度列
+     * @param latitude  纬度列
+     * @return
+     */
+    public List<String> predicates(String longitude, String latitude) {
+        List<String> predicates = new ArrayList<>();
+        if (crossesAntimeridian()) {
+            predicates.add("(" + longitude + " >= " + plain(minLongitude) + " OR " + longitude + " <= " + plain(maxLongitude) + ")");
+        } else {
+            if (minLongitude > MIN_LONGITUDE) {
+                predicates.add(longitude + " >= " + plain(minLongitude));
+            }
+            if (maxLongitude < MAX_LONGITUDE) {
+                predicates.add(longitude + " <= " + plain(maxLongitude));
+            }
+        }
+        if (minLatitude > MIN_LATITUDE) {
+            predicates.add(latitude + " >= " + plain(minLatitude));
+        }
+        if (maxLatitude < MAX_LATITUDE) {
+            predicates.add(latitude + " <= " + plain(maxLatitude));
+        }
+        return predicates;
+    }
+
+    private static String plain(double value) {
+        return BigDecimal.valueOf(value).toPlainString();
+    }
+}
@@ -3,8 +3,12 @@ package io.dataease.plugins.view.official.impl;
 import io.dataease.plugins.common.dto.StaticResource;
 
 import io.dataease.plugins.view.entity.*;
+import io.dataease.plugins.view.official.handler.SymbolMapCluster;
+import io.dataease.plugins.view.official.handler.SymbolMapClusterConfig;
+import io.dataease.plugins.view.official.handler.SymbolMapPointCache;
 import io.dataease.plugins.view.official.handler.SymbolMapRSHandler;
 import io.dataease.plugins.view.official.handler.SymbolMapStatHandler;
+import io.dataease.plugins.view.official.handler.SymbolMapViewport;
 import io.dataease.plugins.view.service.ViewPluginService;
 import org.apache.commons.collections4.CollectionUtils;
 import org.springframework.stereotype.Service;
@@ -29,6 +33,12 @@ public class SymbolMapService extends ViewPluginService {
     @Resource
     private SymbolMapRSHandler symbolMapRSHandler;
 
+    @Resource
+    private SymbolMapClusterConfig symbolMapClusterConfig;
+
+    @Resource
+    private SymbolMapPointCache symbolMapPointCache;
+
     private static final String VIEW_TYPE_VALUE = "symbol-map";
 
     private static final String[] VIEW_STYLE_PROPERTIES = {
@@ -141,6 +151,28 @@ public class SymbolMapService extends ViewPluginService {
             return null;
         }
 
+        // 点位缓存：查询全部点位，缓存有效时只执行空查询，由 formatResult 从索引返回结果
+        if (symbolMapPointCache.cacheable(pluginViewFields, trans2Ykeys)) {
+            String pointSQL = symbolMapStatHandler.buildPoints(pluginViewParam, this);
+            if (!symbolMapPointCache.oversized(pluginViewParam, pointSQL)) {
+                boolean probe = symbolMapPointCache.fresh(pluginViewParam, pointSQL);
+                String sql = probe ? symbolMapStatHandler.buildProbe(pluginViewParam, this) : pointSQL;
+                symbolMapPointCache.issue(pluginViewParam, pointSQL, probe);
+                pluginViewParam.setPluginViewFields(pluginViewFields);
+                return sql;
+            }
+        }
+        symbolMapPointCache.skip();
+
+        // 聚合模式下在 SQL 中按单元汇总，不支持时由 formatResult 在内存中聚合
+        SymbolMapCluster cluster = SymbolMapCluster.plan(pluginViewParam, symbolMapClusterConfig, trans2Ykeys,
+                SymbolMapViewport.resolve(pluginViewParam));
+        if (cluster != null && cluster.isPushDown()) {
+            String clusterSQL = symbolMapStatHandler.buildCluster(pluginViewParam, this, cluster);
+            pluginViewParam.setPluginViewFields(pluginViewFields);
+            return clusterSQL;
+        }
+
         if (CollectionUtils.isNotEmpty(yAxis)) {
             String generateSQL = super.generateSQL(pluginViewParam);
             pluginViewParam.setPluginViewFields(pluginViewFields);
@@ -156,6 +188,13 @@ public class SymbolMapService extends ViewPluginService {
 
     @Override
     public Map<String, Object> formatResult(PluginViewParam pluginViewParam, List<String[]> data, Boolean isDrill) {
+        List<String> trans2Ykeys = symbolMapRSHandler.getTrans2Ykeys();
+        if (symbolMapPointCache.cacheable(pluginViewParam.getPluginViewFields(), trans2Ykeys)) {
+            String pointSQL = symbolMapStatHandler.buildPoints(pluginViewParam, this);
+            if (symbolMapPointCache.issued(pluginViewParam, pointSQL)) {
+                return symbolMapRSHandler.format(pluginViewParam, symbolMapPointCache.load(pluginViewParam, pointSQL, data), isDrill);
+            }
+        }
         return symbolMapRSHandler.format(pluginViewParam, data, isDrill);
     }
 }
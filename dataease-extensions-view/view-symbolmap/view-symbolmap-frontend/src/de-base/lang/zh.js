@@ -17,6 +17,7 @@ export default {
     dark: '暗色',
     label_format_tip: '可以${fieldName}的形式读取字段值，标签和提示中的字段互相通用，内置经纬度相关字段',
     tooltip_format_tip: '可以${fieldName}的形式读取字段值，标签和提示中的字段互相通用，内置经纬度相关字段（标签不支持换行）',
-    mark_size_tip: '该指标生效时，样式大小中的气泡大小属性将失效'
+    mark_size_tip: '该指标生效时，样式大小中的气泡大小属性将失效',
+    cluster_count: '数量：'
   }
 }